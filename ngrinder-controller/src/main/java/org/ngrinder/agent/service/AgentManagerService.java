@@ -21,27 +21,47 @@ import static org.ngrinder.common.util.TypeConvertUtil.convert;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.console.communication.AgentStatusChangeListener;
 import net.grinder.engine.controller.AgentControllerIdentityImplementation;
 import net.grinder.message.console.AgentControllerState;
 
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.mutable.MutableInt;
 import org.ngrinder.agent.model.AgentInfo;
 import org.ngrinder.agent.repository.AgentManagerRepository;
 import org.ngrinder.infra.config.Config;
+import org.ngrinder.infra.schedule.RunOn;
 import org.ngrinder.model.User;
 import org.ngrinder.monitor.controller.model.SystemDataModel;
 import org.ngrinder.perftest.service.AgentManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
@@ -57,6 +77,17 @@ import com.google.common.collect.Multimap;
 public class AgentManagerService {
 	protected static final Logger LOGGER = LoggerFactory.getLogger(AgentManagerService.class);
 
+	/**
+	 * Interval of the full reconciliation between the agents in DB and the attached agents.
+	 */
+	private static final long FULL_SYNC_INTERVAL = 10 * 60 * 1000;
+
+	/**
+	 * Delay of the synchronization after an agent status change, so that the changes made at once
+	 * are written together.
+	 */
+	private static final long FLUSH_DELAY = 500;
+
 	@Autowired
 	private AgentManager agentManager;
 
@@ -66,19 +97,152 @@ public class AgentManagerService {
 	@Autowired
 	private Config config;
 
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	@Qualifier("housekeepingExecutor")
+	private Executor housekeepingExecutor;
+
 	/**
-	 * Run a scheduled task to check the agent status.
-	 * 
-	 * This method has some
+	 * Agent state last written into DB, keyed by the agent key.
+	 */
+	private final Map<String, AgentInfo> persistedAgents = new ConcurrentHashMap<String, AgentInfo>();
+
+	/**
+	 * Keys of the agents whose status is changed since the last synchronization.
+	 */
+	private final Set<String> changedAgentKeys = new HashSet<String>();
+
+	private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+	private final Object syncLock = new Object();
+
+	private ScheduledExecutorService flushScheduler;
+
+	/**
+	 * Listen the agent status changes so that only the changed agents are synchronized into DB.
+	 */
+	@PostConstruct
+	public void initAgentStatusSync() {
+		flushScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "agent-status-flush");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		getAgentManager().addAgentStatusChangeListener(new AgentStatusChangeListener() {
+			@Override
+			public void agentStatusChanged(Set<AgentIdentity> changedAgents, Set<AgentIdentity> removedAgents) {
+				markChanged(changedAgents);
+				markChanged(removedAgents);
+			}
+		});
+	}
+
+	/**
+	 * Stop the agent status synchronization.
+	 */
+	@PreDestroy
+	public void destroyAgentStatusSync() {
+		if (flushScheduler != null) {
+			flushScheduler.shutdownNow();
+		}
+	}
+
+	void markChanged(Set<AgentIdentity> agentIdentities) {
+		synchronized (changedAgentKeys) {
+			for (AgentIdentity each : agentIdentities) {
+				AgentControllerIdentityImplementation agentIdentity = convert(each);
+				changedAgentKeys.add(createAgentKey(agentIdentity));
+			}
+		}
+		scheduleFlush();
+	}
+
+	private void markChanged(String agentKey) {
+		synchronized (changedAgentKeys) {
+			changedAgentKeys.add(agentKey);
+		}
+		scheduleFlush();
+	}
+
+	/**
+	 * Schedule {@link #flushChangedAgentStatus()} after {@link #FLUSH_DELAY} unless it's already
+	 * scheduled. The changes made until it runs are written together.
+	 */
+	private void scheduleFlush() {
+		if (flushScheduler == null || !flushScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		flushScheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				flushScheduled.set(false);
+				try {
+					housekeepingExecutor.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								flushChangedAgentStatus();
+							} catch (Exception e) {
+								LOGGER.error("Failed to synchronize the agent status : {}", e.getMessage(), e);
+							}
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					LOGGER.debug("Agent status synchronization is rejected : {}", e.getMessage());
+				}
+			}
+		}, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Reconcile all agents in DB with the attached agents at the start and then in every
+	 * {@link #FULL_SYNC_INTERVAL} to fix up the changes made by others. The status changes of the
+	 * attached agents are written by {@link #flushChangedAgentStatus()} as they happen.
 	 * 
 	 * @since 3.1
 	 */
-	@Scheduled(fixedDelay = 5000)
+	@Scheduled(fixedDelay = FULL_SYNC_INTERVAL)
+	@RunOn("housekeepingExecutor")
 	@Transactional
 	public void checkAgentStatusRegularly() {
-		checkAgentStatus();
+		synchronized (syncLock) {
+			synchronized (changedAgentKeys) {
+				changedAgentKeys.clear();
+			}
+			checkAgentStatus();
+		}
 	}
 
+	/**
+	 * Write the agents whose status is changed since the last synchronization into DB. It's
+	 * called shortly after the agent status changes.
+	 * 
+	 * @since 3.1
+	 */
+	public void flushChangedAgentStatus() {
+		synchronized (changedAgentKeys) {
+			if (changedAgentKeys.isEmpty()) {
+				return;
+			}
+		}
+		synchronized (syncLock) {
+			new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					checkChangedAgentStatus();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Reconcile all agents in DB with the attached agents.
+	 */
 	protected void checkAgentStatus() {
 		List<AgentInfo> changeAgents = Lists.newArrayList();
 		Set<AgentIdentity> allAttachedAgents = getAgentManager().getAllAttachedAgents();
@@ -99,6 +263,7 @@ public class AgentManagerService {
 		}
 
 		List<AgentInfo> agentsToBeDeleted = Lists.newArrayList();
+		List<AgentInfo> agentsToBeKept = Lists.newArrayList();
 		for (String entryKey : agentInDBMap.keySet()) {
 			Collection<AgentInfo> collection = agentInDBMap.get(entryKey);
 			int count = 0;
@@ -114,28 +279,176 @@ public class AgentManagerService {
 			if (interestingAgentInfo == null) {
 				continue;
 			}
-
-			AgentControllerIdentityImplementation agentIdentity = attachedAgentMap.remove(entryKey);
-			if (agentIdentity == null) {
-				// this agent is not attached to controller
-				interestingAgentInfo.setStatus(AgentControllerState.INACTIVE);
-			} else {
-				interestingAgentInfo.setStatus(getAgentManager().getAgentState(agentIdentity));
-				interestingAgentInfo.setRegion(agentIdentity.getRegion());
-				interestingAgentInfo.setPort(getAgentManager().getAgentConnectingPort(agentIdentity));
+			agentsToBeKept.add(interestingAgentInfo);
+			if (updateAgentInfo(interestingAgentInfo, attachedAgentMap.remove(entryKey))) {
+				changeAgents.add(interestingAgentInfo);
 			}
-			changeAgents.add(interestingAgentInfo);
 		}
 
 		// step2. check all attached agents, whether they are new, and not saved
 		// in DB.
 		for (AgentControllerIdentityImplementation agentIdentity : attachedAgentMap.values()) {
-			changeAgents.add(fillUp(new AgentInfo(), agentIdentity));
+			AgentInfo newAgentInfo = new AgentInfo();
+			updateAgentInfo(newAgentInfo, agentIdentity);
+			changeAgents.add(newAgentInfo);
+			agentsToBeKept.add(newAgentInfo);
 		}
 
 		// step3. update into DB
 		getAgentRepository().save(changeAgents);
 		getAgentRepository().delete(agentsToBeDeleted);
+		resetPersistedAgents(agentsToBeKept);
+	}
+
+	/**
+	 * Synchronize the agents whose status is changed since the last synchronization into DB.
+	 * 
+	 * The status is compared with the last persisted one first so that DB is not touched at all
+	 * when nothing is actually changed. The rows to be updated are loaded in one query and saved in
+	 * one batch.
+	 */
+	protected void checkChangedAgentStatus() {
+		Set<String> agentKeys;
+		synchronized (changedAgentKeys) {
+			if (changedAgentKeys.isEmpty()) {
+				return;
+			}
+			agentKeys = new HashSet<String>(changedAgentKeys);
+			changedAgentKeys.clear();
+		}
+		Map<String, AgentControllerIdentityImplementation> attachedAgentMap = Maps.newHashMap();
+		for (AgentIdentity each : getAgentManager().getAllAttachedAgents()) {
+			AgentControllerIdentityImplementation agentIdentity = convert(each);
+			String agentKey = createAgentKey(agentIdentity);
+			if (agentKeys.contains(agentKey)) {
+				attachedAgentMap.put(agentKey, agentIdentity);
+			}
+		}
+
+		// step1. find the agents whose persisted state is not up to date.
+		List<String> outdatedAgentKeys = Lists.newArrayList();
+		List<Long> outdatedAgentIds = Lists.newArrayList();
+		for (String each : agentKeys) {
+			AgentInfo persisted = persistedAgents.get(each);
+			AgentControllerIdentityImplementation agentIdentity = attachedAgentMap.get(each);
+			if (persisted == null && agentIdentity == null) {
+				continue;
+			}
+			if (updateAgentInfo(persisted == null ? new AgentInfo() : copyAgentInfo(persisted), agentIdentity)) {
+				outdatedAgentKeys.add(each);
+				if (persisted != null) {
+					outdatedAgentIds.add(persisted.getId());
+				}
+			}
+		}
+		if (outdatedAgentKeys.isEmpty()) {
+			return;
+		}
+
+		// step2. apply the status on the rows in DB.
+		Map<String, AgentInfo> agentsInDBMap = Maps.newHashMap();
+		if (!outdatedAgentIds.isEmpty()) {
+			for (AgentInfo each : getAgentRepository().findAll(outdatedAgentIds)) {
+				agentsInDBMap.put(createAgentKey(each), each);
+			}
+		}
+		List<AgentInfo> changeAgents = Lists.newArrayList();
+		for (String each : outdatedAgentKeys) {
+			AgentControllerIdentityImplementation agentIdentity = attachedAgentMap.get(each);
+			AgentInfo agentInfo = agentsInDBMap.get(each);
+			if (agentInfo == null) {
+				persistedAgents.remove(each);
+				if (agentIdentity == null) {
+					continue;
+				}
+				agentInfo = findAgentInDB(agentIdentity);
+			}
+			if (updateAgentInfo(agentInfo, agentIdentity)) {
+				changeAgents.add(agentInfo);
+			}
+		}
+
+		// step3. update into DB
+		for (AgentInfo each : getAgentRepository().save(changeAgents)) {
+			persistedAgents.put(createAgentKey(each), copyAgentInfo(each));
+		}
+	}
+
+	private AgentInfo findAgentInDB(AgentControllerIdentityImplementation agentIdentity) {
+		// The agent may have been saved by the other controllers.
+		for (AgentInfo each : getAgentRepository().findAllByIp(agentIdentity.getIp())) {
+			if (StringUtils.equals(each.getName(), agentIdentity.getName())) {
+				return each;
+			}
+		}
+		return new AgentInfo();
+	}
+
+	/**
+	 * Update the given agent info to be in sync with the given attached agent.
+	 * 
+	 * @param agentInfo
+	 *            agent info in DB. Its id is null if it's not saved yet.
+	 * @param agentIdentity
+	 *            attached agent. null if the agent is not attached.
+	 * @return true if the agent info is changed and should be saved
+	 */
+	protected boolean updateAgentInfo(AgentInfo agentInfo, AgentControllerIdentityImplementation agentIdentity) {
+		if (agentIdentity == null) {
+			// this agent is not attached to controller
+			if (agentInfo.getStatus() == AgentControllerState.INACTIVE) {
+				return false;
+			}
+			agentInfo.setStatus(AgentControllerState.INACTIVE);
+			return true;
+		}
+		if (agentInfo.getId() != null && hasSameStatus(agentInfo, agentIdentity)
+						&& StringUtils.equals(agentInfo.getRegion(), agentIdentity.getRegion())) {
+			return false;
+		}
+		fillUp(agentInfo, agentIdentity);
+		return true;
+	}
+
+	/**
+	 * Check if the given agent info has the same port and status as the attached agent.
+	 * 
+	 * @param agentInfo
+	 *            agent info
+	 * @param agentIdentity
+	 *            attached agent
+	 * @return true if same
+	 */
+	protected boolean hasSameStatus(AgentInfo agentInfo, AgentControllerIdentityImplementation agentIdentity) {
+		AgentManager agentManager = getAgentManager();
+		return ObjectUtils.equals(agentInfo.getPort(), agentManager.getAgentConnectingPort(agentIdentity))
+						&& agentInfo.getStatus() == agentManager.getAgentState(agentIdentity);
+	}
+
+	/**
+	 * Replace the last persisted agent state with the given agents.
+	 * 
+	 * @param agents
+	 *            agents in DB
+	 */
+	protected void resetPersistedAgents(List<AgentInfo> agents) {
+		persistedAgents.clear();
+		for (AgentInfo each : agents) {
+			if (each.getId() != null) {
+				persistedAgents.put(createAgentKey(each), copyAgentInfo(each));
+			}
+		}
+	}
+
+	private AgentInfo copyAgentInfo(AgentInfo agentInfo) {
+		AgentInfo copied = new AgentInfo();
+		copied.setId(agentInfo.getId());
+		copied.setIp(agentInfo.getIp());
+		copied.setName(agentInfo.getName());
+		copied.setRegion(agentInfo.getRegion());
+		copied.setPort(agentInfo.getPort());
+		copied.setStatus(agentInfo.getStatus());
+		return copied;
 	}
 
 	/**
@@ -327,6 +640,10 @@ public class AgentManagerService {
 	 */
 	public void saveAgent(AgentInfo agent) {
 		getAgentRepository().save(agent);
+		String agentKey = createAgentKey(agent);
+		persistedAgents.put(agentKey, copyAgentInfo(agent));
+		// Let the status be synchronized with the attached agent.
+		markChanged(agentKey);
 	}
 
 	/**
@@ -337,6 +654,11 @@ public class AgentManagerService {
 	 */
 	public void deleteAgent(long id) {
 		getAgentRepository().delete(id);
+		for (AgentInfo each : persistedAgents.values()) {
+			if (each.getId() == id) {
+				persistedAgents.remove(createAgentKey(each));
+			}
+		}
 	}
 
 	/**
@@ -38,10 +38,10 @@ import org.apache.commons.lang.mutable.MutableInt;
 import org.ngrinder.agent.model.AgentInfo;
 import org.ngrinder.agent.model.ClustedAgentRequest;
 import org.ngrinder.infra.logger.CoreLogger;
+import org.ngrinder.infra.schedule.RunOn;
 import org.ngrinder.infra.schedule.ScheduledTask;
 import org.ngrinder.model.User;
 import org.ngrinder.monitor.controller.model.SystemDataModel;
-import org.ngrinder.perftest.service.AgentManager;
 import org.ngrinder.region.service.RegionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,8 +52,6 @@ import org.springframework.cache.CacheManager;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.transaction.annotation.Transactional;
 
-import com.google.common.collect.Maps;
-
 /**
  * Cluster enabled version of {@link AgentManagerService}.
  * 
@@ -116,14 +114,15 @@ public class ClusteredAgentManagerService extends AgentManagerService {
 	}
 
 	/**
-	 * Run a scheduled task to check the agent status.
+	 * Reconcile all agents in DB with the attached agents. The agents of the regions which no
+	 * longer exist are deleted.
 	 * 
 	 * @since 3.1
 	 */
 	public void checkAgentStatus() {
 		List<AgentInfo> changeAgents = new ArrayList<AgentInfo>();
 		List<AgentInfo> deleteAgents = new ArrayList<AgentInfo>();
-		String curRegion = getConfig().getRegion();
+		List<AgentInfo> keptAgents = new ArrayList<AgentInfo>();
 		Set<String> regions = getRegions();
 
 		Set<AgentIdentity> allAttachedAgents = getAgentManager().getAllAttachedAgents();
@@ -134,59 +133,69 @@ public class ClusteredAgentManagerService extends AgentManagerService {
 		}
 
 		List<AgentInfo> agentsInDB = getAgentRepository().findAll();
-		Map<String, AgentInfo> agentsInDBMap = Maps.newHashMap();
 		// step1. check all agents in DB, whether they are attached to controller.
 		for (AgentInfo eachAgentInDB : agentsInDB) {
 			String keyOfAgentInDB = createAgentKey(eachAgentInDB);
-			agentsInDBMap.put(keyOfAgentInDB, eachAgentInDB);
 			AgentControllerIdentityImplementation agentIdentity = attachedAgentMap.remove(keyOfAgentInDB);
-			String regionOfEachAgentInDB = extractRegionFromAgentRegion(eachAgentInDB.getRegion());
-
-			if (agentIdentity != null) {// if the agent attached to current controller
-				if (StringUtils.equals(regionOfEachAgentInDB, curRegion)) {
-					if (!hasSamePortAndStatus(eachAgentInDB, agentIdentity)) {
-						fillUp(eachAgentInDB, agentIdentity);
-						changeAgents.add(eachAgentInDB);
-					}
-				} else if (eachAgentInDB.getStatus() != WRONG_REGION) {
-					// the region config is wrong
-					eachAgentInDB.setStatus(WRONG_REGION);
-					changeAgents.add(eachAgentInDB);
-
-				}
-			} else { // the agent in DB is not attached to current controller
-				if (StringUtils.equals(regionOfEachAgentInDB, curRegion)) {
-					// the agent WAS attached to this controller before, but it is down.
-					if (eachAgentInDB.getStatus() != INACTIVE) {
-						eachAgentInDB.setStatus(INACTIVE);
-						changeAgents.add(eachAgentInDB);
-					}
-				} else if (!regions.contains(regionOfEachAgentInDB)) {
-					// this agent in DB 's region is not in any region
-					deleteAgents.add(eachAgentInDB);
-				}
+			if (agentIdentity == null && !isCurrentRegion(eachAgentInDB.getRegion())
+							&& !regions.contains(extractRegionFromAgentRegion(eachAgentInDB.getRegion()))) {
+				// this agent in DB 's region is not in any region
+				deleteAgents.add(eachAgentInDB);
+				continue;
+			}
+			keptAgents.add(eachAgentInDB);
+			if (updateAgentInfo(eachAgentInDB, agentIdentity)) {
+				changeAgents.add(eachAgentInDB);
 			}
-
 		}
 
 		// step2. check all attached agents, whether they are new, and not saved in DB.
 		for (AgentControllerIdentityImplementation agentIdentity : attachedAgentMap.values()) {
-			AgentInfo newAgentInfo = fillUp(new AgentInfo(), agentIdentity);
-			if (!StringUtils.equals(extractRegionFromAgentRegion(agentIdentity.getRegion()), curRegion)) {
-				newAgentInfo.setStatus(WRONG_REGION);
-			}
+			AgentInfo newAgentInfo = new AgentInfo();
+			updateAgentInfo(newAgentInfo, agentIdentity);
 			changeAgents.add(newAgentInfo);
+			keptAgents.add(newAgentInfo);
 		}
 
 		// step3. update into DB
 		getAgentRepository().save(changeAgents);
 		getAgentRepository().delete(deleteAgents);
+		resetPersistedAgents(keptAgents);
+	}
+
+	@Override
+	protected boolean updateAgentInfo(AgentInfo agentInfo, AgentControllerIdentityImplementation agentIdentity) {
+		if (agentInfo.getId() == null) {
+			// new agent attached to current controller
+			fillUp(agentInfo, agentIdentity);
+			if (!isCurrentRegion(agentIdentity.getRegion())) {
+				agentInfo.setStatus(WRONG_REGION);
+			}
+			return true;
+		}
+		if (agentIdentity != null) { // if the agent attached to current controller
+			boolean sameRegion = StringUtils.equals(agentInfo.getRegion(), agentIdentity.getRegion());
+			if (isCurrentRegion(agentIdentity.getRegion())) {
+				if (!sameRegion || !hasSameStatus(agentInfo, agentIdentity)) {
+					fillUp(agentInfo, agentIdentity);
+					return true;
+				}
+			} else if (!sameRegion || agentInfo.getStatus() != WRONG_REGION) {
+				// the region config is wrong
+				fillUp(agentInfo, agentIdentity);
+				agentInfo.setStatus(WRONG_REGION);
+				return true;
+			}
+		} else if (isCurrentRegion(agentInfo.getRegion()) && agentInfo.getStatus() != INACTIVE) {
+			// the agent WAS attached to this controller before, but it is down.
+			agentInfo.setStatus(INACTIVE);
+			return true;
+		}
+		return false;
 	}
 
-	private boolean hasSamePortAndStatus(AgentInfo agentInfo, AgentControllerIdentityImplementation agentIdentity) {
-		AgentManager agentManager = getAgentManager();
-		return agentInfo.getPort() == agentManager.getAgentConnectingPort(agentIdentity)
-						&& agentInfo.getStatus() == agentManager.getAgentState(agentIdentity);
+	private boolean isCurrentRegion(String agentRegion) {
+		return StringUtils.equals(extractRegionFromAgentRegion(agentRegion), getConfig().getRegion());
 	}
 
 	/**
@@ -194,6 +203,7 @@ public class ClusteredAgentManagerService extends AgentManagerService {
 	 * 
 	 */
 	@Scheduled(fixedDelay = 1000)
+	@RunOn("monitoringExecutor")
 	public void collectAgentSystemData() {
 		Ehcache nativeCache = (Ehcache) agentMonioringTargetsCache.getNativeCache();
 		List<String> keysWithExpiryCheck = convert(nativeCache.getKeysWithExpiryCheck());
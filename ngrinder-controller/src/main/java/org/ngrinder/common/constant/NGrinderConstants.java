@@ -61,6 +61,11 @@ public interface NGrinderConstants {
 	 */
 	public static final int MAX_VUSER_PER_AGENT = 100;
 
+	/**
+	 * Initial Max non-blocking vuser per agent.
+	 */
+	public static final int MAX_ASYNC_VUSER_PER_AGENT = 10000;
+
 	/**
 	 * Initial Max run count.
 	 */
@@ -90,6 +95,7 @@ public interface NGrinderConstants {
 	public static final String PLUGIN_PATH = "plugins";
 	public static final String SCRIPT_PATH = "script";
 	public static final String USER_REPO_PATH = "repos";
+	public static final String USER_REPO_INDEX_PATH = "repos_index";
 	public static final String PERF_TEST_PATH = "perftest";
 	public static final String DOWNLOAD_PATH = "download";
 	public static final String SHARE_PATH = "share";
@@ -115,6 +121,9 @@ public interface NGrinderConstants {
 	public static final String PARAM_STATUS_UPDATE_STATUS_MESSAGE = "message";
 	public static final String PARAM_STATUS_UPDATE_DELETABLE = "deletable";
 	public static final String PARAM_STATUS_UPDATE_STOPPABLE = "stoppable";
+	public static final String PARAM_STATUS_UPDATE_QUEUE_POSITION = "queue_position";
+	public static final String PARAM_STATUS_UPDATE_ESTIMATED_START_TIME = "estimated_start_time";
+	public static final String PARAM_STATUS_UPDATE_TEST_COMMENT = "test_comment";
 	public static final String PARAM_TPS_TOTAL = "tps_total";
 	public static final String PARAM_TPS_FAILED = "tps_failed";
 	public static final String PARAM_TPS = "TPS";
@@ -171,8 +180,22 @@ public interface NGrinderConstants {
 
 	// ngrinder setting.
 	public static final String NGRINDER_PROP_ETC_HOSTS = "ngrinder.etc.hosts";
+	public static final String NGRINDER_PROP_ARRIVAL_RATE_PROFILE = "ngrinder.arrivalrate.profile";
+	public static final String NGRINDER_PROP_ASYNC_VUSERS = "ngrinder.async.vusers";
 	public static final String NGRINDER_PROP_CONSOLE_PORT_BASE = "ngrinder.console.portbase";
 	public static final int NGRINDER_PROP_CONSOLE_PORT_BASE_VALUE = 12000;
+	public static final String NGRINDER_PROP_CONSOLE_MULTIPLEX_PORT = "ngrinder.console.multiplexport";
+	public static final int NGRINDER_PROP_CONSOLE_MULTIPLEX_PORT_VALUE = 0;
+	public static final String NGRINDER_PROP_CONSOLE_PREWARM = "ngrinder.console.prewarm";
+	public static final int NGRINDER_PROP_CONSOLE_PREWARM_VALUE = 2;
+	public static final String NGRINDER_PROP_CONSOLE_NIO = "ngrinder.console.nio";
+	public static final boolean NGRINDER_PROP_CONSOLE_NIO_VALUE = false;
+	public static final String NGRINDER_PROP_CONSOLE_NIO_IO_THREADS = "ngrinder.console.nio.iothreads";
+	public static final int NGRINDER_PROP_CONSOLE_NIO_IO_THREADS_VALUE = 2;
+	public static final String NGRINDER_PROP_PLUGIN_CALLBACK_TIMEOUT = "ngrinder.plugin.callback.timeout";
+	public static final int NGRINDER_PROP_PLUGIN_CALLBACK_TIMEOUT_VALUE = 10000;
+	public static final String NGRINDER_PROP_PLUGIN_CALLBACK_QUEUE_SIZE = "ngrinder.plugin.callback.queuesize";
+	public static final int NGRINDER_PROP_PLUGIN_CALLBACK_QUEUE_SIZE_VALUE = 100;
 	public static final String NGRINDER_PROP_MAX_CONCURRENT_TEST = "ngrinder.max.concurrenttest";
 	public static final int NGRINDER_PROP_MAX_CONCURRENT_TEST_VALUE = 10;
 	public static final int MAX_STACKTRACE_STRING_SIZE = 2048;
@@ -191,5 +214,5 @@ public interface NGrinderConstants {
 	public static final String CACHE_NAME_DISTRIBUTED_MAP = "distributed_map";
 	public static final String CACHE_NAME_REGION_LIST = "region_list";
 	public static final String CACHE_NAME_RUNNING_STATISTICS = "running_statistics";
-	public static final String CACHE_NAME_CURRENT_PERFTEST_STATISTICS = "current_perftest_statistics";
+	public static final String CACHE_NAME_RUNNING_PERFTESTS = "running_perftests";
 }
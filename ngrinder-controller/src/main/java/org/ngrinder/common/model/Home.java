@@ -208,6 +208,18 @@ public class Home implements NGrinderConstants {
 		return new File(getRepoDirectoryRoot(), subPath);
 	}
 
+	/**
+	 * Get the file in which the file index of the given user repo is saved. It's kept out of the
+	 * user repo directory.
+	 * 
+	 * @param userId
+	 *            user id, which is the name of the user repo directory
+	 * @return index file
+	 */
+	public File getUserRepoIndexFile(String userId) {
+		return new File(getSubFile(USER_REPO_INDEX_PATH), userId);
+	}
+
 	/**
 	 * Get the base perftest directory.
 	 * 
@@ -0,0 +1,123 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.common.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel.
+ * 
+ * The timeouts are put in the slot of their tick, so that scheduling one and collecting the expired
+ * ones take a constant time regardless of how many are pending. A timeout further than one round
+ * of the wheel stays in its slot until its round comes. This class is not thread safe. The owner
+ * should advance it from one thread or guard it.
+ * 
+ * @param <T>
+ *            type of the scheduled item
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class TimerWheel<T> {
+
+	private final long tickDuration;
+
+	private final List<LinkedList<Timeout<T>>> slots;
+
+	private long currentTick;
+
+	private int size = 0;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param tickDuration
+	 *            duration of a tick in millisecond
+	 * @param wheelSize
+	 *            count of the slots
+	 * @param now
+	 *            current time in millisecond
+	 */
+	public TimerWheel(long tickDuration, int wheelSize, long now) {
+		this.tickDuration = tickDuration;
+		this.slots = new ArrayList<LinkedList<Timeout<T>>>(wheelSize);
+		for (int i = 0; i < wheelSize; i++) {
+			slots.add(new LinkedList<Timeout<T>>());
+		}
+		this.currentTick = now / tickDuration;
+	}
+
+	/**
+	 * Schedule the given item. An item whose time is already passed expires on the next tick.
+	 * 
+	 * @param item
+	 *            item
+	 * @param time
+	 *            time in millisecond when the item expires
+	 */
+	public void schedule(T item, long time) {
+		long tick = Math.max(time / tickDuration, currentTick + 1);
+		slots.get((int) (tick % slots.size())).add(new Timeout<T>(item, tick));
+		size++;
+	}
+
+	/**
+	 * Advance the wheel to the given time and collect the expired items.
+	 * 
+	 * @param now
+	 *            current time in millisecond
+	 * @return expired items
+	 */
+	public List<T> advance(long now) {
+		List<T> expired = new ArrayList<T>();
+		long targetTick = now / tickDuration;
+		// Each slot needs to be visited only once however long the wheel has stalled.
+		long fromTick = Math.max(currentTick + 1, targetTick - slots.size() + 1);
+		for (long tick = fromTick; tick <= targetTick && size > 0; tick++) {
+			Iterator<Timeout<T>> iterator = slots.get((int) (tick % slots.size())).iterator();
+			while (iterator.hasNext()) {
+				Timeout<T> each = iterator.next();
+				if (each.tick <= targetTick) {
+					expired.add(each.item);
+					iterator.remove();
+					size--;
+				}
+			}
+		}
+		currentTick = Math.max(currentTick, targetTick);
+		return expired;
+	}
+
+	/**
+	 * Get the count of the pending items.
+	 * 
+	 * @return count
+	 */
+	public int size() {
+		return size;
+	}
+
+	private static final class Timeout<T> {
+		private final T item;
+
+		private final long tick;
+
+		Timeout(T item, long tick) {
+			this.item = item;
+			this.tick = tick;
+		}
+	}
+}
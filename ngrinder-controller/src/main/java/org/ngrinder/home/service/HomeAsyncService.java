@@ -13,8 +13,10 @@
  */
 package org.ngrinder.home.service;
 
+import java.util.concurrent.Executor;
+
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 /**
@@ -30,19 +32,31 @@ public class HomeAsyncService {
 	@Autowired
 	private HomeService homeService;
 
+	@Autowired
+	@Qualifier("housekeepingExecutor")
+	private Executor housekeepingExecutor;
+
 	/**
 	 * Get the right panel entries with async way.
 	 */
-	@Async
 	public void getRightPanelEntries() {
-		homeService.getRightPanelEntries();
+		housekeepingExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				homeService.getRightPanelEntries();
+			}
+		});
 	}
 
 	/**
 	 * Get the left panel entries with async way.
 	 */
-	@Async
 	public void getLeftPanelEntries() {
-		homeService.getLeftPanelEntries();
+		housekeepingExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				homeService.getLeftPanelEntries();
+			}
+		});
 	}
 }
@@ -87,6 +87,9 @@ public class DatabaseConfig implements NGrinderConstants {
 		hibernateJpaVendorAdapter.setDatabasePlatform(database.getDialect());
 		hibernateJpaVendorAdapter.setShowSql(false);
 		emf.setJpaVendorAdapter(hibernateJpaVendorAdapter);
+		// Send the updates of the entity lists saved at once in JDBC batches.
+		emf.getJpaPropertyMap().put("hibernate.jdbc.batch_size", "50");
+		emf.getJpaPropertyMap().put("hibernate.order_updates", "true");
 		// To search entity packages from other jar files..
 		emf.setPackagesToScan("empty");
 		emf.setPersistenceUnitPostProcessors(new PersistenceUnitPostProcessor() {
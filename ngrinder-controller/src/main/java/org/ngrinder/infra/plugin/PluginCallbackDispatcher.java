@@ -0,0 +1,388 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.infra.plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.ngrinder.common.constant.NGrinderConstants;
+import org.ngrinder.common.metrics.Counter;
+import org.ngrinder.common.metrics.MetricRegistry;
+import org.ngrinder.common.metrics.Timer;
+import org.ngrinder.infra.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dispatcher which runs the plugin callbacks off the caller thread.
+ * 
+ * Each plugin has its own worker thread and bounded queue, so a slow plugin delays only its own
+ * callbacks. The callbacks of a plugin run in the order they are dispatched. When the queue is
+ * full, the new callback is dropped. A coalesced callback replaces the one of the same key which
+ * is still waiting in the queue, so that only the latest sample is delivered to a lagging plugin.
+ * A callback running longer than the timeout is interrupted.
+ * 
+ * The lifecycle callbacks are dispatched so that the caller waits for them up to the timeout. They
+ * are never dropped because they are not counted in the queue bound, and the other callbacks still
+ * waiting for the plugin are dropped when one is dispatched, so that it runs right after the
+ * running one.
+ * 
+ * The latency, the dropped callbacks and the timeouts are recorded per plugin in the
+ * {@link MetricRegistry}.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+@Component
+public class PluginCallbackDispatcher {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PluginCallbackDispatcher.class);
+
+	private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+	@Autowired
+	private Config config;
+
+	private final ConcurrentMap<String, PluginQueue> queues = new ConcurrentHashMap<String, PluginQueue>();
+
+	private ScheduledExecutorService watchdog;
+
+	/**
+	 * Initialize the timeout watchdog.
+	 */
+	@PostConstruct
+	public void init() {
+		watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "plugin-callback-watchdog");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Stop all plugin workers.
+	 */
+	@PreDestroy
+	public void destroy() {
+		for (PluginQueue each : queues.values()) {
+			each.executor.shutdown();
+		}
+		watchdog.shutdownNow();
+	}
+
+	/**
+	 * Run the given callback of the plugin. It's run after the callbacks dispatched before for the
+	 * same plugin.
+	 * 
+	 * @param plugin
+	 *            plugin module
+	 * @param callback
+	 *            callback which invokes the plugin
+	 */
+	public void dispatch(Object plugin, Runnable callback) {
+		getQueue(plugin).dispatch(callback);
+	}
+
+	/**
+	 * Run the given callback of the plugin. If a callback of the same key is still waiting, it's
+	 * replaced with the given one.
+	 * 
+	 * @param plugin
+	 *            plugin module
+	 * @param key
+	 *            key of the callbacks which can be coalesced
+	 * @param callback
+	 *            callback which invokes the plugin
+	 */
+	public void dispatchCoalesced(Object plugin, String key, Runnable callback) {
+		getQueue(plugin).dispatchCoalesced(key, callback);
+	}
+
+	/**
+	 * Run the given lifecycle callbacks of the plugins and wait until all of them finish. Each one
+	 * is run after the running callback of the same plugin, and the callbacks waiting for it are
+	 * dropped. The wait is bounded by the timeout so that a stuck plugin can not hold the caller
+	 * forever.
+	 * 
+	 * @param callbacks
+	 *            map of the plugin module and the callback which invokes it
+	 * @return true if all callbacks finished in the timeout
+	 */
+	public boolean dispatchAndWait(Map<?, Runnable> callbacks) {
+		final CountDownLatch latch = new CountDownLatch(callbacks.size());
+		final ConcurrentMap<Object, String> pending = new ConcurrentHashMap<Object, String>();
+		for (Map.Entry<?, Runnable> each : callbacks.entrySet()) {
+			final Object plugin = each.getKey();
+			final Runnable callback = each.getValue();
+			PluginQueue queue = getQueue(plugin);
+			pending.put(plugin, queue.name);
+			boolean queued = queue.dispatchLifecycle(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						callback.run();
+					} finally {
+						pending.remove(plugin);
+						latch.countDown();
+					}
+				}
+			});
+			if (!queued) {
+				LOGGER.warn("The lifecycle callback of the plugin {} is not delivered. The dispatcher is stopped.",
+								queue.name);
+				pending.remove(plugin);
+				latch.countDown();
+			}
+		}
+		try {
+			if (latch.await(getTimeout(), TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+			for (String each : pending.values()) {
+				LOGGER.warn("The lifecycle callback of the plugin {} is not finished in {} ms. It's left running.",
+								each, getTimeout());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	private PluginQueue getQueue(Object plugin) {
+		String name = plugin.getClass().getName();
+		PluginQueue queue = queues.get(name);
+		if (queue == null) {
+			PluginQueue created = new PluginQueue(name);
+			queue = queues.putIfAbsent(name, created);
+			if (queue == null) {
+				queue = created;
+			} else {
+				created.executor.shutdown();
+			}
+		}
+		return queue;
+	}
+
+	/**
+	 * Get the count of the callbacks which can wait for each plugin.
+	 * 
+	 * @return queue size
+	 */
+	protected int getQueueSize() {
+		return config.getSystemProperties().getPropertyInt(NGrinderConstants.NGRINDER_PROP_PLUGIN_CALLBACK_QUEUE_SIZE,
+						NGrinderConstants.NGRINDER_PROP_PLUGIN_CALLBACK_QUEUE_SIZE_VALUE);
+	}
+
+	/**
+	 * Get the time after which a running callback is interrupted.
+	 * 
+	 * @return timeout in millisecond
+	 */
+	protected long getTimeout() {
+		return config.getSystemProperties().getPropertyInt(NGrinderConstants.NGRINDER_PROP_PLUGIN_CALLBACK_TIMEOUT,
+						NGrinderConstants.NGRINDER_PROP_PLUGIN_CALLBACK_TIMEOUT_VALUE);
+	}
+
+	/**
+	 * Worker and queue of a plugin.
+	 */
+	private final class PluginQueue {
+		private final String name;
+		private final int queueSize;
+		private final ThreadPoolExecutor executor;
+		private final Map<String, Runnable> coalesced = new HashMap<String, Runnable>();
+		private final AtomicInteger lifecycleWaiting = new AtomicInteger();
+		private final Timer latency;
+		private final Counter dropped;
+		private final Counter timedOut;
+		private Object running;
+		private int generation;
+
+		PluginQueue(final String name) {
+			this.name = name;
+			this.queueSize = getQueueSize();
+			// The queue bound is applied by enqueue() so that the lifecycle callbacks are not counted.
+			this.executor = new ThreadPoolExecutor(1, 1, IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+							new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+								@Override
+								public Thread newThread(Runnable runnable) {
+									Thread thread = new Thread(runnable, "plugin-callback-" + name);
+									thread.setDaemon(true);
+									return thread;
+								}
+							});
+			this.executor.allowCoreThreadTimeOut(true);
+			MetricRegistry registry = MetricRegistry.getInstance();
+			this.latency = registry.timer("ngrinder_plugin_callback", "Time to run a plugin callback", "plugin", name);
+			this.dropped = registry.counter("ngrinder_plugin_callback_dropped_total",
+							"Count of the plugin callbacks dropped or coalesced", "plugin", name);
+			this.timedOut = registry.counter("ngrinder_plugin_callback_timeout_total",
+							"Count of the plugin callbacks interrupted by the timeout", "plugin", name);
+		}
+
+		boolean dispatch(final Runnable callback) {
+			final int dispatchedGeneration = getGeneration();
+			return enqueue(new Runnable() {
+				@Override
+				public void run() {
+					if (!isEvicted(dispatchedGeneration)) {
+						invoke(callback);
+					}
+				}
+			});
+		}
+
+		void dispatchCoalesced(final String key, Runnable callback) {
+			final int dispatchedGeneration;
+			synchronized (this) {
+				if (coalesced.put(key, callback) != null) {
+					// The waiting one will run the latest callback.
+					dropped.increment();
+					return;
+				}
+				dispatchedGeneration = generation;
+			}
+			boolean queued = enqueue(new Runnable() {
+				@Override
+				public void run() {
+					if (isEvicted(dispatchedGeneration)) {
+						return;
+					}
+					Runnable latest;
+					synchronized (PluginQueue.this) {
+						latest = coalesced.remove(key);
+					}
+					if (latest != null) {
+						invoke(latest);
+					}
+				}
+			});
+			if (!queued) {
+				synchronized (this) {
+					coalesced.remove(key);
+				}
+			}
+		}
+
+		/**
+		 * Run the given lifecycle callback after the running one. The callbacks waiting in the
+		 * queue are dropped.
+		 * 
+		 * @param callback
+		 *            callback which invokes the plugin
+		 * @return true if it's queued. false if the dispatcher is stopped.
+		 */
+		boolean dispatchLifecycle(final Runnable callback) {
+			synchronized (this) {
+				generation++;
+				coalesced.clear();
+			}
+			lifecycleWaiting.incrementAndGet();
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						lifecycleWaiting.decrementAndGet();
+						invoke(callback);
+					}
+				});
+				return true;
+			} catch (RejectedExecutionException e) {
+				lifecycleWaiting.decrementAndGet();
+				return false;
+			}
+		}
+
+		private synchronized int getGeneration() {
+			return generation;
+		}
+
+		private synchronized boolean isEvicted(int dispatchedGeneration) {
+			if (dispatchedGeneration == generation) {
+				return false;
+			}
+			dropped.increment();
+			return true;
+		}
+
+		private synchronized boolean enqueue(Runnable task) {
+			try {
+				if (executor.getQueue().size() - lifecycleWaiting.get() >= queueSize) {
+					throw new RejectedExecutionException();
+				}
+				executor.execute(task);
+				return true;
+			} catch (RejectedExecutionException e) {
+				dropped.increment();
+				LOGGER.warn("The callback queue of the plugin {} is full. A callback is dropped.", name);
+				return false;
+			}
+		}
+
+		private void invoke(Runnable callback) {
+			final Object token = new Object();
+			final Thread worker = Thread.currentThread();
+			synchronized (this) {
+				running = token;
+			}
+			ScheduledFuture<?> timeout = watchdog.schedule(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (PluginQueue.this) {
+						if (running == token) {
+							timedOut.increment();
+							LOGGER.warn("The callback of the plugin {} is timed out. It's interrupted.", name);
+							worker.interrupt();
+						}
+					}
+				}
+			}, getTimeout(), TimeUnit.MILLISECONDS);
+			long start = latency.start();
+			try {
+				callback.run();
+			} catch (Exception e) {
+				LOGGER.error("While running the plugin {}, the error occurs.", name);
+				LOGGER.error("Details : ", e);
+			} finally {
+				latency.stop(start);
+				timeout.cancel(false);
+				synchronized (this) {
+					running = null;
+					// Clear the interruption which is not handled by the plugin.
+					Thread.interrupted();
+				}
+			}
+		}
+	}
+}
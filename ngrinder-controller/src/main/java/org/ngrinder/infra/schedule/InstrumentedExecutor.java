@@ -0,0 +1,257 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.infra.schedule;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread pool dedicated to a controller subsystem.
+ * 
+ * Each subsystem runs its background tasks on its own pool so that a slow task of one subsystem
+ * can not delay the others. The queue depth, the time which tasks wait in the queue and their
+ * running time are measured and exposed through JMX as
+ * <code>org.ngrinder.controller:type=Executor,name=&lt;name&gt;</code>.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class InstrumentedExecutor extends ThreadPoolExecutor implements InstrumentedExecutorMBean {
+
+	private static final Logger LOG = LoggerFactory.getLogger(InstrumentedExecutor.class);
+
+	/** JMX domain of the executors. */
+	public static final String JMX_DOMAIN = "org.ngrinder.controller";
+
+	private final String name;
+
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+	private final AtomicLong submittedCount = new AtomicLong();
+
+	private final AtomicLong finishedCount = new AtomicLong();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private final AtomicLong waitTimeSum = new AtomicLong();
+
+	private final AtomicLong maxWaitTime = new AtomicLong();
+
+	private final AtomicLong runTimeSum = new AtomicLong();
+
+	private final AtomicLong maxRunTime = new AtomicLong();
+
+	private ObjectName objectName;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param name
+	 *            subsystem name. It's used as the thread name prefix and the JMX name.
+	 * @param poolSize
+	 *            thread count
+	 */
+	public InstrumentedExecutor(final String name, int poolSize) {
+		super(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+		this.name = name;
+		setThreadFactory(new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final RejectedExecutionHandler rejectedExecutionHandler = getRejectedExecutionHandler();
+		setRejectedExecutionHandler(new RejectedExecutionHandler() {
+			@Override
+			public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+				rejectedCount.incrementAndGet();
+				rejectedExecutionHandler.rejectedExecution(runnable, executor);
+			}
+		});
+	}
+
+	/**
+	 * Register this executor into the platform MBean server.
+	 */
+	public void registerMBean() {
+		try {
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			ObjectName candidate = new ObjectName(JMX_DOMAIN + ":type=Executor,name=" + name);
+			if (!mbeanServer.isRegistered(candidate)) {
+				mbeanServer.registerMBean(this, candidate);
+				objectName = candidate;
+			}
+		} catch (JMException e) {
+			LOG.error("Error while registering the executor {} : {}", name, e.getMessage());
+			LOG.debug("Details : ", e);
+		}
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		submittedCount.incrementAndGet();
+		super.execute(new TimedTask(command));
+		updateMax(maxQueueDepth, getQueue().size());
+	}
+
+	@Override
+	protected void beforeExecute(Thread thread, Runnable runnable) {
+		TimedTask task = (TimedTask) runnable;
+		task.startTime = System.currentTimeMillis();
+		long waitTime = task.startTime - task.submitTime;
+		waitTimeSum.addAndGet(waitTime);
+		updateMax(maxWaitTime, waitTime);
+	}
+
+	@Override
+	protected void afterExecute(Runnable runnable, Throwable throwable) {
+		long runTime = System.currentTimeMillis() - ((TimedTask) runnable).startTime;
+		runTimeSum.addAndGet(runTime);
+		updateMax(maxRunTime, runTime);
+		finishedCount.incrementAndGet();
+	}
+
+	@Override
+	public void shutdown() {
+		super.shutdown();
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				LOG.debug("Error while unregistering the executor " + name, e);
+			}
+			objectName = null;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return getQueue().size();
+	}
+
+	@Override
+	public int getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	@Override
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	@Override
+	public long getFinishedCount() {
+		return finishedCount.get();
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	@Override
+	public long getAverageWaitTime() {
+		long started = finishedCount.get() + getActiveCount();
+		return started == 0 ? 0 : waitTimeSum.get() / started;
+	}
+
+	@Override
+	public long getMaxWaitTime() {
+		return maxWaitTime.get();
+	}
+
+	@Override
+	public long getAverageRunTime() {
+		long finished = finishedCount.get();
+		return finished == 0 ? 0 : runTimeSum.get() / finished;
+	}
+
+	@Override
+	public long getMaxRunTime() {
+		return maxRunTime.get();
+	}
+
+	@Override
+	public void resetStatistics() {
+		maxQueueDepth.set(0);
+		submittedCount.set(0);
+		finishedCount.set(0);
+		rejectedCount.set(0);
+		waitTimeSum.set(0);
+		maxWaitTime.set(0);
+		runTimeSum.set(0);
+		maxRunTime.set(0);
+	}
+
+	private static void updateMax(AtomicInteger max, int value) {
+		int current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			continue;
+		}
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			continue;
+		}
+	}
+
+	/**
+	 * Task remembering when it's submitted and started.
+	 */
+	private final class TimedTask implements Runnable {
+		private final Runnable task;
+
+		private final long submitTime = System.currentTimeMillis();
+
+		private volatile long startTime;
+
+		TimedTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				// Keep the thread alive.
+				LOG.error("Error while running a task on {} : {}", name, e.getMessage());
+				LOG.debug("Details : ", e);
+			}
+		}
+	}
+}
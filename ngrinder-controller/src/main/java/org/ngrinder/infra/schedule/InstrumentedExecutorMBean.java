@@ -0,0 +1,105 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.infra.schedule;
+
+/**
+ * JMX view of {@link InstrumentedExecutor}.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public interface InstrumentedExecutorMBean {
+
+	/**
+	 * Get the count of the threads.
+	 * 
+	 * @return thread count
+	 */
+	int getPoolSize();
+
+	/**
+	 * Get the count of the threads running a task.
+	 * 
+	 * @return active thread count
+	 */
+	int getActiveCount();
+
+	/**
+	 * Get the count of the tasks waiting for a thread.
+	 * 
+	 * @return queue depth
+	 */
+	int getQueueDepth();
+
+	/**
+	 * Get the largest queue depth since the last reset.
+	 * 
+	 * @return max queue depth
+	 */
+	int getMaxQueueDepth();
+
+	/**
+	 * Get the count of the submitted tasks since the last reset.
+	 * 
+	 * @return submitted task count
+	 */
+	long getSubmittedCount();
+
+	/**
+	 * Get the count of the finished tasks since the last reset.
+	 * 
+	 * @return finished task count
+	 */
+	long getFinishedCount();
+
+	/**
+	 * Get the count of the rejected tasks since the last reset.
+	 * 
+	 * @return rejected task count
+	 */
+	long getRejectedCount();
+
+	/**
+	 * Get the average time which a task waited in the queue.
+	 * 
+	 * @return wait time in millisecond
+	 */
+	long getAverageWaitTime();
+
+	/**
+	 * Get the longest time which a task waited in the queue.
+	 * 
+	 * @return wait time in millisecond
+	 */
+	long getMaxWaitTime();
+
+	/**
+	 * Get the average running time of a task.
+	 * 
+	 * @return run time in millisecond
+	 */
+	long getAverageRunTime();
+
+	/**
+	 * Get the longest running time of a task.
+	 * 
+	 * @return run time in millisecond
+	 */
+	long getMaxRunTime();
+
+	/**
+	 * Reset the statistics.
+	 */
+	void resetStatistics();
+}
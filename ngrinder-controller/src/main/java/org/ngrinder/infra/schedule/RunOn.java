@@ -0,0 +1,41 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.infra.schedule;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Run the annotated scheduled method on the given subsystem executor instead of the scheduler
+ * thread.
+ * 
+ * The run is skipped when the previous one has not finished yet, so a fixed delay method runs at
+ * the fixed rate of its delay. It only takes effect with {@link SubsystemTaskScheduler}. Otherwise
+ * the method runs on the scheduler thread as usual.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RunOn {
+	/**
+	 * Bean name of the executor.
+	 */
+	String value();
+}
@@ -22,7 +22,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 /**
- * Convenient class which makes scheduled task.
+ * Convenient class which makes scheduled task. The tasks run on the cluster sync executor.
  * 
  * @author JunHo Yoon
  * @since 3.1
@@ -37,6 +37,7 @@ public class ScheduledTask {
 	 * Run scheduled task with every 3 secs.
 	 */
 	@Scheduled(fixedDelay = 3000)
+	@RunOn("clusterSyncExecutor")
 	public void doTaskOnEvery3Sec() {
 		runListenersEvery3Sec.apply(new Informer<InterruptibleRunnable>() {
 			@Override
@@ -50,6 +51,7 @@ public class ScheduledTask {
 	 * Run scheduled task with every 10 secs.
 	 */
 	@Scheduled(fixedDelay = 10000)
+	@RunOn("clusterSyncExecutor")
 	public void doTaskOnEvery10Sec() {
 		runListenersEvery10Sec.apply(new Informer<InterruptibleRunnable>() {
 			@Override
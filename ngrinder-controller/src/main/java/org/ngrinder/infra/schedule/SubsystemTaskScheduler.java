@@ -0,0 +1,151 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.infra.schedule;
+
+import java.util.Date;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+/**
+ * Scheduler which hands the scheduled methods annotated with {@link RunOn} over to their subsystem
+ * executor.
+ * 
+ * The scheduler threads only trigger the tasks, so a slow task can not delay the tasks of the
+ * other subsystems. It's registered as the scheduler of the <code>@Scheduled</code> methods
+ * through {@link SchedulingConfigurer}.
+ * 
+ * Because the trigger returns as soon as the task is handed over, the fixed delay of a handed over
+ * task is counted from the trigger, not from the end of the run. A fixed delay task therefore runs
+ * at the fixed rate of its delay, and a trigger is skipped while the last run is still waiting or
+ * running. A run rejected by the executor is counted in its rejected task count and logged.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class SubsystemTaskScheduler extends ThreadPoolTaskScheduler implements SchedulingConfigurer,
+				ApplicationContextAware {
+
+	private static final long serialVersionUID = 7243167722469785612L;
+
+	private static final Logger LOG = LoggerFactory.getLogger(SubsystemTaskScheduler.class);
+
+	private transient ApplicationContext applicationContext;
+
+	@Override
+	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+		this.applicationContext = applicationContext;
+	}
+
+	@Override
+	public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+		taskRegistrar.setScheduler(this);
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+		return super.schedule(route(task), trigger);
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+		return super.schedule(route(task), startTime);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+		return super.scheduleAtFixedRate(route(task), startTime, period);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+		return super.scheduleAtFixedRate(route(task), period);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+		return super.scheduleWithFixedDelay(route(task), startTime, delay);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+		return super.scheduleWithFixedDelay(route(task), delay);
+	}
+
+	private Runnable route(Runnable task) {
+		if (!(task instanceof ScheduledMethodRunnable)) {
+			return task;
+		}
+		RunOn runOn = AnnotationUtils.findAnnotation(((ScheduledMethodRunnable) task).getMethod(), RunOn.class);
+		if (runOn == null) {
+			return task;
+		}
+		Executor executor = applicationContext.getBean(runOn.value(), Executor.class);
+		LOG.info("{} runs on {}", ((ScheduledMethodRunnable) task).getMethod(), runOn.value());
+		return new HandOverTask(task, executor);
+	}
+
+	/**
+	 * Task which hands the scheduled task over to the executor unless the last one is still
+	 * pending.
+	 */
+	private static final class HandOverTask implements Runnable {
+		private final Runnable task;
+
+		private final Executor executor;
+
+		private final AtomicBoolean pending = new AtomicBoolean(false);
+
+		HandOverTask(Runnable task, Executor executor) {
+			this.task = task;
+			this.executor = executor;
+		}
+
+		@Override
+		public void run() {
+			if (!pending.compareAndSet(false, true)) {
+				LOG.debug("{} is skipped because the last run is not finished.", task);
+				return;
+			}
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							task.run();
+						} finally {
+							pending.set(false);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				pending.set(false);
+				LOG.warn("{} is rejected by the executor : {}", task, e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.monitor.controller;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.ngrinder.common.controller.NGrinderBaseController;
+import org.ngrinder.common.metrics.MetricRegistry;
+import org.ngrinder.common.metrics.PrometheusFormat;
+import org.ngrinder.perftest.service.LiveTestMetricsExporter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+/**
+ * Controller which exposes the controller metrics and the live test metrics in the Prometheus
+ * text format.
+ * 
+ * It's protected by HTTP basic authentication so that a scraper can access it.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+@Controller
+@RequestMapping("/metrics")
+public class MetricsController extends NGrinderBaseController {
+
+	@Autowired
+	private LiveTestMetricsExporter liveTestMetricsExporter;
+
+	/**
+	 * Get the controller metrics.
+	 * 
+	 * @return metrics in the Prometheus text format
+	 * @throws IOException
+	 *             occurs when the metrics can not be written
+	 */
+	@RequestMapping("")
+	public HttpEntity<String> getMetrics() throws IOException {
+		StringWriter writer = new StringWriter();
+		MetricRegistry.getInstance().writePrometheus(writer);
+		return toPrometheusEntity(writer.toString());
+	}
+
+	/**
+	 * Get the latest samples of all running tests.
+	 * 
+	 * @return metrics in the Prometheus text format
+	 */
+	@RequestMapping("/tests")
+	public HttpEntity<String> getLiveTestMetrics() {
+		return toPrometheusEntity(liveTestMetricsExporter.getPrometheusText());
+	}
+
+	private HttpEntity<String> toPrometheusEntity(String metrics) {
+		HttpHeaders responseHeaders = new HttpHeaders();
+		responseHeaders.set("content-type", PrometheusFormat.CONTENT_TYPE);
+		return new HttpEntity<String>(metrics, responseHeaders);
+	}
+}
@@ -15,10 +15,13 @@ package org.ngrinder.monitor.service;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
 
+import org.ngrinder.common.metrics.MetricRegistry;
+import org.ngrinder.common.metrics.Timer;
 import org.ngrinder.monitor.MonitorConstants;
 import org.ngrinder.monitor.controller.domain.MonitorCollectionInfoDomain;
 import org.ngrinder.monitor.share.CachedMBeanClient;
@@ -26,8 +29,9 @@ import org.ngrinder.monitor.share.domain.MBeanClient;
 import org.ngrinder.monitor.share.domain.SystemInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Scope;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 /**
@@ -48,6 +52,12 @@ public class MonitorClientSerivce {
 	private MonitorCollectionInfoDomain sysInfoMBeanObj;
 	
 	private String ip;
+
+	private Timer collectionTimer;
+
+	@Autowired
+	@Qualifier("samplingIoExecutor")
+	private Executor samplingIoExecutor;
 	
 	/**
 	 * default constructor, used to debug the non-singleton of this class.
@@ -66,6 +76,8 @@ public class MonitorClientSerivce {
 	public void init(String ip, int port) {
 		LOG.debug("Init MonitorClientSerivce for {}:{}", ip, port);
 		this.ip = ip;
+		this.collectionTimer = MetricRegistry.getInstance().timer("ngrinder_monitor_collection",
+						"Time to collect the system data of a monitor target", "target", ip);
 		try {
 			mbeanClient = CachedMBeanClient.getMBeanClient(ip, port);
 			
@@ -83,11 +95,20 @@ public class MonitorClientSerivce {
 	}
 	
 	/**
-	 * get monitor data from MBClient and record into writer.
+	 * get monitor data from MBClient and record into writer on the sampling I/O executor.
 	 * @param bw buffered writer of file
 	 */
-	@Async
-	public void recordMonitorData(BufferedWriter bw) {
+	public void recordMonitorData(final BufferedWriter bw) {
+		samplingIoExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				doRecordMonitorData(bw);
+			}
+		});
+	}
+
+	private void doRecordMonitorData(BufferedWriter bw) {
+		long start = collectionTimer.start();
 		try {
 			if (!mbeanClient.isConnected()) {
 				mbeanClient.connect();
@@ -96,11 +117,13 @@ public class MonitorClientSerivce {
 				// if the monitor client can not be connected, just return, to avoid error.
 				return;
 			}
-			CompositeData cd = (CompositeData) mbeanClient.getAttribute(sysInfoMBeanObj.getObjectName(),
+			CompositeData cd = (CompositeData) mbeanClient.getAttributeWithClock(sysInfoMBeanObj.getObjectName(),
 					sysInfoMBeanObj.getAttrName());
 			SystemInfo retData = new SystemInfo();
 			retData.parse(cd);
 			retData.setIp(ip);
+			// put the target's collect time on the controller clock, so that it's aligned with the test samples.
+			retData.setCollectTime(mbeanClient.getClockOffsetEstimator().toLocalTime(retData.getCollectTime()));
 			bw.write(retData.getRecordString());
 			bw.newLine();
 			bw.flush();
@@ -108,6 +131,8 @@ public class MonitorClientSerivce {
 			LOG.error("Error while MonitorExecutorWorker is running. Disconnect this MBean client.", e);
 			mbeanClient.disconnect();
 			return;
+		} finally {
+			collectionTimer.stop(start);
 		}
 	}
 	
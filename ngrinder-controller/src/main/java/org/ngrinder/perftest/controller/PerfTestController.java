@@ -33,9 +33,11 @@ import java.util.TimeZone;
 import javax.servlet.http.HttpServletResponse;
 
 import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.scriptengine.arrival.ArrivalRateProfile;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.Predicate;
+import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.lang.mutable.MutableInt;
@@ -52,7 +54,10 @@ import org.ngrinder.model.Role;
 import org.ngrinder.model.Status;
 import org.ngrinder.model.User;
 import org.ngrinder.monitor.controller.model.SystemDataModel;
+import org.ngrinder.perftest.model.PerfTestListItem;
 import org.ngrinder.perftest.service.AgentManager;
+import org.ngrinder.perftest.service.PerfTestScheduler;
+import org.ngrinder.perftest.service.PerfTestScheduler.QueueEntry;
 import org.ngrinder.perftest.service.PerfTestService;
 import org.ngrinder.perftest.service.TagService;
 import org.ngrinder.script.model.FileEntry;
@@ -60,6 +65,7 @@ import org.ngrinder.script.model.FileType;
 import org.ngrinder.script.service.FileEntryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -100,9 +106,16 @@ public class PerfTestController extends NGrinderBaseController {
 	@Autowired
 	private TagService tagService;
 
+	@Autowired
+	private PerfTestScheduler perfTestScheduler;
+
 	/**
 	 * Get Performance test lists.
 	 * 
+	 * In the default order, which is from the newest created one, the page is located by the key of
+	 * the item next to it rather than by the page number. Only the columns shown in the list are
+	 * loaded in this case.
+	 * 
 	 * @param user
 	 *            user
 	 * @param query
@@ -113,6 +126,9 @@ public class PerfTestController extends NGrinderBaseController {
 	 *            tag
 	 * @param queryFilter
 	 *            "F" means get only finished, "S" means get only scheduled tests.
+	 * @param seek
+	 *            "older_" or "newer_" followed by the seek key of the item next to the page. The
+	 *            first page is shown if it's not provided.
 	 * @param pageable
 	 *            page
 	 * @return perftest/list
@@ -120,35 +136,22 @@ public class PerfTestController extends NGrinderBaseController {
 	@RequestMapping({ "/list", "/" })
 	public String getPerfTestList(User user, @RequestParam(required = false) String query,
 					@RequestParam(required = false) String tag, @RequestParam(required = false) String queryFilter,
+					@RequestParam(required = false) String seek,
 					@PageableDefaults(pageNumber = 0, value = 10) Pageable pageable, ModelMap model) {
 		PageRequest pageReq = ((PageRequest) pageable);
 		Sort sort = pageReq == null ? null : pageReq.getSort();
-		if (sort == null && pageReq != null) {
-			sort = new Sort(Direction.DESC, "lastModifiedDate");
-			pageable = new PageRequest(pageReq.getPageNumber(), pageReq.getPageSize(), sort);
-		}
-		Page<PerfTest> testList = perfTestService.getPerfTestList(user, query, tag, queryFilter, pageable);
-
-		TimeZone userTZ = TimeZone.getTimeZone(getCurrentUser().getTimeZone());
-		Calendar userToday = Calendar.getInstance(userTZ);
-		Calendar userYesterday = Calendar.getInstance(userTZ);
-		userYesterday.add(Calendar.DATE, -1);
-
-		for (PerfTest test : testList) {
-			Calendar localedModified = Calendar.getInstance(userTZ);
-			localedModified.setTime(DateUtil.convertToUserDate(getCurrentUser().getTimeZone(),
-							test.getLastModifiedDate()));
-			if (DateUtils.isSameDay(userToday, localedModified)) {
-				test.setDateString("today");
-			} else if (DateUtils.isSameDay(userYesterday, localedModified)) {
-				test.setDateString("yesterday");
-			} else {
-				test.setDateString("earlier");
+		if (pageReq != null && isDefaultOrder(sort)) {
+			getPerfTestListItems(user, query, tag, queryFilter, seek, pageReq.getPageSize(), model);
+			sort = new Sort(Direction.DESC, "createdDate");
+		} else {
+			Page<PerfTest> testList = perfTestService.getPerfTestList(user, query, tag, queryFilter, pageable);
+			for (PerfTest test : testList) {
+				test.setDateString(getDateString(test.getLastModifiedDate()));
 			}
+			model.addAttribute("testListPage", testList);
 		}
 		model.addAttribute("tag", tag);
 		model.addAttribute("availTags", tagService.getAllTagStrings(user, StringUtils.EMPTY));
-		model.addAttribute("testListPage", testList);
 		model.addAttribute("queryFilter", queryFilter);
 		model.addAttribute("query", query);
 		model.addAttribute("page", pageable);
@@ -160,6 +163,60 @@ public class PerfTestController extends NGrinderBaseController {
 		return "perftest/list";
 	}
 
+	private boolean isDefaultOrder(Sort sort) {
+		if (sort == null) {
+			return true;
+		}
+		Order order = (Order) sort.iterator().next();
+		return "createdDate".equals(order.getProperty()) && order.getDirection() == Direction.DESC;
+	}
+
+	private void getPerfTestListItems(User user, String query, String tag, String queryFilter, String seek, int size,
+					ModelMap model) {
+		String[] seekKey = StringUtils.split(StringUtils.defaultString(seek), "_");
+		boolean seeking = seekKey.length == 3;
+		boolean older = !seeking || !"newer".equals(seekKey[0]);
+		Date createdDate = seeking ? new Date(NumberUtils.toLong(seekKey[1])) : null;
+		Long id = seeking ? NumberUtils.toLong(seekKey[2]) : null;
+		// One more item tells if there is the next page in the seek direction.
+		List<PerfTestListItem> items = perfTestService.getPerfTestListItems(user, query, tag, queryFilter,
+						createdDate, id, older, size + 1);
+		boolean hasMore = items.size() > size;
+		if (hasMore) {
+			items = older ? items.subList(0, size) : items.subList(1, size + 1);
+		}
+		for (PerfTestListItem each : items) {
+			each.setDateString(getDateString(each.getLastModifiedDate()));
+		}
+		if (!items.isEmpty()) {
+			if (older ? seeking : hasMore) {
+				model.addAttribute("newerSeek", "newer_" + items.get(0).getSeekKey());
+			}
+			if (older ? hasMore : seeking) {
+				model.addAttribute("olderSeek", "older_" + items.get(items.size() - 1).getSeekKey());
+			}
+		}
+		model.addAttribute("testListPage", new PageImpl<PerfTestListItem>(items));
+		model.addAttribute("seekPaging", true);
+	}
+
+	private String getDateString(Date lastModifiedDate) {
+		String timeZone = getCurrentUser().getTimeZone();
+		TimeZone userTZ = TimeZone.getTimeZone(timeZone);
+		Calendar userToday = Calendar.getInstance(userTZ);
+		Calendar userYesterday = Calendar.getInstance(userTZ);
+		userYesterday.add(Calendar.DATE, -1);
+		Calendar localedModified = Calendar.getInstance(userTZ);
+		localedModified.setTime(DateUtil.convertToUserDate(timeZone, lastModifiedDate));
+		if (DateUtils.isSameDay(userToday, localedModified)) {
+			return "today";
+		} else if (DateUtils.isSameDay(userYesterday, localedModified)) {
+			return "yesterday";
+		} else {
+			return "earlier";
+		}
+	}
+
 	/**
 	 * Get performance test detail on give perf test id.
 	 * 
@@ -302,8 +359,29 @@ public class PerfTestController extends NGrinderBaseController {
 			checkArgument(StringUtils.isNotEmpty(test.getTargetHosts()),
 							"test taget hosts should be provided when security mode is enabled");
 		}
+		if (test.getPriority() == null) {
+			test.setPriority(0);
+		}
+		checkArgument(test.getPriority() <= 0 || user.getRole().equals(Role.ADMIN)
+						|| user.getRole().equals(Role.SUPER_USER), "only admin can raise the test priority");
 		checkArgument(test.getProcesses() != null && 0 != test.getProcesses(), "test process should not be 0");
 		checkArgument(test.getThreads() != null && 0 != test.getThreads(), "test thread should not be 0");
+		if (BooleanUtils.isTrue(test.getUseArrivalRate())) {
+			// The skipped arrival slots are counted as runs by grinder.
+			checkArgument(test.isThreshholdDuration(), "arrival rate should be run by the duration");
+			// throws IllegalArgumentException when the profile is malformed.
+			test.setArrivalRateProfile(ArrivalRateProfile.parse(test.getArrivalRateProfile()).toString());
+		}
+		if (BooleanUtils.isTrue(test.getUseAsyncVuser())) {
+			checkArgument(!BooleanUtils.isTrue(test.getUseArrivalRate()),
+							"async vuser can not be used with arrival rate");
+			checkArgument(test.isThreshholdDuration(), "async vuser should be run by the duration");
+			checkArgument(test.getAsyncVuserPerProcess() != null && test.getAsyncVuserPerProcess() > 0,
+							"async vuser per process should be more than 0");
+			checkArgument(test.getProcesses() * test.getAsyncVuserPerProcess() <= agentManager
+							.getMaxAsyncVuserPerAgent(), "test async vuser should be within %s",
+							agentManager.getMaxAsyncVuserPerAgent());
+		}
 		// Point to the head revision
 		test.setScriptRevision(-1L);
 		// deal with different time zone between user Local and Server
@@ -382,6 +460,15 @@ public class PerfTestController extends NGrinderBaseController {
 											+ "</b>\n" + each.getLastModifiedDateToStr(), "\n", "<br/>"));
 			rtnMap.put(PARAM_STATUS_UPDATE_DELETABLE, each.getStatus().isDeletable());
 			rtnMap.put(PARAM_STATUS_UPDATE_STOPPABLE, each.getStatus().isStoppable());
+			rtnMap.put(PARAM_STATUS_UPDATE_TEST_COMMENT, StringUtils.defaultString(each.getTestComment()));
+			QueueEntry queueEntry = each.getStatus() == Status.READY ? perfTestScheduler.getQueueEntry(each.getId())
+							: null;
+			if (queueEntry != null) {
+				rtnMap.put(PARAM_STATUS_UPDATE_QUEUE_POSITION, queueEntry.getPosition());
+				Date estimatedStartTime = queueEntry.getEstimatedStartTime();
+				rtnMap.put(PARAM_STATUS_UPDATE_ESTIMATED_START_TIME, estimatedStartTime == null ? null : DateUtil
+								.dateToString(DateUtil.convertToUserDate(user.getTimeZone(), estimatedStartTime)));
+			}
 			statusList.add(rtnMap);
 		}
 		Map<String, Object> result = new HashMap<String, Object>(2);
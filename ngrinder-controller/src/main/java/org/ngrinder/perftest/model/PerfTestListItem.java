@@ -0,0 +1,253 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.model;
+
+import java.util.Date;
+
+import org.ngrinder.common.util.DateUtil;
+import org.ngrinder.model.PerfTest;
+import org.ngrinder.model.Status;
+import org.ngrinder.model.User;
+
+/**
+ * Lightweight row of the {@link PerfTest} list.
+ * 
+ * It carries only the columns shown in the list page. The progress messages, the test comment
+ * and the test configuration are not loaded. The users have only their id and name.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class PerfTestListItem {
+	private Long id;
+	private String testName;
+	private String description;
+	private String tagString;
+	private Status status;
+	private Date scheduledTime;
+	private Date createdDate;
+	private Date lastModifiedDate;
+	private String scriptName;
+	private Long scriptRevision;
+	private User createdUser;
+	private User lastModifiedUser;
+	private String region;
+	private Date startTime;
+	private String threshold;
+	private Long duration;
+	private Integer runCount;
+	private Double tps;
+	private Double meanTestTime;
+	private Integer errors;
+	private Integer vuserPerAgent;
+	private Integer agentCount;
+	private String dateString;
+
+	/**
+	 * Get the key of this item in the list order. It's the created time and the id joined by '_'.
+	 * 
+	 * @return key
+	 */
+	public String getSeekKey() {
+		return (createdDate == null ? 0 : createdDate.getTime()) + "_" + id;
+	}
+
+	public String getDurationStr() {
+		return DateUtil.ms2Time(this.duration);
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getTestName() {
+		return testName;
+	}
+
+	public void setTestName(String testName) {
+		this.testName = testName;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public String getTagString() {
+		return tagString;
+	}
+
+	public void setTagString(String tagString) {
+		this.tagString = tagString;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public void setStatus(Status status) {
+		this.status = status;
+	}
+
+	public Date getScheduledTime() {
+		return scheduledTime;
+	}
+
+	public void setScheduledTime(Date scheduledTime) {
+		this.scheduledTime = scheduledTime;
+	}
+
+	public Date getCreatedDate() {
+		return createdDate;
+	}
+
+	public void setCreatedDate(Date createdDate) {
+		this.createdDate = createdDate;
+	}
+
+	public Date getLastModifiedDate() {
+		return lastModifiedDate;
+	}
+
+	public void setLastModifiedDate(Date lastModifiedDate) {
+		this.lastModifiedDate = lastModifiedDate;
+	}
+
+	public String getScriptName() {
+		return scriptName;
+	}
+
+	public void setScriptName(String scriptName) {
+		this.scriptName = scriptName;
+	}
+
+	public Long getScriptRevision() {
+		return scriptRevision;
+	}
+
+	public void setScriptRevision(Long scriptRevision) {
+		this.scriptRevision = scriptRevision;
+	}
+
+	public User getCreatedUser() {
+		return createdUser;
+	}
+
+	public void setCreatedUser(User createdUser) {
+		this.createdUser = createdUser;
+	}
+
+	public User getLastModifiedUser() {
+		return lastModifiedUser;
+	}
+
+	public void setLastModifiedUser(User lastModifiedUser) {
+		this.lastModifiedUser = lastModifiedUser;
+	}
+
+	public String getRegion() {
+		return region;
+	}
+
+	public void setRegion(String region) {
+		this.region = region;
+	}
+
+	public Date getStartTime() {
+		return startTime;
+	}
+
+	public void setStartTime(Date startTime) {
+		this.startTime = startTime;
+	}
+
+	public String getThreshold() {
+		return threshold;
+	}
+
+	public void setThreshold(String threshold) {
+		this.threshold = threshold;
+	}
+
+	public Long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(Long duration) {
+		this.duration = duration;
+	}
+
+	public Integer getRunCount() {
+		return runCount;
+	}
+
+	public void setRunCount(Integer runCount) {
+		this.runCount = runCount;
+	}
+
+	public Double getTps() {
+		return tps;
+	}
+
+	public void setTps(Double tps) {
+		this.tps = tps;
+	}
+
+	public Double getMeanTestTime() {
+		return meanTestTime;
+	}
+
+	public void setMeanTestTime(Double meanTestTime) {
+		this.meanTestTime = meanTestTime;
+	}
+
+	public Integer getErrors() {
+		return errors;
+	}
+
+	public void setErrors(Integer errors) {
+		this.errors = errors;
+	}
+
+	public Integer getVuserPerAgent() {
+		return vuserPerAgent;
+	}
+
+	public void setVuserPerAgent(Integer vuserPerAgent) {
+		this.vuserPerAgent = vuserPerAgent;
+	}
+
+	public Integer getAgentCount() {
+		return agentCount;
+	}
+
+	public void setAgentCount(Integer agentCount) {
+		this.agentCount = agentCount;
+	}
+
+	public String getDateString() {
+		return dateString;
+	}
+
+	public void setDateString(String dateString) {
+		this.dateString = dateString;
+	}
+}
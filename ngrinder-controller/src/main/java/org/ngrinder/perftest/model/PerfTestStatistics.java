@@ -38,12 +38,12 @@ public class PerfTestStatistics {
 	}
 
 	/**
-	 * Add a {@link PerfTest} instance.
+	 * Add a running {@link PerfTest}.
 	 * 
 	 * @param perfTest
-	 *            perftest
+	 *            running perftest
 	 */
-	public void addPerfTest(PerfTest perfTest) {
+	public void addPerfTest(RunningPerfTest perfTest) {
 		testCount++;
 		agentCount += perfTest.getAgentCount();
 	}
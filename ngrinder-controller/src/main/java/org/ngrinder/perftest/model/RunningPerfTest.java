@@ -0,0 +1,99 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.model;
+
+import java.io.Serializable;
+
+import org.ngrinder.model.PerfTest;
+import org.ngrinder.model.Status;
+import org.ngrinder.model.User;
+
+/**
+ * Snapshot of a {@link PerfTest} in the processing or testing status, which is kept in the
+ * running test registry and shared in the cluster.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class RunningPerfTest implements Serializable {
+
+	private static final long serialVersionUID = -2386045938260843164L;
+
+	private final Long id;
+	private final Status status;
+	private final String region;
+	private final int agentCount;
+	private final User createdUser;
+	private final User lastModifiedUser;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param perfTest
+	 *            perf test
+	 */
+	public RunningPerfTest(PerfTest perfTest) {
+		this.id = perfTest.getId();
+		this.status = perfTest.getStatus();
+		this.region = perfTest.getRegion();
+		this.agentCount = perfTest.getAgentCount() == null ? 0 : perfTest.getAgentCount();
+		this.createdUser = perfTest.getCreatedUser() == null ? null : perfTest.getCreatedUser().getUserBaseInfo();
+		this.lastModifiedUser = perfTest.getLastModifiedUser() == null ? createdUser : perfTest.getLastModifiedUser()
+						.getUserBaseInfo();
+	}
+
+	private RunningPerfTest(RunningPerfTest runningPerfTest, Status status) {
+		this.id = runningPerfTest.id;
+		this.status = status;
+		this.region = runningPerfTest.region;
+		this.agentCount = runningPerfTest.agentCount;
+		this.createdUser = runningPerfTest.createdUser;
+		this.lastModifiedUser = runningPerfTest.lastModifiedUser;
+	}
+
+	/**
+	 * Create the copy which has the given status.
+	 * 
+	 * @param status
+	 *            status
+	 * @return copied snapshot
+	 */
+	public RunningPerfTest withStatus(Status status) {
+		return new RunningPerfTest(this, status);
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public String getRegion() {
+		return region;
+	}
+
+	public int getAgentCount() {
+		return agentCount;
+	}
+
+	public User getCreatedUser() {
+		return createdUser;
+	}
+
+	public User getLastModifiedUser() {
+		return lastModifiedUser;
+	}
+}
@@ -13,6 +13,7 @@
  */
 package org.ngrinder.perftest.repository;
 
+import java.util.Date;
 import java.util.List;
 
 import org.ngrinder.model.PerfTest;
@@ -23,6 +24,9 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 /**
  * {@link PerfTest} Repository.
@@ -30,7 +34,8 @@ import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
  * @author junHo Yoon
  * @since 3.0
  */
-public interface PerfTestRepository extends JpaRepository<PerfTest, Long>, JpaSpecificationExecutor<PerfTest> {
+public interface PerfTestRepository extends JpaRepository<PerfTest, Long>, JpaSpecificationExecutor<PerfTest>,
+				PerfTestRepositoryCustom {
 	/**
 	 * Find all {@link PerfTest} based on spec.
 	 * 
@@ -107,4 +112,48 @@ public interface PerfTestRepository extends JpaRepository<PerfTest, Long>, JpaSp
 	 * @return perf test list
 	 */
 	List<PerfTest> findAllByStatusAndRegionOrderByScheduledTimeAsc(Status status, String region);
+
+	/**
+	 * Find the fields of all {@link PerfTest}s which the search index covers.
+	 * 
+	 * @return list of id, test name, description, comment, tag string, script name, target hosts
+	 *         and the user id of the owner
+	 */
+	@Query("select p.id, p.testName, p.description, p.testComment, p.tagString, p.scriptName, p.targetHosts, "
+					+ "u.userId from PerfTest p left join p.createdUser u")
+	List<Object[]> findAllSearchFields();
+
+	/**
+	 * Find the fields of the {@link PerfTest}s modified after the given time, which the search index
+	 * covers.
+	 * 
+	 * @param lastModifiedDate
+	 *            time after which the tests are modified
+	 * @return list of id, test name, description, comment, tag string, script name, target hosts
+	 *         and the user id of the owner
+	 */
+	@Query("select p.id, p.testName, p.description, p.testComment, p.tagString, p.scriptName, p.targetHosts, "
+					+ "u.userId from PerfTest p left join p.createdUser u "
+					+ "where p.lastModifiedDate > :lastModifiedDate")
+	List<Object[]> findAllSearchFieldsModifiedAfter(@Param("lastModifiedDate") Date lastModifiedDate);
+
+	/**
+	 * Update only the status and the progress messages of the given {@link PerfTest}.
+	 * 
+	 * @param id
+	 *            test id
+	 * @param status
+	 *            status
+	 * @param progressMessage
+	 *            accumulated progress message
+	 * @param lastProgressMessage
+	 *            last progress message
+	 * @return updated row count. 0 if the test is deleted.
+	 */
+	@Modifying
+	@Query("update PerfTest p set p.status = :status, p.progressMessage = :progressMessage, "
+					+ "p.lastProgressMessage = :lastProgressMessage where p.id = :id")
+	int updateProgress(@Param("id") Long id, @Param("status") Status status,
+					@Param("progressMessage") String progressMessage,
+					@Param("lastProgressMessage") String lastProgressMessage);
 }
@@ -0,0 +1,52 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.ngrinder.model.PerfTest;
+import org.ngrinder.perftest.model.PerfTestListItem;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Custom {@link PerfTest} queries which are not expressed by the Spring Data query methods.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public interface PerfTestRepositoryCustom {
+
+	/**
+	 * Find the {@link PerfTestListItem}s matching the given spec in the order of the created date
+	 * and the id, from the newest.
+	 * 
+	 * The page is located by the key of the item next to it rather than by the offset, so that the
+	 * database seeks the (created_date, id) index instead of skipping the rows before the page.
+	 * 
+	 * @param spec
+	 *            {@link Specification} of {@link PerfTest} query. null for all.
+	 * @param createdDate
+	 *            created date of the item next to the page. null for the first page.
+	 * @param id
+	 *            id of the item next to the page. null for the first page.
+	 * @param older
+	 *            true if the page is older than the given key, false if newer
+	 * @param limit
+	 *            max count of the items
+	 * @return {@link PerfTestListItem} list from the newest
+	 */
+	List<PerfTestListItem> findAllListItems(Specification<PerfTest> spec, Date createdDate, Long id, boolean older,
+					int limit);
+}
@@ -0,0 +1,150 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+
+import org.ngrinder.model.PerfTest;
+import org.ngrinder.model.Status;
+import org.ngrinder.model.User;
+import org.ngrinder.perftest.model.PerfTestListItem;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Implementation of {@link PerfTestRepositoryCustom}. Spring Data merges it into
+ * {@link PerfTestRepository}.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class PerfTestRepositoryImpl implements PerfTestRepositoryCustom {
+
+	private static final String[] LIST_ITEM_COLUMNS = { "id", "testName", "description", "tagString", "status",
+			"scheduledTime", "createdDate", "lastModifiedDate", "scriptName", "scriptRevision", "region",
+			"startTime", "threshold", "duration", "runCount", "tps", "meanTestTime", "errors", "vuserPerAgent",
+			"agentCount" };
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public List<PerfTestListItem> findAllListItems(Specification<PerfTest> spec, Date createdDate, Long id,
+					boolean older, int limit) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Tuple> query = cb.createTupleQuery();
+		Root<PerfTest> root = query.from(PerfTest.class);
+		Join<PerfTest, User> createdUser = root.join("createdUser", JoinType.LEFT);
+		Join<PerfTest, User> lastModifiedUser = root.join("lastModifiedUser", JoinType.LEFT);
+
+		List<Selection<?>> selections = new ArrayList<Selection<?>>();
+		for (String each : LIST_ITEM_COLUMNS) {
+			selections.add(root.get(each).alias(each));
+		}
+		selections.add(createdUser.get("userId").alias("createdUserId"));
+		selections.add(createdUser.get("userName").alias("createdUserName"));
+		selections.add(lastModifiedUser.get("userId").alias("lastModifiedUserId"));
+		selections.add(lastModifiedUser.get("userName").alias("lastModifiedUserName"));
+		query.multiselect(selections);
+
+		List<Predicate> predicates = new ArrayList<Predicate>();
+		if (spec != null) {
+			Predicate predicate = spec.toPredicate(root, query, cb);
+			if (predicate != null) {
+				predicates.add(predicate);
+			}
+		}
+		Path<Date> createdDatePath = root.get("createdDate");
+		Path<Long> idPath = root.get("id");
+		if (createdDate != null && id != null) {
+			if (older) {
+				predicates.add(cb.or(cb.lessThan(createdDatePath, createdDate),
+								cb.and(cb.equal(createdDatePath, createdDate), cb.lessThan(idPath, id))));
+			} else {
+				predicates.add(cb.or(cb.greaterThan(createdDatePath, createdDate),
+								cb.and(cb.equal(createdDatePath, createdDate), cb.greaterThan(idPath, id))));
+			}
+		}
+		query.where(predicates.toArray(new Predicate[predicates.size()]));
+		if (older) {
+			query.orderBy(cb.desc(createdDatePath), cb.desc(idPath));
+		} else {
+			query.orderBy(cb.asc(createdDatePath), cb.asc(idPath));
+		}
+
+		List<Tuple> tuples = entityManager.createQuery(query).setMaxResults(limit).getResultList();
+		List<PerfTestListItem> items = new ArrayList<PerfTestListItem>(tuples.size());
+		for (Tuple each : tuples) {
+			items.add(toListItem(each));
+		}
+		if (!older) {
+			// The newer page is read upward from the key.
+			Collections.reverse(items);
+		}
+		return items;
+	}
+
+	private PerfTestListItem toListItem(Tuple tuple) {
+		PerfTestListItem item = new PerfTestListItem();
+		item.setId(tuple.get("id", Long.class));
+		item.setTestName(tuple.get("testName", String.class));
+		item.setDescription(tuple.get("description", String.class));
+		item.setTagString(tuple.get("tagString", String.class));
+		item.setStatus(tuple.get("status", Status.class));
+		item.setScheduledTime(tuple.get("scheduledTime", Date.class));
+		item.setCreatedDate(tuple.get("createdDate", Date.class));
+		item.setLastModifiedDate(tuple.get("lastModifiedDate", Date.class));
+		item.setScriptName(tuple.get("scriptName", String.class));
+		item.setScriptRevision(tuple.get("scriptRevision", Long.class));
+		item.setRegion(tuple.get("region", String.class));
+		item.setStartTime(tuple.get("startTime", Date.class));
+		item.setThreshold(tuple.get("threshold", String.class));
+		item.setDuration(tuple.get("duration", Long.class));
+		item.setRunCount(tuple.get("runCount", Integer.class));
+		item.setTps(tuple.get("tps", Double.class));
+		item.setMeanTestTime(tuple.get("meanTestTime", Double.class));
+		item.setErrors(tuple.get("errors", Integer.class));
+		item.setVuserPerAgent(tuple.get("vuserPerAgent", Integer.class));
+		item.setAgentCount(tuple.get("agentCount", Integer.class));
+		item.setCreatedUser(toUser(tuple.get("createdUserId", String.class),
+						tuple.get("createdUserName", String.class)));
+		item.setLastModifiedUser(toUser(tuple.get("lastModifiedUserId", String.class),
+						tuple.get("lastModifiedUserName", String.class)));
+		return item;
+	}
+
+	private User toUser(String userId, String userName) {
+		if (userId == null) {
+			return null;
+		}
+		User user = new User();
+		user.setUserId(userId);
+		user.setUserName(userName);
+		return user;
+	}
+}
@@ -0,0 +1,270 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.ngrinder.monitor.controller.model.SystemDataModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Built-in process and thread policy which fits the process count to the agent hardware.
+ * 
+ * The process count is limited by the core count and the free memory of the agent. When the
+ * calibration has the best process count for the class of the agent and the vuser band of the test,
+ * it is used instead of the core count. The calibration is collected from the tests which are run on
+ * a single agent, so that running the same script with different splits on an agent is enough to
+ * calibrate its class. The best split is the one with the fewest processes which reaches the
+ * highest tps of the band, because more processes than that only add the overhead once the agent
+ * CPU is saturated.
+ * 
+ * The policy is provided as javascript functions so that the policy script in the ngrinder home
+ * can use it. See {@link #SCRIPT}.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class AdaptiveProcessAndThreadPolicy {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveProcessAndThreadPolicy.class);
+
+	/** A process is not created for less threads than this. */
+	static final int MIN_THREAD_COUNT_PER_PROCESS = 10;
+
+	/** The max process count when no agent data is available. */
+	static final int DEFAULT_MAX_PROCESS_COUNT = 2;
+
+	/** The variable which the max process count of an agent is bound to. */
+	public static final String VAR_MAX_PROCESS_COUNT = "maxProcessCount";
+
+	/**
+	 * The variable which the max process count of each vuser band is bound to. It's a javascript
+	 * object keyed by the band. {@link #VAR_MAX_PROCESS_COUNT} is used for the missing bands.
+	 */
+	public static final String VAR_MAX_PROCESS_COUNTS = "maxProcessCounts";
+
+	/**
+	 * Functions which are evaluated ahead of the policy script. The policy script can call
+	 * getAdaptiveProcessCount(total) and getAdaptiveThreadCount(total).
+	 */
+	public static final String SCRIPT = "var " + VAR_MAX_PROCESS_COUNTS + " = " + VAR_MAX_PROCESS_COUNTS
+					+ " || {};\n"
+					+ "\n"
+					+ "function getMaxProcessCount(total) {\n"
+					+ "	var band = 1;\n"
+					+ "	while (band * 2 <= total) {\n"
+					+ "		band = band * 2;\n"
+					+ "	}\n"
+					+ "	var count = " + VAR_MAX_PROCESS_COUNTS + "[band];\n"
+					+ "	return count === undefined ? " + VAR_MAX_PROCESS_COUNT + " : count;\n"
+					+ "}\n"
+					+ "\n"
+					+ "function getAdaptiveProcessCount(total) {\n"
+					+ "	if (total < 2) {\n"
+					+ "		return 1;\n"
+					+ "	}\n"
+					+ "	return Math.max(1, Math.min(getMaxProcessCount(total), Math.ceil(total / "
+					+ MIN_THREAD_COUNT_PER_PROCESS + ")));\n"
+					+ "}\n"
+					+ "\n"
+					+ "function getAdaptiveThreadCount(total) {\n"
+					+ "	return Math.max(1, Math.ceil(total / getAdaptiveProcessCount(total)));\n"
+					+ "}\n";
+
+	/** The free memory in KB which a worker process is expected to use. */
+	private static final long PROCESS_MEMORY_KB = 256 * 1024;
+
+	private static final double CALIBRATION_SMOOTHING = 0.3;
+
+	/** The split whose tps is within this ratio of the highest tps is regarded as saturated. */
+	private static final double SATURATION_TOLERANCE = 0.05;
+
+	private final File calibrationFile;
+
+	private final Properties calibration = new Properties();
+
+	private boolean dirty = false;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param calibrationFile
+	 *            file which keeps the calibration. It's created when the first calibration is
+	 *            flushed.
+	 */
+	public AdaptiveProcessAndThreadPolicy(File calibrationFile) {
+		this.calibrationFile = calibrationFile;
+		if (calibrationFile.exists()) {
+			InputStream in = null;
+			try {
+				in = new FileInputStream(calibrationFile);
+				calibration.load(in);
+			} catch (IOException e) {
+				LOGGER.error("Error while loading {} : {}", calibrationFile, e.getMessage());
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+	}
+
+	/**
+	 * Get the class of the agent which the calibration is kept by.
+	 * 
+	 * @param systemDataModel
+	 *            system data of the agent
+	 * @return agent class such as 4c_8g. null if the agent did not report its core count.
+	 */
+	public static String getAgentClass(SystemDataModel systemDataModel) {
+		if (systemDataModel == null || systemDataModel.getCpuCount() <= 0) {
+			return null;
+		}
+		long memoryGB = Math.max(1, Math.round(systemDataModel.getTotalMemory() / (1024D * 1024D)));
+		return systemDataModel.getCpuCount() + "c_" + Long.highestOneBit(memoryGB) + "g";
+	}
+
+	/**
+	 * Get the vuser band which the calibration is kept by. The tests whose vuser counts are in the
+	 * same power of two share the band.
+	 * 
+	 * @param vuser
+	 *            vuser count per agent
+	 * @return vuser band
+	 */
+	public static int getVuserBand(int vuser) {
+		return Integer.highestOneBit(Math.max(1, vuser));
+	}
+
+	/**
+	 * Get the max process count of the given agent.
+	 * 
+	 * @param systemDataModel
+	 *            system data of the agent
+	 * @param vuser
+	 *            vuser count per agent
+	 * @return max process count
+	 */
+	public int getMaxProcessCount(SystemDataModel systemDataModel, int vuser) {
+		String agentClass = getAgentClass(systemDataModel);
+		if (agentClass == null) {
+			return DEFAULT_MAX_PROCESS_COUNT;
+		}
+		Integer best = getBestProcessCount(agentClass, vuser);
+		int processCount = best == null ? systemDataModel.getCpuCount() : best;
+		if (systemDataModel.getTotalMemory() > 0) {
+			processCount = (int) Math.min(processCount, systemDataModel.getFreeMemory() / PROCESS_MEMORY_KB);
+		}
+		return Math.max(1, processCount);
+	}
+
+	/**
+	 * Get the fewest process count which reached the highest tps of the vuser band on the given
+	 * agent class.
+	 * 
+	 * @param agentClass
+	 *            agent class
+	 * @param vuser
+	 *            vuser count per agent
+	 * @return best process count. null if no calibration is recorded.
+	 */
+	public synchronized Integer getBestProcessCount(String agentClass, int vuser) {
+		String prefix = agentClass + "." + getVuserBand(vuser) + ".";
+		Map<Integer, Double> tpsMap = new HashMap<Integer, Double>();
+		double highestTps = 0;
+		for (String each : calibration.stringPropertyNames()) {
+			if (!each.startsWith(prefix)) {
+				continue;
+			}
+			int processCount = NumberUtils.toInt(each.substring(prefix.length()), 0);
+			double tps = NumberUtils.toDouble(calibration.getProperty(each), 0);
+			if (processCount > 0 && tps > 0) {
+				tpsMap.put(processCount, tps);
+				highestTps = Math.max(highestTps, tps);
+			}
+		}
+		Integer best = null;
+		for (Map.Entry<Integer, Double> each : tpsMap.entrySet()) {
+			if (each.getValue() >= highestTps * (1 - SATURATION_TOLERANCE)
+							&& (best == null || each.getKey() < best)) {
+				best = each.getKey();
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Record the result of a test run on a single agent. It's written into the calibration file
+	 * by {@link #flush()}.
+	 * 
+	 * @param systemDataModel
+	 *            system data of the agent
+	 * @param processCount
+	 *            process count of the test
+	 * @param threadCount
+	 *            thread count of the test
+	 * @param tps
+	 *            tps of the test
+	 */
+	public synchronized void record(SystemDataModel systemDataModel, int processCount, int threadCount, double tps) {
+		String agentClass = getAgentClass(systemDataModel);
+		if (agentClass == null || processCount <= 0 || threadCount <= 0 || tps <= 0) {
+			return;
+		}
+		String key = agentClass + "." + getVuserBand(processCount * threadCount) + "." + processCount;
+		String previous = calibration.getProperty(key);
+		if (previous != null) {
+			tps = NumberUtils.toDouble(previous, tps) * (1 - CALIBRATION_SMOOTHING) + tps * CALIBRATION_SMOOTHING;
+		}
+		calibration.setProperty(key, String.valueOf(tps));
+		dirty = true;
+	}
+
+	/**
+	 * Write the calibration recorded since the last flush into the calibration file.
+	 */
+	public void flush() {
+		Properties snapshot;
+		synchronized (this) {
+			if (!dirty) {
+				return;
+			}
+			snapshot = (Properties) calibration.clone();
+			dirty = false;
+		}
+		synchronized (calibrationFile) {
+			OutputStream out = null;
+			try {
+				out = new FileOutputStream(calibrationFile);
+				snapshot.store(out, "tps of each agent class, vuser band and process count");
+			} catch (IOException e) {
+				LOGGER.error("Error while saving {} : {}", calibrationFile, e.getMessage());
+				synchronized (this) {
+					dirty = true;
+				}
+			} finally {
+				IOUtils.closeQuietly(out);
+			}
+		}
+	}
+}
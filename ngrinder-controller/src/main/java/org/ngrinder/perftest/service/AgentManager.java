@@ -15,10 +15,15 @@ package org.ngrinder.perftest.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
@@ -29,11 +34,12 @@ import net.grinder.SingleConsole;
 import net.grinder.common.GrinderProperties;
 import net.grinder.common.processidentity.AgentIdentity;
 import net.grinder.communication.AgentControllerCommunicationDefauts;
+import net.grinder.console.communication.AgentStatusChangeListener;
 import net.grinder.console.communication.LogArrivedListener;
 import net.grinder.engine.controller.AgentControllerIdentityImplementation;
 import net.grinder.message.console.AgentControllerState;
 import net.grinder.messages.console.AgentAddress;
-import net.grinder.util.thread.ExecutorFactory;
+import net.grinder.scriptengine.arrival.ArrivalRateProfile;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.ArrayUtils;
@@ -41,7 +47,6 @@ import org.apache.commons.lang.StringUtils;
 import org.ngrinder.agent.model.AgentInfo;
 import org.ngrinder.agent.repository.AgentManagerRepository;
 import org.ngrinder.common.constant.NGrinderConstants;
-import org.ngrinder.common.exception.NGrinderRuntimeException;
 import org.ngrinder.infra.config.Config;
 import org.ngrinder.model.User;
 import org.ngrinder.monitor.controller.model.SystemDataModel;
@@ -62,7 +67,6 @@ import org.springframework.stereotype.Component;
 public class AgentManager implements NGrinderConstants {
 	public static final Logger LOGGER = LoggerFactory.getLogger(AgentManager.class);
 	private AgentControllerServerDaemon agentControllerServer;
-	private static final int NUMBER_OF_THREAD = 3;
 	private static final int AGENT_RUN_TIMEOUT_SECOND = 10;
 
 	@Autowired
@@ -71,6 +75,13 @@ public class AgentManager implements NGrinderConstants {
 	@Autowired
 	private AgentManagerRepository agentManagerRepository;
 
+	private final LoadAwareAgentSelector agentSelector = new LoadAwareAgentSelector();
+
+	/** Agents reserved by the starts in progress. */
+	private final Set<AgentIdentity> startingAgents = new HashSet<AgentIdentity>();
+
+	private final Set<AgentStartTracker> startTrackers = new CopyOnWriteArraySet<AgentStartTracker>();
+
 	/**
 	 * Initialize agent manager.
 	 */
@@ -79,6 +90,20 @@ public class AgentManager implements NGrinderConstants {
 		agentControllerServer = new AgentControllerServerDaemon(
 						AgentControllerCommunicationDefauts.DEFAULT_AGENT_CONTROLLER_SERVER_PORT);
 		agentControllerServer.start();
+		agentControllerServer.addAgentStatusChangeListener(new AgentStatusChangeListener() {
+			@Override
+			public void agentStatusChanged(Set<AgentIdentity> changedAgents, Set<AgentIdentity> removedAgents) {
+				for (AgentStartTracker tracker : startTrackers) {
+					for (AgentIdentity each : changedAgents) {
+						tracker.update(each, agentControllerServer.getAgentState(each),
+										agentControllerServer.getAgentConnectingPort(each));
+					}
+					for (AgentIdentity each : removedAgents) {
+						tracker.remove(each);
+					}
+				}
+			}
+		});
 		agentControllerServer.addLogArrivedListener(new LogArrivedListener() {
 			@Override
 			public void logArrived(String testId, AgentAddress agentAddress, byte[] logs) {
@@ -100,6 +125,16 @@ public class AgentManager implements NGrinderConstants {
 		});
 	}
 
+	/**
+	 * Add the listener which is notified with the agents whose status is changed.
+	 * 
+	 * @param listener
+	 *            listener
+	 */
+	public void addAgentStatusChangeListener(AgentStatusChangeListener listener) {
+		agentControllerServer.addAgentStatusChangeListener(listener);
+	}
+
 	/**
 	 * Shutdown agent controller server.
 	 */
@@ -159,6 +194,25 @@ public class AgentManager implements NGrinderConstants {
 		return config.getSystemProperties().getPropertyInt("agent.max.vuser", NGrinderConstants.MAX_VUSER_PER_AGENT);
 	}
 
+	/**
+	 * Get the max non-blocking vuser per agent.
+	 * 
+	 * @return max non-blocking vuser per agent
+	 */
+	public int getMaxAsyncVuserPerAgent() {
+		return config.getSystemProperties().getPropertyInt("agent.max.asyncvuser",
+						NGrinderConstants.MAX_ASYNC_VUSER_PER_AGENT);
+	}
+
+	/**
+	 * Check if the agents are selected and loaded by their capacity.
+	 * 
+	 * @return true if load aware selection is enabled
+	 */
+	public boolean isLoadAwareSelection() {
+		return config.getSystemProperties().getPropertyBoolean("agent.selection.loadaware", true);
+	}
+
 	/**
 	 * Get the max run count per thread.
 	 * 
@@ -350,6 +404,12 @@ public class AgentManager implements NGrinderConstants {
 	/**
 	 * Assign the agents on the given console.
 	 * 
+	 * The start messages are sent to all agents at once and this method returns as soon as every
+	 * agent controller acknowledges that its agent is connecting to the console. It fails as soon as
+	 * any agent is lost, or when not all are acknowledged in {@value #AGENT_RUN_TIMEOUT_SECOND}
+	 * seconds. The selected agents are reserved while being started so that a concurrent start does
+	 * not select them again.
+	 * 
 	 * @param user
 	 *            user
 	 * @param singleConsole
@@ -359,37 +419,91 @@ public class AgentManager implements NGrinderConstants {
 	 * @param agentCount
 	 *            the count of agents.
 	 */
-	public synchronized void runAgent(User user, final SingleConsole singleConsole,
-					final GrinderProperties grinderProperties, final Integer agentCount) {
-		final Set<AgentIdentity> allFreeAgents = getAllFreeApprovedAgentsForUser(user);
-		final Set<AgentIdentity> neccessaryAgents = selectAgent(user, allFreeAgents, agentCount);
-		ExecutorService execService = null;
+	public void runAgent(User user, final SingleConsole singleConsole, final GrinderProperties grinderProperties,
+					final Integer agentCount) {
+		final Set<AgentIdentity> neccessaryAgents;
+		synchronized (startingAgents) {
+			final Set<AgentIdentity> allFreeAgents = getAllFreeApprovedAgentsForUser(user);
+			allFreeAgents.removeAll(startingAgents);
+			neccessaryAgents = selectAgent(user, allFreeAgents, agentCount);
+			startingAgents.addAll(neccessaryAgents);
+		}
+		AgentStartTracker tracker = new AgentStartTracker(singleConsole.getAgentConnectionKey(), neccessaryAgents);
+		startTrackers.add(tracker);
 		try {
-			// Make the agents connect to console.
-			grinderProperties.setInt(GrinderProperties.CONSOLE_PORT, singleConsole.getConsolePort());
-			grinderProperties.setProperty(GrinderProperties.CONSOLE_HOST, singleConsole.getConsoleHost());
-			execService = ExecutorFactory.createThreadPool("agentStarter", NUMBER_OF_THREAD);
-			for (final AgentIdentity eachAgentIdentity : neccessaryAgents) {
-				execService.submit(new Runnable() {
-					@Override
-					public void run() {
-						agentControllerServer.startAgent(grinderProperties, eachAgentIdentity);
-					}
-				});
+			final Map<AgentIdentity, GrinderProperties> agentProperties = getAgentProperties(neccessaryAgents,
+							grinderProperties);
+			for (AgentIdentity eachAgentIdentity : neccessaryAgents) {
+				// Make the agents connect to console.
+				GrinderProperties eachProperties = agentProperties.get(eachAgentIdentity);
+				singleConsole.setAgentConnectionProperties(eachProperties);
+				agentControllerServer.startAgent(eachProperties, eachAgentIdentity);
 			}
-			execService.awaitTermination(AGENT_RUN_TIMEOUT_SECOND, TimeUnit.SECONDS);
-		} catch (InterruptedException e) {
-			throw new NGrinderRuntimeException("Error while running agent. Starting agent is interrupted.", e);
+			tracker.await(TimeUnit.SECONDS.toMillis(AGENT_RUN_TIMEOUT_SECOND));
 		} finally {
-			if (execService != null) {
-				execService.shutdown();
+			startTrackers.remove(tracker);
+			synchronized (startingAgents) {
+				startingAgents.removeAll(neccessaryAgents);
+			}
+		}
+	}
+
+	/**
+	 * Get the grinder properties of each agent. When the load aware selection is enabled, the
+	 * processes of the test are split among the agents by their capacity. The arrival rate profile
+	 * of the test is split among the agents by their share of the total processes.
+	 * 
+	 * @param agents
+	 *            selected agents
+	 * @param grinderProperties
+	 *            grinder properties of the test
+	 * @return grinder properties of each agent
+	 */
+	Map<AgentIdentity, GrinderProperties> getAgentProperties(Set<AgentIdentity> agents,
+					GrinderProperties grinderProperties) {
+		Map<AgentIdentity, GrinderProperties> result = new HashMap<AgentIdentity, GrinderProperties>();
+		int processes = grinderProperties.getInt(GRINDER_PROP_PROCESSES, 1);
+		Map<AgentIdentity, Integer> distribution = null;
+		if (isLoadAwareSelection() && agents.size() > 1 && processes > 1) {
+			int threads = Math.max(1, grinderProperties.getInt(GRINDER_PROP_THREAD, 1));
+			distribution = agentSelector.distributeProcesses(agents, getSystemDataModels(agents), processes,
+							getMaxVuserPerAgent() / threads);
+			LOGGER.info("processes are distributed as {}", distribution);
+		}
+		String profile = grinderProperties.getProperty(NGRINDER_PROP_ARRIVAL_RATE_PROFILE);
+		ArrivalRateProfile arrivalRateProfile = StringUtils.isBlank(profile) ? null : ArrivalRateProfile.parse(profile);
+		int totalProcesses = Math.max(1, agents.size() * processes);
+		for (AgentIdentity each : agents) {
+			int agentProcesses = distribution == null ? processes : distribution.get(each);
+			GrinderProperties agentProperties = grinderProperties;
+			if (agentProcesses != processes || arrivalRateProfile != null) {
+				agentProperties = (GrinderProperties) grinderProperties.clone();
+				agentProperties.setInt(GRINDER_PROP_PROCESSES, agentProcesses);
 			}
+			if (arrivalRateProfile != null) {
+				agentProperties.setProperty(NGRINDER_PROP_ARRIVAL_RATE_PROFILE,
+								arrivalRateProfile.scale(((double) agentProcesses) / totalProcesses).toString());
+			}
+			result.put(each, agentProperties);
 		}
+		return result;
+	}
+
+	private Map<AgentIdentity, SystemDataModel> getSystemDataModels(Collection<AgentIdentity> agents) {
+		Map<AgentIdentity, SystemDataModel> result = new HashMap<AgentIdentity, SystemDataModel>();
+		for (AgentIdentity each : agents) {
+			SystemDataModel systemDataModel = getSystemDataModel(each);
+			if (systemDataModel != null) {
+				result.put(each, systemDataModel);
+			}
+		}
+		return result;
 	}
 
 	/**
 	 * Select agent. This method return agent set which is belong to the given user first and then
-	 * share agent set.
+	 * share agent set. When the load aware selection is enabled, the agents with more capacity are
+	 * selected first in each set.
 	 * 
 	 * @param user
 	 *            user
@@ -400,25 +514,32 @@ public class AgentManager implements NGrinderConstants {
 	 * @return selected agent.
 	 */
 	public Set<AgentIdentity> selectAgent(User user, Set<AgentIdentity> allFreeAgents, int agentCount) {
-		Set<AgentIdentity> userAgent = new HashSet<AgentIdentity>();
+		List<AgentIdentity> ownedAgents = new ArrayList<AgentIdentity>();
+		List<AgentIdentity> sharedAgents = new ArrayList<AgentIdentity>();
 		for (AgentIdentity each : allFreeAgents) {
 			String region = ((AgentControllerIdentityImplementation) each).getRegion();
 			if (StringUtils.endsWith(region, "owned_" + user.getUserId())) {
-				userAgent.add(each);
-				if (userAgent.size() == agentCount) {
-					return userAgent;
-				}
+				ownedAgents.add(each);
+			} else if (!StringUtils.contains(region, "owned_")) {
+				sharedAgents.add(each);
 			}
 		}
-
-		for (AgentIdentity each : allFreeAgents) {
-			String region = ((AgentControllerIdentityImplementation) each).getRegion();
-			if (!StringUtils.contains(region, "owned_")) {
-				userAgent.add(each);
-				if (userAgent.size() == agentCount) {
-					return userAgent;
-				}
+		if (isLoadAwareSelection()) {
+			ownedAgents = agentSelector.rank(ownedAgents, getSystemDataModels(ownedAgents), 1);
+			sharedAgents = agentSelector.rank(sharedAgents, getSystemDataModels(sharedAgents), 1);
+		}
+		Set<AgentIdentity> userAgent = new LinkedHashSet<AgentIdentity>();
+		for (AgentIdentity each : ownedAgents) {
+			if (userAgent.size() == agentCount) {
+				return userAgent;
+			}
+			userAgent.add(each);
+		}
+		for (AgentIdentity each : sharedAgents) {
+			if (userAgent.size() == agentCount) {
+				return userAgent;
 			}
+			userAgent.add(each);
 		}
 		return userAgent;
 	}
@@ -434,15 +555,34 @@ public class AgentManager implements NGrinderConstants {
 	}
 
 	/**
-	 * Stop agents which uses the given console port in force.
+	 * Check if any agent which uses the given console is still running.
+	 * 
+	 * @param singleConsole
+	 *            console
+	 * @return true if running
+	 */
+	public boolean hasRunningAgent(SingleConsole singleConsole) {
+		int consoleKey = singleConsole.getAgentConnectionKey();
+		for (AgentIdentity each : agentControllerServer.getAllAvailableAgents()) {
+			if (agentControllerServer.getAgentConnectingPort(each) == consoleKey
+							&& agentControllerServer.getAgentState(each) == AgentControllerState.BUSY) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stop agents which uses the given console in force.
 	 * 
-	 * @param consolePort
-	 *            console port.
+	 * @param singleConsole
+	 *            console
 	 */
-	public void stopAgent(int consolePort) {
+	public void stopAgent(SingleConsole singleConsole) {
+		int consoleKey = singleConsole.getAgentConnectionKey();
 		for (AgentIdentity each : agentControllerServer.getAllAvailableAgents()) {
 			int agentConnectingPort = agentControllerServer.getAgentConnectingPort(each);
-			if (agentConnectingPort == consolePort
+			if (agentConnectingPort == consoleKey
 							&& agentControllerServer.getAgentState(each) == AgentControllerState.BUSY) {
 				agentControllerServer.stopAgent(each);
 			}
@@ -0,0 +1,139 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.message.console.AgentControllerState;
+
+import org.ngrinder.common.exception.NGrinderRuntimeException;
+
+/**
+ * Acknowledgement tracker of the agents being started on a console.
+ * 
+ * An agent controller reports its state as soon as it accepts the start message, and the state
+ * carries the console port it's connecting to, or the route id of the console behind the
+ * multiplexed console server. An agent is acknowledged when it's reported busy on the console of
+ * the test. The start fails as soon as any agent goes away or stops, without
+ * waiting for the others.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+class AgentStartTracker {
+
+	private final int consoleKey;
+
+	private final Set<AgentIdentity> pendingAgents;
+
+	private final Map<AgentIdentity, String> failedAgents = new LinkedHashMap<AgentIdentity, String>();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param consoleKey
+	 *            port or route id of the console the agents connect to
+	 * @param agents
+	 *            agents being started
+	 */
+	AgentStartTracker(int consoleKey, Set<AgentIdentity> agents) {
+		this.consoleKey = consoleKey;
+		this.pendingAgents = new HashSet<AgentIdentity>(agents);
+	}
+
+	/**
+	 * Apply the reported state of the given agent.
+	 * 
+	 * @param agent
+	 *            agent identity
+	 * @param state
+	 *            agent controller state
+	 * @param connectingPort
+	 *            console port or route id the agent is connecting to
+	 */
+	synchronized void update(AgentIdentity agent, AgentControllerState state, int connectingPort) {
+		if (!pendingAgents.contains(agent)) {
+			return;
+		}
+		if (state == AgentControllerState.BUSY && connectingPort == consoleKey) {
+			pendingAgents.remove(agent);
+		} else if (state == AgentControllerState.FINISHED || state == AgentControllerState.INACTIVE
+						|| state == AgentControllerState.WRONG_REGION) {
+			fail(agent, state.name());
+		} else {
+			return;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Mark the given agent as disconnected from the controller.
+	 * 
+	 * @param agent
+	 *            agent identity
+	 */
+	synchronized void remove(AgentIdentity agent) {
+		if (pendingAgents.contains(agent)) {
+			fail(agent, "DISCONNECTED");
+			notifyAll();
+		}
+	}
+
+	private void fail(AgentIdentity agent, String reason) {
+		pendingAgents.remove(agent);
+		failedAgents.put(agent, reason);
+	}
+
+	/**
+	 * Wait until all agents are acknowledged.
+	 * 
+	 * @param timeout
+	 *            timeout in millisecond
+	 * @throws NGrinderRuntimeException
+	 *             if any agent fails or is not acknowledged in time
+	 */
+	synchronized void await(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		long remaining = timeout;
+		while (failedAgents.isEmpty() && !pendingAgents.isEmpty() && remaining > 0) {
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				throw new NGrinderRuntimeException("Error while running agent. Starting agent is interrupted.", e);
+			}
+			remaining = deadline - System.currentTimeMillis();
+		}
+		if (!failedAgents.isEmpty()) {
+			List<String> reasons = new ArrayList<String>();
+			for (Entry<AgentIdentity, String> each : failedAgents.entrySet()) {
+				reasons.add(each.getKey().getName() + " (" + each.getValue() + ")");
+			}
+			throw new NGrinderRuntimeException("Failed to start agents " + reasons);
+		}
+		if (!pendingAgents.isEmpty()) {
+			List<String> names = new ArrayList<String>();
+			for (AgentIdentity each : pendingAgents) {
+				names.add(each.getName());
+			}
+			throw new NGrinderRuntimeException("Agents " + names + " are not started in " + timeout + " ms");
+		}
+	}
+}
@@ -42,4 +42,23 @@ public class ClusteredPerfTestService extends PerfTestService {
 		List<PerfTest> usersFirstPerfTests = filterCurrentlyRunningTestUsersTest(readyPerfTests);
 		return usersFirstPerfTests.isEmpty() ? null : readyPerfTests.get(0);
 	}
+
+	/**
+	 * Get all READY {@link PerfTest}s of the current region in the order of the scheduled time.
+	 * 
+	 * @return found {@link PerfTest} list
+	 */
+	@Transactional
+	public List<PerfTest> getReadyPerfTests() {
+		return perfTestRepository.findAllByStatusAndRegionOrderByScheduledTimeAsc(Status.READY, config.getRegion());
+	}
+
+	/**
+	 * Get currently running {@link PerfTest} list in the current region.
+	 * 
+	 * @return running test list
+	 */
+	public List<PerfTest> getCurrentlyRunningTestInRegion() {
+		return getRunningPerfTests(config.getRegion());
+	}
 }
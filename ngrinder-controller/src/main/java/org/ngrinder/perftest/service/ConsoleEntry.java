@@ -15,7 +15,8 @@ package org.ngrinder.perftest.service;
 
 /**
  * Console information which contains console's characteristics.<br/>
- * {@link #port} is the most important attribute of this class.
+ * {@link #port} is the most important attribute of this class. The consoles behind the multiplexed
+ * console server share the port and are told apart by {@link #route}.
  * 
  * @author JunHo Yoon
  * @since 3.0
@@ -28,6 +29,12 @@ public class ConsoleEntry {
 	 */
 	private Integer port;
 
+	/**
+	 * Route id of the console in the multiplexed console server. 0 if the console is bound on the
+	 * port.
+	 */
+	private int route;
+
 	/**
 	 * Constructor.
 	 * 
@@ -35,7 +42,20 @@ public class ConsoleEntry {
 	 *            port
 	 */
 	public ConsoleEntry(Integer port) {
+		this(port, 0);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param port
+	 *            port of the multiplexed console server
+	 * @param route
+	 *            route id of the console
+	 */
+	public ConsoleEntry(Integer port, int route) {
 		this.port = port;
+		this.route = route;
 	}
 
 	public Integer getPort() {
@@ -46,6 +66,14 @@ public class ConsoleEntry {
 		this.port = port;
 	}
 
+	public int getRoute() {
+		return route;
+	}
+
+	public void setRoute(int route) {
+		this.route = route;
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#hashCode()
 	 */
@@ -54,6 +82,7 @@ public class ConsoleEntry {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((port == null) ? 0 : port.hashCode());
+		result = prime * result + route;
 		return result;
 	}
 
@@ -79,6 +108,11 @@ public class ConsoleEntry {
 		} else if (!port.equals(other.port)) {
 			return false;
 		}
-		return true;
+		return route == other.route;
+	}
+
+	@Override
+	public String toString() {
+		return route == 0 ? "port " + port : "route " + route + " on port " + port;
 	}
 }
@@ -17,26 +17,38 @@ import static org.ngrinder.common.constant.NGrinderConstants.NGRINDER_PROP_CONSO
 import static org.ngrinder.common.util.NoOp.noOp;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import net.grinder.SingleConsole;
+import net.grinder.communication.CommunicationException;
+import net.grinder.console.communication.ConsoleCommunicationSetting;
+import net.grinder.console.communication.MultiplexedConsoleServer;
 import net.grinder.console.model.ConsoleProperties;
+import net.grinder.util.ConsolePropertiesFactory;
 
 import org.ngrinder.common.constant.NGrinderConstants;
 import org.ngrinder.common.exception.NGrinderRuntimeException;
+import org.ngrinder.common.util.PropertiesWrapper;
 import org.ngrinder.infra.config.Config;
+import org.ngrinder.model.PerfTest;
 import org.ngrinder.perftest.model.NullSingleConsole;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 /**
@@ -45,7 +57,13 @@ import org.springframework.stereotype.Component;
  * console itself is not pooled but the {@link ConsoleEntry} which contains console information are
  * pooled internally. Whenever a user requires a new console, it gets the one {@link ConsoleEntry}
  * from the pool and creates new console with the {@link ConsoleEntry}. Currently using consoles are
- * kept in {@link #consoleInUse} member variable.
+ * kept in {@link #consoleInUse} member variable.<br/>
+ * If ngrinder.console.multiplexport is set, the consoles listen on the loopback ports picked when
+ * they are created and agents connect to them through one {@link MultiplexedConsoleServer} on the
+ * given port. Each entry then carries the route id by which the server tells the consoles apart.<br/>
+ * Up to ngrinder.console.prewarm entries keep an idle console which is already created, so that a
+ * test does not wait for the console creation. As a console can not be reused after it's shut
+ * down, a new idle console is prepared for the entry while the used one is returned back.
  * 
  * @author JunHo Yoon
  * @since 3.0
@@ -53,9 +71,17 @@ import org.springframework.stereotype.Component;
 @Component
 public class ConsoleManager {
 	private static final int MAX_PORT_NUMBER = 65000;
+	private static final String LOCAL_HOST = "127.0.0.1";
 	private static final Logger LOG = LoggerFactory.getLogger(ConsoleManager.class);
 	private volatile ArrayBlockingQueue<ConsoleEntry> consoleQueue;
 	private volatile List<SingleConsole> consoleInUse = Collections.synchronizedList(new ArrayList<SingleConsole>());
+	private MultiplexedConsoleServer multiplexedConsoleServer;
+	private final Map<ConsoleEntry, SingleConsole> idleConsoles = new ConcurrentHashMap<ConsoleEntry, SingleConsole>();
+	private final Map<Long, SingleConsole> consoleByTest = new ConcurrentHashMap<Long, SingleConsole>();
+	private final AtomicLong poolHitCount = new AtomicLong();
+	private final AtomicLong poolMissCount = new AtomicLong();
+	private final AtomicLong resetCount = new AtomicLong();
+	private final AtomicLong resetTimeSum = new AtomicLong();
 
 	@Autowired
 	private Config config;
@@ -63,6 +89,13 @@ public class ConsoleManager {
 	@Autowired
 	private AgentManager agentManager;
 
+	@Autowired
+	private PerfTestDispatcher perfTestDispatcher;
+
+	@Autowired
+	@Qualifier("consoleExecutor")
+	private Executor consoleExecutor;
+
 	/**
 	 * Prepare console queue.
 	 */
@@ -70,9 +103,135 @@ public class ConsoleManager {
 	public void init() {
 		int consoleSize = getConsoleSize();
 		consoleQueue = new ArrayBlockingQueue<ConsoleEntry>(consoleSize);
+		int multiplexPort = getConsoleMultiplexPort();
+		if (multiplexPort != 0) {
+			multiplexedConsoleServer = new MultiplexedConsoleServer("", multiplexPort);
+			try {
+				multiplexedConsoleServer.start();
+			} catch (CommunicationException e) {
+				throw new NGrinderRuntimeException("Failed to start the multiplexed console server", e);
+			}
+			for (int i = 1; i <= consoleSize; i++) {
+				// The loopback port of the console is picked when the console is created.
+				addConsoleEntry(new ConsoleEntry(multiplexedConsoleServer.getPort(), i));
+			}
+			return;
+		}
 		for (int each : getAvailablePorts(consoleSize, getConsolePortBase())) {
-			consoleQueue.add(new ConsoleEntry(each));
+			addConsoleEntry(new ConsoleEntry(each));
+		}
+	}
+
+	private void addConsoleEntry(ConsoleEntry consoleEntry) {
+		publishConsoleEntry(consoleEntry, createIdleConsole(consoleEntry));
+	}
+
+	/**
+	 * Create the idle console of the given entry if less than {@link #getConsolePrewarmSize()}
+	 * consoles are idle. It should be called only while the entry is not in the queue. It's not
+	 * called in the lock which {@link #getAvailableConsole(String, ConsoleProperties)} takes because
+	 * starting a console takes a while.
+	 * 
+	 * @param consoleEntry
+	 *            console entry
+	 * @return created console. null if it's not needed or failed.
+	 */
+	private SingleConsole createIdleConsole(ConsoleEntry consoleEntry) {
+		if (idleConsoles.size() >= getConsolePrewarmSize() || idleConsoles.containsKey(consoleEntry)) {
+			return null;
+		}
+		try {
+			return createConsole(consoleEntry, ConsolePropertiesFactory.createEmptyConsoleProperties());
+		} catch (Exception e) {
+			// The console will be created when it's used.
+			LOG.error("Failed to prepare the idle console for {} : {}", consoleEntry, e.getMessage());
+			LOG.debug("Details : ", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Put the given entry into the queue with its idle console. The idle console is shut down if
+	 * enough consoles became idle in the meantime. It should be called in the lock on this manager
+	 * once the manager is initialized.
+	 * 
+	 * @param consoleEntry
+	 *            console entry
+	 * @param idleConsole
+	 *            idle console created by {@link #createIdleConsole(ConsoleEntry)}. null if none.
+	 */
+	private void publishConsoleEntry(ConsoleEntry consoleEntry, SingleConsole idleConsole) {
+		if (idleConsole != null) {
+			if (idleConsoles.size() < getConsolePrewarmSize() && !idleConsoles.containsKey(consoleEntry)) {
+				idleConsoles.put(consoleEntry, idleConsole);
+			} else {
+				idleConsole.shutdown();
+			}
+		}
+		consoleQueue.add(consoleEntry);
+	}
+
+	private SingleConsole createConsole(ConsoleEntry consoleEntry, ConsoleProperties consoleProperties)
+					throws IOException {
+		if (multiplexedConsoleServer == null) {
+			return new SingleConsole(config.getCurrentIP(), consoleEntry.getPort(), consoleProperties,
+							getCommunicationSetting());
 		}
+		SingleConsole singleConsole = new SingleConsole(LOCAL_HOST, getFreeLocalPort(), consoleProperties,
+						getCommunicationSetting());
+		singleConsole.setRoutedEndpoint(config.getCurrentIP(), consoleEntry.getPort(), consoleEntry.getRoute());
+		return singleConsole;
+	}
+
+	/**
+	 * Stop the idle consoles and the multiplexed console server.
+	 */
+	@PreDestroy
+	public void destroy() {
+		for (SingleConsole each : idleConsoles.values()) {
+			each.shutdown();
+		}
+		idleConsoles.clear();
+		if (multiplexedConsoleServer != null) {
+			multiplexedConsoleServer.shutdown();
+		}
+	}
+
+	/**
+	 * Get the port of the multiplexed console server. It can be specified at
+	 * ngrinder.console.multiplexport in system.conf. 0 means each console is bound on its own port.
+	 * 
+	 * @return multiplexed console port
+	 */
+	protected int getConsoleMultiplexPort() {
+		return config.getSystemProperties().getPropertyInt(NGrinderConstants.NGRINDER_PROP_CONSOLE_MULTIPLEX_PORT,
+						NGrinderConstants.NGRINDER_PROP_CONSOLE_MULTIPLEX_PORT_VALUE);
+	}
+
+	/**
+	 * Get the count of the consoles kept idle to be handed out immediately. It can be specified at
+	 * ngrinder.console.prewarm in system.conf.
+	 * 
+	 * @return idle console count
+	 */
+	protected int getConsolePrewarmSize() {
+		return config.getSystemProperties().getPropertyInt(NGrinderConstants.NGRINDER_PROP_CONSOLE_PREWARM,
+						NGrinderConstants.NGRINDER_PROP_CONSOLE_PREWARM_VALUE);
+	}
+
+	/**
+	 * Get the transport setting of the console communication. The selector based transport is
+	 * enabled by ngrinder.console.nio in system.conf and its I/O thread count is specified at
+	 * ngrinder.console.nio.iothreads.
+	 * 
+	 * @return communication setting
+	 */
+	protected ConsoleCommunicationSetting getCommunicationSetting() {
+		PropertiesWrapper properties = config.getSystemProperties();
+		return new ConsoleCommunicationSetting(properties.getPropertyBoolean(NGrinderConstants.NGRINDER_PROP_CONSOLE_NIO,
+						NGrinderConstants.NGRINDER_PROP_CONSOLE_NIO_VALUE), properties.getPropertyInt(
+						NGrinderConstants.NGRINDER_PROP_CONSOLE_NIO_IO_THREADS,
+						NGrinderConstants.NGRINDER_PROP_CONSOLE_NIO_IO_THREADS_VALUE));
 	}
 
 	/**
@@ -171,6 +330,22 @@ public class ConsoleManager {
 		}
 	}
 
+	/**
+	 * Get a free loopback port for the console behind the multiplexed console server.
+	 * 
+	 * @return port
+	 * @throws IOException
+	 *             if no port can be bound
+	 */
+	private int getFreeLocalPort() throws IOException {
+		ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName(LOCAL_HOST));
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+
 	/**
 	 * Get a available console.<br/>
 	 * 
@@ -194,8 +369,23 @@ public class ConsoleManager {
 				throw new NGrinderRuntimeException("no console entry available");
 			}
 			synchronized (this) {
-				// FIXME : It might fail here
-				singleConsole = new SingleConsole(config.getCurrentIP(), consoleEntry.getPort(), baseConsoleProperties);
+				consoleEntry = preferIdleEntry(consoleEntry);
+				singleConsole = idleConsoles.remove(consoleEntry);
+				if (singleConsole != null) {
+					poolHitCount.incrementAndGet();
+					// Keep the address the idle console is bound on.
+					ConsoleProperties consoleProperties = singleConsole.getConsoleProperties();
+					baseConsoleProperties.setConsoleHost(consoleProperties.getConsoleHost());
+					baseConsoleProperties.setConsolePort(consoleProperties.getConsolePort());
+					consoleProperties.set(baseConsoleProperties);
+				} else {
+					poolMissCount.incrementAndGet();
+					// FIXME : It might fail here
+					singleConsole = createConsole(consoleEntry, baseConsoleProperties);
+				}
+				if (multiplexedConsoleServer != null) {
+					multiplexedConsoleServer.register(singleConsole.getConsoleRoute(), singleConsole.getConsolePort());
+				}
 				getConsoleInUse().add(singleConsole);
 				return singleConsole;
 			}
@@ -207,10 +397,78 @@ public class ConsoleManager {
 		}
 	}
 
+	/**
+	 * Get a available console for the given test. The console can be looked up by
+	 * {@link #getConsoleUsingTest(PerfTest)} until it's returned back.
+	 * 
+	 * @param perfTest
+	 *            test which will use the console
+	 * @param baseConsoleProperties
+	 *            base {@link ConsoleProperties}
+	 * @return console
+	 */
+	public SingleConsole getAvailableConsole(PerfTest perfTest, ConsoleProperties baseConsoleProperties) {
+		SingleConsole singleConsole = getAvailableConsole(perfTest.getTestIdentifier(), baseConsoleProperties);
+		consoleByTest.put(perfTest.getId(), singleConsole);
+		return singleConsole;
+	}
+
+	/**
+	 * Swap the given entry with a queued one which has an idle console if the given one doesn't.
+	 * 
+	 * @param consoleEntry
+	 *            entry taken from the queue
+	 * @return entry to be used
+	 */
+	private ConsoleEntry preferIdleEntry(ConsoleEntry consoleEntry) {
+		if (idleConsoles.containsKey(consoleEntry)) {
+			return consoleEntry;
+		}
+		for (ConsoleEntry each : consoleQueue) {
+			if (idleConsoles.containsKey(each) && consoleQueue.remove(each)) {
+				consoleQueue.add(consoleEntry);
+				return each;
+			}
+		}
+		return consoleEntry;
+	}
+
+	/**
+	 * Get the ratio of the console requests served by an idle console.
+	 * 
+	 * @return hit rate between 0 and 1. 0 if no console is requested yet.
+	 */
+	public double getPoolHitRate() {
+		long hit = poolHitCount.get();
+		long total = hit + poolMissCount.get();
+		return total == 0 ? 0 : (double) hit / total;
+	}
+
+	/**
+	 * Get the average time spent to return back a console, which includes waiting for the agents
+	 * to disconnect and preparing the next idle console.
+	 * 
+	 * @return average reset time in millisecond. 0 if no console is returned back yet.
+	 */
+	public long getAverageResetTime() {
+		long count = resetCount.get();
+		return count == 0 ? 0 : resetTimeSum.get() / count;
+	}
+
+	/**
+	 * Get the count of the consoles which are kept idle.
+	 * 
+	 * @return idle console count
+	 */
+	public int getIdleConsoleSize() {
+		return idleConsoles.size();
+	}
+
 	/**
 	 * Return back the given console.<br/>
 	 * 
-	 * Duplicated returns is allowed.
+	 * Duplicated returns is allowed. The console is shut down and reset on the console lifecycle
+	 * executor.
 	 * 
 	 * @param testIdentifier
 	 *            test identifier
@@ -218,12 +476,21 @@ public class ConsoleManager {
 	 *            console which will be returned back.
 	 * 
 	 */
-	@Async
-	public void returnBackConsole(String testIdentifier, SingleConsole console) {
+	public void returnBackConsole(final String testIdentifier, final SingleConsole console) {
+		consoleExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				doReturnBackConsole(testIdentifier, console);
+			}
+		});
+	}
+
+	private void doReturnBackConsole(String testIdentifier, SingleConsole console) {
 		if (console == null || !console.isValid()) {
 			LOG.error("Attemp to return back null console for {}.", testIdentifier);
 			return;
 		}
+		long startTime = System.currentTimeMillis();
 		try {
 			console.unregisterSampling();
 			console.sendStopMessageToAgents();
@@ -240,7 +507,7 @@ public class ConsoleManager {
 				LOG.error("Exception occurs while shuttdowning console in returnback process for test {}.",
 								testIdentifier, e);
 				// If it's not disconnected still, stop them forcely.
-				agentManager.stopAgent(console.getConsolePort());
+				agentManager.stopAgent(console);
 			}
 			try {
 				console.shutdown();
@@ -248,20 +515,35 @@ public class ConsoleManager {
 				LOG.error("Exception occurs while shuttdowning console in returnback process for test {}.",
 								testIdentifier, e);
 			}
-			int consolePort = console.getConsolePort();
-			if (consolePort == 1) {
+			if (console.getConsolePort() == 1) {
 				return;
 			}
-			ConsoleEntry consoleEntry = new ConsoleEntry(consolePort);
+			ConsoleEntry consoleEntry = new ConsoleEntry(console.getAgentConnectionPort(), console.getConsoleRoute());
+			if (multiplexedConsoleServer != null) {
+				multiplexedConsoleServer.unregister(consoleEntry.getRoute());
+			}
+			SingleConsole idleConsole = consoleQueue.contains(consoleEntry) ? null : createIdleConsole(consoleEntry);
 			synchronized (this) {
-				if (!consoleQueue.contains(consoleEntry)) {
-					consoleQueue.add(consoleEntry);
+				if (consoleQueue.contains(consoleEntry)) {
+					if (idleConsole != null) {
+						idleConsole.shutdown();
+					}
+				} else {
+					publishConsoleEntry(consoleEntry, idleConsole);
 					if (!getConsoleInUse().contains(console)) {
-						LOG.error("Try to return back the not used console on {} port", consolePort);
+						LOG.error("Try to return back the not used console on {}", consoleEntry);
 					}
 					getConsoleInUse().remove(console);
+					consoleByTest.values().remove(console);
+					long resetTime = System.currentTimeMillis() - startTime;
+					resetCount.incrementAndGet();
+					resetTimeSum.addAndGet(resetTime);
+					LOG.info("Console on {} is reset in {} ms. Pool hit rate is {}%.", new Object[] { consoleEntry,
+									resetTime, Math.round(getPoolHitRate() * 100) });
 				}
 			}
+			// A test waiting for a console can start now.
+			perfTestDispatcher.requestStart();
 		}
 	}
 
@@ -284,20 +566,18 @@ public class ConsoleManager {
 	}
 
 	/**
-	 * Get the {@link SingleConsole} instance which is using the given port.
+	 * Get the {@link SingleConsole} instance which the given test is using. The consoles are looked
+	 * up by the test rather than the port because the consoles behind the multiplexed console server
+	 * share the port.
 	 * 
-	 * @param port
-	 *            port which the console is using
+	 * @param perfTest
+	 *            test which is running
 	 * @return {@link SingleConsole} instance if found. Otherwise, {@link NullSingleConsole}
 	 *         instance.
 	 */
-	public SingleConsole getConsoleUsingPort(Integer port) {
-		for (SingleConsole each : consoleInUse) {
-			if (each.getConsolePort() == port) {
-				return each;
-			}
-		}
-		return new NullSingleConsole();
+	public SingleConsole getConsoleUsingTest(PerfTest perfTest) {
+		SingleConsole singleConsole = perfTest.getId() == null ? null : consoleByTest.get(perfTest.getId());
+		return singleConsole == null ? new NullSingleConsole() : singleConsole;
 	}
 
 }
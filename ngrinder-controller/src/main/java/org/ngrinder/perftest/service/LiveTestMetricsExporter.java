@@ -0,0 +1,300 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.grinder.SingleConsole;
+import net.grinder.common.processidentity.AgentIdentity;
+
+import org.apache.commons.collections.MapUtils;
+import org.ngrinder.common.exception.NGrinderRuntimeException;
+import org.ngrinder.common.metrics.PrometheusFormat;
+import org.ngrinder.infra.config.Config;
+import org.ngrinder.model.PerfTest;
+import org.ngrinder.monitor.controller.model.SystemDataModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exporter of the latest samples of the running tests in the Prometheus text format.
+ * 
+ * The sample of each test is taken from its console when it's sampled, so a scrape never touches
+ * the statistics files. The rendered text is kept until any sample changes. Therefore rendering
+ * costs O(tests) once per sampling interval however many scrapers there are.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+@Component
+public class LiveTestMetricsExporter {
+
+	private static final String TEST_ID = "test_id";
+
+	private static final String TEST_NUMBER = "test_number";
+
+	private static final String REGION = "region";
+
+	private static final String AGENT = "agent";
+
+
+	private static final String GAUGE = "gauge";
+
+	private static final String COUNTER = "counter";
+
+	@Autowired
+	private Config config;
+
+	private final ConcurrentSkipListMap<Long, TestSample> samples = new ConcurrentSkipListMap<Long, TestSample>();
+
+	private final AtomicLong version = new AtomicLong();
+
+	private long renderedVersion = -1;
+
+	private String rendered = "";
+
+	/**
+	 * Take the latest sample of the given test.
+	 * 
+	 * @param perfTest
+	 *            running test
+	 * @param singleConsole
+	 *            console of the test
+	 * @param agentsInfo
+	 *            system data of the agents attached to the console
+	 */
+	public void update(PerfTest perfTest, SingleConsole singleConsole, Map<AgentIdentity, SystemDataModel> agentsInfo) {
+		put(perfTest.getId(), new TestSample(String.valueOf(perfTest.getId()), config.getRegion(), singleConsole,
+						agentsInfo));
+	}
+
+	void put(Long testId, TestSample sample) {
+		samples.put(testId, sample);
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Remove the sample of the given test. It should be called when the test is finished.
+	 * 
+	 * @param testId
+	 *            test id
+	 */
+	public void remove(Long testId) {
+		if (samples.remove(testId) != null) {
+			version.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Get the samples of all running tests in the Prometheus text format.
+	 * 
+	 * @return metrics text
+	 */
+	public synchronized String getPrometheusText() {
+		long current = version.get();
+		if (current != renderedVersion) {
+			StringWriter writer = new StringWriter();
+			try {
+				write(writer, samples.values());
+			} catch (IOException e) {
+				throw new NGrinderRuntimeException("Error while rendering the live test metrics", e);
+			}
+			rendered = writer.toString();
+			renderedVersion = current;
+		}
+		return rendered;
+	}
+
+	static void write(Writer writer, Collection<TestSample> samples) throws IOException {
+		PrometheusFormat.writeHeader(writer, "ngrinder_test_tps", "TPS of the last sample", GAUGE);
+		for (TestSample each : samples) {
+			PrometheusFormat.writeSample(writer, "ngrinder_test_tps", each.labels(), each.tps);
+		}
+		PrometheusFormat.writeHeader(writer, "ngrinder_test_tests_total", "Count of the successful tests", COUNTER);
+		for (TestSample each : samples) {
+			PrometheusFormat.writeSample(writer, "ngrinder_test_tests_total", each.labels(), each.tests);
+		}
+		PrometheusFormat.writeHeader(writer, "ngrinder_test_errors_total", "Count of the failed tests", COUNTER);
+		for (TestSample each : samples) {
+			PrometheusFormat.writeSample(writer, "ngrinder_test_errors_total", each.labels(), each.errors);
+		}
+		PrometheusFormat.writeHeader(writer, "ngrinder_test_mean_time_ms", "Mean test time in millisecond", GAUGE);
+		for (TestSample each : samples) {
+			PrometheusFormat.writeSample(writer, "ngrinder_test_mean_time_ms", each.labels(), each.meanTestTime);
+		}
+		PrometheusFormat.writeHeader(writer, "ngrinder_test_vusers", "Count of the running threads", GAUGE);
+		for (TestSample each : samples) {
+			PrometheusFormat.writeSample(writer, "ngrinder_test_vusers", each.labels(), each.vusers);
+		}
+		PrometheusFormat.writeHeader(writer, "ngrinder_test_processes", "Count of the running processes", GAUGE);
+		for (TestSample each : samples) {
+			PrometheusFormat.writeSample(writer, "ngrinder_test_processes", each.labels(), each.processes);
+		}
+		PrometheusFormat.writeHeader(writer, "ngrinder_test_number_tps", "TPS of the last sample per test number",
+						GAUGE);
+		for (TestSample each : samples) {
+			for (TestNumberSample number : each.testNumbers) {
+				PrometheusFormat.writeSample(writer, "ngrinder_test_number_tps", each.labels(TEST_NUMBER, number.number),
+								number.tps);
+			}
+		}
+		PrometheusFormat.writeHeader(writer, "ngrinder_test_number_tests_total",
+						"Count of the successful tests per test number", COUNTER);
+		for (TestSample each : samples) {
+			for (TestNumberSample number : each.testNumbers) {
+				PrometheusFormat.writeSample(writer, "ngrinder_test_number_tests_total",
+								each.labels(TEST_NUMBER, number.number), number.tests);
+			}
+		}
+		PrometheusFormat.writeHeader(writer, "ngrinder_test_number_errors_total",
+						"Count of the failed tests per test number", COUNTER);
+		for (TestSample each : samples) {
+			for (TestNumberSample number : each.testNumbers) {
+				PrometheusFormat.writeSample(writer, "ngrinder_test_number_errors_total",
+								each.labels(TEST_NUMBER, number.number), number.errors);
+			}
+		}
+		PrometheusFormat.writeHeader(writer, "ngrinder_test_number_mean_time_ms",
+						"Mean test time in millisecond per test number", GAUGE);
+		for (TestSample each : samples) {
+			for (TestNumberSample number : each.testNumbers) {
+				PrometheusFormat.writeSample(writer, "ngrinder_test_number_mean_time_ms",
+								each.labels(TEST_NUMBER, number.number), number.meanTestTime);
+			}
+		}
+		PrometheusFormat.writeHeader(writer, "ngrinder_agent_cpu_used_percent", "CPU usage of the agent", GAUGE);
+		for (TestSample each : samples) {
+			for (AgentSample agent : each.agents) {
+				PrometheusFormat.writeSample(writer, "ngrinder_agent_cpu_used_percent", each.labels(AGENT, agent.name),
+								agent.cpu);
+			}
+		}
+		PrometheusFormat.writeHeader(writer, "ngrinder_agent_memory_used_percent", "Memory usage of the agent", GAUGE);
+		for (TestSample each : samples) {
+			for (AgentSample agent : each.agents) {
+				PrometheusFormat.writeSample(writer, "ngrinder_agent_memory_used_percent",
+								each.labels(AGENT, agent.name), agent.memory);
+			}
+		}
+	}
+
+	/**
+	 * Immutable sample of a running test.
+	 */
+	static final class TestSample {
+		private final String testId;
+		private final String region;
+		private final double tps;
+		private final long tests;
+		private final long errors;
+		private final double meanTestTime;
+		private final long vusers;
+		private final long processes;
+		private final List<TestNumberSample> testNumbers = new ArrayList<TestNumberSample>();
+		private final List<AgentSample> agents = new ArrayList<AgentSample>();
+
+		@SuppressWarnings("unchecked")
+		TestSample(String testId, String region, SingleConsole singleConsole,
+						Map<AgentIdentity, SystemDataModel> agentsInfo) {
+			this.testId = testId;
+			this.region = region;
+			Map<String, Object> statistics = singleConsole.getStatictisData();
+			Map<String, Object> total = getMap(statistics, "totalStatistics");
+			this.tps = singleConsole.getTpsValues();
+			this.tests = (long) MapUtils.getDoubleValue(total, "Tests", 0D);
+			this.errors = (long) MapUtils.getDoubleValue(total, "Errors", 0D);
+			this.meanTestTime = MapUtils.getDoubleValue(total, "Mean_Test_Time_(ms)", 0D);
+			this.vusers = singleConsole.getRunningThread();
+			this.processes = singleConsole.getRunningProcess();
+			List<Map<String, Object>> cumulative = getList(statistics, "cumulativeStatistics");
+			List<Map<String, Object>> lastSample = getList(statistics, "lastSampleStatistics");
+			for (int i = 0; i < cumulative.size(); i++) {
+				Map<String, Object> last = i < lastSample.size() ? lastSample.get(i) : Collections.EMPTY_MAP;
+				testNumbers.add(new TestNumberSample(cumulative.get(i), last));
+			}
+			for (Entry<AgentIdentity, SystemDataModel> each : agentsInfo.entrySet()) {
+				if (each.getValue() == null) {
+					continue;
+				}
+				agents.add(new AgentSample(each.getKey().getName(), each.getValue()));
+			}
+		}
+
+		String[] labels() {
+			return new String[] { TEST_ID, testId, REGION, region };
+		}
+
+		String[] labels(String name, String value) {
+			return new String[] { TEST_ID, testId, REGION, region, name, value };
+		}
+
+		@SuppressWarnings("unchecked")
+		private static Map<String, Object> getMap(Map<String, Object> statistics, String key) {
+			Object value = statistics.get(key);
+			return value instanceof Map ? (Map<String, Object>) value : Collections.EMPTY_MAP;
+		}
+
+		@SuppressWarnings("unchecked")
+		private static List<Map<String, Object>> getList(Map<String, Object> statistics, String key) {
+			Object value = statistics.get(key);
+			return value instanceof List ? (List<Map<String, Object>>) value : Collections.EMPTY_LIST;
+		}
+	}
+
+	/**
+	 * Sample of a test number in a running test.
+	 */
+	static final class TestNumberSample {
+		private final String number;
+		private final double tps;
+		private final long tests;
+		private final long errors;
+		private final double meanTestTime;
+
+		TestNumberSample(Map<String, Object> cumulative, Map<String, Object> lastSample) {
+			this.number = String.valueOf(cumulative.get("testNumber"));
+			this.tps = MapUtils.getDoubleValue(lastSample, "TPS", 0D);
+			this.tests = (long) MapUtils.getDoubleValue(cumulative, "Tests", 0D);
+			this.errors = (long) MapUtils.getDoubleValue(cumulative, "Errors", 0D);
+			this.meanTestTime = MapUtils.getDoubleValue(cumulative, "Mean_Test_Time_(ms)", 0D);
+		}
+	}
+
+	/**
+	 * Sample of an agent running a test.
+	 */
+	static final class AgentSample {
+		private final String name;
+		private final double cpu;
+		private final double memory;
+
+		AgentSample(String name, SystemDataModel systemData) {
+			this.name = name;
+			this.cpu = systemData.getCpuUsedPercentage();
+			long totalMemory = systemData.getTotalMemory();
+			this.memory = totalMemory == 0 ? 0 : ((double) (totalMemory - systemData.getFreeMemory()))
+							/ totalMemory * 100;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.grinder.common.processidentity.AgentIdentity;
+
+import org.ngrinder.monitor.controller.model.SystemDataModel;
+
+/**
+ * Agent selector which ranks the agents by their capacity and splits the processes among them
+ * accordingly.
+ * 
+ * The capacity of an agent is estimated by its core count, the idle CPU and the free memory. An
+ * agent which is small or shared with other services gets the lower rank and the less processes,
+ * while the total count of processes of the test is kept. The throughput of the previous tests is
+ * not taken into account, as the console has no statistics of each agent and the throughput
+ * split by the process count would only repeat the previous split.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class LoadAwareAgentSelector {
+
+	/** The free memory in KB which a worker process is expected to use. */
+	private static final long PROCESS_MEMORY_KB = 256 * 1024;
+
+	private static final double MIN_CPU_HEADROOM = 0.05;
+
+	/**
+	 * Sort the given agents in the descending order of the capacity.
+	 * 
+	 * @param agents
+	 *            agents to be sorted
+	 * @param systemDataModels
+	 *            current system data of the agents
+	 * @param processes
+	 *            process count which each agent is supposed to run
+	 * @return sorted agent list
+	 */
+	public List<AgentIdentity> rank(Collection<AgentIdentity> agents,
+					Map<AgentIdentity, SystemDataModel> systemDataModels, int processes) {
+		final Map<AgentIdentity, Double> weights = getWeights(agents, systemDataModels, processes);
+		List<AgentIdentity> ranked = new ArrayList<AgentIdentity>(agents);
+		Collections.sort(ranked, new Comparator<AgentIdentity>() {
+			@Override
+			public int compare(AgentIdentity o1, AgentIdentity o2) {
+				return Double.compare(weights.get(o2), weights.get(o1));
+			}
+		});
+		return ranked;
+	}
+
+	/**
+	 * Split the processes of the test among the given agents in proportion to their capacity.
+	 * 
+	 * Every agent runs at least one process and at most the given maximum. The sum is always the
+	 * count of agents multiplied by the given processes per agent.
+	 * 
+	 * @param agents
+	 *            selected agents
+	 * @param systemDataModels
+	 *            current system data of the agents
+	 * @param processes
+	 *            process count per agent configured in the test
+	 * @param maxProcesses
+	 *            maximum process count of an agent
+	 * @return process count of each agent
+	 */
+	public Map<AgentIdentity, Integer> distributeProcesses(Collection<AgentIdentity> agents,
+					Map<AgentIdentity, SystemDataModel> systemDataModels, int processes, int maxProcesses) {
+		Map<AgentIdentity, Integer> result = new LinkedHashMap<AgentIdentity, Integer>();
+		int limit = Math.max(processes, maxProcesses);
+		for (AgentIdentity each : agents) {
+			result.put(each, 1);
+		}
+		int remaining = agents.size() * processes - agents.size();
+		if (remaining <= 0) {
+			return result;
+		}
+		Map<AgentIdentity, Double> weights = getWeights(agents, systemDataModels, processes);
+		double weightSum = 0;
+		for (double each : weights.values()) {
+			weightSum += each;
+		}
+		// Hand out the remaining processes one by one to the agent which is the most behind its
+		// share, so that the rounding never loses a process.
+		int total = agents.size() * processes;
+		while (remaining > 0) {
+			AgentIdentity target = null;
+			double maxLack = Double.NEGATIVE_INFINITY;
+			for (AgentIdentity each : agents) {
+				int assigned = result.get(each);
+				if (assigned >= limit) {
+					continue;
+				}
+				double lack = total * weights.get(each) / weightSum - assigned;
+				if (lack > maxLack) {
+					maxLack = lack;
+					target = each;
+				}
+			}
+			if (target == null) {
+				break;
+			}
+			result.put(target, result.get(target) + 1);
+			remaining--;
+		}
+		return result;
+	}
+
+	Map<AgentIdentity, Double> getWeights(Collection<AgentIdentity> agents,
+					Map<AgentIdentity, SystemDataModel> systemDataModels, int processes) {
+		Map<AgentIdentity, Double> weights = new HashMap<AgentIdentity, Double>();
+		double knownSum = 0;
+		int knownCount = 0;
+		for (AgentIdentity each : agents) {
+			SystemDataModel model = systemDataModels.get(each);
+			if (model != null && model.getTotalMemory() > 0) {
+				double headroom = Math.max(MIN_CPU_HEADROOM, 1 - model.getCpuUsedPercentage() / 100);
+				double memory = Math.min(1, ((double) model.getFreeMemory()) / (PROCESS_MEMORY_KB * processes));
+				double weight = getCpuCount(model) * headroom * Math.max(MIN_CPU_HEADROOM, memory);
+				weights.put(each, weight);
+				knownSum += weight;
+				knownCount++;
+			}
+		}
+		// The agent which has not reported its system data yet is regarded as an average one.
+		double unknownWeight = knownCount == 0 ? 1 : knownSum / knownCount;
+		for (AgentIdentity each : agents) {
+			if (!weights.containsKey(each)) {
+				weights.put(each, unknownWeight);
+			}
+		}
+		return weights;
+	}
+
+	private static int getCpuCount(SystemDataModel model) {
+		return Math.max(1, model.getCpuCount());
+	}
+}
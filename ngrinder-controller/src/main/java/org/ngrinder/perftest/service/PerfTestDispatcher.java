@@ -0,0 +1,267 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.PreDestroy;
+
+import org.ngrinder.common.util.TimerWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Event driven dispatcher of the test start and finish cycles.
+ * 
+ * The start cycle runs when a test is saved ready, an agent is freed or a console is returned
+ * back. The finish cycle runs when a test is stopped by the user, marked abnormal or reaches its
+ * planned end. The times of the scheduled tests and the planned ends are kept in a
+ * {@link TimerWheel}, so no query is made until one of them comes. The requests made while a cycle
+ * is running are coalesced into one more cycle. Both cycles still run every
+ * {@link #FALLBACK_PERIOD} in case an event is missed. The events are local, so a test saved or an
+ * agent freed on another controller is only picked up by this fallback. In cluster mode, the
+ * cycles run every {@link #CLUSTER_FALLBACK_PERIOD} instead.
+ * 
+ * A request made in a transaction is delivered after the commit so that the cycle sees the change.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+@Component
+public class PerfTestDispatcher {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PerfTestDispatcher.class);
+
+	/** Period in millisecond of the cycles run without any event. */
+	static final long FALLBACK_PERIOD = 60000;
+
+	/** Period in millisecond of the cycles run without any event in cluster mode. */
+	static final long CLUSTER_FALLBACK_PERIOD = 5000;
+
+	private static final long TICK_DURATION = 1000;
+
+	private static final int WHEEL_SIZE = 512;
+
+	private final TimerWheel<ScheduledCycle> timerWheel = new TimerWheel<ScheduledCycle>(TICK_DURATION, WHEEL_SIZE,
+					System.currentTimeMillis());
+
+	private final Set<ScheduledCycle> scheduledCycles = new HashSet<ScheduledCycle>();
+
+	private volatile CycleWorker startWorker;
+
+	private volatile CycleWorker finishWorker;
+
+	private Thread ticker;
+
+	/**
+	 * Start to run the given cycles. Nothing is dispatched before this is called.
+	 * 
+	 * @param startCycle
+	 *            cycle which starts the ready tests
+	 * @param finishCycle
+	 *            cycle which finishes the tests
+	 * @param cluster
+	 *            true if the tests are shared with the other controllers
+	 */
+	public synchronized void start(Runnable startCycle, Runnable finishCycle, boolean cluster) {
+		if (ticker != null) {
+			return;
+		}
+		long fallbackPeriod = cluster ? CLUSTER_FALLBACK_PERIOD : FALLBACK_PERIOD;
+		startWorker = new CycleWorker("perftest-start-dispatcher", startCycle, fallbackPeriod);
+		finishWorker = new CycleWorker("perftest-finish-dispatcher", finishCycle, fallbackPeriod);
+		ticker = new Thread("perftest-dispatcher-timer") {
+			@Override
+			public void run() {
+				try {
+					while (!isInterrupted()) {
+						Thread.sleep(TICK_DURATION);
+						tick(System.currentTimeMillis());
+					}
+				} catch (InterruptedException e) {
+					LOG.debug("perftest dispatcher timer is stopped");
+				}
+			}
+		};
+		ticker.setDaemon(true);
+		startWorker.start();
+		finishWorker.start();
+		ticker.start();
+	}
+
+	private void tick(long now) {
+		synchronized (timerWheel) {
+			for (ScheduledCycle each : timerWheel.advance(now)) {
+				scheduledCycles.remove(each);
+				request(each.start ? startWorker : finishWorker);
+			}
+		}
+	}
+
+	/**
+	 * Request the start cycle.
+	 */
+	public void requestStart() {
+		requestAfterCommit(startWorker);
+	}
+
+	/**
+	 * Request the finish cycle.
+	 */
+	public void requestFinish() {
+		requestAfterCommit(finishWorker);
+	}
+
+	/**
+	 * Request the start cycle at the given time.
+	 * 
+	 * @param time
+	 *            time in millisecond
+	 */
+	public void scheduleStart(long time) {
+		schedule(new ScheduledCycle(true, time / TICK_DURATION), time);
+	}
+
+	/**
+	 * Request the finish cycle at the given time.
+	 * 
+	 * @param time
+	 *            time in millisecond
+	 */
+	public void scheduleFinish(long time) {
+		schedule(new ScheduledCycle(false, time / TICK_DURATION), time);
+	}
+
+	private void schedule(ScheduledCycle cycle, long time) {
+		synchronized (timerWheel) {
+			// Each cycle reschedules the tests which are not due yet.
+			if (scheduledCycles.add(cycle)) {
+				timerWheel.schedule(cycle, time);
+			}
+		}
+	}
+
+	private void requestAfterCommit(final CycleWorker worker) {
+		if (worker == null) {
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					request(worker);
+				}
+			});
+		} else {
+			request(worker);
+		}
+	}
+
+	private void request(CycleWorker worker) {
+		if (worker != null) {
+			worker.request();
+		}
+	}
+
+	/**
+	 * Stop the dispatch.
+	 */
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (ticker == null) {
+			return;
+		}
+		ticker.interrupt();
+		startWorker.interrupt();
+		finishWorker.interrupt();
+	}
+
+	/**
+	 * Thread which runs a cycle whenever it's requested.
+	 */
+	private static final class CycleWorker extends Thread {
+		private final Runnable cycle;
+
+		private final long fallbackPeriod;
+
+		// The first cycle picks up the tests left ready before the start.
+		private boolean requested = true;
+
+		CycleWorker(String name, Runnable cycle, long fallbackPeriod) {
+			super(name);
+			this.cycle = cycle;
+			this.fallbackPeriod = fallbackPeriod;
+			setDaemon(true);
+		}
+
+		synchronized void request() {
+			requested = true;
+			notifyAll();
+		}
+
+		@Override
+		public void run() {
+			while (!isInterrupted()) {
+				synchronized (this) {
+					if (!requested) {
+						try {
+							wait(fallbackPeriod);
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					requested = false;
+				}
+				try {
+					cycle.run();
+				} catch (Exception e) {
+					LOG.error("Error while running {} : {}", getName(), e.getMessage());
+					LOG.debug("Details : ", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cycle requested at a tick.
+	 */
+	private static final class ScheduledCycle {
+		private final boolean start;
+
+		private final long tick;
+
+		ScheduledCycle(boolean start, long tick) {
+			this.start = start;
+			this.tick = tick;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (tick ^ (tick >>> 32)) * 31 + (start ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ScheduledCycle)) {
+				return false;
+			}
+			ScheduledCycle other = (ScheduledCycle) obj;
+			return start == other.start && tick == other.tick;
+		}
+	}
+}
@@ -27,11 +27,13 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,31 +42,41 @@ import javax.annotation.PostConstruct;
 
 import net.grinder.SingleConsole;
 import net.grinder.SingleConsole.ConsoleShutdownListener;
+import net.grinder.SingleConsole.RunningAgentChecker;
 import net.grinder.SingleConsole.SamplingLifeCycleListener;
 import net.grinder.StopReason;
 import net.grinder.common.GrinderProperties;
+import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.console.communication.AgentStatusChangeListener;
 import net.grinder.console.model.ConsoleProperties;
+import net.grinder.message.console.AgentControllerState;
 import net.grinder.statistics.StatisticsSet;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.time.DateUtils;
 import org.ngrinder.agent.model.AgentInfo;
 import org.ngrinder.common.constant.NGrinderConstants;
+import org.ngrinder.common.util.DateUtil;
 import org.ngrinder.extension.OnTestLifeCycleRunnable;
 import org.ngrinder.extension.OnTestSamplingRunnable;
 import org.ngrinder.infra.annotation.RuntimeOnlyComponent;
 import org.ngrinder.infra.config.Config;
+import org.ngrinder.infra.plugin.PluginCallbackDispatcher;
 import org.ngrinder.infra.plugin.PluginManager;
 import org.ngrinder.model.PerfTest;
 import org.ngrinder.model.Status;
+import org.ngrinder.model.User;
 import org.ngrinder.monitor.MonitorConstants;
+import org.ngrinder.monitor.controller.model.SystemDataModel;
 import org.ngrinder.monitor.service.MonitorClientSerivce;
 import org.ngrinder.monitor.share.domain.SystemInfo;
+import org.ngrinder.perftest.service.PerfTestScheduler.FreeAgentCounter;
+import org.ngrinder.perftest.service.PerfTestScheduler.QueueEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
-import org.springframework.scheduling.annotation.Scheduled;
 
 import com.atlassian.plugin.event.PluginEventListener;
 import com.atlassian.plugin.event.events.PluginDisabledEvent;
@@ -74,8 +86,8 @@ import com.atlassian.plugin.event.events.PluginEnabledEvent;
  * {@link PerfTest} run scheduler.
  * 
  * This class is responsible to execute/finish the performance test. The job is started from
- * {@link #startTest()} and {@link #finishTest()} method. These methods are scheduled by Spring
- * Task.
+ * {@link #startTest()} and {@link #finishTest()} method. These methods are run by the
+ * {@link PerfTestDispatcher} when the related events occur.
  * 
  * @author JunHo Yoon
  * @since 3.0
@@ -103,6 +115,18 @@ public class PerfTestRunnable implements NGrinderConstants {
 	@Autowired
 	private ApplicationContext appContext;
 
+	@Autowired
+	private PerfTestDispatcher perfTestDispatcher;
+
+	@Autowired
+	private PerfTestScheduler perfTestScheduler;
+
+	@Autowired
+	private LiveTestMetricsExporter liveTestMetricsExporter;
+
+	@Autowired
+	private PluginCallbackDispatcher pluginCallbackDispatcher;
+
 	private List<OnTestSamplingRunnable> testSamplingRunnables;
 
 	/**
@@ -112,6 +136,36 @@ public class PerfTestRunnable implements NGrinderConstants {
 	public void init() {
 		pluginManager.addPluginUpdateEvent(this);
 		pluginInit();
+		startDispatcher();
+	}
+
+	/**
+	 * Let the {@link PerfTestDispatcher} run the start and finish cycles. A freed agent may let a
+	 * waiting test start.
+	 */
+	protected void startDispatcher() {
+		agentManager.addAgentStatusChangeListener(new AgentStatusChangeListener() {
+			@Override
+			public void agentStatusChanged(Set<AgentIdentity> changedAgents, Set<AgentIdentity> removedAgents) {
+				for (AgentIdentity each : changedAgents) {
+					if (agentManager.getAgentState(each) == AgentControllerState.READY) {
+						perfTestDispatcher.requestStart();
+						return;
+					}
+				}
+			}
+		});
+		perfTestDispatcher.start(new Runnable() {
+			@Override
+			public void run() {
+				startTest();
+			}
+		}, new Runnable() {
+			@Override
+			public void run() {
+				finishTest();
+			}
+		}, config.isCluster());
 	}
 
 	private void pluginInit() {
@@ -141,11 +195,19 @@ public class PerfTestRunnable implements NGrinderConstants {
 	}
 
 	/**
-	 * Scheduled method for test execution. This method dispatches the test candidates and run one
-	 * of them. This method is responsible until a test is executed.
+	 * Dispatch method for test execution. This method runs the test candidates one by one as long
+	 * as more tests can be executed. This method is responsible until the tests are executed.
 	 */
-	@Scheduled(fixedDelay = PERFTEST_RUN_FREQUENCY_MILLISECONDS)
 	public void startTest() {
+		Set<Long> triedTests = new HashSet<Long>();
+		PerfTest runCandidate;
+		while ((runCandidate = getNextRunCandidate(triedTests)) != null) {
+			triedTests.add(runCandidate.getId());
+			doTest(runCandidate);
+		}
+	}
+
+	private PerfTest getNextRunCandidate(Set<Long> triedTests) {
 		// Block if the count of testing exceed the limit
 		if (!perfTestService.canExecuteTestMore()) {
 			// LOG MORE
@@ -154,36 +216,64 @@ public class PerfTestRunnable implements NGrinderConstants {
 			for (PerfTest perfTest : currentlyRunningTests) {
 				LOG.trace("Current Running Test - {} ", perfTest);
 			}
-			return;
+			return null;
 		}
 		// Find out next ready perftest
-		PerfTest runCandidate = perfTestService.getPerfTestCandiate();
-		if (runCandidate == null) {
-			return;
+		List<PerfTest> waitingTests = new ArrayList<PerfTest>();
+		for (PerfTest each : perfTestService.getReadyPerfTests()) {
+			if (!isScheduledNow(each)) {
+				// this test project is reserved,but it isn't yet going to run test
+				// right now.
+				perfTestDispatcher.scheduleStart(getScheduledStartTime(each) + 1);
+			} else if (exceedMoreAgent(each)) {
+				continue;
+			}
+			waitingTests.add(each);
 		}
-
-		if (!isScheduledNow(runCandidate)) {
-			// this test project is reserved,but it isn't yet going to run test
-			// right now.
-			return;
+		Map<Long, QueueEntry> lastEntries = new HashMap<Long, QueueEntry>();
+		for (PerfTest each : waitingTests) {
+			lastEntries.put(each.getId(), perfTestScheduler.getQueueEntry(each.getId()));
 		}
-
-		if (exceedMoreAgent(runCandidate)) {
-			return;
+		List<PerfTest> runCandidates = perfTestScheduler.plan(waitingTests,
+						perfTestService.getCurrentlyRunningTestInRegion(), new FreeAgentCounter() {
+							@Override
+							public int getFreeAgentCount(User user) {
+								return PerfTestRunnable.this.getFreeAgentCount(user);
+							}
+						}, System.currentTimeMillis());
+		for (PerfTest each : waitingTests) {
+			if (!runCandidates.contains(each)) {
+				markQueueEntry(each, lastEntries.get(each.getId()));
+			}
+		}
+		for (PerfTest each : runCandidates) {
+			if (!triedTests.contains(each.getId()) && hasEnoughFreeAgents(each)) {
+				return each;
+			}
 		}
+		return null;
+	}
 
-		if (!hasEnoughFreeAgents(runCandidate)) {
+	private void markQueueEntry(PerfTest test, QueueEntry lastEntry) {
+		QueueEntry entry = perfTestScheduler.getQueueEntry(test.getId());
+		if (entry == null
+						|| (lastEntry != null && lastEntry.getPosition() == entry.getPosition() && ObjectUtils.equals(
+										lastEntry.getEstimatedStartTime(), entry.getEstimatedStartTime()))) {
 			return;
 		}
-
-		doTest(runCandidate);
+		Date estimatedStartTime = entry.getEstimatedStartTime();
+		perfTestService.markProgress(test, "The test is waiting for agents." + "\n- Queue position : "
+						+ entry.getPosition() + "  / Estimated start time : "
+						+ (estimatedStartTime == null ? "unknown" : DateUtil.dateToString(estimatedStartTime)) + "\n");
 	}
 
 	private boolean isScheduledNow(PerfTest test) {
+		return System.currentTimeMillis() > getScheduledStartTime(test);
+	}
+
+	private long getScheduledStartTime(PerfTest test) {
 		Date current = new Date();
-		Date scheduledDate = DateUtils
-						.truncate((Date) defaultIfNull(test.getScheduledTime(), current), Calendar.MINUTE);
-		return current.after(scheduledDate);
+		return DateUtils.truncate((Date) defaultIfNull(test.getScheduledTime(), current), Calendar.MINUTE).getTime();
 	}
 
 	/**
@@ -205,6 +295,17 @@ public class PerfTestRunnable implements NGrinderConstants {
 		return false;
 	}
 
+	/**
+	 * Get the count of the free agents which the given user can use.
+	 * 
+	 * @param user
+	 *            test owner
+	 * @return free agent count
+	 */
+	protected int getFreeAgentCount(User user) {
+		return agentManager.getAllFreeApprovedAgentsForUser(user).size();
+	}
+
 	/**
 	 * Check the free agent availability for the given {@link PerfTest}.
 	 * 
@@ -278,9 +379,9 @@ public class PerfTestRunnable implements NGrinderConstants {
 		perfTestService.markStatusAndProgress(perfTest, START_CONSOLE, "Console is being prepared.");
 		// get available consoles.
 		ConsoleProperties consoleProperty = perfTestService.createConsoleProperties(perfTest);
-		SingleConsole singleConsole = consoleManager.getAvailableConsole(perfTest.getTestIdentifier(), consoleProperty);
+		SingleConsole singleConsole = consoleManager.getAvailableConsole(perfTest, consoleProperty);
 		singleConsole.start();
-		perfTestService.markPerfTestConsoleStart(perfTest, singleConsole.getConsolePort());
+		perfTestService.markPerfTestConsoleStart(perfTest, singleConsole.getAgentConnectionPort());
 		return singleConsole;
 	}
 
@@ -335,10 +436,18 @@ public class PerfTestRunnable implements NGrinderConstants {
 	 *            console to be used.
 	 */
 	void runTestOn(final PerfTest perfTest, GrinderProperties grinderProperties, final SingleConsole singleConsole) {
-		// start target monitor
-		for (OnTestLifeCycleRunnable run : pluginManager.getEnabledModulesByClass(OnTestLifeCycleRunnable.class)) {
-			run.start(perfTest, perfTestService, config.getVesion());
+		// start target monitor. It should be started before the test starts.
+		Map<Object, Runnable> startCallbacks = new LinkedHashMap<Object, Runnable>();
+		for (final OnTestLifeCycleRunnable run : pluginManager
+						.getEnabledModulesByClass(OnTestLifeCycleRunnable.class)) {
+			startCallbacks.put(run, new Runnable() {
+				@Override
+				public void run() {
+					run.start(perfTest, perfTestService, config.getVesion());
+				}
+			});
 		}
+		pluginCallbackDispatcher.dispatchAndWait(startCallbacks);
 
 		// Add monitors when sampling is started.
 		final Set<AgentInfo> agents = createMonitorTargets(perfTest);
@@ -374,14 +483,16 @@ public class PerfTestRunnable implements NGrinderConstants {
 						LOG.debug(e.getMessage(), e);
 					}
 				}
-				for (OnTestSamplingRunnable each : testSamplingRunnables) {
-					try {
-						each.startSampling(singleConsole, perfTest, perfTestService);
-					} catch (Exception e) {
-						LOG.error("While running plugins, the error occurs.");
-						LOG.error("Details : ", e);
-					}
+				Map<Object, Runnable> callbacks = new LinkedHashMap<Object, Runnable>();
+				for (final OnTestSamplingRunnable each : testSamplingRunnables) {
+					callbacks.put(each, new Runnable() {
+						@Override
+						public void run() {
+							each.startSampling(singleConsole, perfTest, perfTestService);
+						}
+					});
 				}
+				pluginCallbackDispatcher.dispatchAndWait(callbacks);
 			}
 
 			@Override
@@ -396,19 +507,25 @@ public class PerfTestRunnable implements NGrinderConstants {
 				}
 				monitorRecordWriterMap.clear();
 				monitorClientsMap.clear();
-
-				for (OnTestSamplingRunnable each : testSamplingRunnables) {
-					try {
-						each.endSampling(singleConsole, perfTest, perfTestService);
-					} catch (Exception e) {
-						LOG.error("While running plugin the following error occurs.");
-						LOG.error("Details : ", e);
-					}
+				liveTestMetricsExporter.remove(perfTest.getId());
+
+				// The console should not be returned while the plugins still read it.
+				Map<Object, Runnable> callbacks = new LinkedHashMap<Object, Runnable>();
+				for (final OnTestSamplingRunnable each : testSamplingRunnables) {
+					callbacks.put(each, new Runnable() {
+						@Override
+						public void run() {
+							each.endSampling(singleConsole, perfTest, perfTestService);
+						}
+					});
 				}
+				pluginCallbackDispatcher.dispatchAndWait(callbacks);
+				perfTestDispatcher.requestFinish();
 			}
 
 			@Override
-			public void onSampling(File file, StatisticsSet intervalStatistics, StatisticsSet cumulativeStatistics) {
+			public void onSampling(File file, final StatisticsSet intervalStatistics,
+							final StatisticsSet cumulativeStatistics) {
 				for (String targetIP : monitorRecordWriterMap.keySet()) {
 					BufferedWriter bw = monitorRecordWriterMap.get(targetIP);
 					monitorClientsMap.get(targetIP).recordMonitorData(bw);
@@ -417,17 +534,23 @@ public class PerfTestRunnable implements NGrinderConstants {
 					perfTestService.markStatusAndProgress(perfTest, Status.ABNORMAL_TESTING,
 									"All agents are unexpectively lost.");
 				}
-				perfTestService.saveAgentsInfo(singleConsole, perfTest);
+				Map<AgentIdentity, SystemDataModel> agentsInfo = perfTestService.saveAgentsInfo(singleConsole,
+								perfTest);
 				perfTestService.saveStatistics(singleConsole, perfTest);
+				liveTestMetricsExporter.update(perfTest, singleConsole, agentsInfo);
+				if (isTestFinishCandidate(perfTest, singleConsole)) {
+					perfTestDispatcher.requestFinish();
+				}
 
-				for (OnTestSamplingRunnable each : testSamplingRunnables) {
-					try {
-						each.sampling(singleConsole, perfTest, perfTestService, intervalStatistics,
-										cumulativeStatistics);
-					} catch (Exception e) {
-						LOG.error("While running plugin the following error occurs");
-						LOG.error("Details : ", e);
-					}
+				// A lagging plugin gets only the latest sample.
+				for (final OnTestSamplingRunnable each : testSamplingRunnables) {
+					pluginCallbackDispatcher.dispatchCoalesced(each, "sampling-" + perfTest.getId(), new Runnable() {
+						@Override
+						public void run() {
+							each.sampling(singleConsole, perfTest, perfTestService, intervalStatistics,
+											cumulativeStatistics);
+						}
+					});
 				}
 			}
 		});
@@ -442,11 +565,23 @@ public class PerfTestRunnable implements NGrinderConstants {
 				LOG.error("Abnormal test {} by {}", perfTest.getId(), stopReason.name());
 			}
 		});
+		// The agents keep running the test while their workers are reconnecting to the console.
+		singleConsole.setRunningAgentChecker(new RunningAgentChecker() {
+			@Override
+			public boolean hasRunningAgent() {
+				return agentManager.hasRunningAgent(singleConsole);
+			}
+		});
 
 		singleConsole.startSampling(grinderProperties.getInt(GRINDER_PROP_IGNORE_SAMPLE_COUNT, 0));
 		long startTime = singleConsole.startTest(grinderProperties);
 		perfTest.setStartTime(new Date(startTime));
 		perfTestService.markStatusAndProgress(perfTest, TESTING, "The test is started.");
+		if (perfTest.isThreshholdDuration()) {
+			// The running time is counted from the sampling start, so it's checked again at the
+			// sampling.
+			perfTestDispatcher.scheduleFinish(startTime + perfTest.getDuration());
+		}
 	}
 
 	private Set<AgentInfo> createMonitorTargets(final PerfTest perfTest) {
@@ -467,7 +602,8 @@ public class PerfTestRunnable implements NGrinderConstants {
 	}
 
 	/**
-	 * Notify test finish to plugins.
+	 * Notify test finish to plugins. They are called back on their own worker, and this method
+	 * waits for them up to the plugin callback timeout.
 	 * 
 	 * @param perfTest
 	 *            PerfTest
@@ -475,14 +611,22 @@ public class PerfTestRunnable implements NGrinderConstants {
 	 *            the reason of test finish..
 	 * @see OnTestLifeCycleRunnable
 	 */
-	public void notifyFinsish(PerfTest perfTest, StopReason reason) {
-		for (OnTestLifeCycleRunnable run : pluginManager.getEnabledModulesByClass(OnTestLifeCycleRunnable.class)) {
-			run.finish(perfTest, reason.name(), perfTestService, config.getVesion());
+	public void notifyFinsish(final PerfTest perfTest, final StopReason reason) {
+		Map<Object, Runnable> callbacks = new LinkedHashMap<Object, Runnable>();
+		for (final OnTestLifeCycleRunnable run : pluginManager
+						.getEnabledModulesByClass(OnTestLifeCycleRunnable.class)) {
+			callbacks.put(run, new Runnable() {
+				@Override
+				public void run() {
+					run.finish(perfTest, reason.name(), perfTestService, config.getVesion());
+				}
+			});
 		}
+		pluginCallbackDispatcher.dispatchAndWait(callbacks);
 	}
 
 	/**
-	 * Finish the tests.(Scheduled by SpringTask)<br/>
+	 * Finish the tests.(Run by {@link PerfTestDispatcher})<br/>
 	 * 
 	 * There are three types of finish. <br/>
 	 * 
@@ -492,27 +636,26 @@ public class PerfTestRunnable implements NGrinderConstants {
 	 * <li>Normal test finish : when test goes over the planned duration and run count.</li>
 	 * </ul>
 	 */
-	@Scheduled(fixedDelay = PERFTEST_RUN_FREQUENCY_MILLISECONDS)
 	public void finishTest() {
 
 		for (PerfTest each : perfTestService.getAbnoramlTestingPerfTest()) {
 			LOG.error("Terminate {}", each.getId());
-			SingleConsole consoleUsingPort = consoleManager.getConsoleUsingPort(each.getPort());
-			doTerminate(each, consoleUsingPort);
+			SingleConsole consoleUsingTest = consoleManager.getConsoleUsingTest(each);
+			doTerminate(each, consoleUsingTest);
 			notifyFinsish(each, StopReason.TOO_MANY_ERRORS);
 		}
 
 		for (PerfTest each : perfTestService.getStopRequestedPerfTest()) {
 			LOG.error("Stop test {}", each.getId());
-			SingleConsole consoleUsingPort = consoleManager.getConsoleUsingPort(each.getPort());
-			doCancel(each, consoleUsingPort);
+			SingleConsole consoleUsingTest = consoleManager.getConsoleUsingTest(each);
+			doCancel(each, consoleUsingTest);
 			notifyFinsish(each, StopReason.CANCEL_BY_USER);
 		}
 
 		for (PerfTest each : perfTestService.getTestingPerfTest()) {
-			SingleConsole consoleUsingPort = consoleManager.getConsoleUsingPort(each.getPort());
-			if (isTestFinishCandidate(each, consoleUsingPort)) {
-				doFinish(each, consoleUsingPort);
+			SingleConsole consoleUsingTest = consoleManager.getConsoleUsingTest(each);
+			if (isTestFinishCandidate(each, consoleUsingTest)) {
+				doFinish(each, consoleUsingTest);
 				notifyFinsish(each, StopReason.NORMAL);
 			}
 		}
@@ -563,6 +706,7 @@ public class PerfTestRunnable implements NGrinderConstants {
 			LOG.error("Error while canceling {}", perfTest.getTestIdentifier());
 			LOG.error("Details : ", e);
 		}
+		liveTestMetricsExporter.remove(perfTest.getId());
 		consoleManager.returnBackConsole(perfTest.getTestIdentifier(), singleConsoleInUse);
 	}
 
@@ -582,6 +726,7 @@ public class PerfTestRunnable implements NGrinderConstants {
 			LOG.error("Error while terminating {}", perfTest.getTestIdentifier());
 			LOG.error("Details : ", e);
 		}
+		liveTestMetricsExporter.remove(perfTest.getId());
 		consoleManager.returnBackConsole(perfTest.getTestIdentifier(), singleConsoleInUse);
 	}
 
@@ -605,11 +750,15 @@ public class PerfTestRunnable implements NGrinderConstants {
 			} else {
 				perfTestService.markProgressAndStatusAndFinishTimeAndStatistics(perfTest, Status.FINISHED,
 								"The test is finished successfully");
+				if (perfTest.getTps() != null) {
+					perfTestService.recordProcessAndThreadCalibration(perfTest);
+				}
 			}
 		} catch (Exception e) {
 			LOG.error("Error while finishing {}", perfTest.getTestIdentifier());
 			LOG.error("Details : ", e);
 		}
+		liveTestMetricsExporter.remove(perfTest.getId());
 		consoleManager.returnBackConsole(perfTest.getTestIdentifier(), singleConsoleInUse);
 	}
 
@@ -0,0 +1,362 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.time.DateUtils;
+import org.ngrinder.model.PerfTest;
+import org.ngrinder.model.User;
+import org.springframework.stereotype.Component;
+
+/**
+ * Run queue of the {@link PerfTest}s waiting for agents.
+ * 
+ * The waiting tests are ordered by their priority first, and then by the recent agent usage of
+ * their owners so that a user who has used less agents comes first. The tests of the same owner
+ * keep their scheduled order. In this order each test books its agents on a timeline built from
+ * the expected finish time of the running tests. A test which can not start now holds the agents
+ * it will need, so the smaller tests behind it can start only when they finish before its start
+ * or use the agents it does not need. This is the conservative backfilling. The booked start time
+ * is exposed as the ETA.
+ * 
+ * The running time of a test finished by the run count is not known. Its agents are regarded as
+ * never released. A test which needs them holds the agents available now and waits without ETA.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+@Component
+public class PerfTestScheduler {
+
+	/** The agent usage of a user is halved in this time. */
+	static final long USAGE_HALF_LIFE = 60 * 60 * 1000L;
+
+	private final Map<User, Usage> usages = new HashMap<User, Usage>();
+
+	private final Map<Long, Long> accountedTimes = new HashMap<Long, Long>();
+
+	private volatile Map<Long, QueueEntry> queue = Collections.emptyMap();
+
+	/**
+	 * Agent counter of the plan.
+	 */
+	public interface FreeAgentCounter {
+		/**
+		 * Get the count of the agents which the given user can use now.
+		 * 
+		 * @param user
+		 *            test owner
+		 * @return free agent count
+		 */
+		int getFreeAgentCount(User user);
+	}
+
+	/**
+	 * Plan the run queue.
+	 * 
+	 * @param waitingTests
+	 *            READY tests
+	 * @param runningTests
+	 *            tests which are using agents
+	 * @param freeAgentCounter
+	 *            free agent counter
+	 * @param now
+	 *            current time in millisecond
+	 * @return tests which can start now in the order
+	 */
+	public synchronized List<PerfTest> plan(List<PerfTest> waitingTests, List<PerfTest> runningTests,
+					FreeAgentCounter freeAgentCounter, long now) {
+		accountUsage(runningTests, now);
+
+		AgentTimeline timeline = new AgentTimeline();
+		// The earliest time when each owner can start another test. null if it's unknown.
+		Map<User, Long> ownerFreeTimes = new HashMap<User, Long>();
+		for (PerfTest each : runningTests) {
+			Long finishTime = getExpectedFinishTime(each, now);
+			if (finishTime != null) {
+				timeline.add(finishTime, getAgentCount(each));
+			}
+			ownerFreeTimes.put(each.getCreatedUser(), finishTime);
+		}
+
+		Map<User, Integer> freeAgents = new HashMap<User, Integer>();
+		List<PerfTest> runnables = new ArrayList<PerfTest>();
+		Map<Long, QueueEntry> entries = new HashMap<Long, QueueEntry>();
+		int position = 1;
+		for (PerfTest each : order(waitingTests, now)) {
+			User owner = each.getCreatedUser();
+			Integer free = freeAgents.get(owner);
+			if (free == null) {
+				free = freeAgentCounter.getFreeAgentCount(owner);
+				freeAgents.put(owner, free);
+			}
+			int need = getAgentCount(each);
+			Long from = now;
+			if (ownerFreeTimes.containsKey(owner)) {
+				from = ownerFreeTimes.get(owner);
+			}
+			Long startTime = null;
+			if (from != null) {
+				from = Math.max(from, getScheduledTime(each, now));
+				startTime = timeline.findStartTime(free, need, from, each.isThreshholdDuration() ? each.getDuration()
+								: null);
+				if (startTime == null) {
+					// Hold what is available so that the smaller ones can not take them.
+					int hold = Math.min(need, timeline.getMinimumAvailable(free, from, null));
+					if (hold > 0) {
+						timeline.add(from, -hold);
+					}
+				} else {
+					timeline.add(startTime, -need);
+				}
+			}
+			Long finishTime = null;
+			if (startTime != null && each.isThreshholdDuration()) {
+				finishTime = startTime + each.getDuration();
+				timeline.add(finishTime, need);
+			}
+			ownerFreeTimes.put(owner, finishTime);
+			if (startTime != null && startTime <= now) {
+				runnables.add(each);
+			}
+			entries.put(each.getId(), new QueueEntry(position++, startTime == null ? null : new Date(Math.max(
+							startTime, now))));
+		}
+		queue = entries;
+		return runnables;
+	}
+
+	/**
+	 * Get the queue entry of the given test.
+	 * 
+	 * @param id
+	 *            test id
+	 * @return queue entry. null if the test was not in the queue at the last plan.
+	 */
+	public QueueEntry getQueueEntry(Long id) {
+		return queue.get(id);
+	}
+
+	/**
+	 * Get the recent agent usage of the given user.
+	 * 
+	 * @param user
+	 *            user
+	 * @param now
+	 *            current time in millisecond
+	 * @return decayed agent * millisecond
+	 */
+	synchronized double getUsage(User user, long now) {
+		Usage usage = usages.get(user);
+		return usage == null ? 0 : usage.get(now);
+	}
+
+	private List<PerfTest> order(List<PerfTest> waitingTests, final long now) {
+		List<PerfTest> ordered = new ArrayList<PerfTest>(waitingTests);
+		final Map<User, Double> ownerUsages = new HashMap<User, Double>();
+		final Map<User, Integer> ownerPriorities = new HashMap<User, Integer>();
+		final Map<User, Long> ownerScheduledTimes = new HashMap<User, Long>();
+		for (PerfTest each : ordered) {
+			User owner = each.getCreatedUser();
+			ownerUsages.put(owner, getUsage(owner, now));
+			Long scheduledTime = ownerScheduledTimes.get(owner);
+			ownerScheduledTimes.put(owner, Math.min(scheduledTime == null ? Long.MAX_VALUE : scheduledTime,
+							getScheduledTime(each, now)));
+			// An owner's tests run in order. So the owner has the highest priority of them.
+			Integer priority = ownerPriorities.get(owner);
+			ownerPriorities.put(owner, Math.max(priority == null ? Integer.MIN_VALUE : priority, getPriority(each)));
+		}
+		// Stable sort keeps the scheduled order among the same rank.
+		Collections.sort(ordered, new Comparator<PerfTest>() {
+			@Override
+			public int compare(PerfTest o1, PerfTest o2) {
+				User owner1 = o1.getCreatedUser();
+				User owner2 = o2.getCreatedUser();
+				if (ObjectUtils.equals(owner1, owner2)) {
+					return 0;
+				}
+				int result = ownerPriorities.get(owner2).compareTo(ownerPriorities.get(owner1));
+				if (result == 0) {
+					result = ownerUsages.get(owner1).compareTo(ownerUsages.get(owner2));
+				}
+				if (result == 0) {
+					result = ownerScheduledTimes.get(owner1).compareTo(ownerScheduledTimes.get(owner2));
+				}
+				return result;
+			}
+		});
+		return ordered;
+	}
+
+	private void accountUsage(List<PerfTest> runningTests, long now) {
+		Set<Long> running = new HashSet<Long>();
+		for (PerfTest each : runningTests) {
+			running.add(each.getId());
+			Long from = accountedTimes.get(each.getId());
+			if (from == null) {
+				from = each.getStartTime() == null ? now : Math.min(each.getStartTime().getTime(), now);
+			}
+			User owner = each.getCreatedUser();
+			Usage usage = usages.get(owner);
+			if (usage == null) {
+				usage = new Usage();
+				usages.put(owner, usage);
+			}
+			usage.add((double) getAgentCount(each) * (now - from), now);
+			accountedTimes.put(each.getId(), now);
+		}
+		accountedTimes.keySet().retainAll(running);
+	}
+
+	private Long getExpectedFinishTime(PerfTest test, long now) {
+		if (!test.isThreshholdDuration() || test.getDuration() == null) {
+			return null;
+		}
+		// The test which is not started yet runs from now.
+		long startTime = test.getStartTime() == null ? now : test.getStartTime().getTime();
+		return Math.max(startTime + test.getDuration(), now);
+	}
+
+	private long getScheduledTime(PerfTest test, long now) {
+		// A reserved test runs from the beginning of its minute.
+		return test.getScheduledTime() == null ? now : DateUtils.truncate(test.getScheduledTime(), Calendar.MINUTE)
+						.getTime();
+	}
+
+	private int getAgentCount(PerfTest test) {
+		return test.getAgentCount() == null ? 0 : test.getAgentCount();
+	}
+
+	private int getPriority(PerfTest test) {
+		return test.getPriority() == null ? 0 : test.getPriority();
+	}
+
+	/**
+	 * Position and ETA of a waiting test.
+	 */
+	public static class QueueEntry {
+		private final int position;
+
+		private final Date estimatedStartTime;
+
+		QueueEntry(int position, Date estimatedStartTime) {
+			this.position = position;
+			this.estimatedStartTime = estimatedStartTime;
+		}
+
+		/**
+		 * Get the position in the queue.
+		 * 
+		 * @return position starting from 1
+		 */
+		public int getPosition() {
+			return position;
+		}
+
+		/**
+		 * Get the estimated start time.
+		 * 
+		 * @return estimated start time. null if it's not known.
+		 */
+		public Date getEstimatedStartTime() {
+			return estimatedStartTime;
+		}
+	}
+
+	/**
+	 * Exponentially decayed usage.
+	 */
+	private static final class Usage {
+		private double value = 0;
+
+		private long time = 0;
+
+		double get(long now) {
+			return value * Math.pow(0.5, (double) Math.max(now - time, 0) / USAGE_HALF_LIFE);
+		}
+
+		void add(double amount, long now) {
+			value = get(now) + amount;
+			time = now;
+		}
+	}
+
+	/**
+	 * Changes of the available agent count over time.
+	 */
+	private static final class AgentTimeline {
+		private final Map<Long, Integer> changes = new HashMap<Long, Integer>();
+
+		void add(long time, int delta) {
+			Integer current = changes.get(time);
+			changes.put(time, (current == null ? 0 : current) + delta);
+		}
+
+		int getAvailable(int free, long time) {
+			int available = free;
+			for (Map.Entry<Long, Integer> each : changes.entrySet()) {
+				if (each.getKey() <= time) {
+					available += each.getValue();
+				}
+			}
+			return available;
+		}
+
+		/**
+		 * Get the minimum available count in [from, from + duration). The duration is infinite
+		 * when it's null.
+		 */
+		int getMinimumAvailable(int free, long from, Long duration) {
+			int minimum = getAvailable(free, from);
+			for (Long each : changes.keySet()) {
+				if (each > from && (duration == null || each < from + duration)) {
+					minimum = Math.min(minimum, getAvailable(free, each));
+				}
+			}
+			return minimum;
+		}
+
+		/**
+		 * Find the earliest time from the given time when the needed agents are available during
+		 * the given duration.
+		 */
+		Long findStartTime(int free, int need, long from, Long duration) {
+			TreeSet<Long> candidates = new TreeSet<Long>();
+			candidates.add(from);
+			for (Long each : changes.keySet()) {
+				if (each > from) {
+					candidates.add(each);
+				}
+			}
+			for (Long each : candidates) {
+				if (getMinimumAvailable(free, each, duration) >= need) {
+					return each;
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,307 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang.StringUtils;
+import org.ngrinder.model.PerfTest;
+import org.ngrinder.model.User;
+import org.ngrinder.perftest.repository.PerfTestRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory inverted index to search {@link PerfTest}s without scanning the table.
+ * 
+ * The test name, description, comment, tags, script name and target hosts of each test are
+ * indexed by their trigrams. A query finds the tests having all trigrams of the query string and
+ * then checks if they really contain it, so the result is same as the case insensitive substring
+ * match which the LIKE query used to do. The queries shorter than a trigram are matched against
+ * the indexed text directly.
+ * 
+ * The owner of each test is kept as well so that the tests of a user are filtered before the
+ * result is limited.
+ * 
+ * The index is loaded from DB when it's searched first and is updated by {@link PerfTestService}
+ * when a test is saved or deleted.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+@Component
+public class PerfTestSearchIndex {
+
+	private static final int GRAM_SIZE = 3;
+
+	private static final char FIELD_SEPARATOR = '\n';
+
+	@Autowired
+	private PerfTestRepository perfTestRepository;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/** Indexed text of each test, keyed by the test id. */
+	private final TreeMap<Long, String> documents = new TreeMap<Long, String>();
+
+	/** Ids of the tests containing each trigram. */
+	private final Map<String, TreeSet<Long>> postings = new HashMap<String, TreeSet<Long>>();
+
+	/** User id of the owner of each test, keyed by the test id. */
+	private final Map<Long, String> owners = new HashMap<Long, String>();
+
+	private boolean loaded = false;
+
+	private Date lastRefreshTime;
+
+	/**
+	 * Index the given test. The previous index of the test is replaced.
+	 * 
+	 * @param perfTest
+	 *            test to be indexed
+	 */
+	public void index(PerfTest perfTest) {
+		if (perfTest == null || perfTest.getId() == null) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			// Not loaded yet. It will be indexed when it's loaded from DB.
+			if (loaded) {
+				User owner = perfTest.getCreatedUser();
+				put(perfTest.getId(), owner == null ? null : owner.getUserId(), perfTest.getTestName(),
+								perfTest.getDescription(), perfTest.getTestComment(), perfTest.getTagString(),
+								perfTest.getScriptName(), perfTest.getTargetHosts());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove the test on the given id from the index.
+	 * 
+	 * @param id
+	 *            test id
+	 */
+	public void remove(Long id) {
+		lock.writeLock().lock();
+		try {
+			removeDocument(id);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Search the tests containing the given query string. The result is paged by the id so that the
+	 * next page starts just below the last id of the previous page.
+	 * 
+	 * @param query
+	 *            query string
+	 * @param beforeId
+	 *            only the tests whose id is smaller than it are searched. null for the first page.
+	 * @param limit
+	 *            max count of the ids
+	 * @return ids of the found tests in descending order
+	 */
+	public List<Long> search(String query, Long beforeId, int limit) {
+		return search(query, null, beforeId, true, limit);
+	}
+
+	/**
+	 * Search the tests of the given owner containing the given query string. The result is paged by
+	 * the id so that the next page starts just next to the last id of the previous page.
+	 * 
+	 * @param query
+	 *            query string
+	 * @param owner
+	 *            user id of the owner. null for the tests of all users.
+	 * @param fromId
+	 *            only the tests whose id is smaller (or larger if not older) than it are searched.
+	 *            null for the first page.
+	 * @param older
+	 *            true if the ids smaller than fromId are searched in descending order, false if the
+	 *            larger ones are searched in ascending order
+	 * @param limit
+	 *            max count of the ids
+	 * @return ids of the found tests
+	 */
+	public List<Long> search(String query, String owner, Long fromId, boolean older, int limit) {
+		load();
+		String normalized = StringUtils.lowerCase(StringUtils.defaultString(query));
+		List<Long> result = new ArrayList<Long>();
+		lock.readLock().lock();
+		try {
+			// Walk the smallest posting list and probe the others.
+			NavigableSet<Long> walked = documents.navigableKeySet();
+			List<TreeSet<Long>> probed = new ArrayList<TreeSet<Long>>();
+			if (normalized.length() >= GRAM_SIZE) {
+				walked = null;
+				for (String each : toGrams(normalized)) {
+					TreeSet<Long> ids = postings.get(each);
+					if (ids == null) {
+						return result;
+					}
+					if (walked == null || ids.size() < walked.size()) {
+						walked = ids;
+					}
+					probed.add(ids);
+				}
+			}
+			for (Long each : subSet(walked, fromId, older)) {
+				if (result.size() >= limit) {
+					break;
+				}
+				if ((owner == null || owner.equals(owners.get(each))) && containsAll(probed, each)
+								&& documents.get(each).contains(normalized)) {
+					result.add(each);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	private static boolean containsAll(List<TreeSet<Long>> probed, Long id) {
+		for (TreeSet<Long> each : probed) {
+			if (!each.contains(id)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static NavigableSet<Long> subSet(NavigableSet<Long> ids, Long fromId, boolean older) {
+		if (older) {
+			return (fromId == null ? ids : ids.headSet(fromId, false)).descendingSet();
+		}
+		return fromId == null ? ids : ids.tailSet(fromId, false);
+	}
+
+	/**
+	 * Re-index the tests modified since the last refresh. In cluster mode, the tests are saved by
+	 * the other controllers as well.
+	 */
+	public void refresh() {
+		Date now = new Date();
+		Date since;
+		lock.readLock().lock();
+		try {
+			if (!loaded) {
+				return;
+			}
+			since = lastRefreshTime;
+		} finally {
+			lock.readLock().unlock();
+		}
+		List<Object[]> modified = perfTestRepository.findAllSearchFieldsModifiedAfter(since);
+		lock.writeLock().lock();
+		try {
+			putAll(modified);
+			lastRefreshTime = now;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void load() {
+		lock.readLock().lock();
+		try {
+			if (loaded) {
+				return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		lock.writeLock().lock();
+		try {
+			if (!loaded) {
+				lastRefreshTime = new Date();
+				putAll(perfTestRepository.findAllSearchFields());
+				loaded = true;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void putAll(List<Object[]> rows) {
+		for (Object[] each : rows) {
+			put((Long) each[0], (String) each[7], (String) each[1], (String) each[2], (String) each[3],
+							(String) each[4], (String) each[5], (String) each[6]);
+		}
+	}
+
+	private void put(Long id, String owner, String... fields) {
+		removeDocument(id);
+		owners.put(id, owner);
+		StringBuilder text = new StringBuilder();
+		for (String each : fields) {
+			if (StringUtils.isNotEmpty(each)) {
+				text.append(each.toLowerCase()).append(FIELD_SEPARATOR);
+			}
+		}
+		String document = text.toString();
+		documents.put(id, document);
+		for (String each : toGrams(document)) {
+			TreeSet<Long> ids = postings.get(each);
+			if (ids == null) {
+				ids = new TreeSet<Long>();
+				postings.put(each, ids);
+			}
+			ids.add(id);
+		}
+	}
+
+	private void removeDocument(Long id) {
+		String document = documents.remove(id);
+		owners.remove(id);
+		if (document == null) {
+			return;
+		}
+		for (String each : toGrams(document)) {
+			TreeSet<Long> ids = postings.get(each);
+			if (ids != null && ids.remove(id) && ids.isEmpty()) {
+				postings.remove(each);
+			}
+		}
+	}
+
+	private static Set<String> toGrams(String text) {
+		Set<String> grams = new TreeSet<String>();
+		for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+			String each = text.substring(i, i + GRAM_SIZE);
+			if (each.indexOf(FIELD_SEPARATOR) < 0) {
+				grams.add(each);
+			}
+		}
+		return grams;
+	}
+
+	void setPerfTestRepository(PerfTestRepository perfTestRepository) {
+		this.perfTestRepository = perfTestRepository;
+	}
+}
@@ -15,14 +15,12 @@ package org.ngrinder.perftest.service;
 
 import static org.ngrinder.common.util.Preconditions.checkNotEmpty;
 import static org.ngrinder.common.util.Preconditions.checkNotNull;
-import static org.ngrinder.model.Status.getProcessingOrTestingTestStatus;
 import static org.ngrinder.perftest.repository.PerfTestSpecification.createdBy;
 import static org.ngrinder.perftest.repository.PerfTestSpecification.hasTag;
 import static org.ngrinder.perftest.repository.PerfTestSpecification.idEmptyPredicate;
 import static org.ngrinder.perftest.repository.PerfTestSpecification.idEqual;
 import static org.ngrinder.perftest.repository.PerfTestSpecification.idRegionEqual;
 import static org.ngrinder.perftest.repository.PerfTestSpecification.idSetEqual;
-import static org.ngrinder.perftest.repository.PerfTestSpecification.likeTestNameOrDescription;
 import static org.ngrinder.perftest.repository.PerfTestSpecification.scheduledTimeNotEmptyPredicate;
 import static org.ngrinder.perftest.repository.PerfTestSpecification.statusSetEqual;
 
@@ -54,6 +52,8 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.ConcurrentHashMap;
 
+import javax.annotation.PreDestroy;
+import javax.script.Invocable;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
@@ -63,6 +63,7 @@ import net.grinder.StopReason;
 import net.grinder.common.GrinderProperties;
 import net.grinder.common.processidentity.AgentIdentity;
 import net.grinder.console.model.ConsoleProperties;
+import net.grinder.scriptengine.arrival.ArrivalRateProfile;
 import net.grinder.util.ConsolePropertiesFactory;
 import net.grinder.util.Directory;
 
@@ -72,22 +73,29 @@ import org.apache.commons.collections.Predicate;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.hibernate.Hibernate;
 import org.ngrinder.common.constant.NGrinderConstants;
 import org.ngrinder.common.exception.NGrinderRuntimeException;
+import org.ngrinder.common.metrics.MetricRegistry;
+import org.ngrinder.common.metrics.Timer;
 import org.ngrinder.infra.config.Config;
+import org.ngrinder.infra.schedule.RunOn;
 import org.ngrinder.model.PerfTest;
 import org.ngrinder.model.Permission;
 import org.ngrinder.model.Role;
 import org.ngrinder.model.Status;
+import org.ngrinder.model.StatusCategory;
 import org.ngrinder.model.Tag;
 import org.ngrinder.model.User;
 import org.ngrinder.monitor.controller.model.SystemDataModel;
+import org.ngrinder.perftest.model.PerfTestListItem;
 import org.ngrinder.perftest.model.PerfTestStatistics;
 import org.ngrinder.perftest.model.ProcessAndThread;
+import org.ngrinder.perftest.model.RunningPerfTest;
 import org.ngrinder.perftest.repository.PerfTestRepository;
 import org.ngrinder.script.model.FileEntry;
 import org.ngrinder.script.model.FileType;
@@ -96,11 +104,12 @@ import org.ngrinder.service.IPerfTestService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specifications;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -119,8 +128,26 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(PerfTestService.class);
 
+	private static final Timer MARK_PROGRESS_TIMER = MetricRegistry.getInstance().timer("ngrinder_perftest_mark",
+					"Time to save the status and the progress of a test into DB");
+
+	private static final Timer SAVE_STATISTICS_TIMER = MetricRegistry.getInstance().timer(
+					"ngrinder_perftest_statistics_save", "Time to save the statistics of a running test");
+
 	private static final String DATA_FILE_EXTENSION = ".data";
 
+	/** Count of the ids taken from the search index at once while a page of the query is filled. */
+	private static final int SEARCH_BATCH_SIZE = 1000;
+
+	/** Interval in which the buffered progress of the running tests is written into DB. */
+	private static final long PROGRESS_FLUSH_INTERVAL = 1000;
+
+	/** Time after which the progress entry of a test which is not marked anymore is dropped. */
+	private static final long PROGRESS_ENTRY_EXPIRY = 10 * 60 * 1000;
+
+	/** Interval in which the recorded process and thread calibration is written into the file. */
+	private static final long CALIBRATION_FLUSH_INTERVAL = 60000;
+
 	@Autowired
 	protected PerfTestRepository perfTestRepository;
 
@@ -130,6 +157,9 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	@Autowired
 	private AgentManager agentManager;
 
+	@Autowired
+	private PerfTestDispatcher perfTestDispatcher;
+
 	@Autowired
 	protected Config config;
 
@@ -139,13 +169,30 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	@Autowired
 	private TagService tagSerivce;
 
+	@Autowired
+	private PerfTestSearchIndex perfTestSearchIndex;
+
+	@Autowired
+	private RunningPerfTestRegistry runningPerfTestRegistry;
+
+	private AdaptiveProcessAndThreadPolicy adaptivePolicy;
+
+	/** The script engine in which the process and thread policy is evaluated. */
+	private ScriptEngine policyEngine;
+
+	/** The policy script which {@link #policyEngine} evaluated. */
+	private String policyEngineScript;
+
+	/** The progress of the tests marked by this service, keyed by the test id. */
+	private final ConcurrentHashMap<Long, ProgressEntry> progressEntries = new ConcurrentHashMap<Long, ProgressEntry>();
+
 	/**
 	 * Get {@link PerfTest} list on the user.
 	 * 
 	 * @param user
 	 *            user
 	 * @param query
-	 *            query string on test name or description
+	 *            query string on test name, description, comment, tags, script name or target hosts
 	 * @param tag
 	 *            seach tag.
 	 * @param queryFilter
@@ -155,6 +202,105 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 * @return found {@link PerfTest} list
 	 */
 	public Page<PerfTest> getPerfTestList(User user, String query, String tag, String queryFilter, Pageable pageable) {
+		Specifications<PerfTest> spec = createListSpec(user, tag, queryFilter);
+		if (StringUtils.isNotBlank(query)) {
+			// Arbitrary order needs all the matches.
+			List<Long> ids = searchPerfTestIds(user, query, null, true, Integer.MAX_VALUE);
+			if (ids.isEmpty()) {
+				return new PageImpl<PerfTest>(new ArrayList<PerfTest>());
+			}
+			spec = spec.and(idSetEqual(ids.toArray(new Long[ids.size()])));
+		}
+		return perfTestRepository.findAll(spec, pageable);
+	}
+
+	/**
+	 * Get {@link PerfTestListItem} list on the user from the newest. The page is located by the key
+	 * of the item next to it.
+	 * 
+	 * @param user
+	 *            user
+	 * @param query
+	 *            query string on test name, description, comment, tags, script name or target hosts
+	 * @param tag
+	 *            seach tag.
+	 * @param queryFilter
+	 *            "S" for querying scheduled test, "F" for querying finished test
+	 * @param createdDate
+	 *            created date of the item next to the page. null for the first page.
+	 * @param id
+	 *            id of the item next to the page. null for the first page.
+	 * @param older
+	 *            true if the page is older than the given item, false if newer
+	 * @param limit
+	 *            max count of the items
+	 * @return found {@link PerfTestListItem} list
+	 */
+	public List<PerfTestListItem> getPerfTestListItems(User user, String query, String tag, String queryFilter,
+					Date createdDate, Long id, boolean older, int limit) {
+		Specifications<PerfTest> spec = createListSpec(user, tag, queryFilter);
+		if (StringUtils.isBlank(query)) {
+			return perfTestRepository.findAllListItems(spec, createdDate, id, older, limit);
+		}
+		// Ids are given in the created order. So the matches are taken from the index batch by batch
+		// in the page direction until the page is filled.
+		List<PerfTestListItem> items = new ArrayList<PerfTestListItem>();
+		Long fromId = id;
+		while (items.size() < limit) {
+			List<Long> ids = searchPerfTestIds(user, query, fromId, older, SEARCH_BATCH_SIZE);
+			if (ids.isEmpty()) {
+				break;
+			}
+			Specifications<PerfTest> batchSpec = spec.and(idSetEqual(ids.toArray(new Long[ids.size()])));
+			List<PerfTestListItem> found = perfTestRepository.findAllListItems(batchSpec, createdDate, id, older,
+							limit - items.size());
+			// Each found list is in descending order and the newer batch is the later one.
+			items.addAll(older ? items.size() : 0, found);
+			if (ids.size() < SEARCH_BATCH_SIZE) {
+				break;
+			}
+			fromId = ids.get(ids.size() - 1);
+		}
+		return items;
+	}
+
+	/**
+	 * Search the ids of the tests which the given user can see and contain the given query string.
+	 * 
+	 * @param user
+	 *            user
+	 * @param query
+	 *            query string
+	 * @param fromId
+	 *            id next to the ids to be searched. null for the first page.
+	 * @param older
+	 *            true if the ids smaller than fromId are searched, false if the larger ones
+	 * @param limit
+	 *            max count of the ids
+	 * @return found ids
+	 */
+	private List<Long> searchPerfTestIds(User user, String query, Long fromId, boolean older, int limit) {
+		if (config.isCluster()) {
+			perfTestSearchIndex.refresh();
+		}
+		// User can see only his own test
+		String owner = user.getRole().equals(Role.USER) ? user.getUserId() : null;
+		return perfTestSearchIndex.search(query, owner, fromId, older, limit);
+	}
+
+	/**
+	 * Create the {@link Specifications} of the {@link PerfTest} list. The query string is not
+	 * included. It's searched in {@link PerfTestSearchIndex}.
+	 * 
+	 * @param user
+	 *            user
+	 * @param tag
+	 *            search tag
+	 * @param queryFilter
+	 *            "S" for querying scheduled test, "F" for querying finished test
+	 * @return {@link Specifications}
+	 */
+	private Specifications<PerfTest> createListSpec(User user, String tag, String queryFilter) {
 		Specifications<PerfTest> spec = Specifications.where(idEmptyPredicate());
 		// User can see only his own test
 		if (user.getRole().equals(Role.USER)) {
@@ -170,10 +316,7 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 			spec = spec.and(statusSetEqual(Status.READY));
 			spec = spec.and(scheduledTimeNotEmptyPredicate());
 		}
-		if (StringUtils.isNotBlank(query)) {
-			spec = spec.and(likeTestNameOrDescription(query));
-		}
-		return perfTestRepository.findAll(spec, pageable);
+		return spec;
 	}
 
 	/**
@@ -269,7 +412,18 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 		return perfTestRepository.findAll(spec);
 	}
 
-	private List<PerfTest> getPerfTest(User user, String region, Status... statuses) {
+	/**
+	 * Get {@link PerfTest} list of the given region and statuses.
+	 * 
+	 * @param user
+	 *            user. null if all users' tests are searched.
+	 * @param region
+	 *            region
+	 * @param statuses
+	 *            statuses
+	 * @return found {@link PerfTest} list
+	 */
+	protected List<PerfTest> getPerfTest(User user, String region, Status... statuses) {
 		Specifications<PerfTest> spec = Specifications.where(idEmptyPredicate());
 
 		// User can see only his own test
@@ -326,11 +480,20 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 		// Merge if necessary
 		if (perfTest.exist()) {
 			PerfTest existingPerfTest = perfTestRepository.findOne(perfTest.getId());
+			Status existingStatus = existingPerfTest.getStatus();
 			perfTest = existingPerfTest.merge(perfTest);
+			// The buffered progress is obsolete when the status is changed by this save.
+			mergePendingProgress(perfTest, perfTest.getStatus() != existingStatus);
 		} else {
 			perfTest.clearMessages();
 		}
-		return perfTestRepository.save(perfTest);
+		PerfTest saved = perfTestRepository.save(perfTest);
+		perfTestSearchIndex.index(saved);
+		runningPerfTestRegistry.update(saved);
+		if (saved.getStatus() == Status.READY) {
+			perfTestDispatcher.requestStart();
+		}
+		return saved;
 	}
 
 	/**
@@ -358,7 +521,7 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	public PerfTest markAbromalTermination(PerfTest perfTest, String reason) {
 		// Leave last status as test error cause
 		perfTest.setTestErrorCause(perfTest.getStatus());
-		return markStatusAndProgress(perfTest, Status.ABNORMAL_TESTING, reason);
+		return markStatusAndProgress(perfTest, Status.ABNORMAL_TESTING, reason, false);
 	}
 
 	/*
@@ -370,8 +533,15 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	@Transactional
 	@Override
 	public PerfTest markStatusAndProgress(PerfTest perfTest, Status status, String message) {
+		return markStatusAndProgress(perfTest, status, message, true);
+	}
+
+	private PerfTest markStatusAndProgress(PerfTest perfTest, Status status, String message, boolean coalescible) {
 		perfTest.setStatus(checkNotNull(status, "status should not be null"));
-		return markProgress(perfTest, message);
+		if (status == Status.ABNORMAL_TESTING) {
+			perfTestDispatcher.requestFinish();
+		}
+		return markProgress(perfTest, message, coalescible);
 	}
 
 	/**
@@ -385,11 +555,165 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 */
 	@Transactional
 	public PerfTest markProgress(PerfTest perfTest, String message) {
+		return markProgress(perfTest, message, true);
+	}
+
+	/**
+	 * Add a progress message on the given perfTest. Only the status and the progress messages are
+	 * buffered when the write can wait. The other fields are written only by the immediate writes.
+	 * So the callers which change the other fields should not let it wait.
+	 * 
+	 * @param perfTest
+	 *            perf test
+	 * @param message
+	 *            message to be recored.
+	 * @param coalescible
+	 *            false if the write should not wait
+	 * @return saved {@link PerfTest}
+	 */
+	private PerfTest markProgress(PerfTest perfTest, String message, boolean coalescible) {
 		checkNotNull(perfTest);
 		checkNotNull(perfTest.getId(), "perfTest should save Id");
 		perfTest.setLastProgressMessage(message);
 		LOGGER.debug("Progress : Test - {} : {}", perfTest.getId(), message);
-		return perfTestRepository.save(perfTest);
+		while (true) {
+			ProgressEntry entry = getProgressEntry(perfTest.getId());
+			synchronized (entry) {
+				if (entry.removed) {
+					// Pruned in the meantime.
+					continue;
+				}
+				entry.lastMarkedTime = System.currentTimeMillis();
+				if (coalescible && entry.isCoalescible(perfTest.getStatus())) {
+					// Written by flushProgress() with the later progress of the same test.
+					entry.setPending(perfTest);
+					return perfTest;
+				}
+				entry.clearPending();
+				PerfTest saved = saveProgress(perfTest);
+				runningPerfTestRegistry.update(saved);
+				entry.persistedStatus = saved.getStatus();
+				if (isFinished(saved.getStatus())) {
+					removeProgressEntry(perfTest.getId(), entry);
+				}
+				return saved;
+			}
+		}
+	}
+
+	/**
+	 * Write the progress buffered by {@link #markProgress(PerfTest, String)} into DB. Only the
+	 * status and the progress messages are updated so that the other fields written in the meantime
+	 * are kept. The entries of the tests which are deleted or not marked for a while are dropped.
+	 */
+	@Scheduled(fixedDelay = PROGRESS_FLUSH_INTERVAL)
+	@RunOn("housekeepingExecutor")
+	@Transactional
+	public void flushProgress() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<Long, ProgressEntry> each : progressEntries.entrySet()) {
+			ProgressEntry entry = each.getValue();
+			synchronized (entry) {
+				if (!entry.hasPending()) {
+					if (now - entry.lastMarkedTime > PROGRESS_ENTRY_EXPIRY) {
+						removeProgressEntry(each.getKey(), entry);
+					}
+					continue;
+				}
+				int updated;
+				long start = MARK_PROGRESS_TIMER.start();
+				try {
+					updated = perfTestRepository.updateProgress(each.getKey(), entry.pendingStatus,
+									entry.pendingProgressMessage, entry.pendingLastProgressMessage);
+				} finally {
+					MARK_PROGRESS_TIMER.stop(start);
+				}
+				if (updated == 0) {
+					removeProgressEntry(each.getKey(), entry);
+					continue;
+				}
+				runningPerfTestRegistry.updateStatus(each.getKey(), entry.pendingStatus);
+				entry.persistedStatus = entry.pendingStatus;
+				entry.clearPending();
+			}
+		}
+	}
+
+	/**
+	 * Merge the progress buffered for the given test into it, or discard it. It should be called
+	 * when the test is written by anything else than {@link #markProgress(PerfTest, String)} so
+	 * that the next flush doesn't overwrite the write.
+	 * 
+	 * @param perfTest
+	 *            test to be written
+	 * @param discard
+	 *            true if the buffered progress is obsolete
+	 */
+	private void mergePendingProgress(PerfTest perfTest, boolean discard) {
+		ProgressEntry entry = progressEntries.get(perfTest.getId());
+		if (entry == null) {
+			return;
+		}
+		synchronized (entry) {
+			if (discard) {
+				removeProgressEntry(perfTest.getId(), entry);
+			} else if (entry.hasPending()) {
+				entry.applyPending(perfTest);
+				entry.persistedStatus = entry.pendingStatus;
+				entry.clearPending();
+			}
+		}
+	}
+
+	private PerfTest saveProgress(PerfTest perfTest) {
+		long start = MARK_PROGRESS_TIMER.start();
+		try {
+			// Keep what the users changed after the caller loaded the test.
+			PerfTest current = perfTestRepository.findOne(perfTest.getId());
+			if (current != null) {
+				perfTest.setStopRequest(BooleanUtils.isTrue(current.getStopRequest()) ? Boolean.TRUE : perfTest
+								.getStopRequest());
+				perfTest.setTestComment(current.getTestComment());
+				perfTest.setTagString(current.getTagString());
+				perfTest.setTags(current.getTags());
+			}
+			// Flushed here so that the writes of a test reach DB in the order of the calls.
+			return perfTestRepository.saveAndFlush(perfTest);
+		} finally {
+			MARK_PROGRESS_TIMER.stop(start);
+		}
+	}
+
+	private ProgressEntry getProgressEntry(Long testId) {
+		ProgressEntry entry = progressEntries.get(testId);
+		if (entry == null) {
+			ProgressEntry newEntry = new ProgressEntry();
+			entry = progressEntries.putIfAbsent(testId, newEntry);
+			if (entry == null) {
+				entry = newEntry;
+			}
+		}
+		return entry;
+	}
+
+	private void removeProgressEntry(Long testId, ProgressEntry entry) {
+		entry.removed = true;
+		progressEntries.remove(testId, entry);
+	}
+
+	/**
+	 * Get the count of the tests whose progress is tracked for coalescing.
+	 * 
+	 * @return tracked test count
+	 */
+	int getProgressEntryCount() {
+		return progressEntries.size();
+	}
+
+	private static boolean isFinished(Status status) {
+		StatusCategory category = status.getCategory();
+		return category == StatusCategory.FINISHED || category == StatusCategory.ERROR
+						|| category == StatusCategory.STOP;
 	}
 
 	/**
@@ -441,8 +765,9 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	@Transactional
 	public PerfTest markPerfTestConsoleStart(PerfTest perfTest, int consolePort) {
 		perfTest.setPort(consolePort);
-		return markProgressAndStatus(perfTest, Status.START_CONSOLE_FINISHED, "Console is started on port "
-						+ consolePort);
+		// The port should be written at once.
+		return markStatusAndProgress(perfTest, Status.START_CONSOLE_FINISHED, "Console is started on port "
+						+ consolePort, false);
 	}
 
 	/*
@@ -477,9 +802,29 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 */
 	@Transactional
 	public PerfTest getPerfTestCandiate() {
-		List<PerfTest> readyPerfTests = perfTestRepository.findAllByStatusOrderByScheduledTimeAsc(Status.READY);
-		List<PerfTest> usersFirstPerfTests = filterCurrentlyRunningTestUsersTest(readyPerfTests);
-		return usersFirstPerfTests.isEmpty() ? null : readyPerfTests.get(0);
+		List<PerfTest> usersFirstPerfTests = getPerfTestCandiates();
+		return usersFirstPerfTests.isEmpty() ? null : usersFirstPerfTests.get(0);
+	}
+
+	/**
+	 * Get all runnable PerfTests in the order of the scheduled time. The tests of the users who are
+	 * running another test are excluded.
+	 * 
+	 * @return found {@link PerfTest} list
+	 */
+	@Transactional
+	public List<PerfTest> getPerfTestCandiates() {
+		return filterCurrentlyRunningTestUsersTest(getReadyPerfTests());
+	}
+
+	/**
+	 * Get all READY {@link PerfTest}s in the order of the scheduled time.
+	 * 
+	 * @return found {@link PerfTest} list
+	 */
+	@Transactional
+	public List<PerfTest> getReadyPerfTests() {
+		return perfTestRepository.findAllByStatusOrderByScheduledTimeAsc(Status.READY);
 	}
 
 	/**
@@ -488,7 +833,16 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 * @return running test list
 	 */
 	public List<PerfTest> getCurrentlyRunningTest() {
-		return getPerfTest(null, Status.getProcessingOrTestingTestStatus());
+		return getRunningPerfTests(null);
+	}
+
+	/**
+	 * Get currently running {@link PerfTest} list in the current region.
+	 * 
+	 * @return running test list
+	 */
+	public List<PerfTest> getCurrentlyRunningTestInRegion() {
+		return getCurrentlyRunningTest();
 	}
 
 	/**
@@ -499,9 +853,8 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 * @return filtered perf test
 	 */
 	protected List<PerfTest> filterCurrentlyRunningTestUsersTest(List<PerfTest> perfTestLists) {
-		List<PerfTest> currentlyRunningTests = getCurrentlyRunningTest();
 		final Set<User> currentlyRunningTestOwners = new HashSet<User>();
-		for (PerfTest each : currentlyRunningTests) {
+		for (RunningPerfTest each : runningPerfTestRegistry.getRunningPerfTests()) {
 			currentlyRunningTestOwners.add(each.getCreatedUser());
 		}
 		CollectionUtils.filter(perfTestLists, new Predicate() {
@@ -521,7 +874,7 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 */
 	@Override
 	public List<PerfTest> getTestingPerfTest() {
-		return getPerfTest(null, config.getRegion(), Status.getTestingTestStates());
+		return getRunningPerfTests(config.getRegion(), Status.getTestingTestStates());
 	}
 
 	/**
@@ -530,7 +883,41 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 * @return found {@link PerfTest} list
 	 */
 	public List<PerfTest> getAbnoramlTestingPerfTest() {
-		return getPerfTest(null, config.getRegion(), Status.ABNORMAL_TESTING);
+		return getRunningPerfTests(config.getRegion(), Status.ABNORMAL_TESTING);
+	}
+
+	/**
+	 * Get the running {@link PerfTest}s from {@link RunningPerfTestRegistry}. DB is not queried
+	 * when no test is running.
+	 * 
+	 * @param region
+	 *            region. null if the tests of all regions are searched.
+	 * @param statuses
+	 *            statuses. all running tests are searched if it's empty.
+	 * @return found {@link PerfTest} list
+	 */
+	protected List<PerfTest> getRunningPerfTests(String region, Status... statuses) {
+		List<Long> ids = new ArrayList<Long>();
+		for (RunningPerfTest each : runningPerfTestRegistry.getRunningPerfTests()) {
+			if ((region == null || region.equals(each.getRegion()))
+							&& (statuses.length == 0 || ArrayUtils.contains(statuses, each.getStatus()))) {
+				ids.add(each.getId());
+			}
+		}
+		if (ids.isEmpty()) {
+			return new ArrayList<PerfTest>();
+		}
+		List<PerfTest> perfTests = perfTestRepository.findAll(ids);
+		if (perfTests.size() != ids.size()) {
+			// The tests deleted without this service are dropped.
+			for (PerfTest each : perfTests) {
+				ids.remove(each.getId());
+			}
+			for (Long each : ids) {
+				runningPerfTestRegistry.remove(each);
+			}
+		}
+		return perfTests;
 	}
 
 	/**
@@ -556,6 +943,9 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 		}
 		perfTestRepository.save(perfTest);
 		perfTestRepository.delete(perfTest);
+		mergePendingProgress(perfTest, true);
+		perfTestSearchIndex.remove(perfTest.getId());
+		runningPerfTestRegistry.remove(perfTest.getId());
 		deletePerfTestDirectory(perfTest);
 	}
 
@@ -678,6 +1068,20 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 			} else {
 				grinderProperties.setInt(GRINDER_PROP_PROCESS_INCREMENT, 0);
 			}
+			if (BooleanUtils.isTrue(perfTest.getUseArrivalRate())) {
+				// The profile of the whole test. It is split among the agents by the agent manager
+				// and again among processes in the agent, so all processes should start together.
+				grinderProperties.setProperty(NGRINDER_PROP_ARRIVAL_RATE_PROFILE,
+								ArrivalRateProfile.parse(perfTest.getArrivalRateProfile()).toString());
+				grinderProperties.setInt(GRINDER_PROP_PROCESS_INCREMENT, 0);
+			} else {
+				grinderProperties.remove(NGRINDER_PROP_ARRIVAL_RATE_PROFILE);
+			}
+			if (BooleanUtils.isTrue(perfTest.getUseAsyncVuser())) {
+				grinderProperties.setInt(NGRINDER_PROP_ASYNC_VUSERS, perfTest.getAsyncVuserPerProcess());
+			} else {
+				grinderProperties.remove(NGRINDER_PROP_ASYNC_VUSERS);
+			}
 			// grinderProperties.setProperty(GRINDER_PROP_JVM_ARGUMENTS, "-Xms256m -Xmx512m");
 			grinderProperties.setProperty(GRINDER_PROP_JVM_CLASSPATH, getCustomClassPath(perfTest));
 			grinderProperties.setInt(GRINDER_PROP_IGNORE_SAMPLE_COUNT, perfTest.getIgnoreSampleCount());
@@ -751,12 +1155,24 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	}
 
 	/**
-	 * Get the process and thread policy java script.
+	 * Get the process and thread policy java script which can be run in the browser. The
+	 * {@link AdaptiveProcessAndThreadPolicy} functions and the max process counts of the current
+	 * agents for each vuser band are placed ahead of the policy in the ngrinder home.
 	 * 
 	 * @return policy javascript
 	 */
 	public String getProcessAndThreadPolicyScript() {
-		return config.getProcessAndThreadPolicyScript();
+		int maxBand = AdaptiveProcessAndThreadPolicy.getVuserBand(agentManager.getMaxVuserPerAgent());
+		StringBuilder maxProcessCounts = new StringBuilder();
+		int maxProcessCount = AdaptiveProcessAndThreadPolicy.DEFAULT_MAX_PROCESS_COUNT;
+		for (int band = 1; band > 0 && band <= maxBand; band = band * 2) {
+			maxProcessCount = getAdaptiveMaxProcessCount(band);
+			maxProcessCounts.append(maxProcessCounts.length() == 0 ? "" : ", ").append(band).append(": ")
+							.append(maxProcessCount);
+		}
+		return "var " + AdaptiveProcessAndThreadPolicy.VAR_MAX_PROCESS_COUNT + " = " + maxProcessCount + ";\n"
+						+ "var " + AdaptiveProcessAndThreadPolicy.VAR_MAX_PROCESS_COUNTS + " = {" + maxProcessCounts
+						+ "};\n" + AdaptiveProcessAndThreadPolicy.SCRIPT + config.getProcessAndThreadPolicyScript();
 	}
 
 	/**
@@ -768,19 +1184,101 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 * @return optimal process thread count
 	 */
 	public ProcessAndThread calcProcessAndThread(int newVuser) {
+		int maxProcessCount = getAdaptiveMaxProcessCount(newVuser);
 		try {
-			String script = getProcessAndThreadPolicyScript();
-			ScriptEngine engine = new ScriptEngineManager().getEngineByName("javascript");
-			engine.eval(script);
-			int processCount = ((Double) engine.eval("getProcessCount(" + newVuser + ")")).intValue();
-			int threadCount = ((Double) engine.eval("getThreadCount(" + newVuser + ")")).intValue();
-			return new ProcessAndThread(processCount, threadCount);
+			synchronized (this) {
+				Invocable policy = getPolicyEngine();
+				policyEngine.put(AdaptiveProcessAndThreadPolicy.VAR_MAX_PROCESS_COUNT, maxProcessCount);
+				int processCount = ((Number) policy.invokeFunction("getProcessCount", newVuser)).intValue();
+				int threadCount = ((Number) policy.invokeFunction("getThreadCount", newVuser)).intValue();
+				return new ProcessAndThread(processCount, threadCount);
+			}
 		} catch (ScriptException e) {
 			LOGGER.error("Error occurs while calc process and thread", e);
+		} catch (NoSuchMethodException e) {
+			LOGGER.error("Error occurs while calc process and thread", e);
 		}
 		return new ProcessAndThread(1, 1);
 	}
 
+	/**
+	 * Get the script engine in which the policy is evaluated. The policy is evaluated again only
+	 * when the policy file is changed.
+	 * 
+	 * @return policy engine
+	 * @throws ScriptException
+	 *             if the policy is malformed
+	 */
+	private Invocable getPolicyEngine() throws ScriptException {
+		String script = config.getProcessAndThreadPolicyScript();
+		if (policyEngine == null || !script.equals(policyEngineScript)) {
+			ScriptEngine engine = new ScriptEngineManager().getEngineByName("javascript");
+			engine.put(AdaptiveProcessAndThreadPolicy.VAR_MAX_PROCESS_COUNT,
+							AdaptiveProcessAndThreadPolicy.DEFAULT_MAX_PROCESS_COUNT);
+			engine.eval(AdaptiveProcessAndThreadPolicy.SCRIPT);
+			engine.eval(script);
+			policyEngine = engine;
+			policyEngineScript = script;
+		}
+		return (Invocable) policyEngine;
+	}
+
+	/**
+	 * Get the max process count which the smallest approved agent can run.
+	 * 
+	 * @param vuser
+	 *            vuser count per agent
+	 * @return max process count
+	 */
+	int getAdaptiveMaxProcessCount(int vuser) {
+		int maxProcessCount = Integer.MAX_VALUE;
+		for (AgentIdentity each : agentManager.getAllApprovedAgents()) {
+			SystemDataModel systemDataModel = agentManager.getSystemDataModel(each);
+			if (AdaptiveProcessAndThreadPolicy.getAgentClass(systemDataModel) != null) {
+				maxProcessCount = Math.min(maxProcessCount,
+								getAdaptivePolicy().getMaxProcessCount(systemDataModel, vuser));
+			}
+		}
+		return maxProcessCount == Integer.MAX_VALUE ? AdaptiveProcessAndThreadPolicy.DEFAULT_MAX_PROCESS_COUNT
+						: maxProcessCount;
+	}
+
+	private synchronized AdaptiveProcessAndThreadPolicy getAdaptivePolicy() {
+		if (adaptivePolicy == null) {
+			adaptivePolicy = new AdaptiveProcessAndThreadPolicy(config.getHome().getSubFile(
+							"process_and_thread_calibration.properties"));
+		}
+		return adaptivePolicy;
+	}
+
+	/**
+	 * Record the process and thread split of the finished test as a calibration of the adaptive
+	 * policy. Only the test run on a single agent is recorded because the tps can not be told
+	 * apart by agent.
+	 * 
+	 * @param perfTest
+	 *            finished test
+	 */
+	public void recordProcessAndThreadCalibration(PerfTest perfTest) {
+		if (perfTest.getAgentCount() == null || perfTest.getAgentCount() != 1 || perfTest.getTps() == null) {
+			return;
+		}
+		for (SystemDataModel each : getAgentInfo(perfTest).values()) {
+			getAdaptivePolicy().record(each, perfTest.getProcesses(), perfTest.getThreads(), perfTest.getTps());
+		}
+	}
+
+	/**
+	 * Write the process and thread calibration recorded by
+	 * {@link #recordProcessAndThreadCalibration(PerfTest)} into the ngrinder home.
+	 */
+	@Scheduled(fixedDelay = CALIBRATION_FLUSH_INTERVAL)
+	@RunOn("housekeepingExecutor")
+	@PreDestroy
+	public void flushProcessAndThreadCalibration() {
+		getAdaptivePolicy().flush();
+	}
+
 	/**
 	 * get the data point interval of report data. Use dataPointCount / imgWidth as the interval. if
 	 * interval is 1, it means we will get all point from report. If interval is 2, it means we will
@@ -986,8 +1484,13 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 * @return statistic map statistic data map of the test in that console
 	 */
 	public void saveStatistics(SingleConsole singleConsole, PerfTest perfTest) {
-		writeObjectToFile(new File(getPerfTestStatisticPath(perfTest), "statistics.stat"),
-						singleConsole.getStatictisData());
+		long start = SAVE_STATISTICS_TIMER.start();
+		try {
+			writeObjectToFile(new File(getPerfTestStatisticPath(perfTest), "statistics.stat"),
+							singleConsole.getStatictisData());
+		} finally {
+			SAVE_STATISTICS_TIMER.stop(start);
+		}
 	}
 
 	/**
@@ -1014,7 +1517,7 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 *            perfTest
 	 * @return agent system data map map containing all agents which connected to that console.
 	 */
-	public void saveAgentsInfo(SingleConsole singleConsole, PerfTest perfTest) {
+	public Map<AgentIdentity, SystemDataModel> saveAgentsInfo(SingleConsole singleConsole, PerfTest perfTest) {
 		List<AgentIdentity> allAttachedAgents = singleConsole.getAllAttachedAgents();
 		Map<AgentIdentity, SystemDataModel> result = new HashMap<AgentIdentity, SystemDataModel>();
 		Set<AgentIdentity> allControllerAgents = agentManager.getAllAttachedAgents();
@@ -1026,6 +1529,7 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 			}
 		}
 		writeObjectToFile(new File(getPerfTestStatisticPath(perfTest), "agent_info.stat"), result);
+		return result;
 	}
 
 	public Map<AgentIdentity, SystemDataModel> getAgentInfo(PerfTest perfTest) {
@@ -1162,7 +1666,7 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 * @return true if possible
 	 */
 	public boolean canExecuteTestMore() {
-		return getPerfTestCount(null, Status.getProcessingOrTestingTestStatus()) < getMaximumConcurrentTestCount();
+		return runningPerfTestRegistry.getRunningPerfTests().size() < getMaximumConcurrentTestCount();
 	}
 
 	/*
@@ -1184,9 +1688,11 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 			return;
 		}
 		// Just mark cancel on console
-		consoleManager.getConsoleUsingPort(perfTest.getPort()).cancel();
+		consoleManager.getConsoleUsingTest(perfTest).cancel();
 		perfTest.setStopRequest(true);
+		mergePendingProgress(perfTest, false);
 		perfTestRepository.save(perfTest);
+		perfTestDispatcher.requestFinish();
 	}
 
 	/**
@@ -1217,7 +1723,7 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 */
 	@Override
 	public List<PerfTest> getStopRequestedPerfTest() {
-		final List<PerfTest> perfTests = getPerfTest(null, config.getRegion(), getProcessingOrTestingTestStatus());
+		final List<PerfTest> perfTests = getRunningPerfTests(config.getRegion());
 		CollectionUtils.filter(perfTests, new Predicate() {
 			@Override
 			public boolean evaluate(Object object) {
@@ -1240,7 +1746,9 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 		perfTest.setTestComment(testComment);
 		perfTest.setTagString(tagString);
 		perfTest.setTags(tagSerivce.addTags(user, StringUtils.split(StringUtils.trimToEmpty(tagString), ",")));
+		mergePendingProgress(perfTest, false);
 		perfTestRepository.save(perfTest);
+		perfTestSearchIndex.index(perfTest);
 	}
 
 	/**
@@ -1248,12 +1756,10 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 	 * 
 	 * @return PerfTestStatisticsList PerfTestStatistics list
 	 */
-	@Cacheable("current_perftest_statistics")
-	@Transactional
 	public Collection<PerfTestStatistics> getCurrentPerfTestStatistics() {
 		Map<User, PerfTestStatistics> perfTestPerUser = new HashMap<User, PerfTestStatistics>();
-		for (PerfTest each : getPerfTest(null, getProcessingOrTestingTestStatus())) {
-			User lastModifiedUser = each.getLastModifiedUser().getUserBaseInfo();
+		for (RunningPerfTest each : runningPerfTestRegistry.getRunningPerfTests()) {
+			User lastModifiedUser = each.getLastModifiedUser();
 			PerfTestStatistics perfTestStatistics = perfTestPerUser.get(lastModifiedUser);
 			if (perfTestStatistics == null) {
 				perfTestStatistics = new PerfTestStatistics(lastModifiedUser);
@@ -1293,6 +1799,11 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 		perfTestRepository.flush();
 		perfTestRepository.delete(perfTestList);
 		perfTestRepository.flush();
+		for (PerfTest each : perfTestList) {
+			mergePendingProgress(each, true);
+			perfTestSearchIndex.remove(each.getId());
+			runningPerfTestRegistry.remove(each.getId());
+		}
 		tagSerivce.deleteTags(user);
 		return perfTestList;
 	}
@@ -1313,4 +1824,61 @@ public class PerfTestService implements NGrinderConstants, IPerfTestService {
 		perfTestRepository.save(perfTests);
 	}
 
+	/**
+	 * Progress of a running test which is not written into DB yet.
+	 */
+	private static final class ProgressEntry {
+		/** The status last written into DB. null if it's not written by this service yet. */
+		private Status persistedStatus;
+
+		/** The status to be written by the next flush. null if nothing is pending. */
+		private Status pendingStatus;
+
+		private String pendingProgressMessage;
+
+		private String pendingLastProgressMessage;
+
+		private long lastMarkedTime = System.currentTimeMillis();
+
+		/** True if this entry is dropped from the entry map. */
+		private boolean removed = false;
+
+		/**
+		 * Check if the progress with the given status can wait for the next flush. Only the
+		 * progress messages and the transitions between the start-up steps can wait. The others
+		 * change what the status queries return, so they are written at once.
+		 */
+		boolean isCoalescible(Status status) {
+			if (persistedStatus == null) {
+				return false;
+			}
+			return status == persistedStatus
+							|| (status.getCategory() == StatusCategory.PROGRESSING && persistedStatus.getCategory()
+											== StatusCategory.PROGRESSING);
+		}
+
+		boolean hasPending() {
+			return pendingStatus != null;
+		}
+
+		void setPending(PerfTest perfTest) {
+			pendingStatus = perfTest.getStatus();
+			pendingProgressMessage = perfTest.getProgressMessage();
+			pendingLastProgressMessage = perfTest.getLastProgressMessage();
+		}
+
+		void clearPending() {
+			pendingStatus = null;
+			pendingProgressMessage = null;
+			pendingLastProgressMessage = null;
+		}
+
+		void applyPending(PerfTest perfTest) {
+			perfTest.setStatus(pendingStatus);
+			perfTest.clearLastProgressMessage();
+			perfTest.setLastProgressMessage(pendingLastProgressMessage);
+			// Overwrites what setLastProgressMessage() appended.
+			perfTest.setProgressMessage(pendingProgressMessage);
+		}
+	}
 }
@@ -0,0 +1,220 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import static org.ngrinder.common.util.TypeConvertUtil.convert;
+import static org.ngrinder.model.Status.getProcessingOrTestingTestStatus;
+import static org.ngrinder.perftest.repository.PerfTestSpecification.statusSetEqual;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import net.sf.ehcache.Ehcache;
+
+import org.ngrinder.common.constant.NGrinderConstants;
+import org.ngrinder.model.PerfTest;
+import org.ngrinder.model.Status;
+import org.ngrinder.model.StatusCategory;
+import org.ngrinder.perftest.model.RunningPerfTest;
+import org.ngrinder.perftest.repository.PerfTestRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Registry of the {@link PerfTest}s in the processing or testing status.
+ * 
+ * {@link PerfTestService} updates it on every status change, so that the running tests are found
+ * without querying DB by the statuses. The changes made in a transaction are applied when it's
+ * committed, so that the registry never shows what's rolled back. The entries are kept in the
+ * "running_perftests" cache, which is replicated among the controllers in the cluster mode. The
+ * registry is loaded from DB when it's used first.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+@Component
+public class RunningPerfTestRegistry {
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private PerfTestRepository perfTestRepository;
+
+	private Cache cache;
+
+	private volatile boolean loaded = false;
+
+	/** Executor which applies the changes. It defers them until the current transaction commits. */
+	static final Executor AFTER_COMMIT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(final Runnable update) {
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+					@Override
+					public void afterCommit() {
+						update.run();
+					}
+				});
+			} else {
+				update.run();
+			}
+		}
+	};
+
+	private Executor updateExecutor = AFTER_COMMIT_EXECUTOR;
+
+	/**
+	 * Update the entry of the given test depending on its status.
+	 * 
+	 * @param perfTest
+	 *            perf test whose status may be changed
+	 */
+	public void update(PerfTest perfTest) {
+		if (perfTest.getId() == null || perfTest.getStatus() == null) {
+			return;
+		}
+		final Long id = perfTest.getId();
+		// The snapshot is taken now because the entity may be changed until the commit.
+		final RunningPerfTest runningPerfTest = isRunning(perfTest.getStatus()) ? new RunningPerfTest(perfTest) : null;
+		runAfterCommit(new Runnable() {
+			@Override
+			public void run() {
+				put(id, runningPerfTest);
+			}
+		});
+	}
+
+	/**
+	 * Update the status of the entry of the given test. It's used when only the status is written.
+	 * 
+	 * @param id
+	 *            test id
+	 * @param status
+	 *            written status
+	 */
+	public void updateStatus(final Long id, final Status status) {
+		runAfterCommit(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (RunningPerfTestRegistry.this) {
+					ValueWrapper valueWrapper = getCache().get(id);
+					if (valueWrapper == null || valueWrapper.get() == null) {
+						return;
+					}
+					RunningPerfTest runningPerfTest = (RunningPerfTest) valueWrapper.get();
+					put(id, isRunning(status) ? runningPerfTest.withStatus(status) : null);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Remove the entry of the deleted test.
+	 * 
+	 * @param id
+	 *            test id
+	 */
+	public void remove(final Long id) {
+		runAfterCommit(new Runnable() {
+			@Override
+			public void run() {
+				put(id, null);
+			}
+		});
+	}
+
+	private void runAfterCommit(Runnable update) {
+		updateExecutor.execute(update);
+	}
+
+	/**
+	 * Set the executor which applies the changes. The tests whose transactions are never
+	 * committed set the one which applies them at once.
+	 * 
+	 * @param updateExecutor
+	 *            executor
+	 */
+	void setUpdateExecutor(Executor updateExecutor) {
+		this.updateExecutor = updateExecutor;
+	}
+
+	private synchronized void put(Long id, RunningPerfTest runningPerfTest) {
+		if (runningPerfTest == null) {
+			getCache().evict(id);
+		} else {
+			getCache().put(id, runningPerfTest);
+		}
+	}
+
+	/**
+	 * Get all running tests.
+	 * 
+	 * @return running test list
+	 */
+	public List<RunningPerfTest> getRunningPerfTests() {
+		if (!loaded) {
+			reload();
+		}
+		List<RunningPerfTest> runningPerfTests = new ArrayList<RunningPerfTest>();
+		for (Long each : getIds()) {
+			ValueWrapper valueWrapper = getCache().get(each);
+			if (valueWrapper != null && valueWrapper.get() != null) {
+				runningPerfTests.add((RunningPerfTest) valueWrapper.get());
+			}
+		}
+		return runningPerfTests;
+	}
+
+	/**
+	 * Replace all entries with the running tests in DB.
+	 */
+	public synchronized void reload() {
+		Set<Long> runningIds = new HashSet<Long>();
+		for (PerfTest each : perfTestRepository.findAll(statusSetEqual(getProcessingOrTestingTestStatus()))) {
+			getCache().put(each.getId(), new RunningPerfTest(each));
+			runningIds.add(each.getId());
+		}
+		for (Long each : getIds()) {
+			if (!runningIds.contains(each)) {
+				getCache().evict(each);
+			}
+		}
+		loaded = true;
+	}
+
+	private boolean isRunning(Status status) {
+		StatusCategory category = status.getCategory();
+		return category == StatusCategory.PROGRESSING || category == StatusCategory.TESTING;
+	}
+
+	private List<Long> getIds() {
+		return convert(((Ehcache) getCache().getNativeCache()).getKeys());
+	}
+
+	private Cache getCache() {
+		if (cache == null) {
+			cache = cacheManager.getCache(NGrinderConstants.CACHE_NAME_RUNNING_PERFTESTS);
+		}
+		return cache;
+	}
+}
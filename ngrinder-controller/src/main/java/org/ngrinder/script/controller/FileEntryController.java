@@ -18,7 +18,6 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -49,9 +48,6 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
-
 /**
  * FileEntry manipulation controller.
  * 
@@ -273,16 +269,9 @@ public class FileEntryController extends NGrinderBaseController {
 	 * @return script/scriptList
 	 */
 	@RequestMapping(value = "/search/**")
-	public String searchFileEntity(User user, @RequestParam(required = true, value = "query") final String query,
+	public String searchFileEntity(User user, @RequestParam(required = true, value = "query") String query,
 					ModelMap model) {
-		Collection<FileEntry> searchResult = Collections2.filter(fileEntryService.getAllFileEntries(user),
-						new Predicate<FileEntry>() {
-							@Override
-							public boolean apply(FileEntry input) {
-								return input.getPath().contains(query);
-							}
-						});
-		model.addAttribute("files", searchResult);
+		model.addAttribute("files", fileEntryService.searchFileEntries(user, query));
 		model.addAttribute("currentPath", "");
 		return "script/scriptList";
 	}
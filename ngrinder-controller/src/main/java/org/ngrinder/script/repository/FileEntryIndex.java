@@ -0,0 +1,422 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.script.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.ngrinder.common.util.EncodingUtil;
+import org.ngrinder.script.model.FileEntry;
+import org.ngrinder.script.model.FileType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * Index of the files in a user repository.
+ * 
+ * The index keeps the path, size, revision, type, encoding and properties of every file at the
+ * last indexed revision, and it's saved in a file outside of the repository so that it survives
+ * restarts. When the repository is ahead of the index, only the paths changed in the newer
+ * revisions are read again. The index is built from the scratch only when it's missing or it
+ * doesn't belong to the repository anymore.
+ * 
+ * The content of a file is not read as a whole. The encoding is taken from the charset of the
+ * svn:mime-type property, or detected from the first {@link #ENCODING_DETECTION_SIZE} bytes.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class FileEntryIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FileEntryIndex.class);
+
+	/**
+	 * Count of the bytes from which the encoding of a file is detected.
+	 */
+	static final int ENCODING_DETECTION_SIZE = 8 * 1024;
+
+	private static final String DEFAULT_ENCODING = "UTF-8";
+
+	private static final String CHARSET_PARAMETER = "charset=";
+
+	private final File indexFile;
+
+	private boolean loaded = false;
+
+	private String uuid;
+
+	private long revision = -1;
+
+	private SortedMap<String, IndexedFile> files = new TreeMap<String, IndexedFile>();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param indexFile
+	 *            file in which the index is saved. It should not be in the repository directory.
+	 */
+	public FileEntryIndex(File indexFile) {
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Bring the index up to the latest revision of the given repository.
+	 * 
+	 * @param repo
+	 *            repository session on the indexed repository
+	 * @throws SVNException
+	 *             occurs when the repository is not readable
+	 */
+	public synchronized void update(SVNRepository repo) throws SVNException {
+		if (!loaded) {
+			load();
+			loaded = true;
+		}
+		String latestUuid = repo.getRepositoryUUID(true);
+		long latestRevision = repo.getLatestRevision();
+		if (latestRevision == revision && latestUuid.equals(uuid)) {
+			return;
+		}
+		if (revision < 0 || latestRevision < revision || !latestUuid.equals(uuid)) {
+			rebuild(repo, latestRevision);
+		} else {
+			applyChanges(repo, latestRevision);
+		}
+		uuid = latestUuid;
+		revision = latestRevision;
+		save();
+	}
+
+	/**
+	 * Get all indexed files.
+	 * 
+	 * @return {@link FileEntry} list in the path order
+	 */
+	public synchronized List<FileEntry> getFileEntries() {
+		List<FileEntry> fileEntries = new ArrayList<FileEntry>(files.size());
+		for (IndexedFile each : files.values()) {
+			fileEntries.add(each.toFileEntry());
+		}
+		return fileEntries;
+	}
+
+	/**
+	 * Get the indexed files whose path contains the given query.
+	 * 
+	 * @param query
+	 *            query
+	 * @return {@link FileEntry} list in the path order
+	 */
+	public synchronized List<FileEntry> search(String query) {
+		List<FileEntry> fileEntries = new ArrayList<FileEntry>();
+		for (IndexedFile each : files.values()) {
+			if (each.path.contains(query)) {
+				fileEntries.add(each.toFileEntry());
+			}
+		}
+		return fileEntries;
+	}
+
+	/**
+	 * Get the last indexed revision.
+	 * 
+	 * @return revision. -1 if not indexed yet.
+	 */
+	public synchronized long getRevision() {
+		return revision;
+	}
+
+	private void rebuild(SVNRepository repo, long latestRevision) throws SVNException {
+		LOG.info("Build the file index {} at revision {}", indexFile, latestRevision);
+		files = new TreeMap<String, IndexedFile>();
+		indexDirectory(repo, "", latestRevision, new HashMap<Long, SVNLogEntry>());
+	}
+
+	@SuppressWarnings("unchecked")
+	private void applyChanges(SVNRepository repo, long latestRevision) throws SVNException {
+		// The log should be fetched first. The repository can not be read in the log handler.
+		Collection<SVNLogEntry> logEntries = repo.log(new String[] { "" }, null, revision + 1, latestRevision,
+						true, false);
+		for (SVNLogEntry each : logEntries) {
+			Map<Long, SVNLogEntry> logs = new HashMap<Long, SVNLogEntry>();
+			logs.put(each.getRevision(), each);
+			// Parents come before their children in the path order.
+			for (SVNLogEntryPath changed : new TreeMap<String, SVNLogEntryPath>(each.getChangedPaths()).values()) {
+				applyChange(repo, changed, each.getRevision(), logs);
+			}
+		}
+	}
+
+	private void applyChange(SVNRepository repo, SVNLogEntryPath changed, long changedRevision,
+					Map<Long, SVNLogEntry> logs) throws SVNException {
+		String path = StringUtils.removeStart(changed.getPath(), "/");
+		char type = changed.getType();
+		if (type == SVNLogEntryPath.TYPE_DELETED || type == SVNLogEntryPath.TYPE_REPLACED) {
+			files.remove(path);
+			files.subMap(path + "/", path + "/\uffff").clear();
+		}
+		if (type == SVNLogEntryPath.TYPE_DELETED) {
+			return;
+		}
+		SVNDirEntry dirEntry = repo.info(path, changedRevision);
+		if (dirEntry == null) {
+			return;
+		}
+		if (dirEntry.getKind() == SVNNodeKind.FILE) {
+			indexFile(repo, path, changedRevision, changedRevision, dirEntry.getSize(), logs);
+		} else if (dirEntry.getKind() == SVNNodeKind.DIR && changed.getCopyPath() != null) {
+			// Files in a copied directory don't appear in the changed paths.
+			indexDirectory(repo, path, changedRevision, logs);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void indexDirectory(SVNRepository repo, String path, long readRevision, Map<Long, SVNLogEntry> logs)
+					throws SVNException {
+		LinkedList<String> directories = new LinkedList<String>();
+		directories.add(path);
+		while (!directories.isEmpty()) {
+			String directory = directories.removeFirst();
+			Collection<SVNDirEntry> dirEntries = repo.getDir(directory, readRevision, false, null);
+			for (SVNDirEntry each : dirEntries) {
+				String eachPath = directory.isEmpty() ? each.getName() : directory + "/" + each.getName();
+				if (each.getKind() == SVNNodeKind.DIR) {
+					directories.add(eachPath);
+				} else {
+					indexFile(repo, eachPath, readRevision, each.getRevision(), each.getSize(), logs);
+				}
+			}
+		}
+	}
+
+	private void indexFile(SVNRepository repo, String path, long readRevision, long committedRevision, long size,
+					Map<Long, SVNLogEntry> logs) throws SVNException {
+		IndexedFile file = new IndexedFile();
+		file.path = path;
+		file.revision = committedRevision;
+		file.fileSize = size;
+		file.fileType = FileType.getFileTypeByExtension(FilenameUtils.getExtension(path));
+		SVNProperties properties = new SVNProperties();
+		repo.getFile(path, readRevision, properties, null);
+		for (String name : properties.nameSet()) {
+			if (SVNProperty.isRegularProperty(name)) {
+				file.properties.put(name, properties.getStringValue(name));
+			}
+		}
+		if (file.fileType.isEditable()) {
+			file.encoding = getEncoding(repo, path, readRevision, properties.getStringValue(SVNProperty.MIME_TYPE));
+		}
+		SVNLogEntry log = getLog(repo, committedRevision, logs);
+		file.description = log.getMessage();
+		file.lastModifiedDate = log.getDate();
+		files.put(path, file);
+	}
+
+	private String getEncoding(SVNRepository repo, String path, long readRevision, String mimeType)
+					throws SVNException {
+		String charset = getCharset(mimeType);
+		if (charset != null) {
+			return charset;
+		}
+		PrefixOutputStream prefix = new PrefixOutputStream(ENCODING_DETECTION_SIZE);
+		try {
+			repo.getFile(path, readRevision, null, prefix);
+		} catch (SVNException e) {
+			// The transfer is stopped by the stream when the prefix is filled up.
+			if (!prefix.isFull()) {
+				throw e;
+			}
+		}
+		try {
+			return EncodingUtil.detectEncoding(prefix.toByteArray(), DEFAULT_ENCODING);
+		} catch (IOException e) {
+			return DEFAULT_ENCODING;
+		}
+	}
+
+	private static String getCharset(String mimeType) {
+		int index = StringUtils.indexOfIgnoreCase(mimeType, CHARSET_PARAMETER);
+		if (index < 0) {
+			return null;
+		}
+		String charset = StringUtils.remove(StringUtils.substringBefore(
+						mimeType.substring(index + CHARSET_PARAMETER.length()), ";"), '"').trim();
+		try {
+			return Charset.isSupported(charset) ? charset : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private SVNLogEntry getLog(SVNRepository repo, long logRevision, Map<Long, SVNLogEntry> logs)
+					throws SVNException {
+		SVNLogEntry log = logs.get(logRevision);
+		if (log == null) {
+			Collection<SVNLogEntry> logEntries = repo.log(new String[] { "" }, null, logRevision, logRevision,
+							false, true);
+			log = logEntries.iterator().next();
+			logs.put(logRevision, log);
+		}
+		return log;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void load() {
+		if (!indexFile.exists()) {
+			return;
+		}
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			String loadedUuid = (String) in.readObject();
+			long loadedRevision = in.readLong();
+			files = (SortedMap<String, IndexedFile>) in.readObject();
+			uuid = loadedUuid;
+			revision = loadedRevision;
+		} catch (Exception e) {
+			// The index will be rebuilt.
+			LOG.error("Error while loading the file index {} : {}", indexFile, e.getMessage());
+			files = new TreeMap<String, IndexedFile>();
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private void save() {
+		File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+		ObjectOutputStream out = null;
+		try {
+			indexFile.getParentFile().mkdirs();
+			out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeObject(uuid);
+			out.writeLong(revision);
+			out.writeObject(files);
+			out.close();
+			FileUtils.deleteQuietly(indexFile);
+			if (!tempFile.renameTo(indexFile)) {
+				throw new IOException("Fail to rename " + tempFile);
+			}
+		} catch (IOException e) {
+			// It will be caught up from the last saved revision.
+			LOG.error("Error while saving the file index {} : {}", indexFile, e.getMessage());
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * Output stream which keeps the first bytes written, and fails the transfer after them.
+	 */
+	private static class PrefixOutputStream extends OutputStream {
+		private final byte[] buffer;
+
+		private int count = 0;
+
+		PrefixOutputStream(int size) {
+			buffer = new byte[size];
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			int copied = Math.min(len, buffer.length - count);
+			System.arraycopy(b, off, buffer, count, copied);
+			count += copied;
+			if (copied < len) {
+				throw new IOException("The prefix is full");
+			}
+		}
+
+		boolean isFull() {
+			return count == buffer.length;
+		}
+
+		byte[] toByteArray() {
+			byte[] bytes = new byte[count];
+			System.arraycopy(buffer, 0, bytes, 0, count);
+			return bytes;
+		}
+	}
+
+	/**
+	 * Indexed attributes of a file.
+	 */
+	private static class IndexedFile implements Serializable {
+		private static final long serialVersionUID = 4563624916632470946L;
+
+		private String path;
+
+		private long fileSize;
+
+		private long revision;
+
+		private FileType fileType;
+
+		private String encoding;
+
+		private String description;
+
+		private Date lastModifiedDate;
+
+		private Map<String, String> properties = new HashMap<String, String>();
+
+		FileEntry toFileEntry() {
+			FileEntry fileEntry = new FileEntry();
+			fileEntry.setPath(path);
+			fileEntry.setFileSize(fileSize);
+			fileEntry.setRevision(revision);
+			fileEntry.setFileType(fileType);
+			fileEntry.setEncoding(encoding);
+			fileEntry.setDescription(description);
+			fileEntry.setLastModifiedDate(lastModifiedDate);
+			fileEntry.setProperties(new HashMap<String, String>(properties));
+			return fileEntry;
+		}
+	}
+}
@@ -22,8 +22,9 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.EmptyStackException;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.PostConstruct;
 
@@ -32,6 +33,8 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.ngrinder.common.exception.NGrinderRuntimeException;
+import org.ngrinder.common.metrics.MetricRegistry;
+import org.ngrinder.common.metrics.Timer;
 import org.ngrinder.common.model.Home;
 import org.ngrinder.common.util.EncodingUtil;
 import org.ngrinder.infra.annotation.RuntimeOnlyComponent;
@@ -55,6 +58,7 @@ import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
 import org.tmatesoft.svn.core.wc.SVNClientManager;
 import org.tmatesoft.svn.core.wc.SVNRevision;
@@ -70,11 +74,28 @@ public class FileEntryRepository {
 
 	private static final Logger LOG = LoggerFactory.getLogger(FileEntryRepository.class);
 
+	private static final Timer LIST_TIMER = svnTimer("list");
+
+	private static final Timer GET_TIMER = svnTimer("get");
+
+	private static final Timer SAVE_TIMER = svnTimer("save");
+
+	private static final Timer DELETE_TIMER = svnTimer("delete");
+
+	private static final Timer CHECK_TIMER = svnTimer("check");
+
 	@Autowired
 	private Config config;
 
 	private Home home;
 
+	private final ConcurrentMap<File, FileEntryIndex> indexes = new ConcurrentHashMap<File, FileEntryIndex>();
+
+	private static Timer svnTimer(String operation) {
+		return MetricRegistry.getInstance().timer("ngrinder_svn_operation",
+						"Time of the SVN operations on the user repositories", "operation", operation);
+	}
+
 	/**
 	 * Initialize the {@link FileEntryRepository}. This method should be performed to set up FS
 	 * Repository.
@@ -113,6 +134,7 @@ public class FileEntryRepository {
 	 * @return found {@link FileEntry}s
 	 */
 	public List<FileEntry> findAll(User user, final String path, Long revision) {
+		long start = LIST_TIMER.start();
 		SVNRevision svnRevision = SVNRevision.HEAD;
 		if (revision != null && -1L != revision) {
 			svnRevision = SVNRevision.create(revision);
@@ -150,6 +172,7 @@ public class FileEntryRepository {
 		} catch (Exception e) {
 			LOG.debug("findAll() to the not existing folder {}", path);
 		} finally {
+			LIST_TIMER.stop(start);
 			closeSVNClientManagerQuietly(svnClientManager);
 		}
 		return fileEntries;
@@ -158,66 +181,78 @@ public class FileEntryRepository {
 	/**
 	 * Return all {@link FileEntry}s which user have. It excludes {@link FileType#DIR} entries.
 	 * 
+	 * The entries are served from the {@link FileEntryIndex} of the user repository.
+	 * 
 	 * @param user
 	 *            user
 	 * @return found {@link FileEntry}s
 	 */
-	public List<FileEntry> findAll(final User user) {
-		final List<FileEntry> scripts = new ArrayList<FileEntry>();
-		SVNClientManager svnClientManager = SVNClientManager.newInstance();
+	public List<FileEntry> findAll(User user) {
+		long start = LIST_TIMER.start();
 		try {
-			svnClientManager.getLogClient().doList(SVNURL.fromFile(getUserRepoDirectory(user)),
-							SVNRevision.HEAD, SVNRevision.HEAD, true, true, new ISVNDirEntryHandler() {
-								@Override
-								public void handleDirEntry(SVNDirEntry dirEntry) throws SVNException {
-									FileEntry script = new FileEntry();
-									if (dirEntry.getKind() == SVNNodeKind.DIR) {
-										return;
-									}
-									String relativePath = dirEntry.getRelativePath();
-									if (StringUtils.isBlank(relativePath)) {
-										return;
-									}
-									script.setPath(relativePath);
-									script.setDescription(dirEntry.getCommitMessage());
-									long reversion = dirEntry.getRevision();
-									script.setRevision(reversion);
-									script.setFileType(dirEntry.getKind() == SVNNodeKind.DIR ? FileType.DIR
-													: null);
-									script.setFileSize(dirEntry.getSize());
-									if (dirEntry.hasProperties()) {
-										setScriptProperties(user, relativePath, reversion, script.getProperties());
-									}
-									scripts.add(script);
-								}
-								
-								private void setScriptProperties(
-										User user, String path, long revision, Map<String, String> propertiesMap) {
-									SVNClientManager svnClientManager = null;
-									try {
-										svnClientManager = SVNClientManager.newInstance();
-										SVNURL userRepoUrl = SVNURL.fromFile(getUserRepoDirectory(user));
-										SVNRepository repo = svnClientManager.createRepository(userRepoUrl, true);
-										SVNProperties fileProperty = new SVNProperties();
-										repo.getFile(path, revision, fileProperty, new ByteArrayOutputStream());
-										propertiesMap.put("validated", fileProperty.getStringValue("validated"));
-									} catch (SVNException e) {
-										LOG.error("Error while fetching a file from SVN {} {}", user.getUserId(), path);
-									} finally {
-										closeSVNClientManagerQuietly(svnClientManager);
-									}
-								}
-							});
+			return getUpdatedIndex(getUserRepoDirectory(user)).getFileEntries();
 		} catch (Exception e) {
 			LOG.error("Error while fetching files from SVN for {}", user.getUserId());
 			LOG.debug("Error details :", e);
 			return new ArrayList<FileEntry>();
+		} finally {
+			LIST_TIMER.stop(start);
+		}
+	}
 
+	/**
+	 * Return the {@link FileEntry}s whose path contains the given query. It excludes
+	 * {@link FileType#DIR} entries.
+	 * 
+	 * @param user
+	 *            user
+	 * @param query
+	 *            query
+	 * @return found {@link FileEntry}s
+	 */
+	public List<FileEntry> search(User user, String query) {
+		long start = LIST_TIMER.start();
+		try {
+			return getUpdatedIndex(getUserRepoDirectory(user)).search(query);
+		} catch (Exception e) {
+			LOG.error("Error while searching files from SVN for {}", user.getUserId());
+			LOG.debug("Error details :", e);
+			return new ArrayList<FileEntry>();
 		} finally {
-			closeSVNClientManagerQuietly(svnClientManager);
+			LIST_TIMER.stop(start);
+		}
+	}
+
+	/**
+	 * Update the {@link FileEntryIndex} of the given repository with the revisions committed after
+	 * the last update.
+	 * 
+	 * @param repoDirectory
+	 *            user repository directory
+	 */
+	public void updateIndex(File repoDirectory) {
+		try {
+			getUpdatedIndex(repoDirectory);
+		} catch (Exception e) {
+			LOG.error("Error while updating the file index of {}", repoDirectory);
+			LOG.debug("Error details :", e);
 		}
-		return scripts;
+	}
 
+	private FileEntryIndex getUpdatedIndex(File repoDirectory) throws SVNException {
+		File key = repoDirectory.getAbsoluteFile();
+		FileEntryIndex index = indexes.get(key);
+		if (index == null) {
+			indexes.putIfAbsent(key, new FileEntryIndex(home.getUserRepoIndexFile(key.getName())));
+			index = indexes.get(key);
+		}
+		SVNRepository repo = SVNRepositoryFactory.create(SVNURL.fromFile(key));
+		try {
+			index.update(repo);
+		} finally {
+			repo.closeSession();
+		}
+		return index;
 	}
 
 	/**
@@ -232,6 +267,7 @@ public class FileEntryRepository {
 	 * @return found {@link FileEntry}, null if not found
 	 */
 	public FileEntry findOne(User user, String path, SVNRevision revision) {
+		long start = GET_TIMER.start();
 		final FileEntry script = new FileEntry();
 		SVNClientManager svnClientManager = null;
 		ByteArrayOutputStream outputStream = null;
@@ -272,6 +308,7 @@ public class FileEntryRepository {
 			LOG.error("Error while fetching a file from SVN {} {}", user.getUserId(), path);
 			return null;
 		} finally {
+			GET_TIMER.stop(start);
 			closeSVNClientManagerQuietly(svnClientManager);
 			IOUtils.closeQuietly(outputStream);
 		}
@@ -303,6 +340,7 @@ public class FileEntryRepository {
 	 * 
 	 */
 	public void save(User user, FileEntry fileEntry, String encoding) {
+		long start = SAVE_TIMER.start();
 		SVNClientManager svnClientManager = null;
 		ISVNEditor editor = null;
 		String checksum = null;
@@ -375,6 +413,7 @@ public class FileEntryRepository {
 			LOG.error("Error while saving file to SVN", e);
 			throw new NGrinderRuntimeException("Error while saving file to SVN", e);
 		} finally {
+			SAVE_TIMER.stop(start);
 			closeSVNEditorQuietly(editor);
 			closeSVNClientManagerQuietly(svnClientManager);
 			IOUtils.closeQuietly(bais);
@@ -446,6 +485,7 @@ public class FileEntryRepository {
 	 *            paths of file entries.
 	 */
 	public void delete(User user, String[] paths) {
+		long start = DELETE_TIMER.start();
 		SVNClientManager svnClientManager = null;
 		ISVNEditor editor = null;
 		try {
@@ -463,6 +503,7 @@ public class FileEntryRepository {
 			LOG.error("Error while deleting file from SVN", e);
 			throw new NGrinderRuntimeException("Error while deleting files from SVN", e);
 		} finally {
+			DELETE_TIMER.stop(start);
 			closeSVNEditorQuietly(editor);
 			closeSVNClientManagerQuietly(svnClientManager);
 		}
@@ -484,6 +525,7 @@ public class FileEntryRepository {
 	 * @return true if exists.
 	 */
 	public boolean hasFileEntry(User user, String path) {
+		long start = CHECK_TIMER.start();
 		SVNClientManager svnClientManager = null;
 		try {
 			svnClientManager = SVNClientManager.newInstance();
@@ -495,6 +537,7 @@ public class FileEntryRepository {
 			LOG.error("Error while fetching files from SVN", e);
 			throw new NGrinderRuntimeException("Error while checking file existence from SVN", e);
 		} finally {
+			CHECK_TIMER.stop(start);
 			closeSVNClientManagerQuietly(svnClientManager);
 		}
 	}
@@ -512,6 +555,7 @@ public class FileEntryRepository {
 	 *            file dir path to write.
 	 */
 	public void writeContentTo(User user, String path, File toPath) {
+		long start = GET_TIMER.start();
 		SVNClientManager svnClientManager = null;
 		FileOutputStream fileOutputStream = null;
 		try {
@@ -536,6 +580,7 @@ public class FileEntryRepository {
 			LOG.error("Error while fetching files from SVN", e);
 			throw new NGrinderRuntimeException("Error while fetching files from SVN", e);
 		} finally {
+			GET_TIMER.stop(start);
 			closeSVNClientManagerQuietly(svnClientManager);
 			IOUtils.closeQuietly(fileOutputStream);
 		}
@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import javax.annotation.PostConstruct;
 
@@ -41,10 +42,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.cache.CacheManager;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNURL;
@@ -81,50 +79,47 @@ public class FileEntryService {
 	private HttpContainerContext httpContainerContext;
 
 	@Autowired
-	@Qualifier("cacheManager")
-	private CacheManager cacheManager;
+	private FileEntryRepository fileEntityRepository;
 
 	@Autowired
-	private FileEntryRepository fileEntityRepository;
+	@Qualifier("housekeepingExecutor")
+	private Executor housekeepingExecutor;
 
 	/**
 	 * Initialize {@link FileEntryService}.
 	 */
 	@PostConstruct
 	public void init() {
-		// Add cache invalidation hook.
+		// Add file index update hook.
 		FSHooks.registerHook(new FSHook() {
 			@Override
 			public void onHook(FSHookEvent event) throws SVNException {
 				if (event.getType().equals(FSHooks.SVN_REPOS_HOOK_POST_COMMIT)) {
-					String name = event.getReposRootDir().getName();
-					invalidateCache(name);
+					fileEntityRepository.updateIndex(event.getReposRootDir());
 				}
 			}
 		});
 
 	}
 
-	/**
-	 * invalidate the file_entry_seach_cache.
-	 * 
-	 * @param userId
-	 *            userId.
-	 */
-	public void invalidateCache(String userId) {
-		cacheManager.getCache("file_entry_search_cache").evict(userId);
-	}
-
 	/**
 	 * Create user svn repo.
 	 * 
-	 * This method is executed async way.
+	 * This method is executed async way on the housekeeping executor.
 	 * 
 	 * @param user
 	 *            newly created user.
 	 */
-	@Async
-	public void prepare(User user) {
+	public void prepare(final User user) {
+		housekeepingExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				doPrepare(user);
+			}
+		});
+	}
+
+	private void doPrepare(User user) {
 		File newUserDirectory = getUserRepoDirectory(user);
 		try {
 			if (!newUserDirectory.exists()) {
@@ -144,18 +139,30 @@ public class FileEntryService {
 	}
 
 	/**
-	 * Get all {@link FileEntry} for the given user. This method is subject to be cached because it
-	 * takes time.
+	 * Get all {@link FileEntry} for the given user. They are served from the file index which is
+	 * updated whenever a revision is committed.
 	 * 
 	 * @param user
 	 *            user
-	 * @return cached {@link FileEntry} list
+	 * @return {@link FileEntry} list
 	 */
-	@Cacheable(value = "file_entry_search_cache", key = "#user.userId")
 	public List<FileEntry> getAllFileEntries(User user) {
 		return fileEntityRepository.findAll(user);
 	}
 
+	/**
+	 * Search {@link FileEntry}s whose path contains the given query.
+	 * 
+	 * @param user
+	 *            user
+	 * @param query
+	 *            query
+	 * @return {@link FileEntry} list
+	 */
+	public List<FileEntry> searchFileEntries(User user, String query) {
+		return fileEntityRepository.search(user, query);
+	}
+
 	/**
 	 * Get file entries from underlying svn for given path.
 	 * 
@@ -204,6 +204,7 @@ public class UserService implements IUserService {
 			}
 			FileUtils.deleteQuietly(config.getHome().getScriptDirectory(user));
 			FileUtils.deleteQuietly(config.getHome().getUserRepoDirectory(user));
+			FileUtils.deleteQuietly(config.getHome().getUserRepoIndexFile(user.getUserId()));
 		}
 	}
 
@@ -1,15 +1,12 @@
 
+// getAdaptiveProcessCount and getAdaptiveThreadCount are provided by nGrinder. They create
+// processes up to the core count and the free memory of the agents, or up to the best count
+// calibrated by the tests with the similar vuser count run on a single agent.
+// Replace the below functions to apply your own policy.
 function getProcessCount(total) {
-	if (total < 2) {
-		return 1;
-	}
-	
-	return 2;
+	return getAdaptiveProcessCount(total);
 }
 
 function getThreadCount(total) {
-	if (total < 2) {
-		return 1;
-	}
-	return parseInt(total / 2 + 0.5);
+	return getAdaptiveThreadCount(total);
 }
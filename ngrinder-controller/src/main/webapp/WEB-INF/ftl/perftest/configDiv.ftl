@@ -180,6 +180,38 @@
 							value="${(test.ignoreSampleCount)!0}">
 					</div>
 				</div>
+				<div class="control-group">
+					<label for="arrivalRateProfile" class="control-label">
+						<input type="checkbox" id="arrivalRateCheckbox" name="useArrivalRate"
+							<#if test?? && test.useArrivalRate?default(false) == true>checked</#if>
+						/>
+						<@spring.message "perfTest.configuration.arrivalRate"/>
+					</label>
+					<div class="controls">
+						<input type="text" class="input input-medium"
+							data-original-title="<@spring.message "perfTest.configuration.arrivalRate"/>"
+							data-content='<@spring.message "perfTest.configuration.arrivalRate.help"/>'
+							rel="popover"
+							id="arrivalRateProfile" name="arrivalRateProfile"
+							value="${(test.arrivalRateProfile)!""}">
+					</div>
+				</div>
+				<div class="control-group">
+					<label for="asyncVuserPerProcess" class="control-label">
+						<input type="checkbox" id="asyncVuserCheckbox" name="useAsyncVuser"
+							<#if test?? && test.useAsyncVuser?default(false) == true>checked</#if>
+						/>
+						<@spring.message "perfTest.configuration.asyncVuser"/>
+					</label>
+					<div class="controls">
+						<input type="text" class="input input-mini"
+							data-original-title="<@spring.message "perfTest.configuration.asyncVuser"/>"
+							data-content='<@spring.message "perfTest.configuration.asyncVuser.help"/>'
+							rel="popover"
+							id="asyncVuserPerProcess" name="asyncVuserPerProcess"
+							value="${(test.asyncVuserPerProcess)!""}">
+					</div>
+				</div>
 			</fieldset>
 		</div>
 	</div>
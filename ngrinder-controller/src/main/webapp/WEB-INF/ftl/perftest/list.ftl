@@ -25,7 +25,7 @@
 			<img src="${req.getContextPath()}/img/bg_perftest_banner_<@spring.message "common.language"/>.png"/>
 			
 			<form id="listForm" class="well form-inline searchBar" action=""${req.getContextPath()}/perftest/list" method="POST">
-				<input type="hidden" id="sortColumn" name="page.sort" value="${(sortColumn)!'lastModifiedDate'}">
+				<input type="hidden" id="sortColumn" name="page.sort" value="${(sortColumn)!'createdDate'}">
 				<input type="hidden" id="sortDirection" name="page.sort.dir" value="${(sortDirection)!'desc'}">
 		
 				<table style="width:100%">
@@ -69,6 +69,7 @@
 				</table>
 				<INPUT type="hidden" id="pageNumber" name="page.page" value="${page.pageNumber + 1}">
 				<INPUT type="hidden" id="pageSize" name="page.size" value="${page.pageSize}">
+				<INPUT type="hidden" id="seek" name="seek" value="">
 			</form>
 			
 			<div class="pull-right"> 
@@ -127,12 +128,12 @@
 									<input id="check_${test.id}" type="checkbox" class="checkbox perf_test" value="${test.id}" status="${test.status}" <#if deletable>disabled</#if>>
 								</td>
 								<td class="center"  id="row_${test.id}">
-									<div class="ball" id="ball_${test.id}" rel="popover" data-content='${"${test.progressMessage}/n${test.lastProgressMessage}"?replace('/n', '<br>')?html}'>
+									<div class="ball" id="ball_${test.id}" sid="${test.id}" rel="popover" data-content='<#if test.progressMessage??>${"${test.progressMessage}/n${test.lastProgressMessage}"?replace('/n', '<br>')?html}</#if>'>
 										<img class="status" src="${req.getContextPath()}/img/ball/${test.status.iconName}"/>
 									</div>
 								</td>
 
-								<td class="ellipsis ${test.dateString}" data-content="${(test.description!"")?replace('\n', '<br/>')?html} &lt;p&gt;${test.testComment?replace('\n', '<br/>')?html}&lt;/p&gt;  &lt;p&gt;<#if test.scheduledTime?exists><@spring.message "perfTest.table.scheduledTime"/> : ${test.scheduledTime?string('yyyy-MM-dd HH:mm')}&lt;p&gt;</#if><@spring.message "perfTest.table.modifiedTime"/> : <#if test.lastModifiedDate?exists>${test.lastModifiedDate?string('yyyy-MM-dd HH:mm')}</#if>&lt;/p&gt;&lt;p&gt;<#if test.tagString?has_content><@spring.message "perfTest.configuration.tags"/> : ${test.tagString}&lt;/p&gt;</#if>"  
+								<td class="ellipsis ${test.dateString}" sid="${test.id}" data-content="${(test.description!"")?replace('\n', '<br/>')?html} &lt;p class=&quot;test_comment&quot;&gt;&lt;/p&gt;  &lt;p&gt;<#if test.scheduledTime?exists><@spring.message "perfTest.table.scheduledTime"/> : ${test.scheduledTime?string('yyyy-MM-dd HH:mm')}&lt;p&gt;</#if><@spring.message "perfTest.table.modifiedTime"/> : <#if test.lastModifiedDate?exists>${test.lastModifiedDate?string('yyyy-MM-dd HH:mm')}</#if>&lt;/p&gt;&lt;p&gt;<#if test.tagString?has_content><@spring.message "perfTest.configuration.tags"/> : ${test.tagString}&lt;/p&gt;</#if>"  
 										 data-original-title="${test.testName}">
 									<a href="${req.getContextPath()}/perftest/detail?id=${test.id}" target="_self">${test.testName}</a>
 								</td>
@@ -181,6 +182,18 @@
 				</tbody>
 			</table>
 			<#if testList?has_content>
+				<#if seekPaging??>
+				<div class="dataTables_paginate pagination">
+					<ul>
+						<li <#if !newerSeek??>class="disabled"</#if>>
+							<a href="javascript:<#if newerSeek??>seek('${newerSeek}')<#else>void(0)</#if>">&larr; <@spring.message "common.paging.previous"/></a>
+						</li>
+						<li <#if !olderSeek??>class="disabled"</#if>>
+							<a href="javascript:<#if olderSeek??>seek('${olderSeek}')<#else>void(0)</#if>"><@spring.message "common.paging.next"/> &rarr;</a>
+						</li>
+					</ul>
+				</div>
+				<#else>
 				<#include "../common/paging.ftl">
 				<@paging  testListPage.totalElements testListPage.number+1 testListPage.size 10 ""/>
 				<script type="text/javascript">
@@ -188,6 +201,7 @@
 						getList(page);
 					}
 				</script>
+				</#if>
 			</#if>
 			<#include "../common/copyright.ftl">
 		</div>
@@ -209,6 +223,56 @@
 	      	
 			$("#n_test").addClass("active");
 			
+			// The progress messages are not in the list. Load them when they are shown first.
+			$("div.ball[data-content='']").one("mouseenter", function() {
+				var $ball = $(this);
+				var hovering = true;
+				$ball.one("mouseleave", function() {
+					hovering = false;
+				});
+				$.ajax({
+					url: '${req.getContextPath()}/perftest/updateStatus',
+					type: 'POST',
+					cache: false,
+					data: {"ids": $ball.attr("sid")},
+					success: function(perfTestData) {
+						var data = eval(perfTestData).statusList;
+						if (data.length > 0) {
+							$ball.attr("data-content", data[0].message);
+							if (hovering) {
+								$ball.popover('show');
+							}
+						}
+					}
+				});
+			});
+			
+			// The test comments are not in the list either. Fill them in the same way.
+			$("td.ellipsis[sid]").one("mouseenter", function() {
+				var $td = $(this);
+				var hovering = true;
+				$td.one("mouseleave", function() {
+					hovering = false;
+				});
+				$.ajax({
+					url: '${req.getContextPath()}/perftest/updateStatus',
+					type: 'POST',
+					cache: false,
+					data: {"ids": $td.attr("sid")},
+					success: function(perfTestData) {
+						var data = eval(perfTestData).statusList;
+						if (data.length > 0) {
+							var comment = $("<div/>").text(data[0].test_comment).html().replace(/\n/g, "<br/>");
+							$td.attr("data-content", $td.attr("data-content").replace('<p class="test_comment"></p>',
+									'<p>' + comment + '</p>'));
+							if (hovering) {
+								$td.popover('show');
+							}
+						}
+					}
+				});
+			});
+			
 			enableChkboxSelectAll("testTable");
 			
 			$("#deleteBtn").on('click', function() {
@@ -347,6 +411,11 @@
 			document.forms.listForm.submit();
 		}
 		
+		function seek(key) {
+			$("#seek").val(key);
+			document.forms.listForm.submit();
+		}
+		
 		function updateStatus(id, status, icon, stoppable, deletable, message) {
 			var ballImg = $("#ball_" + id + " img");
 			if (ballImg.attr("src") != "${req.getContextPath()}/img/ball/" + icon) { 
@@ -14,6 +14,7 @@
 package org.ngrinder.agent.service;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -22,17 +23,23 @@ import java.util.List;
 import java.util.Map;
 
 import junit.framework.Assert;
+import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.engine.controller.AgentControllerIdentityImplementation;
 import net.grinder.message.console.AgentControllerState;
 
 import org.apache.commons.lang.mutable.MutableInt;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.ngrinder.AbstractNGrinderTransactionalTest;
 import org.ngrinder.agent.model.AgentInfo;
 import org.ngrinder.agent.repository.AgentManagerRepository;
 import org.ngrinder.infra.config.Config;
+import org.ngrinder.perftest.service.AgentManager;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.google.common.collect.Sets;
+
 /**
  * Agent service test.
  * 
@@ -47,6 +54,9 @@ public class AgentManagerServiceTest extends AbstractNGrinderTransactionalTest {
 	@Autowired
 	private AgentManagerRepository agentRepository;
 
+	@Autowired
+	private AgentManager agentManager;
+
 	private Config config;
 
 	@Before
@@ -56,6 +66,11 @@ public class AgentManagerServiceTest extends AbstractNGrinderTransactionalTest {
 		agentManagerService.setConfig(config);
 	}
 
+	@After
+	public void after() {
+		agentManagerService.setAgentManager(agentManager);
+	}
+
 	@Test
 	public void testSaveGetDeleteAgent() {
 		AgentInfo agent = saveAgent("save");
@@ -120,4 +135,69 @@ public class AgentManagerServiceTest extends AbstractNGrinderTransactionalTest {
 		assertThat(agentInDB.getStatus(), is(AgentControllerState.INACTIVE));
 	}
 
+	@Test
+	public void testCheckChangedAgentStatus() {
+		agentManagerService.checkAgentStatusRegularly();
+		AgentInfo agentInfo = new AgentInfo();
+		agentInfo.setName("localhost");
+		agentInfo.setRegion(config.getRegion());
+		agentInfo.setIp("127.127.127.128");
+		agentInfo.setPort(1);
+		agentInfo.setStatus(AgentControllerState.READY);
+		agentManagerService.saveAgent(agentInfo);
+		agentManagerService.checkAgentStatusRegularly();
+
+		AgentInfo agentInDB = agentRepository.findOne(agentInfo.getId());
+		assertThat(agentInDB.getStatus(), is(AgentControllerState.INACTIVE));
+
+		// The agents not changed since the last check should be left as they are.
+		agentInDB.setStatus(AgentControllerState.READY);
+		agentRepository.save(agentInDB);
+		agentManagerService.checkAgentStatusRegularly();
+		assertThat(agentRepository.findOne(agentInfo.getId()).getStatus(), is(AgentControllerState.READY));
+	}
+
+	@Test
+	public void testDeletedAgentIsNotSavedAgain() {
+		AgentInfo agent = saveAgent("delete");
+		agentManagerService.checkAgentStatusRegularly();
+		agentManagerService.deleteAgent(agent.getId());
+
+		// The detached agent should not bring the deleted row back.
+		AgentControllerIdentityImplementation agentIdentity = new AgentControllerIdentityImplementation(
+						agent.getName(), agent.getIp());
+		agentManagerService.markChanged(Sets.<AgentIdentity> newHashSet(agentIdentity));
+		agentManagerService.flushChangedAgentStatus();
+		assertThat(findAgentInDB(agent.getIp(), agent.getName()), nullValue());
+	}
+
+	@Test
+	public void testRegionChangeIsSaved() {
+		AgentControllerIdentityImplementation agentIdentity = new AgentControllerIdentityImplementation("region",
+						"127.127.127.129");
+		agentIdentity.setRegion("region1");
+		AgentManager attachedAgentManager = mock(AgentManager.class);
+		when(attachedAgentManager.getAllAttachedAgents()).thenReturn(Sets.<AgentIdentity> newHashSet(agentIdentity));
+		when(attachedAgentManager.getAgentConnectingPort(agentIdentity)).thenReturn(1);
+		when(attachedAgentManager.getAgentState(agentIdentity)).thenReturn(AgentControllerState.READY);
+		agentManagerService.setAgentManager(attachedAgentManager);
+		agentManagerService.checkAgentStatusRegularly();
+		assertThat(findAgentInDB("127.127.127.129", "region").getRegion(), is("region1"));
+
+		agentIdentity.setRegion("region2");
+		agentManagerService.markChanged(Sets.<AgentIdentity> newHashSet(agentIdentity));
+		agentManagerService.flushChangedAgentStatus();
+		AgentInfo agentInDB = findAgentInDB("127.127.127.129", "region");
+		assertThat(agentInDB.getRegion(), is("region2"));
+		assertThat(agentInDB.getStatus(), is(AgentControllerState.READY));
+	}
+
+	private AgentInfo findAgentInDB(String ip, String name) {
+		for (AgentInfo each : agentRepository.findAllByIp(ip)) {
+			if (name.equals(each.getName())) {
+				return each;
+			}
+		}
+		return null;
+	}
 }
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import net.grinder.engine.controller.AgentControllerIdentityImplementation;
 import net.grinder.message.console.AgentControllerState;
 
 import org.apache.commons.lang.mutable.MutableInt;
@@ -135,4 +136,45 @@ public class AgentManagerServiceTestForDist extends AbstractNGrinderTransactiona
 		assertThat(userAvailableAgentCountMap.get("wowo").intValue(), is(3));
 
 	}
+
+	@Test
+	public void testUpdateAgentInfo() {
+		when(config.getRegion()).thenReturn("hello");
+		AgentManager attachedAgentManager = mock(AgentManager.class);
+		agentManagerService.setAgentManager(attachedAgentManager);
+		AgentControllerIdentityImplementation agentIdentity = new AgentControllerIdentityImplementation("agent",
+						"1.1.1.1");
+		agentIdentity.setRegion("haha");
+		when(attachedAgentManager.getAgentConnectingPort(agentIdentity)).thenReturn(1);
+		when(attachedAgentManager.getAgentState(agentIdentity)).thenReturn(AgentControllerState.READY);
+
+		// New agent of the other region
+		AgentInfo agentInfo = new AgentInfo();
+		assertThat(agentManagerService.updateAgentInfo(agentInfo, agentIdentity), is(true));
+		assertThat(agentInfo.getStatus(), is(AgentControllerState.WRONG_REGION));
+		agentInfo.setId(1L);
+		assertThat(agentManagerService.updateAgentInfo(agentInfo, agentIdentity), is(false));
+
+		// The region of the agent is fixed.
+		agentIdentity.setRegion("hello");
+		assertThat(agentManagerService.updateAgentInfo(agentInfo, agentIdentity), is(true));
+		assertThat(agentInfo.getRegion(), is("hello"));
+		assertThat(agentInfo.getStatus(), is(AgentControllerState.READY));
+		assertThat(agentManagerService.updateAgentInfo(agentInfo, agentIdentity), is(false));
+
+		// The status is changed.
+		when(attachedAgentManager.getAgentState(agentIdentity)).thenReturn(AgentControllerState.BUSY);
+		assertThat(agentManagerService.updateAgentInfo(agentInfo, agentIdentity), is(true));
+		assertThat(agentInfo.getStatus(), is(AgentControllerState.BUSY));
+
+		// The agent is detached.
+		assertThat(agentManagerService.updateAgentInfo(agentInfo, null), is(true));
+		assertThat(agentInfo.getStatus(), is(AgentControllerState.INACTIVE));
+		assertThat(agentManagerService.updateAgentInfo(agentInfo, null), is(false));
+
+		// The agent of the other region is left to the other controller.
+		agentInfo.setRegion("haha");
+		agentInfo.setStatus(AgentControllerState.READY);
+		assertThat(agentManagerService.updateAgentInfo(agentInfo, null), is(false));
+	}
 }
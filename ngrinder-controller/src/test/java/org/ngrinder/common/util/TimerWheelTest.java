@@ -0,0 +1,69 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.common.util;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+	@Test
+	public void testExpiry() {
+		TimerWheel<String> wheel = new TimerWheel<String>(1000, 8, 10000);
+		wheel.schedule("a", 12500);
+		wheel.schedule("b", 13000);
+		assertThat(wheel.size(), is(2));
+		assertThat(wheel.advance(11999).isEmpty(), is(true));
+		assertThat(wheel.advance(12000), is(Arrays.asList("a")));
+		assertThat(wheel.advance(13000), is(Arrays.asList("b")));
+		assertThat(wheel.size(), is(0));
+	}
+
+	@Test
+	public void testPassedTimeExpiresOnNextTick() {
+		TimerWheel<String> wheel = new TimerWheel<String>(1000, 8, 10000);
+		wheel.schedule("a", 1000);
+		assertThat(wheel.advance(10500).isEmpty(), is(true));
+		assertThat(wheel.advance(11000), is(Arrays.asList("a")));
+	}
+
+	@Test
+	public void testTimeoutBeyondOneRound() {
+		TimerWheel<String> wheel = new TimerWheel<String>(1000, 8, 10000);
+		// Shares the slot with the tick 12.
+		wheel.schedule("far", 20000);
+		wheel.schedule("near", 12000);
+		assertThat(wheel.advance(12000), is(Arrays.asList("near")));
+		assertThat(wheel.advance(19000).isEmpty(), is(true));
+		assertThat(wheel.advance(20000), is(Arrays.asList("far")));
+	}
+
+	@Test
+	public void testStalledWheel() {
+		TimerWheel<String> wheel = new TimerWheel<String>(1000, 8, 10000);
+		wheel.schedule("a", 11000);
+		wheel.schedule("b", 15000);
+		wheel.schedule("c", 30000);
+		List<String> expired = wheel.advance(100000);
+		Collections.sort(expired);
+		assertThat(expired, is(Arrays.asList("a", "b", "c")));
+		assertThat(wheel.size(), is(0));
+	}
+}
@@ -0,0 +1,237 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.infra.plugin;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ngrinder.common.metrics.MetricRegistry;
+
+public class PluginCallbackDispatcherTest {
+
+	private PluginCallbackDispatcher dispatcher;
+
+	private final List<Integer> called = new CopyOnWriteArrayList<Integer>();
+
+	@Before
+	public void before() {
+		dispatcher = new PluginCallbackDispatcher() {
+			@Override
+			protected int getQueueSize() {
+				return 2;
+			}
+
+			@Override
+			protected long getTimeout() {
+				return 500;
+			}
+		};
+		dispatcher.init();
+	}
+
+	@After
+	public void after() {
+		dispatcher.destroy();
+	}
+
+	@Test
+	public void testSlowPluginDoesNotBlockCaller() throws Exception {
+		Object plugin = new Object() {
+		};
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		long start = System.currentTimeMillis();
+		dispatcher.dispatch(plugin, block(started, release));
+		started.await(1, TimeUnit.SECONDS);
+		for (int i = 0; i < 3; i++) {
+			dispatcher.dispatch(plugin, record(i));
+		}
+		assertThat(System.currentTimeMillis() - start < 400, is(true));
+		release.countDown();
+		// Let the queued ones run so that the queue has room.
+		Thread.sleep(200);
+		CountDownLatch done = new CountDownLatch(1);
+		dispatcher.dispatch(plugin, countDown(done));
+		done.await(1, TimeUnit.SECONDS);
+
+		// The third one overflows the queue.
+		assertThat(called, is(Arrays.asList(0, 1)));
+		assertThat(getDropped(plugin), is(1L));
+	}
+
+	@Test
+	public void testWaitingCallbackIsCoalesced() throws Exception {
+		Object plugin = new Object() {
+		};
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		dispatcher.dispatch(plugin, block(started, release));
+		started.await(1, TimeUnit.SECONDS);
+		for (int i = 0; i < 5; i++) {
+			dispatcher.dispatchCoalesced(plugin, "sampling", record(i));
+		}
+		release.countDown();
+		CountDownLatch done = new CountDownLatch(1);
+		dispatcher.dispatch(plugin, countDown(done));
+		done.await(1, TimeUnit.SECONDS);
+
+		assertThat(called, is(Collections.singletonList(4)));
+		assertThat(getDropped(plugin), is(4L));
+	}
+
+	@Test
+	public void testLongCallbackIsInterrupted() throws Exception {
+		Object plugin = new Object() {
+		};
+		dispatcher.dispatch(plugin, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					called.add(-1);
+				}
+			}
+		});
+		CountDownLatch done = new CountDownLatch(1);
+		dispatcher.dispatch(plugin, record(0));
+		dispatcher.dispatch(plugin, countDown(done));
+		assertThat(done.await(2, TimeUnit.SECONDS), is(true));
+
+		assertThat(called, is(Arrays.asList(-1, 0)));
+		assertThat(MetricRegistry.getInstance()
+						.counter("ngrinder_plugin_callback_timeout_total", "", "plugin", plugin.getClass().getName())
+						.getCount(), is(1L));
+	}
+
+	@Test
+	public void testLifeCycleCallbacksAreWaitedFor() throws Exception {
+		Object plugin = new Object() {
+		};
+		Object otherPlugin = new Object() {
+		};
+		Map<Object, Runnable> callbacks = new LinkedHashMap<Object, Runnable>();
+		callbacks.put(plugin, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					return;
+				}
+				called.add(0);
+			}
+		});
+		callbacks.put(otherPlugin, record(1));
+		final CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		dispatcher.dispatch(plugin, block(started, release));
+		started.await(1, TimeUnit.SECONDS);
+		dispatcher.dispatch(plugin, record(-1));
+		dispatcher.dispatch(plugin, record(-2));
+		// The queue is full.
+		dispatcher.dispatchCoalesced(plugin, "sampling", record(-3));
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					return;
+				}
+				release.countDown();
+			}
+		}.start();
+		assertThat(dispatcher.dispatchAndWait(callbacks), is(true));
+
+		// The lifecycle callback is not dropped and the waiting ones are.
+		assertThat(called.size(), is(2));
+		assertThat(called.containsAll(Arrays.asList(0, 1)), is(true));
+		assertThat(getDropped(plugin), is(3L));
+	}
+
+	@Test
+	public void testWaitIsBoundedByTimeout() throws Exception {
+		Object plugin = new Object() {
+		};
+		final CountDownLatch release = new CountDownLatch(1);
+		Runnable stuck = new Runnable() {
+			@Override
+			public void run() {
+				// Ignores the interruption.
+				while (release.getCount() > 0) {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						continue;
+					}
+				}
+			}
+		};
+		long start = System.currentTimeMillis();
+		assertThat(dispatcher.dispatchAndWait(Collections.singletonMap(plugin, stuck)), is(false));
+		assertThat(System.currentTimeMillis() - start < 1000, is(true));
+		release.countDown();
+	}
+
+	private long getDropped(Object plugin) {
+		return MetricRegistry.getInstance()
+						.counter("ngrinder_plugin_callback_dropped_total", "", "plugin", plugin.getClass().getName())
+						.getCount();
+	}
+
+	private Runnable block(final CountDownLatch started, final CountDownLatch release) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await(1, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		};
+	}
+
+	private Runnable record(final int value) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				called.add(value);
+			}
+		};
+	}
+
+	private Runnable countDown(final CountDownLatch latch) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		};
+	}
+}
@@ -0,0 +1,101 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.infra.schedule;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class InstrumentedExecutorTest {
+
+	private InstrumentedExecutor executor = new InstrumentedExecutor("test", 1);
+
+	@After
+	public void after() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(2);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					blocked.await();
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				finished.countDown();
+			}
+		});
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				finished.countDown();
+			}
+		});
+		assertThat(executor.getQueueDepth(), is(1));
+		blocked.countDown();
+		assertThat(finished.await(5, TimeUnit.SECONDS), is(true));
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+
+		assertThat(executor.getSubmittedCount(), is(2L));
+		assertThat(executor.getFinishedCount(), is(2L));
+		assertThat(executor.getMaxQueueDepth(), is(1));
+		assertThat(executor.getMaxRunTime() >= 50, is(true));
+		// The second one waited for the first one.
+		assertThat(executor.getMaxWaitTime() >= 50, is(true));
+	}
+
+	@Test
+	public void testFailingTaskKeepsThread() throws Exception {
+		final CountDownLatch finished = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException("fail");
+			}
+		});
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				finished.countDown();
+			}
+		});
+		assertThat(finished.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(executor.getPoolSize(), is(1));
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		ObjectName name = new ObjectName(InstrumentedExecutor.JMX_DOMAIN + ":type=Executor,name=test");
+		executor.registerMBean();
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), is(true));
+		assertThat((Long) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "SubmittedCount"), is(0L));
+		executor.shutdown();
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), is(false));
+	}
+}
@@ -201,7 +201,7 @@ public class PerfTestControllerTest extends AbstractPerfTestTransactionalTest {
 	public void testGetTestList() {
 		createPerfTest("new test1", Status.READY, new Date());
 		ModelMap model = new ModelMap();
-		controller.getPerfTestList(getTestUser(), null, null, null, null, model);
+		controller.getPerfTestList(getTestUser(), null, null, null, null, null, model);
 		Page<PerfTest> testPage = (Page<PerfTest>) model.get("testListPage");
 		List<PerfTest> testList = testPage.getContent();
 		assertThat(testList.size(), is(1));
@@ -219,7 +219,7 @@ public class PerfTestControllerTest extends AbstractPerfTestTransactionalTest {
 		testAdmin.setTimeZone("Asia/Seoul");
 		testAdmin = userService.saveUser(testAdmin);
 
-		controller.getPerfTestList(testAdmin, null, null, null, null, model);
+		controller.getPerfTestList(testAdmin, null, null, null, null, null, model);
 		@SuppressWarnings("unchecked")
 		Page<PerfTest> testPage = (Page<PerfTest>) model.get("testListPage");
 		List<PerfTest> testList = testPage.getContent();
@@ -245,7 +245,7 @@ public class PerfTestControllerTest extends AbstractPerfTestTransactionalTest {
 		otherTestUser.setRole(Role.USER);
 		otherTestUser = userService.saveUser(otherTestUser);
 		otherTestUser.setTimeZone("Asia/Seoul");
-		controller.getPerfTestList(otherTestUser, null, null, null, null, model);
+		controller.getPerfTestList(otherTestUser, null, null, null, null, null, model);
 		@SuppressWarnings("unchecked")
 		Page<PerfTest> testPage = (Page<PerfTest>) model.get("testListPage");
 		List<PerfTest> testList = testPage.getContent();
@@ -272,7 +272,7 @@ public class PerfTestControllerTest extends AbstractPerfTestTransactionalTest {
 
 		Sort sort = new Sort("testName");
 		Pageable pageable = new PageRequest(0, 10, sort);
-		controller.getPerfTestList(getTestUser(), strangeName, null, null, pageable, model);
+		controller.getPerfTestList(getTestUser(), strangeName, null, null, null, pageable, model);
 		Page<PerfTest> testPage = (Page<PerfTest>) model.get("testListPage");
 		List<PerfTest> testList = testPage.getContent();
 		assertThat(testList.size(), is(1));
@@ -15,6 +15,7 @@ package org.ngrinder.perftest.service;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.junit.Before;
 import org.ngrinder.AbstractNGrinderTransactionalTest;
@@ -47,6 +48,13 @@ abstract public class AbstractPerfTestTransactionalTest extends AbstractNGrinder
 	public void firstInit() {
 		agentConfig1 = new MockAgentConfigInControllerSide(1).init();
 		agentConfig2 = new MockAgentConfigInControllerSide(2).init();
+		// The test transaction is never committed.
+		runningPerfTestRegistry.setUpdateExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
 	}
 
 	@Autowired
@@ -58,6 +66,9 @@ abstract public class AbstractPerfTestTransactionalTest extends AbstractNGrinder
 	@Autowired
 	protected TagRepository tagRepository;
 
+	@Autowired
+	protected RunningPerfTestRegistry runningPerfTestRegistry;
+
 	@Autowired
 	protected Config config;
 
@@ -72,6 +83,7 @@ abstract public class AbstractPerfTestTransactionalTest extends AbstractNGrinder
 		perfTestRepository.flush();
 		tagRepository.deleteAll();
 		tagRepository.flush();
+		runningPerfTestRegistry.reload();
 	}
 
 	public PerfTest newPerfTest(String testName, Status status, Date scheduledTime) {
@@ -0,0 +1,97 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+
+import org.junit.Test;
+import org.ngrinder.monitor.controller.model.SystemDataModel;
+
+public class AdaptiveProcessAndThreadPolicyTest {
+
+	private SystemDataModel createSystemDataModel(int cpuCount, long totalMemoryMB, long freeMemoryMB) {
+		SystemDataModel model = new SystemDataModel();
+		model.setCpuCount(cpuCount);
+		model.setTotalMemory(totalMemoryMB * 1024);
+		model.setFreeMemory(freeMemoryMB * 1024);
+		return model;
+	}
+
+	private File createCalibrationFile() throws IOException {
+		File file = File.createTempFile("calibration", ".properties");
+		file.delete();
+		file.deleteOnExit();
+		return file;
+	}
+
+	@Test
+	public void testMaxProcessCount() throws IOException {
+		AdaptiveProcessAndThreadPolicy policy = new AdaptiveProcessAndThreadPolicy(createCalibrationFile());
+		assertThat(AdaptiveProcessAndThreadPolicy.getAgentClass(createSystemDataModel(4, 8000, 4000)), is("4c_8g"));
+		assertThat(policy.getMaxProcessCount(createSystemDataModel(4, 8000, 4000), 100), is(4));
+		// Limited by the free memory.
+		assertThat(policy.getMaxProcessCount(createSystemDataModel(8, 8000, 600), 100), is(2));
+		// Unknown agent
+		assertThat(policy.getMaxProcessCount(new SystemDataModel(), 100),
+						is(AdaptiveProcessAndThreadPolicy.DEFAULT_MAX_PROCESS_COUNT));
+	}
+
+	@Test
+	public void testCalibration() throws IOException {
+		File file = createCalibrationFile();
+		AdaptiveProcessAndThreadPolicy policy = new AdaptiveProcessAndThreadPolicy(file);
+		SystemDataModel agent = createSystemDataModel(8, 16000, 8000);
+		assertThat(policy.getBestProcessCount("8c_16g", 400), nullValue());
+		policy.record(agent, 8, 50, 400);
+		policy.record(agent, 4, 100, 800);
+		assertThat(policy.getBestProcessCount("8c_16g", 400), is(4));
+		assertThat(policy.getMaxProcessCount(agent, 400), is(4));
+		// The fewest processes which reach the highest tps are the best.
+		policy.record(agent, 2, 200, 780);
+		assertThat(policy.getBestProcessCount("8c_16g", 400), is(2));
+		// The other vuser band is not calibrated yet.
+		assertThat(policy.getBestProcessCount("8c_16g", 40), nullValue());
+		assertThat(policy.getMaxProcessCount(agent, 40), is(8));
+		// The calibration is kept in the file when it's flushed.
+		assertThat(file.exists(), is(false));
+		policy.flush();
+		assertThat(new AdaptiveProcessAndThreadPolicy(file).getBestProcessCount("8c_16g", 400), is(2));
+	}
+
+	@Test
+	public void testScript() throws Exception {
+		ScriptEngine engine = new ScriptEngineManager().getEngineByName("javascript");
+		engine.put(AdaptiveProcessAndThreadPolicy.VAR_MAX_PROCESS_COUNT, 4);
+		engine.eval(AdaptiveProcessAndThreadPolicy.SCRIPT);
+		Invocable invocable = (Invocable) engine;
+		assertThat(((Number) invocable.invokeFunction("getAdaptiveProcessCount", 1)).intValue(), is(1));
+		assertThat(((Number) invocable.invokeFunction("getAdaptiveProcessCount", 25)).intValue(), is(3));
+		assertThat(((Number) invocable.invokeFunction("getAdaptiveThreadCount", 25)).intValue(), is(9));
+		assertThat(((Number) invocable.invokeFunction("getAdaptiveProcessCount", 1000)).intValue(), is(4));
+		assertThat(((Number) invocable.invokeFunction("getAdaptiveThreadCount", 1000)).intValue(), is(250));
+		// The max process count of the vuser band is used if it's given.
+		engine.eval("var " + AdaptiveProcessAndThreadPolicy.VAR_MAX_PROCESS_COUNTS + " = {512: 2};");
+		assertThat(((Number) invocable.invokeFunction("getAdaptiveProcessCount", 1000)).intValue(), is(2));
+		assertThat(((Number) invocable.invokeFunction("getAdaptiveProcessCount", 25)).intValue(), is(3));
+	}
+}
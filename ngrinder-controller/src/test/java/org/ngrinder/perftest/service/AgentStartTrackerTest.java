@@ -0,0 +1,88 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.engine.controller.AgentControllerIdentityImplementation;
+import net.grinder.message.console.AgentControllerState;
+
+import org.junit.Test;
+import org.ngrinder.common.exception.NGrinderRuntimeException;
+
+public class AgentStartTrackerTest {
+
+	private AgentIdentity first = new AgentControllerIdentityImplementation("first", "10.0.0.1");
+	private AgentIdentity second = new AgentControllerIdentityImplementation("second", "10.0.0.2");
+
+	private AgentStartTracker createTracker() {
+		Set<AgentIdentity> agents = new HashSet<AgentIdentity>();
+		agents.add(first);
+		agents.add(second);
+		return new AgentStartTracker(12000, agents);
+	}
+
+	@Test
+	public void testCompletesWhenAllAcknowledged() {
+		final AgentStartTracker tracker = createTracker();
+		tracker.update(first, AgentControllerState.BUSY, 12000);
+		// Busy on another console is not an acknowledgement.
+		tracker.update(second, AgentControllerState.BUSY, 12001);
+		new Thread() {
+			public void run() {
+				tracker.update(second, AgentControllerState.BUSY, 12000);
+			}
+		}.start();
+		long start = System.currentTimeMillis();
+		tracker.await(10000);
+		assertThat(System.currentTimeMillis() - start, lessThan(5000L));
+	}
+
+	@Test
+	public void testFailsFastWhenAgentIsLost() {
+		AgentStartTracker tracker = createTracker();
+		tracker.update(first, AgentControllerState.BUSY, 12000);
+		tracker.remove(second);
+		long start = System.currentTimeMillis();
+		try {
+			tracker.await(10000);
+			fail("should throw Exception");
+		} catch (NGrinderRuntimeException e) {
+			assertThat(e.getMessage(), containsString("second"));
+		}
+		assertThat(System.currentTimeMillis() - start, lessThan(5000L));
+	}
+
+	@Test
+	public void testTimeout() {
+		AgentStartTracker tracker = createTracker();
+		tracker.update(first, AgentControllerState.READY, 0);
+		tracker.update(second, AgentControllerState.BUSY, 12000);
+		try {
+			tracker.await(100);
+			fail("should throw Exception");
+		} catch (NGrinderRuntimeException e) {
+			assertThat(e.getMessage().contains("first"), is(true));
+			assertThat(e.getMessage().contains("second"), is(false));
+		}
+	}
+}
@@ -37,4 +37,16 @@ public class ConsoleEntryTest {
 		assertThat(console1.hashCode(), not(console2.hashCode()));
 	}
 
+	@Test
+	public void testEqualsRoutedEntry() {
+		ConsoleEntry console1 = new ConsoleEntry(111, 1);
+		ConsoleEntry console2 = new ConsoleEntry(111, 1);
+		assertThat(console1, is(console2));
+		assertThat(console1.hashCode(), is(console2.hashCode()));
+
+		console2.setRoute(2);
+		assertThat(console1, not(console2));
+		assertThat(console1, not(new ConsoleEntry(111)));
+	}
+
 }
@@ -100,6 +100,20 @@ public class ConsoleManagerTest extends AbstractNGrinderTransactionalTest {
 		assertThat(manager.getConsoleInUse().size(), is(initialSize - 1));
 	}
 
+	@Test
+	public void testIdleConsoleIsHandedOut() {
+		int idleSize = manager.getIdleConsoleSize();
+		assertThat(idleSize > 0, is(true));
+		SingleConsole availableConsole = manager.getAvailableConsole("test", ConsolePropertiesFactory
+				.createEmptyConsoleProperties());
+		assertThat(manager.getIdleConsoleSize(), is(idleSize - 1));
+		assertThat(manager.getPoolHitRate() > 0, is(true));
+		manager.returnBackConsole("test", availableConsole);
+		sleep(1000);
+		// A new idle console is prepared for the returned one.
+		assertThat(manager.getIdleConsoleSize(), is(idleSize));
+	}
+
 	@Test
 	public void testAvailableSocket() throws IOException {
 		ServerSocket serverSocket = null;
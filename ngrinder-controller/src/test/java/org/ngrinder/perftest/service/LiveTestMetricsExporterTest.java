@@ -0,0 +1,117 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.grinder.SingleConsole;
+import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.engine.controller.AgentControllerIdentityImplementation;
+
+import org.junit.Test;
+import org.ngrinder.monitor.controller.model.SystemDataModel;
+import org.ngrinder.perftest.service.LiveTestMetricsExporter.TestSample;
+
+public class LiveTestMetricsExporterTest {
+
+	private final LiveTestMetricsExporter exporter = new LiveTestMetricsExporter();
+
+	@Test
+	public void testRunningTestsAreExported() {
+		exporter.put(1L, createSample("1", 12.5, 100));
+		exporter.put(2L, createSample("2", 3, 7));
+		String text = exporter.getPrometheusText();
+
+		assertThat(text, containsString("# TYPE ngrinder_test_tps gauge\n"
+						+ "ngrinder_test_tps{test_id=\"1\",region=\"NONE\"} 12.5\n"
+						+ "ngrinder_test_tps{test_id=\"2\",region=\"NONE\"} 3.0\n"));
+		assertThat(text, containsString("ngrinder_test_tests_total{test_id=\"1\",region=\"NONE\"} 100\n"));
+		assertThat(text, containsString("ngrinder_test_errors_total{test_id=\"1\",region=\"NONE\"} 2\n"));
+		assertThat(text, containsString("ngrinder_test_vusers{test_id=\"1\",region=\"NONE\"} 10\n"));
+		assertThat(text, containsString("ngrinder_test_number_tps{test_id=\"1\",region=\"NONE\",test_number=\"3\"} 6.0\n"));
+		assertThat(text, containsString("ngrinder_agent_cpu_used_percent{test_id=\"1\",region=\"NONE\",agent=\"agent1\"} 40.0\n"));
+		assertThat(text, containsString("ngrinder_agent_memory_used_percent{test_id=\"1\",region=\"NONE\",agent=\"agent1\"} 25.0\n"));
+	}
+
+	@Test
+	public void testRenderedTextIsReusedUntilSampled() {
+		exporter.put(1L, createSample("1", 1, 1));
+		String text = exporter.getPrometheusText();
+		assertThat(exporter.getPrometheusText(), sameInstance(text));
+
+		exporter.put(1L, createSample("1", 2, 2));
+		String sampled = exporter.getPrometheusText();
+		assertThat(sampled.equals(text), is(false));
+
+		exporter.remove(1L);
+		assertThat(exporter.getPrometheusText().contains("test_id=\"1\""), is(false));
+	}
+
+	private TestSample createSample(String testId, final double tps, long tests) {
+		final Map<String, Object> statistics = new HashMap<String, Object>();
+		Map<String, Object> total = new HashMap<String, Object>();
+		total.put("Tests", (double) tests);
+		total.put("Errors", 2D);
+		total.put("Mean_Test_Time_(ms)", 30D);
+		statistics.put("totalStatistics", total);
+		Map<String, Object> cumulative = new HashMap<String, Object>(total);
+		cumulative.put("testNumber", 3);
+		Map<String, Object> lastSample = new HashMap<String, Object>();
+		lastSample.put("testNumber", 3);
+		lastSample.put("TPS", 6D);
+		List<Map<String, Object>> cumulativeStatistics = new ArrayList<Map<String, Object>>();
+		cumulativeStatistics.add(cumulative);
+		List<Map<String, Object>> lastSampleStatistics = new ArrayList<Map<String, Object>>();
+		lastSampleStatistics.add(lastSample);
+		statistics.put("cumulativeStatistics", cumulativeStatistics);
+		statistics.put("lastSampleStatistics", lastSampleStatistics);
+
+		SingleConsole singleConsole = new SingleConsole(0) {
+			@Override
+			public Map<String, Object> getStatictisData() {
+				return statistics;
+			}
+
+			@Override
+			public double getTpsValues() {
+				return tps;
+			}
+
+			@Override
+			public int getRunningThread() {
+				return 10;
+			}
+
+			@Override
+			public int getRunningProcess() {
+				return 2;
+			}
+		};
+		SystemDataModel systemData = new SystemDataModel();
+		systemData.setCpuUsedPercentage(40);
+		systemData.setTotalMemory(400);
+		systemData.setFreeMemory(300);
+		Map<AgentIdentity, SystemDataModel> agentsInfo = new HashMap<AgentIdentity, SystemDataModel>();
+		agentsInfo.put(new AgentControllerIdentityImplementation("agent1", "127.0.0.1"), systemData);
+		return new TestSample(testId, "NONE", singleConsole, agentsInfo);
+	}
+}
@@ -0,0 +1,75 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.engine.controller.AgentControllerIdentityImplementation;
+
+import org.junit.Test;
+import org.ngrinder.monitor.controller.model.SystemDataModel;
+
+public class LoadAwareAgentSelectorTest {
+
+	private AgentIdentity big = new AgentControllerIdentityImplementation("big", "10.0.0.1");
+	private AgentIdentity small = new AgentControllerIdentityImplementation("small", "10.0.0.2");
+	private AgentIdentity busy = new AgentControllerIdentityImplementation("busy", "10.0.0.3");
+
+	private SystemDataModel createSystemDataModel(int cpuCount, float cpuUsed, long freeMemoryMB) {
+		SystemDataModel model = new SystemDataModel();
+		model.setCpuCount(cpuCount);
+		model.setCpuUsedPercentage(cpuUsed);
+		model.setFreeMemory(freeMemoryMB * 1024);
+		model.setTotalMemory(16 * 1024 * 1024);
+		return model;
+	}
+
+	private Map<AgentIdentity, SystemDataModel> createSystemDataModels() {
+		Map<AgentIdentity, SystemDataModel> models = new HashMap<AgentIdentity, SystemDataModel>();
+		models.put(big, createSystemDataModel(8, 10, 8000));
+		models.put(small, createSystemDataModel(2, 10, 8000));
+		models.put(busy, createSystemDataModel(8, 90, 8000));
+		return models;
+	}
+
+	@Test
+	public void testRank() {
+		LoadAwareAgentSelector selector = new LoadAwareAgentSelector();
+		List<AgentIdentity> ranked = selector.rank(Arrays.asList(small, busy, big), createSystemDataModels(), 1);
+		assertThat(ranked.get(0), is(big));
+		assertThat(ranked.get(2), is(busy));
+	}
+
+	@Test
+	public void testDistributeProcesses() {
+		LoadAwareAgentSelector selector = new LoadAwareAgentSelector();
+		Map<AgentIdentity, Integer> distribution = selector.distributeProcesses(Arrays.asList(big, small, busy),
+						createSystemDataModels(), 4, 100);
+		assertThat(distribution.get(big) + distribution.get(small) + distribution.get(busy), is(12));
+		assertThat(distribution.get(big) > distribution.get(small), is(true));
+		assertThat(distribution.get(busy) >= 1, is(true));
+
+		// The maximum per agent is kept.
+		distribution = selector.distributeProcesses(Arrays.asList(big, small, busy), createSystemDataModels(), 4, 5);
+		assertThat(distribution.get(big), is(5));
+		assertThat(distribution.get(big) + distribution.get(small) + distribution.get(busy), is(12));
+	}
+}
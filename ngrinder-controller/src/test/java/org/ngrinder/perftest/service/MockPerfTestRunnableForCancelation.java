@@ -19,6 +19,7 @@ import net.grinder.common.GrinderProperties;
 import org.ngrinder.common.util.ThreadUtil;
 import org.ngrinder.infra.annotation.TestOnlyComponent;
 import org.ngrinder.model.PerfTest;
+import org.ngrinder.model.User;
 
 /**
  * Mock PerfTest which disable spring task schedule.
@@ -44,6 +45,11 @@ public class MockPerfTestRunnableForCancelation extends PerfTestRunnable {
 		return true;
 	}
 
+	@Override
+	protected int getFreeAgentCount(User user) {
+		return Short.MAX_VALUE;
+	}
+
 	@Override
 	void startAgentsOn(PerfTest perfTest, GrinderProperties grinderProperties, SingleConsole singleConsole) {
 		ThreadUtil.sleep(1000);
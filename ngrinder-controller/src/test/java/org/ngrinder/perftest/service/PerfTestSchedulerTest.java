@@ -0,0 +1,131 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.ngrinder.model.PerfTest;
+import org.ngrinder.model.User;
+import org.ngrinder.perftest.service.PerfTestScheduler.FreeAgentCounter;
+
+public class PerfTestSchedulerTest {
+
+	private static final long MINUTE = 60 * 1000L;
+
+	private final long now = 1000000 * MINUTE;
+
+	private final PerfTestScheduler scheduler = new PerfTestScheduler();
+
+	private long id = 0;
+
+	@Test
+	public void testLargeTestIsNotStarvedAndSmallOnesBackfill() {
+		// 6 agents are released 5 minutes later.
+		PerfTest running = createTest("runner", 6, 10 * MINUTE);
+		running.setStartTime(new Date(now - 5 * MINUTE));
+		PerfTest large = createTest("large", 8, 30 * MINUTE);
+		PerfTest shortSmall = createTest("short", 2, 3 * MINUTE);
+		PerfTest longSmall = createTest("long", 3, 10 * MINUTE);
+		PerfTest runCountSmall = createTest("count", 1, null);
+
+		List<PerfTest> runnables = scheduler.plan(Arrays.asList(large, shortSmall, longSmall, runCountSmall),
+						Arrays.asList(running), freeAgents(4), now);
+
+		// The short one finishes before the large one starts. The run count one uses the agent
+		// which the large one doesn't need.
+		assertThat(runnables, is(Arrays.asList(shortSmall, runCountSmall)));
+		assertThat(scheduler.getQueueEntry(large.getId()).getPosition(), is(1));
+		assertThat(scheduler.getQueueEntry(large.getId()).getEstimatedStartTime(), is(new Date(now + 5 * MINUTE)));
+		// It would delay the large one.
+		assertThat(scheduler.getQueueEntry(longSmall.getId()).getEstimatedStartTime(),
+						is(new Date(now + 35 * MINUTE)));
+	}
+
+	@Test
+	public void testFairShare() {
+		PerfTest heavy = createTest("heavy", 4, MINUTE);
+		heavy.setStartTime(new Date(now - 30 * MINUTE));
+		scheduler.plan(Collections.<PerfTest> emptyList(), Arrays.asList(heavy), freeAgents(0), now);
+
+		PerfTest heavyNext = createTest("heavy", 2, MINUTE);
+		PerfTest light = createTest("light", 2, MINUTE);
+		List<PerfTest> runnables = scheduler.plan(Arrays.asList(heavyNext, light), new ArrayList<PerfTest>(),
+						freeAgents(2), now + MINUTE);
+		assertThat(runnables, is(Arrays.asList(light)));
+		assertThat(scheduler.getQueueEntry(heavyNext.getId()).getPosition(), is(2));
+
+		// The priority comes before the usage.
+		heavyNext.setPriority(1);
+		runnables = scheduler.plan(Arrays.asList(heavyNext, light), new ArrayList<PerfTest>(), freeAgents(2),
+						now + MINUTE);
+		assertThat(runnables, is(Arrays.asList(heavyNext)));
+
+		// The usage is forgotten over time.
+		assertThat(scheduler.getUsage(heavy.getCreatedUser(), now + 10 * PerfTestScheduler.USAGE_HALF_LIFE) < scheduler
+						.getUsage(heavy.getCreatedUser(), now) / 1000, is(true));
+	}
+
+	@Test
+	public void testOwnerRunsOneTestAtATime() {
+		PerfTest running = createTest("user", 1, null);
+		PerfTest waiting = createTest("user", 1, MINUTE);
+		PerfTest next = createTest("other", 1, MINUTE);
+		PerfTest afterNext = createTest("other", 1, MINUTE);
+
+		List<PerfTest> runnables = scheduler.plan(Arrays.asList(waiting, next, afterNext), Arrays.asList(running),
+						freeAgents(10), now);
+		assertThat(runnables, is(Arrays.asList(next)));
+		assertThat(scheduler.getQueueEntry(waiting.getId()).getEstimatedStartTime() == null, is(true));
+		assertThat(scheduler.getQueueEntry(afterNext.getId()).getEstimatedStartTime(), is(new Date(now + MINUTE)));
+	}
+
+	@Test
+	public void testReservedTestWaitsForItsTime() {
+		PerfTest reserved = createTest("user", 1, MINUTE);
+		reserved.setScheduledTime(new Date(now + 10 * MINUTE));
+		assertThat(scheduler.plan(Arrays.asList(reserved), new ArrayList<PerfTest>(), freeAgents(1), now).isEmpty(),
+						is(true));
+		assertThat(scheduler.getQueueEntry(reserved.getId()).getEstimatedStartTime(), is(new Date(now + 10 * MINUTE)));
+	}
+
+	private PerfTest createTest(String userId, int agentCount, Long duration) {
+		PerfTest test = new PerfTest();
+		test.setId(++id);
+		User user = new User();
+		user.setUserId(userId);
+		test.setCreatedUser(user);
+		test.setAgentCount(agentCount);
+		test.setThreshold(duration == null ? "R" : "D");
+		test.setDuration(duration);
+		test.setScheduledTime(new Date(now - MINUTE + id));
+		return test;
+	}
+
+	private FreeAgentCounter freeAgents(final int count) {
+		return new FreeAgentCounter() {
+			@Override
+			public int getFreeAgentCount(User user) {
+				return count;
+			}
+		};
+	}
+}
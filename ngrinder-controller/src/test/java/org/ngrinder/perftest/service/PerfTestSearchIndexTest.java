@@ -0,0 +1,95 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.perftest.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ngrinder.model.PerfTest;
+import org.ngrinder.perftest.repository.PerfTestRepository;
+
+public class PerfTestSearchIndexTest {
+
+	private PerfTestSearchIndex index;
+
+	@Before
+	public void before() {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		rows.add(new Object[] { 1L, "Login Test", "check the login page", null, "web,login", "login.py", null,
+				"user" });
+		rows.add(new Object[] { 2L, "Search", null, "slow on the second run", "web", "search.py", "db.ngrinder.org",
+				"admin" });
+		rows.add(new Object[] { 3L, "Main", null, null, "web", "main.py", null, "user" });
+		PerfTestRepository perfTestRepository = mock(PerfTestRepository.class);
+		when(perfTestRepository.findAllSearchFields()).thenReturn(rows);
+		index = new PerfTestSearchIndex();
+		index.setPerfTestRepository(perfTestRepository);
+	}
+
+	@Test
+	public void testSubstringIsFound() {
+		assertThat(index.search("LOGIN", null, 10), is(Arrays.asList(1L)));
+		assertThat(index.search("gin te", null, 10), is(Arrays.asList(1L)));
+		assertThat(index.search("ngrinder.org", null, 10), is(Arrays.asList(2L)));
+		assertThat(index.search("second", null, 10), is(Arrays.asList(2L)));
+		assertThat(index.search("web", null, 10), is(Arrays.asList(3L, 2L, 1L)));
+		assertThat(index.search("py", null, 10), is(Arrays.asList(3L, 2L, 1L)));
+		// All trigrams exist but not in a row.
+		assertThat(index.search("loginpage", null, 10).isEmpty(), is(true));
+		// Fields are not joined.
+		assertThat(index.search("test check", null, 10).isEmpty(), is(true));
+	}
+
+	@Test
+	public void testKeysetPaging() {
+		assertThat(index.search("web", null, 1), is(Arrays.asList(3L)));
+		assertThat(index.search("web", 3L, 1), is(Arrays.asList(2L)));
+		assertThat(index.search("web", 2L, 1), is(Arrays.asList(1L)));
+		assertThat(index.search("web", 1L, 1).isEmpty(), is(true));
+		// Newer page is searched upward.
+		assertThat(index.search("web", null, 1L, false, 1), is(Arrays.asList(2L)));
+		assertThat(index.search("web", null, 1L, false, 10), is(Arrays.asList(2L, 3L)));
+	}
+
+	@Test
+	public void testOwnerIsFilteredBeforeLimit() {
+		assertThat(index.search("web", "user", null, true, 1), is(Arrays.asList(3L)));
+		assertThat(index.search("web", "user", 3L, true, 1), is(Arrays.asList(1L)));
+		assertThat(index.search("search", "user", null, true, 10).isEmpty(), is(true));
+		assertThat(index.search("search", "admin", null, true, 10), is(Arrays.asList(2L)));
+	}
+
+	@Test
+	public void testIndexAndRemove() {
+		index.search("web", null, 10);
+		PerfTest perfTest = new PerfTest();
+		perfTest.setId(2L);
+		perfTest.setTestName("Renamed");
+		index.index(perfTest);
+		assertThat(index.search("search", null, 10).isEmpty(), is(true));
+		assertThat(index.search("renamed", null, 10), is(Arrays.asList(2L)));
+
+		index.remove(1L);
+		index.remove(3L);
+		assertThat(index.search("web", null, 10).isEmpty(), is(true));
+	}
+}
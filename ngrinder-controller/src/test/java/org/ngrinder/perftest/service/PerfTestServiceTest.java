@@ -13,6 +13,7 @@
  */
 package org.ngrinder.perftest.service;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
@@ -22,6 +23,9 @@ import java.io.File;
 import java.util.Date;
 import java.util.List;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
 import net.grinder.StopReason;
 import net.grinder.common.GrinderProperties;
 import net.grinder.console.model.ConsoleProperties;
@@ -30,6 +34,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.ngrinder.model.PerfTest;
 import org.ngrinder.model.Status;
+import org.ngrinder.perftest.model.PerfTestListItem;
 import org.ngrinder.perftest.repository.PerfTestRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -50,6 +55,9 @@ public class PerfTestServiceTest extends AbstractPerfTestTransactionalTest {
 	@Autowired
 	PerfTestRepository perfTestRepository;
 
+	@PersistenceContext
+	private EntityManager entityManager;
+
 	@Before
 	public void clearPerfTest() {
 		clearAllPerfTest();
@@ -120,6 +128,144 @@ public class PerfTestServiceTest extends AbstractPerfTestTransactionalTest {
 		testService.markAbromalTermination(errorList.get(0), "this is error test");
 	}
 
+	@Test
+	public void testRunningPerfTestRegistry() {
+		PerfTest perfTest = createPerfTest("new Test1", Status.READY, new Date());
+		assertThat(testService.getCurrentlyRunningTest().size(), is(0));
+		assertThat(testService.canExecuteTestMore(), is(true));
+
+		testService.markStatusAndProgress(perfTest, Status.START_CONSOLE, "start console");
+		assertThat(testService.getCurrentlyRunningTest().size(), is(1));
+		assertThat(testService.getTestingPerfTest().size(), is(0));
+		assertThat(testService.getCurrentPerfTestStatistics().size(), is(1));
+
+		testService.markStatusAndProgress(perfTest, Status.TESTING, "testing");
+		assertThat(testService.getTestingPerfTest().size(), is(1));
+
+		// The other test of the same user waits until the running one is finished.
+		createPerfTest("new Test2", Status.READY, new Date());
+		assertThat(testService.getPerfTestCandiates().size(), is(0));
+
+		testService.markStatusAndProgress(perfTest, Status.FINISHED, "finished");
+		assertThat(testService.getCurrentlyRunningTest().size(), is(0));
+		assertThat(testService.getCurrentPerfTestStatistics().size(), is(0));
+		assertThat(testService.getPerfTestCandiates().size(), is(1));
+	}
+
+	@Test
+	public void testProgressIsCoalesced() {
+		PerfTest perfTest = detach(createPerfTest("new Test1", Status.READY, new Date()));
+		testService.markStatusAndProgress(perfTest, Status.START_CONSOLE, "start console");
+		testService.markStatusAndProgress(perfTest, Status.START_AGENTS, "start agents");
+		assertThat(loadPerfTest(perfTest.getId()).getStatus(), is(Status.START_CONSOLE));
+
+		testService.flushProgress();
+		PerfTest loaded = loadPerfTest(perfTest.getId());
+		assertThat(loaded.getStatus(), is(Status.START_AGENTS));
+		assertThat(loaded.getLastProgressMessage(), is("start agents"));
+		assertThat(loaded.getProgressMessage(), containsString("start console"));
+	}
+
+	@Test
+	public void testProgressIsWrittenAtOnceOnCategoryChange() {
+		PerfTest perfTest = detach(createPerfTest("new Test1", Status.READY, new Date()));
+		testService.markStatusAndProgress(perfTest, Status.START_CONSOLE, "start console");
+		testService.markStatusAndProgress(perfTest, Status.START_AGENTS, "start agents");
+		int entryCount = testService.getProgressEntryCount();
+
+		// Written at once even though the earlier progress is pending.
+		testService.markStatusAndProgress(perfTest, Status.TESTING, "testing");
+		PerfTest loaded = loadPerfTest(perfTest.getId());
+		assertThat(loaded.getStatus(), is(Status.TESTING));
+		assertThat(loaded.getProgressMessage(), containsString("start agents"));
+
+		testService.markStatusAndProgress(perfTest, Status.FINISHED, "finished");
+		assertThat(loadPerfTest(perfTest.getId()).getStatus(), is(Status.FINISHED));
+		assertThat(testService.getProgressEntryCount(), is(entryCount - 1));
+
+		// Nothing pending is written after the terminal state.
+		testService.flushProgress();
+		assertThat(loadPerfTest(perfTest.getId()).getStatus(), is(Status.FINISHED));
+	}
+
+	@Test
+	public void testPendingProgressDoesNotOverwriteOtherWrites() {
+		PerfTest perfTest = detach(createPerfTest("new Test1", Status.READY, new Date()));
+		testService.markProgress(perfTest, "waiting 1");
+		testService.markProgress(perfTest, "waiting 2");
+
+		// The user edits the test while the progress is pending.
+		PerfTest edited = loadPerfTest(perfTest.getId());
+		edited.setTestName("edited");
+		testService.savePerfTest(edited);
+		testService.flushProgress();
+		PerfTest loaded = loadPerfTest(perfTest.getId());
+		assertThat(loaded.getTestName(), is("edited"));
+		assertThat(loaded.getLastProgressMessage(), is("waiting 2"));
+
+		perfTest = detach(loaded);
+		testService.markStatusAndProgress(perfTest, Status.START_CONSOLE, "start console");
+		testService.markStatusAndProgress(perfTest, Status.START_AGENTS, "start agents");
+
+		// Stop is requested while the test starts.
+		PerfTest stopped = loadPerfTest(perfTest.getId());
+		stopped.setStopRequest(true);
+		perfTestRepository.saveAndFlush(stopped);
+		testService.flushProgress();
+		loaded = loadPerfTest(perfTest.getId());
+		assertThat(loaded.getStopRequest(), is(true));
+		assertThat(loaded.getStatus(), is(Status.START_AGENTS));
+
+		// The entry of the deleted test is dropped.
+		int entryCount = testService.getProgressEntryCount();
+		testService.deletePerfTest(getTestUser(), perfTest.getId());
+		assertThat(testService.getProgressEntryCount(), is(entryCount - 1));
+	}
+
+	private PerfTest detach(PerfTest perfTest) {
+		entityManager.flush();
+		entityManager.clear();
+		return perfTest;
+	}
+
+	private PerfTest loadPerfTest(Long id) {
+		entityManager.flush();
+		entityManager.clear();
+		return perfTestRepository.findOne(id);
+	}
+
+	@Test
+	public void testGetPerfTestListItems() {
+		PerfTest oldest = createPerfTest("new Test1", Status.FINISHED, new Date());
+		PerfTest middle = createPerfTest("new Test2", Status.FINISHED, new Date());
+		PerfTest newest = createPerfTest("new Test3", Status.READY, new Date());
+
+		List<PerfTestListItem> items = testService.getPerfTestListItems(getTestUser(), null, null, null, null, null,
+						true, 2);
+		assertThat(items.size(), is(2));
+		assertThat(items.get(0).getId(), is(newest.getId()));
+		assertThat(items.get(1).getId(), is(middle.getId()));
+		assertThat(items.get(0).getCreatedUser().getUserId(), is(getTestUser().getUserId()));
+
+		// Next page seeks from the last item.
+		PerfTestListItem last = items.get(1);
+		items = testService.getPerfTestListItems(getTestUser(), null, null, null, last.getCreatedDate(), last.getId(),
+						true, 2);
+		assertThat(items.size(), is(1));
+		assertThat(items.get(0).getId(), is(oldest.getId()));
+
+		// Previous page seeks back from the first item, still from the newest.
+		PerfTestListItem first = items.get(0);
+		items = testService.getPerfTestListItems(getTestUser(), null, null, null, first.getCreatedDate(),
+						first.getId(), false, 2);
+		assertThat(items.size(), is(2));
+		assertThat(items.get(0).getId(), is(newest.getId()));
+		assertThat(items.get(1).getId(), is(middle.getId()));
+
+		items = testService.getPerfTestListItems(getTestUser(), null, null, "F", null, null, true, 10);
+		assertThat(items.size(), is(2));
+	}
+
 	@Test
 	public void testTestScriptAll() {
 		int maxConcurrent = testService.getMaximumConcurrentTestCount();
@@ -14,6 +14,7 @@
 package org.ngrinder.script.repository;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
 
 import java.io.File;
@@ -22,9 +23,11 @@ import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.ngrinder.AbstractNGrinderTransactionalTest;
+import org.ngrinder.infra.config.Config;
 import org.ngrinder.infra.init.DBInit;
 import org.ngrinder.script.model.FileEntry;
 import org.ngrinder.script.model.FileType;
@@ -32,6 +35,10 @@ import org.ngrinder.script.util.CompressionUtil;
 import org.ngrinder.service.IUserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 
 public class FileEntryRepositoryTest extends AbstractNGrinderTransactionalTest {
@@ -45,6 +52,9 @@ public class FileEntryRepositoryTest extends AbstractNGrinderTransactionalTest {
 	@Autowired
 	public DBInit dbinit;
 
+	@Autowired
+	public Config config;
+
 	/**
 	 * Locate dumped user1 repo into tempdir
 	 * 
@@ -94,6 +104,59 @@ public class FileEntryRepositoryTest extends AbstractNGrinderTransactionalTest {
 
 	}
 
+	@Test
+	public void testFileEntryIndex() throws SVNException {
+		FileEntry fileEntry = new FileEntry();
+		fileEntry.setContent("HELLO WORLD");
+		fileEntry.setPath("indexed/hello.py");
+		fileEntry.setDescription("indexed");
+		fileEntry.getProperties().put("validated", "true");
+		repo.save(getTestUser(), fileEntry, "UTF-8");
+
+		List<FileEntry> found = repo.search(getTestUser(), "indexed/");
+		assertThat(found.size(), is(1));
+		assertThat(found.get(0).getDescription(), is("indexed"));
+		assertThat(found.get(0).getProperties().get("validated"), is("true"));
+		assertThat(found.get(0).getEncoding(), notNullValue());
+
+		// The saved index is up to date and it's kept out of the repository.
+		File repoDirectory = repo.getUserRepoDirectory(getTestUser());
+		File indexFile = config.getHome().getUserRepoIndexFile(repoDirectory.getName());
+		assertThat(indexFile.exists(), is(true));
+		assertThat(indexFile.getAbsolutePath().startsWith(repoDirectory.getAbsolutePath()), is(false));
+		SVNRepository svnRepository = SVNRepositoryFactory.create(SVNURL.fromFile(repoDirectory));
+		FileEntryIndex index = new FileEntryIndex(indexFile);
+		index.update(svnRepository);
+		assertThat(index.getRevision(), is(svnRepository.getLatestRevision()));
+		assertThat(index.getFileEntries().size(), is(repo.findAll(getTestUser()).size()));
+		svnRepository.closeSession();
+
+		// Files under the deleted folder are removed.
+		repo.delete(getTestUser(), new String[] { "indexed" });
+		assertThat(repo.search(getTestUser(), "indexed/").size(), is(0));
+	}
+
+	@Test
+	public void testFileEntryIndexEncoding() {
+		FileEntry fileEntry = new FileEntry();
+		fileEntry.setContent("# " + StringUtils.repeat("\uD55C\uAE00 ", FileEntryIndex.ENCODING_DETECTION_SIZE));
+		fileEntry.setPath("encoding/large.py");
+		fileEntry.setDescription("large");
+		repo.save(getTestUser(), fileEntry, "UTF-8");
+		fileEntry.setPath("encoding/declared.py");
+		fileEntry.getProperties().put("svn:mime-type", "text/x-python; charset=EUC-KR");
+		repo.save(getTestUser(), fileEntry, "EUC-KR");
+
+		List<FileEntry> found = repo.search(getTestUser(), "encoding/");
+		assertThat(found.size(), is(2));
+		// The encoding is taken from the mime type.
+		assertThat(found.get(0).getPath(), is("encoding/declared.py"));
+		assertThat(found.get(0).getEncoding(), is("EUC-KR"));
+		// The encoding is detected from the beginning of the file.
+		assertThat(found.get(1).getEncoding(), is("UTF-8"));
+		assertThat(found.get(1).getFileSize() > FileEntryIndex.ENCODING_DETECTION_SIZE, is(true));
+	}
+
 	@Test
 	public void testBinarySaveAndLoad() throws IOException {
 		FileEntry fileEntry = new FileEntry();
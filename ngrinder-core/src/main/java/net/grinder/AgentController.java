@@ -32,16 +32,22 @@ import net.grinder.communication.CommunicationException;
 import net.grinder.communication.ConnectionType;
 import net.grinder.communication.Connector;
 import net.grinder.communication.FanOutStreamSender;
+import net.grinder.communication.MessageDispatchRegistry.AbstractHandler;
 import net.grinder.communication.MessageDispatchSender;
 import net.grinder.communication.MessagePump;
+import net.grinder.console.communication.MultiplexedConsoleServer;
 import net.grinder.engine.agent.Agent;
 import net.grinder.engine.common.AgentControllerConnectorFactory;
 import net.grinder.engine.communication.AgentControllerServerListener;
+import net.grinder.engine.communication.ClockSyncGrinderMessage;
 import net.grinder.engine.communication.LogReportGrinderMessage;
+import net.grinder.engine.communication.ReportRequestGrinderMessage;
 import net.grinder.engine.communication.UpdateAgentGrinderMessage;
 import net.grinder.engine.controller.AgentControllerIdentityImplementation;
+import net.grinder.message.console.AgentControllerHeartbeatEncoder;
 import net.grinder.message.console.AgentControllerProcessReportMessage;
 import net.grinder.message.console.AgentControllerState;
+import net.grinder.message.console.ClockSyncReportMessage;
 import net.grinder.messages.agent.StartGrinderMessage;
 import net.grinder.messages.console.AgentAddress;
 import net.grinder.util.LogCompressUtil;
@@ -186,7 +192,12 @@ public class AgentController implements Agent {
 					final String testId = startMessage.getProperties().getProperty("grinder.test.id", "");
 					LOGGER.info("starting agent... for {}", testId);
 					m_state = AgentControllerState.BUSY;
-					m_connectionPort = startMessage.getProperties().getInt(GrinderProperties.CONSOLE_PORT, 0);
+					// The console behind the multiplexed console server is known by its route id
+					// because all of them share the port.
+					m_connectionPort = startMessage.getProperties().getInt(MultiplexedConsoleServer.PROP_CONSOLE_ROUTE,
+									startMessage.getProperties().getInt(GrinderProperties.CONSOLE_PORT, 0));
+					// Acknowledge the start right away rather than at the next heartbeat.
+					sendCurrentState(consoleCommunication);
 					agent.run(startMessage.getProperties());
 
 					final ConsoleCommunication conCom = consoleCommunication;
@@ -318,7 +329,9 @@ public class AgentController implements Agent {
 	public SystemDataModel getSystemDataModel() {
 		try {
 			SystemInfo systemInfo = agentSystemDataCollector.execute();
-			return new SystemDataModel(systemInfo);
+			SystemDataModel systemDataModel = new SystemDataModel(systemInfo);
+			systemDataModel.setCpuCount(Runtime.getRuntime().availableProcessors());
+			return systemDataModel;
 		} catch (Exception e) {
 			LOGGER.error("Error while get system perf data model : {} ", e.getMessage());
 			LOGGER.debug("Error Trace is ", e);
@@ -338,15 +351,31 @@ public class AgentController implements Agent {
 		private final ClientSender m_sender;
 		private final TimerTask m_reportRunningTask;
 		private final MessagePump m_messagePump;
+		private final AgentControllerHeartbeatEncoder m_heartbeatEncoder = new AgentControllerHeartbeatEncoder();
 
 		public ConsoleCommunication(Connector connector) throws CommunicationException {
 			final ClientReceiver receiver = ClientReceiver.connect(connector, new AgentAddress(m_agentIdentity));
 			m_sender = ClientSender.connect(receiver);
 
-			m_sender.send(new AgentControllerProcessReportMessage(AgentControllerState.STARTED, getSystemDataModel(),
+			m_sender.send(m_heartbeatEncoder.encode(AgentControllerState.STARTED, getSystemDataModel(),
 							m_connectionPort));
 			final MessageDispatchSender messageDispatcher = new MessageDispatchSender();
 			m_agentControllerServerListener.registerMessageHandlers(messageDispatcher);
+			// Answered right in the message pump so that the reply is not delayed by other tasks.
+			messageDispatcher.set(ClockSyncGrinderMessage.class, new AbstractHandler<ClockSyncGrinderMessage>() {
+				public void handle(ClockSyncGrinderMessage message) {
+					long receiveTime = System.currentTimeMillis();
+					sendMessage(new ClockSyncReportMessage(message.getOriginateTime(), receiveTime, System
+									.currentTimeMillis()));
+				}
+			});
+
+			messageDispatcher.set(ReportRequestGrinderMessage.class,
+							new AbstractHandler<ReportRequestGrinderMessage>() {
+								public void handle(ReportRequestGrinderMessage message) {
+									m_heartbeatEncoder.reset();
+								}
+							});
 
 			m_messagePump = new MessagePump(receiver, messageDispatcher, 1);
 
@@ -371,8 +400,9 @@ public class AgentController implements Agent {
 			}
 		}
 
-		public void sendCurrentState() throws CommunicationException {
-			sendMessage(new AgentControllerProcessReportMessage(m_state, getSystemDataModel(), m_connectionPort));
+		public synchronized void sendCurrentState() throws CommunicationException {
+			// Only the changed fields are sent except for the periodic full report.
+			sendMessage(m_heartbeatEncoder.encode(m_state, getSystemDataModel(), m_connectionPort));
 		}
 
 		public void start() {
@@ -22,6 +22,7 @@ import net.grinder.console.common.Resources;
 import net.grinder.console.common.ResourcesImplementation;
 import net.grinder.console.communication.AgentProcessControl;
 import net.grinder.console.communication.AgentProcessControlImplementation;
+import net.grinder.console.communication.AgentStatusChangeListener;
 import net.grinder.console.communication.ConsoleCommunication;
 import net.grinder.console.communication.LogArrivedListener;
 import net.grinder.console.model.ConsoleProperties;
@@ -165,6 +166,16 @@ public class AgentControllerServerDaemon {
 		getComponent(AgentProcessControlImplementation.class).addLogArrivedListener(logArrivedListener);
 	}
 
+	/**
+	 * Add Listener which will be notified with the agents whose status is changed.
+	 * 
+	 * @param agentStatusChangeListener
+	 *            listener
+	 */
+	public void addAgentStatusChangeListener(AgentStatusChangeListener agentStatusChangeListener) {
+		getComponent(AgentProcessControlImplementation.class).addAgentStatusChangeListener(agentStatusChangeListener);
+	}
+
 	/**
 	 * Get the console port which the given controller's agent is using. 
 	 * @param agentIdentity agent identity
@@ -204,6 +215,16 @@ public class AgentControllerServerDaemon {
 						.getSystemDataModel(agentIdentity);
 	}
 
+	/**
+	 * Get the estimated clock offset of the given agent.
+	 * @param agentIdentity agent identity
+	 * @return agent time - console time in millisecond
+	 */
+	public long getClockOffset(AgentIdentity agentIdentity) {
+		return agentControllerServer.getComponent(AgentProcessControlImplementation.class)
+						.getClockOffset(agentIdentity);
+	}
+
 	/**
 	 * Get all available agents.
 	 * @return agent set
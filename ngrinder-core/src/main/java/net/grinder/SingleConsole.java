@@ -13,7 +13,6 @@
  */
 package net.grinder;
 
-import static org.ngrinder.common.util.NoOp.noOp;
 import static org.ngrinder.common.util.Preconditions.checkNotNull;
 
 import java.beans.PropertyChangeEvent;
@@ -31,6 +30,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 
 import net.grinder.common.GrinderException;
@@ -41,6 +41,8 @@ import net.grinder.common.processidentity.WorkerProcessReport;
 import net.grinder.console.ConsoleFoundationEx;
 import net.grinder.console.common.Resources;
 import net.grinder.console.common.ResourcesImplementation;
+import net.grinder.console.communication.ConsoleCommunicationSetting;
+import net.grinder.console.communication.MultiplexedConsoleServer;
 import net.grinder.console.communication.ProcessControl;
 import net.grinder.console.communication.ProcessControl.Listener;
 import net.grinder.console.communication.ProcessControl.ProcessReports;
@@ -72,6 +74,8 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.ngrinder.common.exception.NGrinderRuntimeException;
+import org.ngrinder.common.metrics.MetricRegistry;
+import org.ngrinder.common.metrics.Timer;
 import org.ngrinder.common.util.DateUtil;
 import org.ngrinder.common.util.ReflectionUtil;
 import org.ngrinder.service.ISingleConsole;
@@ -93,6 +97,11 @@ public class SingleConsole implements Listener, SampleListener, ISingleConsole {
 	public static final Resources RESOURCE = new ResourcesImplementation(REOSURCE_CONSOLE);
 	public static final Logger LOGGER = LoggerFactory.getLogger(SingleConsole.class);
 
+	private static final Timer UPDATE_TIMER = MetricRegistry.getInstance().timer("ngrinder_console_sample_update",
+					"Time to process a sample of the running test");
+	private static final Timer REPORT_WRITE_TIMER = MetricRegistry.getInstance().timer(
+					"ngrinder_console_report_write", "Time to write a line into the report files");
+
 	private static final String REPORT_CSV = "output.csv";
 	private static final String REPORT_DATA = ".data";
 
@@ -142,9 +151,28 @@ public class SingleConsole implements Listener, SampleListener, ISingleConsole {
 	 */
 	private int currentNotFinishedProcessCount = 0;
 
+	/**
+	 * Host, port and route of the {@link MultiplexedConsoleServer} through which agents connect.
+	 * Agents connect to the console directly if the route is 0.
+	 */
+	private String routedHost;
+	private int routedPort = 0;
+	private int route = 0;
+
 	private static final int TOO_LOW_TPS_TIME = 60000;
 	private static final int TOO_MANY_ERROR_TIME = 10000;
 
+	/**
+	 * Time for which the workers vanished while running are waited for after their agents are not
+	 * known to be running the test anymore.
+	 */
+	private static final int WORKER_LOST_GRACE_PERIOD = 30000;
+	private static final int WORKER_LOST_CHECK_PERIOD = 1000;
+
+	/** Time when the workers are lost or their agents are last known to be running. 0 if not lost. */
+	private volatile long workerLostTime = 0;
+	private RunningAgentChecker runningAgentChecker;
+
 	/**
 	 * Constructor with console ip and port.
 	 * 
@@ -180,6 +208,23 @@ public class SingleConsole implements Listener, SampleListener, ISingleConsole {
 	 *            {@link ConsoleProperties} used.
 	 */
 	public SingleConsole(String ip, int port, ConsoleProperties consoleProperties) {
+		this(ip, port, consoleProperties, ConsoleCommunicationSetting.asDefault());
+	}
+
+	/**
+	 * Constructor with IP, port, properties and the communication setting.
+	 * 
+	 * @param ip
+	 *            IP
+	 * @param port
+	 *            PORT
+	 * @param consoleProperties
+	 *            {@link ConsoleProperties} used.
+	 * @param communicationSetting
+	 *            transport setting of the agent communication
+	 */
+	public SingleConsole(String ip, int port, ConsoleProperties consoleProperties,
+					ConsoleCommunicationSetting communicationSetting) {
 		// if port is 0, it is Null singleConsole.
 		if (port == 0) {
 			return;
@@ -189,7 +234,8 @@ public class SingleConsole implements Listener, SampleListener, ISingleConsole {
 				consoleProperties.setConsoleHost(ip);
 			}
 			consoleProperties.setConsolePort(port);
-			this.consoleFoundation = new ConsoleFoundationEx(RESOURCE, LOGGER, consoleProperties, eventSyncCondition);
+			this.consoleFoundation = new ConsoleFoundationEx(RESOURCE, LOGGER, consoleProperties, communicationSetting,
+							eventSyncCondition);
 
 			modelView = getConsoleComponent(SampleModelViews.class);
 			getConsoleComponent(ProcessControl.class).addProcessStatusListener(this);
@@ -233,6 +279,78 @@ public class SingleConsole implements Listener, SampleListener, ISingleConsole {
 		}
 	}
 
+	/**
+	 * Make agents connect to this console through the {@link MultiplexedConsoleServer} on the given
+	 * host and port.
+	 * 
+	 * @param host
+	 *            host of the multiplexed console server
+	 * @param port
+	 *            port of the multiplexed console server
+	 * @param route
+	 *            route id of this console in the multiplexed console server. It should be positive.
+	 */
+	public void setRoutedEndpoint(String host, int port, int route) {
+		this.routedHost = host;
+		this.routedPort = port;
+		this.route = route;
+	}
+
+	/**
+	 * Check whether agents connect to this console through the multiplexed console server.
+	 * 
+	 * @return true if routed
+	 */
+	public boolean isRouted() {
+		return route != 0;
+	}
+
+	/**
+	 * Get the route id of this console in the multiplexed console server.
+	 * 
+	 * @return route id. 0 if agents connect to this console directly.
+	 */
+	public int getConsoleRoute() {
+		return route;
+	}
+
+	/**
+	 * Get the port to which agents connect. It's the port of the multiplexed console server if
+	 * this console is routed.
+	 * 
+	 * @return port
+	 */
+	public int getAgentConnectionPort() {
+		return isRouted() ? routedPort : getConsolePort();
+	}
+
+	/**
+	 * Get the key by which the agents of this console report the console they are connecting to.
+	 * It's the route id if this console is routed and the console port otherwise.
+	 * 
+	 * @return connection key
+	 */
+	public int getAgentConnectionKey() {
+		return isRouted() ? route : getConsolePort();
+	}
+
+	/**
+	 * Set the console connection details for the agents into the given properties.
+	 * 
+	 * @param properties
+	 *            {@link GrinderProperties} which will be sent to agents
+	 */
+	public void setAgentConnectionProperties(GrinderProperties properties) {
+		if (isRouted()) {
+			properties.setProperty(GrinderProperties.CONSOLE_HOST, routedHost);
+			properties.setInt(GrinderProperties.CONSOLE_PORT, routedPort);
+			properties.setInt(MultiplexedConsoleServer.PROP_CONSOLE_ROUTE, route);
+		} else {
+			properties.setProperty(GrinderProperties.CONSOLE_HOST, getConsoleHost());
+			properties.setInt(GrinderProperties.CONSOLE_PORT, getConsolePort());
+		}
+	}
+
 	/**
 	 * Check whether the single console is proper initialized.
 	 * 
@@ -356,7 +474,7 @@ public class SingleConsole implements Listener, SampleListener, ISingleConsole {
 	 * @return current time
 	 */
 	public long startTest(GrinderProperties properties) {
-		properties.setInt(GrinderProperties.CONSOLE_PORT, getConsolePort());
+		setAgentConnectionProperties(properties);
 		getConsoleComponent(ProcessControl.class).startWorkerProcesses(properties);
 		this.startTime = System.currentTimeMillis();
 		return this.startTime;
@@ -591,6 +709,7 @@ public class SingleConsole implements Listener, SampleListener, ISingleConsole {
 			firstSampling = false;
 			informTestSamplingStart();
 		}
+		long start = UPDATE_TIMER.start();
 		try {
 			final StatisticsSet intervalStatisticsSnapshot = intervalStatistics.snapshot();
 			final StatisticsSet cumulatedStatisticsSnapshot = cumulativeStatistics.snapshot();
@@ -611,6 +730,8 @@ public class SingleConsole implements Listener, SampleListener, ISingleConsole {
 		} catch (RuntimeException e) {
 			LOGGER.error("Error occurs while update statistics " + e.getMessage(), e);
 			throw e;
+		} finally {
+			UPDATE_TIMER.stop(start);
 		}
 
 	}
@@ -904,6 +1025,22 @@ public class SingleConsole implements Listener, SampleListener, ISingleConsole {
 		void readyToStop(StopReason stopReason);
 	}
 
+	/**
+	 * Checker interface to know if the agents of the console still run the test while their workers
+	 * are not connected to the console.
+	 * 
+	 * @author JunHo Yoon
+	 * @since 3.1
+	 */
+	public interface RunningAgentChecker {
+		/**
+		 * Check if any agent still runs the test of the console.
+		 * 
+		 * @return true if running
+		 */
+		boolean hasRunningAgent();
+	}
+
 	/**
 	 * get the list of added {@link ConsoleShutdownListener}.
 	 * 
@@ -954,13 +1091,78 @@ public class SingleConsole implements Listener, SampleListener, ISingleConsole {
 	}
 
 	private void checkExeuctionErrors(ProcessReports[] processReports) {
-		if (samplingCount == 0 && ArrayUtils.isNotEmpty(this.processReports) && ArrayUtils.isEmpty(processReports)) {
-			getListeners().apply(new Informer<ConsoleShutdownListener>() {
-				public void inform(ConsoleShutdownListener listener) {
-					listener.readyToStop(StopReason.SCRIPT_ERROR);
+		if (ArrayUtils.isNotEmpty(processReports)) {
+			workerLostTime = 0;
+			return;
+		}
+		if (samplingCount == 0 && ArrayUtils.isNotEmpty(this.processReports)) {
+			if (hasRunningWorker(this.processReports)) {
+				// When the workers vanish while running, the console connection may be lost rather
+				// than the script failed. The agents spool the statistics until they are connected
+				// again. So they are waited for a while.
+				workerLostTime = System.currentTimeMillis();
+				scheduleWorkerLostCheck();
+			} else {
+				informScriptError();
+			}
+		}
+	}
+
+	private void scheduleWorkerLostCheck() {
+		TimerTask task = new TimerTask() {
+			@Override
+			public void run() {
+				synchronized (eventSyncCondition) {
+					if (workerLostTime == 0) {
+						cancel();
+					} else if (runningAgentChecker != null && runningAgentChecker.hasRunningAgent()) {
+						workerLostTime = System.currentTimeMillis();
+					} else if (System.currentTimeMillis() - workerLostTime >= WORKER_LOST_GRACE_PERIOD) {
+						LOGGER.warn("Stop the test because the workers are lost for more than {} seconds.",
+										WORKER_LOST_GRACE_PERIOD / 1000);
+						workerLostTime = 0;
+						cancel();
+						informScriptError();
+					}
 				}
-			});
+			}
+		};
+		try {
+			consoleFoundation.getComponent(java.util.Timer.class).schedule(task, WORKER_LOST_CHECK_PERIOD,
+							WORKER_LOST_CHECK_PERIOD);
+		} catch (IllegalStateException e) {
+			LOGGER.debug("The console is already shutdowned.");
+		}
+	}
+
+	private void informScriptError() {
+		getListeners().apply(new Informer<ConsoleShutdownListener>() {
+			public void inform(ConsoleShutdownListener listener) {
+				listener.readyToStop(StopReason.SCRIPT_ERROR);
+			}
+		});
+	}
+
+	/**
+	 * Set the {@link RunningAgentChecker} which tells if the agents whose workers are lost are
+	 * still running the test.
+	 * 
+	 * @param runningAgentChecker
+	 *            checker to be used
+	 */
+	public void setRunningAgentChecker(RunningAgentChecker runningAgentChecker) {
+		this.runningAgentChecker = runningAgentChecker;
+	}
+
+	private boolean hasRunningWorker(ProcessReports[] processReports) {
+		for (ProcessReports agentReport : processReports) {
+			for (WorkerProcessReport processReport : agentReport.getWorkerProcessReports()) {
+				if (processReport.getState() != 3) {
+					return true;
+				}
+			}
 		}
+		return false;
 	}
 
 	/**
@@ -995,6 +1197,7 @@ public class SingleConsole implements Listener, SampleListener, ISingleConsole {
 	}
 
 	private void writeReportData(String name, String value) {
+		long start = REPORT_WRITE_TIMER.start();
 		try {
 			BufferedWriter bw = fileWriterMap.get(name);
 			if (bw == null) {
@@ -1008,7 +1211,7 @@ public class SingleConsole implements Listener, SampleListener, ISingleConsole {
 			LOGGER.error(e.getMessage(), e);
 			throw new NGrinderRuntimeException(e.getMessage(), e);
 		} finally {
-			noOp();
+			REPORT_WRITE_TIMER.stop(start);
 		}
 	}
 
@@ -0,0 +1,78 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.communication;
+
+/**
+ * Address wrapper which tells the multiplexed console server which console the connection
+ * belongs to. The server strips it off and hands the wrapped address to the console.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class RoutedAddress implements Address {
+
+	private static final long serialVersionUID = 3287011874390264536L;
+
+	private final int m_route;
+
+	private final Address m_address;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param route
+	 *            route id of the console behind the multiplexed server
+	 * @param address
+	 *            wrapped address
+	 */
+	public RoutedAddress(int route, Address address) {
+		m_route = route;
+		m_address = address;
+	}
+
+	public int getRoute() {
+		return m_route;
+	}
+
+	public Address getAddress() {
+		return m_address;
+	}
+
+	@Override
+	public boolean includes(Address address) {
+		return m_address.includes(address);
+	}
+
+	@Override
+	public int hashCode() {
+		return m_route * 31 + m_address.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		RoutedAddress other = (RoutedAddress) obj;
+		return m_route == other.m_route && m_address.equals(other.m_address);
+	}
+
+	@Override
+	public String toString() {
+		return m_address + "@" + m_route;
+	}
+}
@@ -0,0 +1,644 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selector based replacement of {@link Acceptor}, {@link ServerReceiver} and
+ * {@link FanOutServerSender} for the console.
+ * 
+ * The wire format is the one of the Grinder clients. A connection starts with the handshake of
+ * {@link Connector} and each message is a serialization stream of its own. As there is no length
+ * prefix, a message is decoded straight from the receive buffer once it's complete. An incomplete
+ * message smaller than the initial buffer is decoded again whenever more bytes arrive. A bigger
+ * one is decoded again only after the buffered bytes are doubled, or at the periodic check when
+ * the connection is quiet, so that a large message is not deserialized over and over. The receive
+ * buffer of a connection is capped and the connection is closed when a message exceeds it. The
+ * received messages are queued and wake up
+ * {@link #waitForMessage()} immediately, so there is no poll delay. An outgoing message is
+ * serialized once and the same buffer is shared by all connections it's sent to.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class SelectorServer implements Receiver {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SelectorServer.class);
+
+	private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+	private static final int DEFAULT_MAX_BUFFER_SIZE = 32 * 1024 * 1024;
+
+	/** Growth of the buffered bytes after which an incomplete message is decoded again. */
+	private static final int DECODE_RETRY_FACTOR = 2;
+
+	private static final long SELECT_TIMEOUT = 1000;
+
+	private static final Object SHUTDOWN = new Object();
+
+	private final String m_host;
+
+	private final int m_port;
+
+	private final Set<ConnectionType> m_connectionTypes;
+
+	private final long m_inactiveClientTimeOut;
+
+	private int m_maxBufferSize = DEFAULT_MAX_BUFFER_SIZE;
+
+	private final IoLoop[] m_ioLoops;
+
+	private final AtomicInteger m_nextIoLoop = new AtomicInteger();
+
+	private final Set<Connection> m_connections = Collections
+					.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+
+	private final BlockingQueue<Object> m_received = new LinkedBlockingQueue<Object>();
+
+	private ServerSocketChannel m_serverChannel;
+
+	private volatile boolean m_shutdown = false;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param host
+	 *            host to bind. All interfaces are bound if it's empty.
+	 * @param port
+	 *            port to bind
+	 * @param connectionTypes
+	 *            connection types to accept
+	 * @param ioThreadCount
+	 *            count of the threads which serve the connections
+	 * @param inactiveClientTimeOut
+	 *            how long a connection which presents no data is kept in millisecond
+	 */
+	public SelectorServer(String host, int port, ConnectionType[] connectionTypes, int ioThreadCount,
+					long inactiveClientTimeOut) {
+		m_host = host;
+		m_port = port;
+		m_connectionTypes = new HashSet<ConnectionType>(Arrays.asList(connectionTypes));
+		m_inactiveClientTimeOut = inactiveClientTimeOut;
+		m_ioLoops = new IoLoop[Math.max(1, ioThreadCount)];
+	}
+
+	/**
+	 * Bind the port and start the I/O threads.
+	 * 
+	 * @throws CommunicationException
+	 *             if the port can not be bound
+	 */
+	public void start() throws CommunicationException {
+		try {
+			for (int i = 0; i < m_ioLoops.length; i++) {
+				m_ioLoops[i] = new IoLoop(Selector.open());
+			}
+			m_serverChannel = ServerSocketChannel.open();
+			m_serverChannel.socket().setReuseAddress(true);
+			m_serverChannel.socket().bind(
+							StringUtils.isBlank(m_host) ? new InetSocketAddress(m_port) : new InetSocketAddress(m_host,
+											m_port));
+			m_serverChannel.configureBlocking(false);
+			// The first loop accepts as well.
+			m_serverChannel.register(m_ioLoops[0].m_selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			shutdown();
+			throw new CommunicationException("Failed to bind to '" + m_host + ":" + m_port + "'", e);
+		}
+		for (int i = 0; i < m_ioLoops.length; i++) {
+			Thread thread = new Thread(m_ioLoops[i], "Console I/O " + i + " on port " + getPort());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Set the max size of the receive buffer of a connection. It's for test.
+	 * 
+	 * @param maxBufferSize
+	 *            max buffer size in byte
+	 */
+	void setMaxBufferSize(int maxBufferSize) {
+		m_maxBufferSize = maxBufferSize;
+	}
+
+	/**
+	 * Get the bound port.
+	 * 
+	 * @return port
+	 */
+	public int getPort() {
+		return m_serverChannel == null ? m_port : m_serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Get the count of the connections which have finished the handshake.
+	 * 
+	 * @return connection count
+	 */
+	public int getNumberOfConnections() {
+		return m_connections.size();
+	}
+
+	/**
+	 * Wait for a message from any connection.
+	 * 
+	 * @return message. null if this server is shut down.
+	 * @throws CommunicationException
+	 *             if a message can not be decoded
+	 */
+	@Override
+	public Message waitForMessage() throws CommunicationException {
+		try {
+			Object received = m_received.take();
+			if (received == SHUTDOWN) {
+				// Let the other waiters know.
+				m_received.add(SHUTDOWN);
+				return null;
+			}
+			if (received instanceof CommunicationException) {
+				throw (CommunicationException) received;
+			}
+			return (Message) received;
+		} catch (InterruptedException e) {
+			throw new CommunicationException("Interrupted while waiting for a message", e);
+		}
+	}
+
+	/**
+	 * Send the given message to all agents.
+	 * 
+	 * @param message
+	 *            message
+	 * @throws CommunicationException
+	 *             if the message can not be serialized
+	 */
+	public void send(Message message) throws CommunicationException {
+		send(null, message);
+	}
+
+	/**
+	 * Send the given message to the agents included in the given address.
+	 * 
+	 * @param address
+	 *            address. null for all agents.
+	 * @param message
+	 *            message
+	 * @throws CommunicationException
+	 *             if the message can not be serialized
+	 */
+	public void send(Address address, Message message) throws CommunicationException {
+		if (m_shutdown) {
+			throw new CommunicationException("Shut down");
+		}
+		ByteBuffer data = serialize(message);
+		for (Connection each : m_connections) {
+			if (each.m_connectionType == ConnectionType.AGENT
+							&& (address == null || address.includes(each.m_address))) {
+				each.enqueue(data.duplicate());
+			}
+		}
+	}
+
+	/**
+	 * Close all connections and stop the I/O threads. The waiters of {@link #waitForMessage()} get
+	 * null.
+	 */
+	@Override
+	public void shutdown() {
+		if (m_shutdown) {
+			return;
+		}
+		m_shutdown = true;
+		for (IoLoop each : m_ioLoops) {
+			if (each != null) {
+				each.m_selector.wakeup();
+			}
+		}
+		try {
+			if (m_serverChannel != null) {
+				m_serverChannel.close();
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Error while closing the server channel", e);
+		}
+		m_received.add(SHUTDOWN);
+	}
+
+	private static ByteBuffer serialize(Message message) throws CommunicationException {
+		ExposedByteArrayOutputStream byteStream = new ExposedByteArrayOutputStream();
+		try {
+			ObjectOutputStream objectStream = new ObjectOutputStream(byteStream);
+			objectStream.writeObject(message);
+			objectStream.flush();
+		} catch (IOException e) {
+			throw new CommunicationException("Failed to serialize " + message, e);
+		}
+		return byteStream.toByteBuffer().asReadOnlyBuffer();
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = m_serverChannel.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			IoLoop ioLoop = m_ioLoops[(m_nextIoLoop.getAndIncrement() & Integer.MAX_VALUE) % m_ioLoops.length];
+			ioLoop.register(new Connection(channel, ioLoop));
+		}
+	}
+
+	/**
+	 * Selector and its thread which serves a part of the connections.
+	 */
+	private final class IoLoop implements Runnable {
+		private final Selector m_selector;
+
+		private final Queue<Connection> m_newConnections = new ConcurrentLinkedQueue<Connection>();
+
+		private final Queue<Connection> m_writeRequests = new ConcurrentLinkedQueue<Connection>();
+
+		private long m_lastIdleCheck = System.currentTimeMillis();
+
+		IoLoop(Selector selector) {
+			m_selector = selector;
+		}
+
+		void register(Connection connection) {
+			m_newConnections.add(connection);
+			m_selector.wakeup();
+		}
+
+		void requestWrite(Connection connection) {
+			m_writeRequests.add(connection);
+			m_selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!m_shutdown) {
+					m_selector.select(SELECT_TIMEOUT);
+					processRequests();
+					Iterator<SelectionKey> iterator = m_selector.selectedKeys().iterator();
+					while (iterator.hasNext()) {
+						SelectionKey key = iterator.next();
+						iterator.remove();
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							try {
+								accept();
+							} catch (IOException e) {
+								LOGGER.error("Error while accepting a connection", e);
+							}
+							continue;
+						}
+						Connection connection = (Connection) key.attachment();
+						try {
+							if (key.isReadable()) {
+								connection.read();
+							}
+							if (key.isValid() && key.isWritable()) {
+								connection.write();
+							}
+						} catch (IOException e) {
+							LOGGER.debug("Connection {} is closed. {}", connection, e.getMessage());
+							connection.close();
+						}
+					}
+					checkConnections();
+				}
+			} catch (IOException e) {
+				if (!m_shutdown) {
+					LOGGER.error("Console I/O thread is stopped", e);
+				}
+			} finally {
+				for (SelectionKey each : m_selector.keys()) {
+					if (each.attachment() instanceof Connection) {
+						((Connection) each.attachment()).close();
+					}
+				}
+				try {
+					m_selector.close();
+				} catch (IOException e) {
+					LOGGER.debug("Error while closing the selector", e);
+				}
+			}
+		}
+
+		private void processRequests() {
+			Connection connection;
+			while ((connection = m_newConnections.poll()) != null) {
+				try {
+					connection.m_key = connection.m_channel.register(m_selector, SelectionKey.OP_READ, connection);
+				} catch (ClosedChannelException e) {
+					connection.close();
+				}
+			}
+			while ((connection = m_writeRequests.poll()) != null) {
+				try {
+					connection.write();
+				} catch (IOException e) {
+					LOGGER.debug("Connection {} is closed. {}", connection, e.getMessage());
+					connection.close();
+				}
+			}
+		}
+
+		/**
+		 * Close the idle connections and decode the messages whose retry is deferred.
+		 */
+		private void checkConnections() {
+			long now = System.currentTimeMillis();
+			if (now - m_lastIdleCheck < SELECT_TIMEOUT) {
+				return;
+			}
+			m_lastIdleCheck = now;
+			for (SelectionKey each : m_selector.keys()) {
+				Object attachment = each.attachment();
+				if (!(attachment instanceof Connection)) {
+					continue;
+				}
+				Connection connection = (Connection) attachment;
+				if (now - connection.m_lastReadTime > m_inactiveClientTimeOut) {
+					LOGGER.debug("Connection {} is closed as it's inactive", connection);
+					connection.close();
+				} else {
+					connection.decodeDeferred();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A client connection. Everything except {@link #enqueue(ByteBuffer)} runs on its I/O thread.
+	 */
+	private final class Connection {
+		private final SocketChannel m_channel;
+
+		private final IoLoop m_ioLoop;
+
+		private final Queue<ByteBuffer> m_outbound = new ConcurrentLinkedQueue<ByteBuffer>();
+
+		private ByteBuffer m_inbound = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+		private SelectionKey m_key;
+
+		private long m_lastReadTime = System.currentTimeMillis();
+
+		/** Count of the buffered bytes at the last decoding which found an incomplete message. */
+		private int m_decodedSize = 0;
+
+		/** Count of the buffered bytes from which the decoding is retried. */
+		private int m_decodeThreshold = 0;
+
+		private volatile ConnectionType m_connectionType;
+
+		private volatile Address m_address;
+
+		private boolean m_closed = false;
+
+		Connection(SocketChannel channel, IoLoop ioLoop) {
+			m_channel = channel;
+			m_ioLoop = ioLoop;
+		}
+
+		void read() throws IOException {
+			int read;
+			while ((read = m_channel.read(m_inbound)) > 0) {
+				if (!m_inbound.hasRemaining() && !grow()) {
+					return;
+				}
+			}
+			m_lastReadTime = System.currentTimeMillis();
+			if (read < 0 || m_inbound.position() >= m_decodeThreshold) {
+				decode();
+			}
+			if (read < 0) {
+				close();
+			}
+		}
+
+		/**
+		 * Make room in the full receive buffer. The buffer is doubled up to the max size.
+		 * 
+		 * @return false if the connection is closed as a message exceeds the max size
+		 */
+		private boolean grow() {
+			if (m_inbound.capacity() < m_maxBufferSize) {
+				ByteBuffer bigger = ByteBuffer.allocate(Math.min(m_inbound.capacity() * 2, m_maxBufferSize));
+				m_inbound.flip();
+				bigger.put(m_inbound);
+				m_inbound = bigger;
+				return true;
+			}
+			// The buffer may hold complete messages which are not decoded yet.
+			decode();
+			if (!m_closed && !m_inbound.hasRemaining()) {
+				close();
+				m_received.add(new CommunicationException("Message from " + this + " exceeds " + m_maxBufferSize
+								+ " bytes"));
+			}
+			return !m_closed;
+		}
+
+		void decodeDeferred() {
+			if (!m_closed && m_inbound.position() > m_decodedSize) {
+				decode();
+			}
+		}
+
+		private void decode() {
+			m_inbound.flip();
+			try {
+				while (!m_closed && m_inbound.hasRemaining()) {
+					// Decode straight from the receive buffer.
+					BufferInputStream byteStream = new BufferInputStream(m_inbound.array(), m_inbound.arrayOffset()
+									+ m_inbound.position(), m_inbound.remaining());
+					Object decoded;
+					try {
+						ObjectInputStream objectStream = new ObjectInputStream(byteStream);
+						decoded = m_connectionType == null ? readHandshake(objectStream) : objectStream.readObject();
+					} catch (Exception e) {
+						if (byteStream.isEndReached()) {
+							// Not complete yet. A truncated block data ends up with other exceptions than
+							// EOFException.
+							deferDecode(m_inbound.remaining());
+							break;
+						}
+						throw e;
+					}
+					m_inbound.position(m_inbound.limit() - byteStream.available());
+					deferDecode(0);
+					if (decoded instanceof Message) {
+						received((Message) decoded);
+					}
+				}
+			} catch (Exception e) {
+				m_received.add(new CommunicationException("Failed to read message from " + this, e));
+				close();
+			} finally {
+				m_inbound.compact();
+			}
+		}
+
+		private void deferDecode(int incompleteSize) {
+			m_decodedSize = incompleteSize;
+			m_decodeThreshold = incompleteSize < INITIAL_BUFFER_SIZE ? 0 : incompleteSize * DECODE_RETRY_FACTOR;
+		}
+
+		private Object readHandshake(ObjectInputStream objectStream) throws IOException, ClassNotFoundException {
+			ConnectionType connectionType = (ConnectionType) objectStream.readObject();
+			Address address = (Address) objectStream.readObject();
+			if (!m_connectionTypes.contains(connectionType)) {
+				throw new IOException("connection type " + connectionType + " is not accepted");
+			}
+			m_address = address;
+			m_connectionType = connectionType;
+			m_connections.add(this);
+			return connectionType;
+		}
+
+		private void received(Message message) throws CommunicationException {
+			if (message instanceof CloseCommunicationMessage) {
+				close();
+				return;
+			}
+			if (message instanceof AddressAwareMessage) {
+				((AddressAwareMessage) message).setAddress(m_address);
+			}
+			if (message instanceof MessageRequiringResponse) {
+				((MessageRequiringResponse) message).setResponder(new AbstractSender() {
+					@Override
+					protected void writeMessage(Message response) throws CommunicationException {
+						enqueue(serialize(response));
+					}
+				});
+			}
+			m_received.add(message);
+		}
+
+		void enqueue(ByteBuffer data) {
+			if (m_closed) {
+				return;
+			}
+			m_outbound.add(data);
+			m_ioLoop.requestWrite(this);
+		}
+
+		void write() throws IOException {
+			if (m_closed || m_key == null) {
+				return;
+			}
+			ByteBuffer head;
+			while ((head = m_outbound.peek()) != null) {
+				m_channel.write(head);
+				if (head.hasRemaining()) {
+					m_key.interestOps(m_key.interestOps() | SelectionKey.OP_WRITE);
+					return;
+				}
+				m_outbound.poll();
+			}
+			m_key.interestOps(m_key.interestOps() & ~SelectionKey.OP_WRITE);
+		}
+
+		void close() {
+			if (m_closed) {
+				return;
+			}
+			m_closed = true;
+			m_connections.remove(this);
+			m_outbound.clear();
+			try {
+				m_channel.close();
+			} catch (IOException e) {
+				LOGGER.debug("Error while closing {}", this, e);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return m_address == null ? String.valueOf(m_channel.socket().getRemoteSocketAddress()) : m_address
+							.toString();
+		}
+	}
+
+	/**
+	 * Remembers whether a read went past the end, which means the message is not complete yet.
+	 */
+	private static final class BufferInputStream extends ByteArrayInputStream {
+		private boolean m_endReached = false;
+
+		BufferInputStream(byte[] buffer, int offset, int length) {
+			super(buffer, offset, length);
+		}
+
+		@Override
+		public synchronized int read() {
+			if (available() == 0) {
+				m_endReached = true;
+			}
+			return super.read();
+		}
+
+		@Override
+		public synchronized int read(byte[] buffer, int offset, int length) {
+			if (length > available()) {
+				m_endReached = true;
+			}
+			return super.read(buffer, offset, length);
+		}
+
+		boolean isEndReached() {
+			return m_endReached;
+		}
+	}
+
+	/**
+	 * Gives access to the written bytes without copying them.
+	 */
+	private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+		ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+}
@@ -24,18 +24,19 @@ import net.grinder.console.common.ErrorQueue;
 import net.grinder.console.common.Resources;
 import net.grinder.console.communication.ConsoleCommunication;
 import net.grinder.console.communication.ConsoleCommunicationImplementationEx;
+import net.grinder.console.communication.ConsoleCommunicationSetting;
 import net.grinder.console.communication.DistributionControlImplementation;
 import net.grinder.console.communication.ProcessControlImplementation;
 import net.grinder.console.communication.server.DispatchClientCommands;
 import net.grinder.console.distribution.FileDistributionImplementation;
 import net.grinder.console.distribution.WireFileDistribution;
 import net.grinder.console.model.ConsoleProperties;
-import net.grinder.console.model.SampleModel;
 import net.grinder.console.model.SampleModelImplementationEx;
 import net.grinder.console.model.SampleModelViews;
 import net.grinder.console.model.SampleModelViewsImplementation;
 import net.grinder.console.synchronisation.WireDistributedBarriers;
 import net.grinder.engine.console.ErrorHandlerImplementation;
+import net.grinder.message.console.LateReportStatisticsMessage;
 import net.grinder.messages.console.RegisterExpressionViewMessage;
 import net.grinder.messages.console.RegisterTestsMessage;
 import net.grinder.messages.console.ReportStatisticsMessage;
@@ -83,11 +84,34 @@ public class ConsoleFoundationEx {
 	 */
 	public ConsoleFoundationEx(Resources resources, Logger logger, ConsoleProperties properties,
 					Condition eventSyncCondition) throws GrinderException {
+		this(resources, logger, properties, ConsoleCommunicationSetting.asDefault(), eventSyncCondition);
+	}
+
+	/**
+	 * Constructor. Allows properties and the communication setting to be specified.
+	 * 
+	 * @param resources
+	 *            Console resources
+	 * @param logger
+	 *            Logger.
+	 * @param properties
+	 *            The properties.
+	 * @param communicationSetting
+	 *            The transport setting of the console communication.
+	 * @param eventSyncCondition
+	 *            event synchonization condition.
+	 * @exception GrinderException
+	 *                If an error occurs.
+	 */
+	public ConsoleFoundationEx(Resources resources, Logger logger, ConsoleProperties properties,
+					ConsoleCommunicationSetting communicationSetting, Condition eventSyncCondition)
+					throws GrinderException {
 		m_eventSyncCondition = eventSyncCondition;
 		m_container = new DefaultPicoContainer(new Caching());
 		m_container.addComponent(logger);
 		m_container.addComponent(resources);
 		m_container.addComponent(properties);
+		m_container.addComponent(communicationSetting);
 		m_container.addComponent(StatisticsServicesImplementation.getInstance());
 		m_container.addComponent(new StandardTimeAuthority());
 
@@ -206,7 +230,7 @@ public class ConsoleFoundationEx {
 		 * @param dispatchClientCommands
 		 *            Client command dispatcher.
 		 */
-		public WireMessageDispatch(ConsoleCommunication communication, final SampleModel model,
+		public WireMessageDispatch(ConsoleCommunication communication, final SampleModelImplementationEx model,
 						final SampleModelViews sampleModelViews, DispatchClientCommands dispatchClientCommands) {
 
 			final MessageDispatchRegistry messageDispatchRegistry = communication.getMessageDispatchRegistry();
@@ -223,6 +247,15 @@ public class ConsoleFoundationEx {
 				}
 			});
 
+			messageDispatchRegistry.set(LateReportStatisticsMessage.class,
+							new AbstractHandler<LateReportStatisticsMessage>() {
+								public void handle(LateReportStatisticsMessage message) {
+									// The agent clock may differ. Only the age of the report is trusted.
+									model.addLateTestReport(message.getStatisticsDelta(), System.currentTimeMillis()
+													- message.getAge());
+								}
+							});
+
 			messageDispatchRegistry.set(RegisterExpressionViewMessage.class,
 							new AbstractHandler<RegisterExpressionViewMessage>() {
 								public void handle(RegisterExpressionViewMessage message) {
@@ -105,6 +105,15 @@ public interface AgentProcessControl {
 	 */
 	int getAgentConnectingPort(AgentIdentity agentIdentity);
 
+	/**
+	 * Get the estimated clock offset of the given agent.
+	 * 
+	 * @param agentIdentity
+	 *            agent identity
+	 * @return agent time - console time in millisecond. 0 if it's not estimated yet.
+	 */
+	long getClockOffset(AgentIdentity agentIdentity);
+
 	/**
 	 * Add agent status update listener.
 	 * 
@@ -112,4 +121,12 @@ public interface AgentProcessControl {
 	 *            listener.
 	 */
 	public void addListener(Listener listener);
+
+	/**
+	 * Add agent status change listener which is only notified with the changed agents.
+	 * 
+	 * @param listener
+	 *            listener.
+	 */
+	public void addAgentStatusChangeListener(AgentStatusChangeListener listener);
 }
\ No newline at end of file
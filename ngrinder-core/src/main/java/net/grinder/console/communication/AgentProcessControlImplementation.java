@@ -13,7 +13,11 @@
  */
 package net.grinder.console.communication;
 
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.Date;
 import java.util.EventListener;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -21,6 +25,7 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.grinder.common.GrinderProperties;
 import net.grinder.common.processidentity.AgentIdentity;
@@ -28,15 +33,22 @@ import net.grinder.common.processidentity.ProcessIdentity;
 import net.grinder.communication.CommunicationException;
 import net.grinder.communication.MessageDispatchRegistry;
 import net.grinder.communication.MessageDispatchRegistry.AbstractHandler;
+import net.grinder.engine.communication.ClockSyncGrinderMessage;
 import net.grinder.engine.communication.LogReportGrinderMessage;
+import net.grinder.engine.communication.ReportRequestGrinderMessage;
+import net.grinder.message.console.AgentControllerHeartbeatMessage;
 import net.grinder.message.console.AgentControllerProcessReportMessage;
 import net.grinder.message.console.AgentControllerState;
+import net.grinder.message.console.ClockSyncReportMessage;
 import net.grinder.messages.agent.StartGrinderMessage;
 import net.grinder.messages.agent.StopGrinderMessage;
 import net.grinder.messages.console.AgentAddress;
 import net.grinder.util.ListenerSupport;
 import net.grinder.util.ListenerSupport.Informer;
 
+import org.ngrinder.common.metrics.MetricRegistry;
+import org.ngrinder.common.util.ClockOffsetEstimator;
+import org.ngrinder.common.util.DateUtil;
 import org.ngrinder.monitor.controller.model.SystemDataModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,8 +64,29 @@ public class AgentProcessControlImplementation implements AgentProcessControl {
 	private Map<AgentIdentity, AgentStatus> m_agentMap = new ConcurrentHashMap<AgentIdentity, AgentStatus>();
 	private final ListenerSupport<Listener> m_listeners = new ListenerSupport<Listener>();
 	private final ListenerSupport<LogArrivedListener> m_logListeners = new ListenerSupport<LogArrivedListener>();
+	private final ListenerSupport<AgentStatusChangeListener> m_changeListeners = //
+	new ListenerSupport<AgentStatusChangeListener>();
+	private final AtomicInteger m_listenerCount = new AtomicInteger();
+	private final Map<AgentIdentity, ClockOffsetEstimator> m_clockOffsets = //
+	new ConcurrentHashMap<AgentIdentity, ClockOffsetEstimator>();
+
+	/**
+	 * Agents changed or removed since the last update. Only these are delivered to
+	 * {@link AgentStatusChangeListener}s.
+	 */
+	private final Set<AgentIdentity> m_changedAgents = Collections
+					.newSetFromMap(new ConcurrentHashMap<AgentIdentity, Boolean>());
+	private final Set<AgentIdentity> m_removedAgents = Collections
+					.newSetFromMap(new ConcurrentHashMap<AgentIdentity, Boolean>());
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(AgentProcessControlImplementation.class);
+
+	private static final org.ngrinder.common.metrics.Timer STATUS_REPORT_TIMER = MetricRegistry.getInstance().timer(
+					"ngrinder_agent_report_processing", "Time to process a report from an agent", "message", "status");
+
+	private static final org.ngrinder.common.metrics.Timer HEARTBEAT_TIMER = MetricRegistry.getInstance().timer(
+					"ngrinder_agent_report_processing", "Time to process a report from an agent", "message",
+					"heartbeat");
 	/**
 	 * Period at which to update the listeners.
 	 */
@@ -67,6 +100,17 @@ public class AgentProcessControlImplementation implements AgentProcessControl {
 	 */
 	private static final long FLUSH_PERIOD = 2000;
 
+	/**
+	 * Period at which the clock of each agent is sampled.
+	 */
+	private static final long CLOCK_SYNC_PERIOD = 10000;
+
+	/**
+	 * Agent timestamps are kept as they are when the offset is smaller than this. The system data
+	 * is collected in the second precision.
+	 */
+	private static final long CLOCK_OFFSET_TOLERANCE = 1000;
+
 	private volatile boolean m_newData = false;
 
 	/**
@@ -92,15 +136,44 @@ public class AgentProcessControlImplementation implements AgentProcessControl {
 				}
 			}
 		}, 0, FLUSH_PERIOD);
+
+		timer.schedule(new TimerTask() {
+			public void run() {
+				syncClocks();
+			}
+		}, 0, CLOCK_SYNC_PERIOD);
 		final MessageDispatchRegistry messageDispatchRegistry = consoleCommunication.getMessageDispatchRegistry();
 
 		messageDispatchRegistry.set(AgentControllerProcessReportMessage.class,
 						new AbstractHandler<AgentControllerProcessReportMessage>() {
 							public void handle(AgentControllerProcessReportMessage message) {
-								addAgentStatusReport(message);
+								long start = STATUS_REPORT_TIMER.start();
+								try {
+									addAgentStatusReport(message);
+								} finally {
+									STATUS_REPORT_TIMER.stop(start);
+								}
+							}
+						});
+
+		messageDispatchRegistry.set(AgentControllerHeartbeatMessage.class,
+						new AbstractHandler<AgentControllerHeartbeatMessage>() {
+							public void handle(AgentControllerHeartbeatMessage message) {
+								long start = HEARTBEAT_TIMER.start();
+								try {
+									addAgentHeartbeat(message);
+								} finally {
+									HEARTBEAT_TIMER.stop(start);
+								}
 							}
 						});
 
+		messageDispatchRegistry.set(ClockSyncReportMessage.class, new AbstractHandler<ClockSyncReportMessage>() {
+			public void handle(ClockSyncReportMessage message) {
+				addClockSyncReport(message, System.currentTimeMillis());
+			}
+		});
+
 		messageDispatchRegistry.set(LogReportGrinderMessage.class, new AbstractHandler<LogReportGrinderMessage>() {
 			public void handle(final LogReportGrinderMessage message) {
 				m_logListeners.apply(new Informer<LogArrivedListener>() {
@@ -122,7 +195,70 @@ public class AgentProcessControlImplementation implements AgentProcessControl {
 	 */
 	public void addAgentStatusReport(AgentControllerProcessReportMessage message) {
 		AgentStatus agentStatus = getAgentStatus(message.getAgentIdentity());
-		agentStatus.setAgentProcessStatus(message);
+		if (agentStatus.setAgentProcessStatus(message)) {
+			markChanged(message.getAgentIdentity());
+		}
+	}
+
+	/**
+	 * Apply the agent heartbeat on the last known agent status. If there is no full report to be
+	 * applied on, which happens after the agent is purged, the heartbeat is dropped and the agent is
+	 * requested to send the full report.
+	 * 
+	 * @param message
+	 *            {@link AgentControllerHeartbeatMessage}
+	 */
+	public void addAgentHeartbeat(AgentControllerHeartbeatMessage message) {
+		AgentIdentity agentIdentity = message.getAgentIdentity();
+		AgentStatus agentStatus;
+		synchronized (m_agentMap) {
+			agentStatus = m_agentMap.get(agentIdentity);
+		}
+		if (agentStatus == null || !agentStatus.hasReport()) {
+			LOGGER.debug("heartbeat of {} is dropped. the full report is requested", agentIdentity);
+			m_consoleCommunication.sendToAddressedAgents(new AgentAddress(agentIdentity),
+							new ReportRequestGrinderMessage());
+			return;
+		}
+		if (agentStatus.applyHeartbeat(message)) {
+			markChanged(agentIdentity);
+		}
+	}
+
+	/**
+	 * Add the agent clock sample and update the offset of the agent.
+	 * 
+	 * @param message
+	 *            {@link ClockSyncReportMessage}
+	 * @param arrivalTime
+	 *            console time when the message is arrived
+	 */
+	public void addClockSyncReport(ClockSyncReportMessage message, long arrivalTime) {
+		AgentIdentity agentIdentity = message.getAgentIdentity();
+		ClockOffsetEstimator estimator = m_clockOffsets.get(agentIdentity);
+		if (estimator == null) {
+			estimator = new ClockOffsetEstimator();
+			m_clockOffsets.put(agentIdentity, estimator);
+		}
+		estimator.addSample(message.getOriginateTime(), message.getReceiveTime(), message.getTransmitTime(),
+						arrivalTime);
+		LOGGER.trace("clock offset of {} is {}ms", agentIdentity, estimator.getOffset());
+	}
+
+	private void syncClocks() {
+		Set<AgentIdentity> agents;
+		synchronized (m_agentMap) {
+			agents = new HashSet<AgentIdentity>(m_agentMap.keySet());
+		}
+		for (AgentIdentity each : agents) {
+			m_consoleCommunication.sendToAddressedAgents(new AgentAddress(each),
+							new ClockSyncGrinderMessage(System.currentTimeMillis()));
+		}
+	}
+
+	private void markChanged(AgentIdentity agentIdentity) {
+		m_removedAgents.remove(agentIdentity);
+		m_changedAgents.add(agentIdentity);
 		m_newData = true;
 	}
 
@@ -157,11 +293,36 @@ public class AgentProcessControlImplementation implements AgentProcessControl {
 
 		m_newData = false;
 
-		m_listeners.apply(new ListenerSupport.Informer<Listener>() {
-			public void inform(Listener l) {
-				l.update(new ConcurrentHashMap<AgentIdentity, AgentStatus>(m_agentMap));
+		final Set<AgentIdentity> changedAgents = drain(m_changedAgents);
+		final Set<AgentIdentity> removedAgents = drain(m_removedAgents);
+		if (!changedAgents.isEmpty() || !removedAgents.isEmpty()) {
+			m_changeListeners.apply(new ListenerSupport.Informer<AgentStatusChangeListener>() {
+				public void inform(AgentStatusChangeListener l) {
+					l.agentStatusChanged(changedAgents, removedAgents);
+				}
+			});
+		}
+
+		// Full snapshot is only built when someone still needs it.
+		if (m_listenerCount.get() > 0) {
+			final Map<AgentIdentity, AgentStatus> snapshot = Collections
+							.unmodifiableMap(new HashMap<AgentIdentity, AgentStatus>(m_agentMap));
+			m_listeners.apply(new ListenerSupport.Informer<Listener>() {
+				public void inform(Listener l) {
+					l.update(snapshot);
+				}
+			});
+		}
+	}
+
+	private Set<AgentIdentity> drain(Set<AgentIdentity> agents) {
+		Set<AgentIdentity> drained = new HashSet<AgentIdentity>();
+		for (AgentIdentity each : agents) {
+			if (agents.remove(each)) {
+				drained.add(each);
 			}
-		});
+		}
+		return Collections.unmodifiableSet(drained);
 	}
 
 	/**
@@ -195,6 +356,13 @@ public class AgentProcessControlImplementation implements AgentProcessControl {
 
 		if (zombies.size() > 0) {
 			purgableMap.keySet().removeAll(zombies);
+			for (ProcessIdentity each : zombies) {
+				if (each instanceof AgentIdentity) {
+					m_clockOffsets.remove(each);
+					m_changedAgents.remove(each);
+					m_removedAgents.add((AgentIdentity) each);
+				}
+			}
 			m_newData = true;
 		}
 	}
@@ -253,6 +421,7 @@ public class AgentProcessControlImplementation implements AgentProcessControl {
 
 	private final class AgentStatus implements Purgable {
 		private volatile AgentReference m_agentReference;
+		private volatile CorrectedSystemData m_correctedSystemData;
 
 		/**
 		 * Constructor.
@@ -279,16 +448,85 @@ public class AgentProcessControlImplementation implements AgentProcessControl {
 			return agentProcessReport == null ? AgentControllerState.UNKNOWN : agentProcessReport.getState();
 		}
 
-		public void setAgentProcessStatus(AgentControllerProcessReportMessage message) {
+		/**
+		 * Set the full agent status report.
+		 * 
+		 * @param message
+		 *            {@link AgentControllerProcessReportMessage}
+		 * @return true if the state, port or system data is changed
+		 */
+		public boolean setAgentProcessStatus(AgentControllerProcessReportMessage message) {
 			LOGGER.trace("agent perf status on {} is {}", message.getAgentIdentity(), message.getSystemDataModel());
-
+			AgentReference previous = m_agentReference;
 			m_agentReference = new AgentReference(message);
+			if (previous == null) {
+				return true;
+			}
+			AgentControllerProcessReportMessage previousMessage = previous.m_agentProcessReportMessage;
+			return previousMessage.getState() != message.getState()
+							|| previousMessage.getConnectingPort() != message.getConnectingPort()
+							|| previousMessage.getSystemDataModel() != message.getSystemDataModel();
+		}
+
+		/**
+		 * Check if the full report of the agent is known.
+		 * 
+		 * @return true if the agent has sent the full report
+		 */
+		public boolean hasReport() {
+			return !(m_agentReference.m_agentProcessReportMessage instanceof UnknownAgentProcessReport);
+		}
+
+		/**
+		 * Apply the heartbeat on the last full report. The purge count is reset in any case.
+		 * 
+		 * @param heartbeat
+		 *            {@link AgentControllerHeartbeatMessage}
+		 * @return true if the state, port or system data is changed
+		 */
+		public boolean applyHeartbeat(AgentControllerHeartbeatMessage heartbeat) {
+			AgentControllerProcessReportMessage previous = m_agentReference.m_agentProcessReportMessage;
+			if (heartbeat.isEmpty()) {
+				m_agentReference = new AgentReference(previous);
+				return false;
+			}
+			AgentControllerProcessReportMessage merged = new AgentControllerProcessReportMessage(
+							heartbeat.getState(previous.getState()),
+							heartbeat.getSystemDataModel(previous.getSystemDataModel()),
+							heartbeat.getConnectingPort(previous.getConnectingPort()));
+			try {
+				merged.setAddress(previous.getProcessAddress());
+			} catch (CommunicationException e) {
+				LOGGER.error("Error while setAdress" + previous.getProcessAddress(), e);
+			}
+			return setAgentProcessStatus(merged);
 		}
 
 		public SystemDataModel getSystemDataModel() {
 			return m_agentReference == null ? null : m_agentReference.m_agentProcessReportMessage.getSystemDataModel();
 		}
 
+		/**
+		 * Get the system data with the collect time in the console clock. The converted one is
+		 * kept until the agent reports another system data or the offset is changed.
+		 * 
+		 * @param offset
+		 *            clock offset of the agent
+		 * @return {@link SystemDataModel}
+		 */
+		public SystemDataModel getSystemDataModel(long offset) {
+			SystemDataModel model = getSystemDataModel();
+			if (model == null || Math.abs(offset) < CLOCK_OFFSET_TOLERANCE) {
+				return model;
+			}
+			CorrectedSystemData corrected = m_correctedSystemData;
+			if (corrected == null || corrected.m_source != model || corrected.m_offset != offset) {
+				corrected = new CorrectedSystemData(model, offset);
+				m_correctedSystemData = corrected;
+			}
+			return corrected.m_corrected;
+		}
+
 		public int getConnectingPort() {
 			return m_agentReference == null ? 0 : m_agentReference.m_agentProcessReportMessage.getConnectingPort();
 		}
@@ -302,6 +540,17 @@ public class AgentProcessControlImplementation implements AgentProcessControl {
 	 */
 	public void addListener(Listener listener) {
 		m_listeners.add(listener);
+		m_listenerCount.incrementAndGet();
+	}
+
+	/**
+	 * Add {@link AgentStatusChangeListener} which is only notified with the changed agents.
+	 * 
+	 * @param listener
+	 *            listener to be added
+	 */
+	public void addAgentStatusChangeListener(AgentStatusChangeListener listener) {
+		m_changeListeners.add(listener);
 	}
 
 	/**
@@ -385,6 +634,35 @@ public class AgentProcessControlImplementation implements AgentProcessControl {
 		}
 	}
 
+	/**
+	 * Copy of the agent system data whose collect time is moved by the clock offset.
+	 */
+	private static final class CorrectedSystemData {
+		private final SystemDataModel m_source;
+		private final long m_offset;
+		private final SystemDataModel m_corrected;
+
+		CorrectedSystemData(SystemDataModel source, long offset) {
+			m_source = source;
+			m_offset = offset;
+			m_corrected = new SystemDataModel();
+			m_corrected.setKey(source.getKey());
+			m_corrected.setIp(source.getIp());
+			m_corrected.setPort(source.getPort());
+			m_corrected.setSystem(source.getSystem());
+			m_corrected.setFreeMemory(source.getFreeMemory());
+			m_corrected.setTotalMemory(source.getTotalMemory());
+			m_corrected.setCpuUsedPercentage(source.getCpuUsedPercentage());
+			m_corrected.setCpuCount(source.getCpuCount());
+			try {
+				long collectTime = DateUtil.getCollectTimeInDate(source.getCollectTime()).getTime();
+				m_corrected.setCollectTime(DateUtil.getCollectTimeInLong(new Date(collectTime - offset)));
+			} catch (ParseException e) {
+				m_corrected.setCollectTime(source.getCollectTime());
+			}
+		}
+	}
+
 	private static class UnknownAgentProcessReport extends AgentControllerProcessReportMessage {
 
 		/** UUID. */
@@ -415,9 +693,22 @@ public class AgentProcessControlImplementation implements AgentProcessControl {
 		return getAgentStatus(agentIdentity).getAgentControllerState();
 	}
 
+	/**
+	 * Get the system data of the given agent. The collect time is converted into the console clock.
+	 * 
+	 * @param agentIdentity
+	 *            agent identity
+	 * @return {@link SystemDataModel}
+	 */
 	@Override
 	public SystemDataModel getSystemDataModel(AgentIdentity agentIdentity) {
-		return getAgentStatus(agentIdentity).getSystemDataModel();
+		return getAgentStatus(agentIdentity).getSystemDataModel(getClockOffset(agentIdentity));
+	}
+
+	@Override
+	public long getClockOffset(AgentIdentity agentIdentity) {
+		ClockOffsetEstimator estimator = m_clockOffsets.get(agentIdentity);
+		return estimator == null ? 0 : estimator.getOffset();
 	}
 
 	@Override
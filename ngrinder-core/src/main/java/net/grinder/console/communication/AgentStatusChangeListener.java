@@ -0,0 +1,38 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.console.communication;
+
+import java.util.EventListener;
+import java.util.Set;
+
+import net.grinder.common.processidentity.AgentIdentity;
+
+/**
+ * Listener which is notified only with the agents whose status is changed since the last
+ * notification.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public interface AgentStatusChangeListener extends EventListener {
+	/**
+	 * callback method which will be called when the status of some agents are changed.
+	 * 
+	 * @param changedAgents
+	 *            agents which are newly attached or whose state, port or system data is changed
+	 * @param removedAgents
+	 *            agents which are detached
+	 */
+	public void agentStatusChanged(Set<AgentIdentity> changedAgents, Set<AgentIdentity> removedAgents);
+}
@@ -27,6 +27,8 @@ import net.grinder.communication.FanOutServerSender;
 import net.grinder.communication.Message;
 import net.grinder.communication.MessageDispatchRegistry;
 import net.grinder.communication.MessageDispatchSender;
+import net.grinder.communication.Receiver;
+import net.grinder.communication.SelectorServer;
 import net.grinder.communication.ServerReceiver;
 import net.grinder.console.common.DisplayMessageConsoleException;
 import net.grinder.console.common.ErrorHandler;
@@ -39,6 +41,9 @@ import net.grinder.util.thread.BooleanCondition;
  * Handles communication for the console. This is the extension of
  * {@link ConsoleCommunicationImplementation}.
  * 
+ * Depending on the {@link ConsoleCommunicationSetting}, the connections are served either by the
+ * Grinder {@link Acceptor} and {@link ServerReceiver} or by the {@link SelectorServer}.
+ * 
  * @author JunHo Yoon
  * @see ConsoleCommunicationImplementation
  * @since 3.0
@@ -51,6 +56,7 @@ public final class ConsoleCommunicationImplementationEx implements ConsoleCommun
 	private final TimeAuthority m_timeAuthority;
 	private final long m_idlePollDelay;
 	private final long m_inactiveClientTimeOut;
+	private final ConsoleCommunicationSetting m_setting;
 
 	private final MessageDispatchSender m_messageDispatcher = new MessageDispatchSender();
 
@@ -58,8 +64,9 @@ public final class ConsoleCommunicationImplementationEx implements ConsoleCommun
 	private final BooleanCondition m_shutdown = new BooleanCondition();
 
 	private Acceptor m_acceptor = null;
-	private ServerReceiver m_receiver = null;
+	private Receiver m_receiver = null;
 	private FanOutServerSender m_sender = null;
+	private SelectorServer m_selectorServer = null;
 	private Thread m_acceptorProblemListener = null;
 
 	/**
@@ -78,7 +85,29 @@ public final class ConsoleCommunicationImplementationEx implements ConsoleCommun
 	 */
 	public ConsoleCommunicationImplementationEx(Resources resources, ConsoleProperties properties,
 					ErrorHandler errorHandler, TimeAuthority timeAuthority) throws DisplayMessageConsoleException {
-		this(resources, properties, errorHandler, timeAuthority, 500, 30000);
+		this(resources, properties, errorHandler, timeAuthority, 500, 30000, ConsoleCommunicationSetting.asDefault());
+	}
+
+	/**
+	 * Constructor that uses a default idlePollDelay and the given transport setting.
+	 * 
+	 * @param resources
+	 *            Resources.
+	 * @param properties
+	 *            Console properties.
+	 * @param errorHandler
+	 *            Error handler.
+	 * @param timeAuthority
+	 *            Knows the time
+	 * @param setting
+	 *            Transport setting.
+	 * @throws DisplayMessageConsoleException
+	 *             If properties are invalid.
+	 */
+	public ConsoleCommunicationImplementationEx(Resources resources, ConsoleProperties properties,
+					ErrorHandler errorHandler, TimeAuthority timeAuthority, ConsoleCommunicationSetting setting)
+					throws DisplayMessageConsoleException {
+		this(resources, properties, errorHandler, timeAuthority, 500, 30000, setting);
 	}
 
 	/**
@@ -98,12 +127,15 @@ public final class ConsoleCommunicationImplementationEx implements ConsoleCommun
 	 * @param inactiveClientTimeOut
 	 *            How long before we consider a client connection that presents no data to be
 	 *            inactive.
+	 * @param setting
+	 *            Transport setting.
 	 * @throws DisplayMessageConsoleException
 	 *             If properties are invalid.
 	 */
 	public ConsoleCommunicationImplementationEx(Resources resources, ConsoleProperties properties,
 					ErrorHandler errorHandler, TimeAuthority timeAuthority, long idlePollDelay,
-					long inactiveClientTimeOut) throws DisplayMessageConsoleException {
+					long inactiveClientTimeOut, ConsoleCommunicationSetting setting)
+					throws DisplayMessageConsoleException {
 
 		m_resources = resources;
 		m_properties = properties;
@@ -111,6 +143,7 @@ public final class ConsoleCommunicationImplementationEx implements ConsoleCommun
 		m_timeAuthority = timeAuthority;
 		m_idlePollDelay = idlePollDelay;
 		m_inactiveClientTimeOut = inactiveClientTimeOut;
+		m_setting = setting;
 
 		properties.addPropertyChangeListener(new PropertyChangeListener() {
 			public void propertyChange(PropertyChangeEvent event) {
@@ -145,6 +178,10 @@ public final class ConsoleCommunicationImplementationEx implements ConsoleCommun
 			m_sender.shutdown();
 		}
 
+		if (m_selectorServer != null) {
+			m_selectorServer.shutdown();
+		}
+
 		if (m_receiver != null) {
 			m_receiver.shutdown();
 
@@ -161,6 +198,11 @@ public final class ConsoleCommunicationImplementationEx implements ConsoleCommun
 			return;
 		}
 
+		if (m_setting.isSelectorTransport()) {
+			startSelectorServer();
+			return;
+		}
+
 		try {
 			m_acceptor = new Acceptor(m_properties.getConsoleHost(), m_properties.getConsolePort(), 1, m_timeAuthority);
 		} catch (CommunicationException e) {
@@ -204,10 +246,11 @@ public final class ConsoleCommunicationImplementationEx implements ConsoleCommun
 		});
 		m_acceptorProblemListener.start();
 
-		m_receiver = new ServerReceiver();
+		ServerReceiver receiver = new ServerReceiver();
+		m_receiver = receiver;
 
 		try {
-			m_receiver.receiveFrom(m_acceptor, new ConnectionType[] { ConnectionType.AGENT,
+			receiver.receiveFrom(m_acceptor, new ConnectionType[] { ConnectionType.AGENT,
 					ConnectionType.CONSOLE_CLIENT, ConnectionType.WORKER, }, 5, m_idlePollDelay,
 							m_inactiveClientTimeOut);
 		} catch (CommunicationException e) {
@@ -237,6 +280,23 @@ public final class ConsoleCommunicationImplementationEx implements ConsoleCommun
 		m_processing.set(true);
 	}
 
+	private void startSelectorServer() {
+		m_selectorServer = new SelectorServer(m_properties.getConsoleHost(), m_properties.getConsolePort(),
+						new ConnectionType[] { ConnectionType.AGENT, ConnectionType.CONSOLE_CLIENT, ConnectionType.WORKER, },
+						m_setting.getIoThreadCount(), m_inactiveClientTimeOut);
+		try {
+			m_selectorServer.start();
+		} catch (CommunicationException e) {
+			m_selectorServer = null;
+			m_errorHandler.handleException(new DisplayMessageConsoleException(m_resources, "localBindError.text", e));
+			// Wake up any threads waiting in processOneMessage().
+			m_processing.wakeUpAllWaiters();
+			return;
+		}
+		m_receiver = m_selectorServer;
+		m_processing.set(true);
+	}
+
 	/**
 	 * Returns the message dispatch registry which callers can use to register new message handlers.
 	 * 
@@ -296,6 +356,9 @@ public final class ConsoleCommunicationImplementationEx implements ConsoleCommun
 	 * @return The number of accepted connections.
 	 */
 	public int getNumberOfConnections() {
+		if (m_selectorServer != null) {
+			return m_selectorServer.getNumberOfConnections();
+		}
 		return m_acceptor == null ? 0 : m_acceptor.getNumberOfConnections();
 	}
 
@@ -310,11 +373,15 @@ public final class ConsoleCommunicationImplementationEx implements ConsoleCommun
 	 *            The message to send.
 	 */
 	public void sendToAgents(Message message) {
-		if (m_sender == null) {
+		if (m_sender == null && m_selectorServer == null) {
 			m_errorHandler.handleErrorMessage(m_resources.getString("sendError.text"));
 		} else {
 			try {
-				m_sender.send(message);
+				if (m_selectorServer != null) {
+					m_selectorServer.send(message);
+				} else {
+					m_sender.send(message);
+				}
 			} catch (CommunicationException e) {
 				m_errorHandler.handleException(new DisplayMessageConsoleException(m_resources, "sendError.text", e));
 			}
@@ -334,11 +401,15 @@ public final class ConsoleCommunicationImplementationEx implements ConsoleCommun
 	 *            The message to send.
 	 */
 	public void sendToAddressedAgents(Address address, Message message) {
-		if (m_sender == null) {
+		if (m_sender == null && m_selectorServer == null) {
 			m_errorHandler.handleErrorMessage(m_resources.getString("sendError.text"));
 		} else {
 			try {
-				m_sender.send(address, message);
+				if (m_selectorServer != null) {
+					m_selectorServer.send(address, message);
+				} else {
+					m_sender.send(address, message);
+				}
 			} catch (CommunicationException e) {
 				m_errorHandler.handleException(new DisplayMessageConsoleException(m_resources, "sendError.text", e));
 			}
@@ -0,0 +1,61 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.console.communication;
+
+import net.grinder.communication.SelectorServer;
+
+/**
+ * Transport settings of {@link ConsoleCommunicationImplementationEx}.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class ConsoleCommunicationSetting {
+
+	private static final int DEFAULT_IO_THREAD_COUNT = 2;
+
+	private final boolean m_selectorTransport;
+
+	private final int m_ioThreadCount;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param selectorTransport
+	 *            true to serve the connections with {@link SelectorServer}
+	 * @param ioThreadCount
+	 *            count of the I/O threads of {@link SelectorServer}
+	 */
+	public ConsoleCommunicationSetting(boolean selectorTransport, int ioThreadCount) {
+		m_selectorTransport = selectorTransport;
+		m_ioThreadCount = ioThreadCount;
+	}
+
+	/**
+	 * Get the default setting, which uses the Grinder acceptor and receiver.
+	 * 
+	 * @return default setting
+	 */
+	public static ConsoleCommunicationSetting asDefault() {
+		return new ConsoleCommunicationSetting(false, DEFAULT_IO_THREAD_COUNT);
+	}
+
+	public boolean isSelectorTransport() {
+		return m_selectorTransport;
+	}
+
+	public int getIoThreadCount() {
+		return m_ioThreadCount;
+	}
+}
@@ -0,0 +1,373 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.console.communication;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.ConnectionType;
+import net.grinder.communication.RoutedAddress;
+import net.grinder.util.thread.ExecutorFactory;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single port front of the consoles running concurrently.
+ * 
+ * Each console listens on a loopback port and is registered with a route id. Agents and workers
+ * connect to this server with a {@link RoutedAddress} carrying the route id. The server reads
+ * the connection handshake, replays it to the console with the wrapped address and then relays
+ * the bytes in both directions. All relays are served by a single selector thread, so that the
+ * number of concurrent tests is not limited by the ports opened to the agents.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class MultiplexedConsoleServer {
+
+	/** Route id of the console to which the agent connects through the multiplexed server. */
+	public static final String PROP_CONSOLE_ROUTE = "ngrinder.console.route";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MultiplexedConsoleServer.class);
+
+	private static final String LOCAL_HOST = "127.0.0.1";
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	private static final int HANDSHAKE_TIMEOUT = 10000;
+
+	private static final int HANDSHAKE_THREAD_COUNT = 4;
+
+	private final String m_host;
+
+	private final int m_port;
+
+	private final Map<Integer, Integer> m_routes = new ConcurrentHashMap<Integer, Integer>();
+
+	private final Queue<Endpoint> m_newEndpoints = new ConcurrentLinkedQueue<Endpoint>();
+
+	private ServerSocketChannel m_serverChannel;
+
+	private Selector m_selector;
+
+	private ExecutorService m_handshakeExecutor;
+
+	private Thread m_selectorThread;
+
+	private volatile boolean m_shutdown = false;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param host
+	 *            host to bind. All interfaces are bound if it's empty.
+	 * @param port
+	 *            port to bind
+	 */
+	public MultiplexedConsoleServer(String host, int port) {
+		m_host = host;
+		m_port = port;
+	}
+
+	/**
+	 * Bind the port and start to relay.
+	 * 
+	 * @throws CommunicationException
+	 *             if the port can not be bound
+	 */
+	public void start() throws CommunicationException {
+		try {
+			m_selector = Selector.open();
+			m_serverChannel = ServerSocketChannel.open();
+			m_serverChannel.socket().setReuseAddress(true);
+			m_serverChannel.socket().bind(
+							StringUtils.isBlank(m_host) ? new InetSocketAddress(m_port) : new InetSocketAddress(m_host,
+											m_port));
+			m_serverChannel.configureBlocking(false);
+			m_serverChannel.register(m_selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			closeQuietly();
+			throw new CommunicationException("Failed to bind the multiplexed console port " + m_port, e);
+		}
+		m_handshakeExecutor = ExecutorFactory.createThreadPool("console-handshake", HANDSHAKE_THREAD_COUNT);
+		m_selectorThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				relay();
+			}
+		}, "Multiplexed console on port " + getPort());
+		m_selectorThread.setDaemon(true);
+		m_selectorThread.start();
+		LOGGER.info("multiplexed console server is started on port {}", getPort());
+	}
+
+	/**
+	 * Get the bound port.
+	 * 
+	 * @return port
+	 */
+	public int getPort() {
+		return m_serverChannel == null ? m_port : m_serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Let the connections for the given route in and relay them to the console on the given port.
+	 * 
+	 * @param route
+	 *            route id of the console
+	 * @param consolePort
+	 *            loopback port of the console
+	 */
+	public void register(int route, int consolePort) {
+		m_routes.put(route, consolePort);
+	}
+
+	/**
+	 * Reject the new connections for the given route. The existing ones are closed along with the
+	 * console.
+	 * 
+	 * @param route
+	 *            route id of the console
+	 */
+	public void unregister(int route) {
+		m_routes.remove(route);
+	}
+
+	/**
+	 * Close the port and all relayed connections.
+	 */
+	public void shutdown() {
+		m_shutdown = true;
+		if (m_handshakeExecutor != null) {
+			m_handshakeExecutor.shutdownNow();
+		}
+		if (m_selector != null) {
+			m_selector.wakeup();
+		}
+		if (m_selectorThread != null) {
+			try {
+				m_selectorThread.join(HANDSHAKE_TIMEOUT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		closeQuietly();
+	}
+
+	private void closeQuietly() {
+		try {
+			if (m_selector != null) {
+				for (SelectionKey each : m_selector.keys()) {
+					each.channel().close();
+				}
+				m_selector.close();
+			}
+			if (m_serverChannel != null) {
+				m_serverChannel.close();
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Error while closing the multiplexed console server", e);
+		}
+	}
+
+	private void relay() {
+		while (!m_shutdown) {
+			try {
+				m_selector.select();
+				registerNewEndpoints();
+				Iterator<SelectionKey> iterator = m_selector.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					Endpoint endpoint = (Endpoint) key.attachment();
+					try {
+						if (key.isReadable()) {
+							endpoint.read();
+						}
+						if (key.isValid() && key.isWritable()) {
+							endpoint.flush();
+						}
+					} catch (IOException e) {
+						LOGGER.debug("Relay is closed. {}", e.getMessage());
+						endpoint.close();
+					}
+				}
+			} catch (IOException e) {
+				LOGGER.error("Error while relaying the console connections", e);
+			} catch (RuntimeException e) {
+				// ClosedSelectorException on shutdown
+				if (!m_shutdown) {
+					LOGGER.error("Error while relaying the console connections", e);
+				}
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		final SocketChannel channel = m_serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		m_handshakeExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				handshake(channel);
+			}
+		});
+	}
+
+	/**
+	 * Read the handshake of the connection, connect to the console it's routed to and replay the
+	 * handshake with the wrapped address. Both channels are handed to the selector afterwards.
+	 */
+	private void handshake(SocketChannel channel) {
+		SocketChannel console = null;
+		try {
+			channel.socket().setSoTimeout(HANDSHAKE_TIMEOUT);
+			channel.socket().setTcpNoDelay(true);
+			// Grinder reads the handshake in the same way. The object stream does not read ahead.
+			ObjectInputStream inputStream = new ObjectInputStream(channel.socket().getInputStream());
+			ConnectionType connectionType = (ConnectionType) inputStream.readObject();
+			Object address = inputStream.readObject();
+			if (!(address instanceof RoutedAddress)) {
+				throw new IOException("no console route is given by " + channel.socket().getRemoteSocketAddress());
+			}
+			RoutedAddress routedAddress = (RoutedAddress) address;
+			Integer consolePort = m_routes.get(routedAddress.getRoute());
+			if (consolePort == null) {
+				throw new IOException("no console is running for the route " + routedAddress.getRoute());
+			}
+			console = SocketChannel.open(new InetSocketAddress(LOCAL_HOST, consolePort));
+			console.socket().setTcpNoDelay(true);
+			ObjectOutputStream outputStream = new ObjectOutputStream(console.socket().getOutputStream());
+			outputStream.writeObject(connectionType);
+			outputStream.writeObject(routedAddress.getAddress());
+			outputStream.flush();
+			channel.configureBlocking(false);
+			console.configureBlocking(false);
+			Endpoint agentEndpoint = new Endpoint(channel);
+			Endpoint consoleEndpoint = new Endpoint(console);
+			agentEndpoint.m_peer = consoleEndpoint;
+			consoleEndpoint.m_peer = agentEndpoint;
+			m_newEndpoints.add(agentEndpoint);
+			m_selector.wakeup();
+		} catch (Exception e) {
+			LOGGER.warn("Connection from {} is rejected. {}", channel.socket().getRemoteSocketAddress(),
+							e.getMessage());
+			closeChannel(channel);
+			closeChannel(console);
+		}
+	}
+
+	private void registerNewEndpoints() {
+		Endpoint endpoint;
+		while ((endpoint = m_newEndpoints.poll()) != null) {
+			// Both sides are registered together so that either side can update the other's key.
+			try {
+				endpoint.m_key = endpoint.m_channel.register(m_selector, SelectionKey.OP_READ, endpoint);
+				endpoint.m_peer.m_key = endpoint.m_peer.m_channel.register(m_selector, SelectionKey.OP_READ,
+								endpoint.m_peer);
+			} catch (ClosedChannelException e) {
+				endpoint.close();
+			}
+		}
+	}
+
+	private static void closeChannel(SocketChannel channel) {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOGGER.debug("Error while closing the channel", e);
+			}
+		}
+	}
+
+	/**
+	 * One side of a relay. The bytes read from the peer wait in {@link #m_outbound} until they're
+	 * written to this channel. The peer stops reading while the buffer is full.
+	 */
+	private static final class Endpoint {
+		private final SocketChannel m_channel;
+
+		private final ByteBuffer m_outbound = ByteBuffer.allocate(BUFFER_SIZE);
+
+		private SelectionKey m_key;
+
+		private Endpoint m_peer;
+
+		private boolean m_endOfStream = false;
+
+		Endpoint(SocketChannel channel) {
+			m_channel = channel;
+		}
+
+		void read() throws IOException {
+			if (m_channel.read(m_peer.m_outbound) < 0) {
+				m_endOfStream = true;
+			}
+			m_peer.flush();
+		}
+
+		void flush() throws IOException {
+			m_outbound.flip();
+			m_channel.write(m_outbound);
+			m_outbound.compact();
+			boolean pending = m_outbound.position() > 0;
+			if (!pending && m_peer.m_endOfStream) {
+				close();
+				return;
+			}
+			setInterest(m_key, SelectionKey.OP_WRITE, pending);
+			setInterest(m_peer.m_key, SelectionKey.OP_READ, m_outbound.hasRemaining() && !m_peer.m_endOfStream);
+		}
+
+		void close() {
+			closeChannel(m_channel);
+			closeChannel(m_peer.m_channel);
+		}
+
+		private static void setInterest(SelectionKey key, int operation, boolean on) {
+			if (!key.isValid()) {
+				return;
+			}
+			int interestOps = key.interestOps();
+			key.interestOps(on ? interestOps | operation : interestOps & ~operation);
+		}
+	}
+}
@@ -76,6 +76,9 @@ public class SampleModelImplementationEx implements SampleModel {
 
 	private final SampleAccumulator m_totalSampleAccumulator;
 
+	/** Console time when the capturing started. The late reports before it are dropped. */
+	private volatile long m_captureStartTime = 0;
+
 	private ModelTestIndex modelTestIndex;
 
 	/**
@@ -296,6 +299,21 @@ public class SampleModelImplementationEx implements SampleModel {
 		getInternalState().newTestReport(testStatisticsMap);
 	}
 
+	/**
+	 * Add a test report which was kept on an agent while the console was not reachable.
+	 * 
+	 * The samples of its interval are already fired, so it's only added to the cumulative
+	 * statistics. It's dropped when it belongs to the ignored samples or the model is not sampling.
+	 * 
+	 * @param testStatisticsMap
+	 *            The late test statistics.
+	 * @param intervalTime
+	 *            console time when the statistics were collected
+	 */
+	public void addLateTestReport(TestStatisticsMap testStatisticsMap, long intervalTime) {
+		getInternalState().lateTestReport(testStatisticsMap, intervalTime);
+	}
+
 	/**
 	 * Get the current model state.
 	 * 
@@ -341,6 +359,8 @@ public class SampleModelImplementationEx implements SampleModel {
 		void stop();
 
 		void newTestReport(TestStatisticsMap testStatisticsMap);
+
+		void lateTestReport(TestStatisticsMap testStatisticsMap, long intervalTime);
 	}
 
 	private abstract class AbstractInternalState implements InternalState, State {
@@ -363,6 +383,10 @@ public class SampleModelImplementationEx implements SampleModel {
 			// Valid transition for all states.
 			setInternalState(new StoppedState());
 		}
+
+		public void lateTestReport(TestStatisticsMap testStatisticsMap, long intervalTime) {
+			// Only the sampling states take the late reports.
+		}
 	}
 
 	private final class WaitingForTriggerState extends AbstractInternalState {
@@ -445,6 +469,27 @@ public class SampleModelImplementationEx implements SampleModel {
 			}).iterate();
 		}
 
+		@Override
+		public void lateTestReport(TestStatisticsMap testStatisticsMap, long intervalTime) {
+			if (!shouldAccumulateSamples() || intervalTime < m_captureStartTime) {
+				return;
+			}
+			(testStatisticsMap.new ForEach() {
+				public void next(Test test, StatisticsSet statistics) {
+					final SampleAccumulator sampleAccumulator = m_accumulators.get(test);
+					if (sampleAccumulator == null) {
+						m_errorHandler.handleInformationMessage(m_unknownTestString + " " + test);
+						return;
+					}
+					sampleAccumulator.addCumulativeStaticstics(statistics);
+					if (!statistics.isComposite()) {
+						m_totalSampleAccumulator.addCumulativeStaticstics(statistics);
+					}
+				}
+				// CHECKSTYLE:OFF
+			}).iterate();
+		}
+
 		protected void schedule() {
 			synchronized (this) {
 				if (mlastTime == 0) {
@@ -550,6 +595,7 @@ public class SampleModelImplementationEx implements SampleModel {
 	private final class CapturingState extends AbstractSamplingState {
 		public CapturingState() {
 			zero();
+			m_captureStartTime = System.currentTimeMillis();
 			schedule();
 		}
 
@@ -24,6 +24,7 @@ import net.grinder.common.GrinderException;
 import net.grinder.common.GrinderProperties;
 import net.grinder.common.GrinderProperties.PersistenceException;
 import net.grinder.common.processidentity.ProcessReport;
+import net.grinder.communication.Address;
 import net.grinder.communication.ClientReceiver;
 import net.grinder.communication.ClientSender;
 import net.grinder.communication.CommunicationException;
@@ -33,7 +34,9 @@ import net.grinder.communication.FanOutStreamSender;
 import net.grinder.communication.IgnoreShutdownSender;
 import net.grinder.communication.MessageDispatchSender;
 import net.grinder.communication.MessagePump;
+import net.grinder.communication.RoutedAddress;
 import net.grinder.communication.TeeSender;
+import net.grinder.console.communication.MultiplexedConsoleServer;
 import net.grinder.engine.common.ConnectorFactory;
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.common.ScriptLocation;
@@ -68,6 +71,7 @@ public class AgentImplementationEx implements Agent {
 	private FanOutStreamSender m_fanOutStreamSender;
 	private final ConnectorFactory m_connectorFactory = new ConnectorFactory(ConnectionType.AGENT);
 	private WorkerLauncher m_workerLaucherForShutdown = null;
+	private WorkerReportAggregator m_reportAggregator = null;
 	/**
 	 * We use an most one file store throughout an agent's life, but can't Initialize it until we've
 	 * read the properties and connected to the console.
@@ -148,8 +152,12 @@ public class AgentImplementationEx implements Agent {
 
 					final Connector connector = properties.getBoolean("grinder.useConsole", true) ? m_connectorFactory
 									.create(properties) : null;
-					// We only reconnect if the connection details have changed.
-					if (consoleCommunication != null && !consoleCommunication.getConnector().equals(connector)) {
+					final int route = properties.getInt(MultiplexedConsoleServer.PROP_CONSOLE_ROUTE, 0);
+					// We only reconnect if the connection details have changed. The consoles behind
+					// the multiplexed console server share the connector.
+					if (consoleCommunication != null
+									&& (!consoleCommunication.getConnector().equals(connector) || consoleCommunication
+													.getRoute() != route)) {
 						shutdownConsoleCommunication(consoleCommunication);
 						consoleCommunication = null;
 						// Accept any startMessage from previous console - see
@@ -158,7 +166,7 @@ public class AgentImplementationEx implements Agent {
 
 					if (consoleCommunication == null && connector != null) {
 						try {
-							consoleCommunication = new ConsoleCommunication(connector);
+							consoleCommunication = new ConsoleCommunication(connector, route);
 							consoleCommunication.start();
 							m_logger.info("connected to console at {}", connector.getEndpointAsString());
 						} catch (CommunicationException e) {
@@ -228,6 +236,7 @@ public class AgentImplementationEx implements Agent {
 									builder.rebaseCustomClassPath(properties.getProperty("grinder.jvm.classpath", "")));
 					m_logger.info("grinder properties {}", properties);
 					m_logger.info("jvm arguments {}", jvmArguments);
+					final GrinderProperties workerProperties = startReportAggregator(consoleCommunication, properties);
 					final WorkerFactory workerFactory;
 
 					// To be safe...
@@ -244,13 +253,13 @@ public class AgentImplementationEx implements Agent {
 						m_logger.info("Worker process command line: {}", workerCommandLine);
 
 						workerFactory = new ProcessWorkerFactory(workerCommandLine, m_agentIdentity,
-										m_fanOutStreamSender, consoleCommunication != null, script, properties);
+										m_fanOutStreamSender, consoleCommunication != null, script, workerProperties);
 					} else {
 						m_logger.info("DEBUG MODE: Spawning threads rather than processes");
 						m_logger.warn("grinder.jvm.arguments ({}) ignored in single process mode", jvmArguments);
 
 						workerFactory = new DebugThreadWorkerFactory(m_agentIdentity, m_fanOutStreamSender,
-										consoleCommunication != null, script, properties);
+										consoleCommunication != null, script, workerProperties);
 					}
 					m_logger.debug("worker launcher is prepared.");
 					final WorkerLauncher workerLauncher = new WorkerLauncher(properties.getInt("grinder.processes", 1),
@@ -303,6 +312,7 @@ public class AgentImplementationEx implements Agent {
 					}
 					m_logger.debug("normal shutdown");
 					workerLauncher.shutdown();
+					shutdownReportAggregator();
 					break;
 				}
 
@@ -339,6 +349,7 @@ public class AgentImplementationEx implements Agent {
 				m_timer.cancel();
 				m_timer = null;
 			}
+			shutdownReportAggregator();
 			shutdownConsoleCommunication(consoleCommunication);
 			if (m_fanOutStreamSender != null) {
 				m_fanOutStreamSender.shutdown();
@@ -381,6 +392,51 @@ public class AgentImplementationEx implements Agent {
 		return properties;
 	}
 
+	/**
+	 * Start the {@link WorkerReportAggregator} if the console is used and the aggregation is not
+	 * turned off. It's always started when the console is behind the multiplexed console server.
+	 * 
+	 * @param consoleCommunication
+	 *            console communication. null if the console is not used.
+	 * @param properties
+	 *            agent properties
+	 * @return properties to be passed to the worker processes
+	 */
+	private GrinderProperties startReportAggregator(ConsoleCommunication consoleCommunication,
+					GrinderProperties properties) {
+		if (consoleCommunication == null) {
+			return properties;
+		}
+		// Workers can't connect through the multiplexed console server by themselves.
+		if (consoleCommunication.getRoute() == 0
+						&& !properties.getBoolean(WorkerReportAggregator.PROP_REPORT_AGGREGATION, true)) {
+			return properties;
+		}
+		WorkerReportAggregator reportAggregator = new WorkerReportAggregator(new ConnectorFactory(
+						ConnectionType.WORKER).create(properties), consoleCommunication.getRoute(), m_logger);
+		try {
+			reportAggregator.start(m_timer, properties.getLong("grinder.reportToConsole.interval", 500));
+		} catch (CommunicationException e) {
+			if (consoleCommunication.getRoute() != 0) {
+				m_logger.error("worker reports can not reach the console behind the multiplexed console server. {}",
+								e.getMessage());
+			} else {
+				m_logger.warn("worker reports are sent directly to the console. {}", e.getMessage());
+			}
+			reportAggregator.shutdown();
+			return properties;
+		}
+		m_reportAggregator = reportAggregator;
+		return reportAggregator.getWorkerProperties(properties);
+	}
+
+	private void shutdownReportAggregator() {
+		if (m_reportAggregator != null) {
+			m_reportAggregator.shutdown();
+			m_reportAggregator = null;
+		}
+	}
+
 	private void shutdownConsoleCommunication(ConsoleCommunication consoleCommunication) {
 		if (consoleCommunication != null) {
 			consoleCommunication.shutdown();
@@ -404,6 +460,7 @@ public class AgentImplementationEx implements Agent {
 		if (m_workerLaucherForShutdown != null && !m_workerLaucherForShutdown.allFinished()) {
 			m_workerLaucherForShutdown.destroyAllWorkers();
 		}
+		shutdownReportAggregator();
 		m_logger.info("agent is forcely terminated");
 	}
 
@@ -436,14 +493,19 @@ public class AgentImplementationEx implements Agent {
 	private final class ConsoleCommunication {
 		private final ClientSender m_sender;
 		private final Connector m_connector;
+		private final int m_route;
 		private final TimerTask m_reportRunningTask;
 		private final MessagePump m_messagePump;
 
-		public ConsoleCommunication(Connector connector) throws CommunicationException, FileStore.FileStoreException {
+		public ConsoleCommunication(Connector connector, int route) throws CommunicationException,
+						FileStore.FileStoreException {
 
-			final ClientReceiver receiver = ClientReceiver.connect(connector, new AgentAddress(m_agentIdentity));
+			final Address address = new AgentAddress(m_agentIdentity);
+			final ClientReceiver receiver = ClientReceiver.connect(connector, route == 0 ? address
+							: new RoutedAddress(route, address));
 			m_sender = ClientSender.connect(receiver);
 			m_connector = connector;
+			m_route = route;
 
 			if (m_fileStore == null) {
 				// Only create the file store if we connected.
@@ -491,6 +553,10 @@ public class AgentImplementationEx implements Agent {
 			return m_connector;
 		}
 
+		public int getRoute() {
+			return m_route;
+		}
+
 		public void shutdown() {
 			m_reportRunningTask.cancel();
 
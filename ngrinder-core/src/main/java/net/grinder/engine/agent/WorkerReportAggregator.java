@@ -0,0 +1,388 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.grinder.engine.agent;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.common.processidentity.ProcessReport;
+import net.grinder.communication.Acceptor;
+import net.grinder.communication.ClientSender;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.ConnectionType;
+import net.grinder.communication.Connector;
+import net.grinder.communication.Message;
+import net.grinder.communication.MessagePump;
+import net.grinder.communication.RoutedAddress;
+import net.grinder.communication.Sender;
+import net.grinder.communication.ServerReceiver;
+import net.grinder.message.console.LateReportStatisticsMessage;
+import net.grinder.messages.console.ReportStatisticsMessage;
+import net.grinder.messages.console.WorkerAddress;
+import net.grinder.messages.console.WorkerProcessReportMessage;
+import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.util.StandardTimeAuthority;
+
+import org.slf4j.Logger;
+
+/**
+ * Local console proxy which merges the statistics reports of all worker processes of an agent.
+ *
+ * Worker processes connect to this proxy instead of the console. The statistics deltas received
+ * in each report interval are added into one {@link TestStatisticsMap} and forwarded as a single
+ * {@link ReportStatisticsMessage}, so that the console receives one report per agent rather than
+ * one per process. The other messages are forwarded as they are. The process reports are sent over
+ * a console connection made with the address of each worker so that the console still sees every
+ * process.
+ *
+ * While the console is not reachable, the merged statistics are kept in a bounded spool with the
+ * time of their interval, and replayed as {@link LateReportStatisticsMessage}s once a console
+ * connection is made again. When the spool is full, the oldest two intervals are merged so that
+ * the totals are never lost.
+ *
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class WorkerReportAggregator implements Sender {
+
+	/**
+	 * Whether the worker reports are merged in the agent. Set it false to have the per process
+	 * statistics reported to the console.
+	 */
+	public static final String PROP_REPORT_AGGREGATION = "ngrinder.report.aggregation";
+
+	private static final String LOCAL_HOST = "127.0.0.1";
+
+	private static final int RECEIVER_THREAD_COUNT = 2;
+
+	private static final long IDLE_POLL_DELAY = 100;
+
+	private static final long INACTIVE_CLIENT_TIMEOUT = 30000;
+
+	/** 10 minutes in the default report interval. */
+	static final int MAX_SPOOLED_REPORTS = 1200;
+
+	private final Connector m_consoleConnector;
+
+	private final int m_route;
+
+	private final Logger m_logger;
+
+	private final Map<WorkerAddress, Sender> m_upstreams = new LinkedHashMap<WorkerAddress, Sender>();
+
+	private final List<Message> m_queued = new ArrayList<Message>();
+
+	private TestStatisticsMap m_pending = null;
+
+	private long m_pendingTime;
+
+	private final LinkedList<SpooledReport> m_spool = new LinkedList<SpooledReport>();
+
+	private boolean m_consoleLost = false;
+
+	private Acceptor m_acceptor;
+
+	private ServerReceiver m_receiver;
+
+	private MessagePump m_messagePump;
+
+	private TimerTask m_flushTask;
+
+	private volatile boolean m_shutdown = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param consoleConnector
+	 *            connector to the console for worker connections
+	 * @param logger
+	 *            logger
+	 */
+	public WorkerReportAggregator(Connector consoleConnector, Logger logger) {
+		this(consoleConnector, 0, logger);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param consoleConnector
+	 *            connector to the console for worker connections
+	 * @param route
+	 *            key of the console behind the multiplexed console server. 0 if the console is
+	 *            connected directly.
+	 * @param logger
+	 *            logger
+	 */
+	public WorkerReportAggregator(Connector consoleConnector, int route, Logger logger) {
+		m_consoleConnector = consoleConnector;
+		m_route = route;
+		m_logger = logger;
+	}
+
+	/**
+	 * Start to accept worker connections and to forward the merged reports in the given interval.
+	 *
+	 * @param timer
+	 *            timer on which the flush is scheduled
+	 * @param reportInterval
+	 *            report interval in millisecond
+	 * @throws CommunicationException
+	 *             if the local port can not be bound
+	 */
+	public void start(Timer timer, long reportInterval) throws CommunicationException {
+		m_acceptor = new Acceptor(LOCAL_HOST, 0, 1, new StandardTimeAuthority());
+		m_receiver = new ServerReceiver();
+		m_receiver.receiveFrom(m_acceptor, new ConnectionType[] { ConnectionType.WORKER }, RECEIVER_THREAD_COUNT,
+						IDLE_POLL_DELAY, INACTIVE_CLIENT_TIMEOUT);
+		m_messagePump = new MessagePump(m_receiver, this, 1);
+		m_messagePump.start();
+		m_flushTask = new TimerTask() {
+			@Override
+			public void run() {
+				flush();
+			}
+		};
+		timer.schedule(m_flushTask, reportInterval, reportInterval);
+		m_logger.info("worker reports are merged on port {}", m_acceptor.getPort());
+	}
+
+	/**
+	 * Get the properties for worker processes, which point to this proxy as the console.
+	 *
+	 * @param properties
+	 *            agent properties
+	 * @return worker properties
+	 */
+	public GrinderProperties getWorkerProperties(GrinderProperties properties) {
+		GrinderProperties workerProperties = (GrinderProperties) properties.clone();
+		workerProperties.setProperty(GrinderProperties.CONSOLE_HOST, LOCAL_HOST);
+		workerProperties.setInt(GrinderProperties.CONSOLE_PORT, m_acceptor.getPort());
+		return workerProperties;
+	}
+
+	/**
+	 * Handle the message from a worker process.
+	 *
+	 * @param message
+	 *            message
+	 * @throws CommunicationException
+	 *             not thrown. Forwarding failures are logged.
+	 */
+	@Override
+	public synchronized void send(Message message) throws CommunicationException {
+		if (message instanceof ReportStatisticsMessage) {
+			TestStatisticsMap delta = ((ReportStatisticsMessage) message).getStatisticsDelta();
+			if (m_pending == null) {
+				m_pending = delta;
+				m_pendingTime = System.currentTimeMillis();
+			} else {
+				m_pending.add(delta);
+			}
+		} else if (message instanceof WorkerProcessReportMessage) {
+			WorkerProcessReportMessage report = (WorkerProcessReportMessage) message;
+			WorkerAddress address = (WorkerAddress) report.getProcessAddress();
+			Sender upstream = getUpstream(address);
+			boolean finished = report.getState() == ProcessReport.STATE_FINISHED;
+			if (finished) {
+				// The statistics should arrive before the process is reported as finished.
+				flush();
+			} else {
+				forwardQueued();
+			}
+			if (upstream != null) {
+				forward(address, upstream, report);
+			}
+			if (finished) {
+				removeUpstream(address);
+			}
+		} else {
+			m_queued.add(message);
+			forwardQueued();
+		}
+	}
+
+	/**
+	 * Forward the queued messages and the statistics merged since the last flush. The queued ones
+	 * go first because the statistics refer to the tests registered by them. The spooled statistics
+	 * are replayed before the current ones.
+	 */
+	public synchronized void flush() {
+		forwardQueued();
+		replaySpool();
+		if (m_pending == null) {
+			return;
+		}
+		if (!m_spool.isEmpty() || !forwardToFirst(new ReportStatisticsMessage(m_pending))) {
+			spool(m_pending, m_pendingTime);
+		}
+		m_pending = null;
+	}
+
+	private void replaySpool() {
+		while (!m_spool.isEmpty()) {
+			SpooledReport oldest = m_spool.getFirst();
+			if (!forwardToFirst(new LateReportStatisticsMessage(oldest.m_statistics, oldest.m_time,
+							System.currentTimeMillis()))) {
+				return;
+			}
+			m_spool.removeFirst();
+		}
+	}
+
+	private void spool(TestStatisticsMap statistics, long time) {
+		if (m_spool.size() >= MAX_SPOOLED_REPORTS) {
+			SpooledReport oldest = m_spool.removeFirst();
+			SpooledReport next = m_spool.getFirst();
+			oldest.m_statistics.add(next.m_statistics);
+			next.m_statistics = oldest.m_statistics;
+			next.m_time = oldest.m_time;
+		}
+		m_spool.addLast(new SpooledReport(statistics, time));
+	}
+
+	/**
+	 * Get the count of the intervals kept while the console is not reachable.
+	 *
+	 * @return spooled interval count
+	 */
+	synchronized int getSpooledCount() {
+		return m_spool.size();
+	}
+
+	private boolean forwardToFirst(Message message) {
+		if (m_upstreams.isEmpty()) {
+			return false;
+		}
+		Map.Entry<WorkerAddress, Sender> first = m_upstreams.entrySet().iterator().next();
+		return forward(first.getKey(), first.getValue(), message);
+	}
+
+	private void forwardQueued() {
+		Iterator<Message> iterator = m_queued.iterator();
+		while (iterator.hasNext() && !m_upstreams.isEmpty()) {
+			if (forwardToFirst(iterator.next())) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private boolean forward(WorkerAddress address, Sender upstream, Message message) {
+		try {
+			upstream.send(message);
+			if (m_consoleLost) {
+				m_consoleLost = false;
+				m_logger.info("console connection is back. {} spooled reports are being replayed.", m_spool.size());
+			}
+			return true;
+		} catch (CommunicationException e) {
+			consoleLost("Error while forwarding the report of " + address, e);
+			removeUpstream(address);
+			return false;
+		}
+	}
+
+	private Sender getUpstream(WorkerAddress address) {
+		Sender upstream = m_upstreams.get(address);
+		if (upstream == null) {
+			try {
+				upstream = createUpstream(address);
+				m_upstreams.put(address, upstream);
+			} catch (CommunicationException e) {
+				consoleLost("Error while connecting to the console for " + address, e);
+			}
+		}
+		return upstream;
+	}
+
+	private void consoleLost(String message, CommunicationException e) {
+		// Log once per outage. Otherwise every worker would log in every report interval.
+		if (m_consoleLost) {
+			m_logger.debug(message, e);
+			return;
+		}
+		m_consoleLost = true;
+		m_logger.error("{} : {}. Statistics are spooled until the console is reachable.", message, e.getMessage());
+		m_logger.debug("Details : ", e);
+	}
+
+	private void removeUpstream(WorkerAddress address) {
+		Sender upstream = m_upstreams.remove(address);
+		if (upstream != null) {
+			upstream.shutdown();
+		}
+	}
+
+	/**
+	 * Create the console connection used on behalf of the given worker.
+	 *
+	 * @param address
+	 *            worker address
+	 * @return sender
+	 * @throws CommunicationException
+	 *             if the console is not reachable
+	 */
+	Sender createUpstream(WorkerAddress address) throws CommunicationException {
+		return ClientSender.connect(m_consoleConnector, m_route == 0 ? address : new RoutedAddress(m_route, address));
+	}
+
+	/**
+	 * Flush the remaining statistics and close all connections.
+	 */
+	@Override
+	public void shutdown() {
+		// The message pump calls back this method when it's shut down.
+		if (m_shutdown) {
+			return;
+		}
+		m_shutdown = true;
+		if (m_flushTask != null) {
+			m_flushTask.cancel();
+		}
+		if (m_messagePump != null) {
+			m_messagePump.shutdown();
+		}
+		if (m_acceptor != null) {
+			try {
+				m_acceptor.shutdown();
+			} catch (CommunicationException e) {
+				m_logger.debug("Error while shutting down the acceptor", e);
+			}
+		}
+		synchronized (this) {
+			flush();
+			for (Sender each : m_upstreams.values()) {
+				each.shutdown();
+			}
+			m_upstreams.clear();
+		}
+	}
+
+	private static final class SpooledReport {
+		private TestStatisticsMap m_statistics;
+
+		private long m_time;
+
+		SpooledReport(TestStatisticsMap statistics, long time) {
+			m_statistics = statistics;
+			m_time = time;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.engine.communication;
+
+import net.grinder.communication.Message;
+
+/**
+ * Message sent from the console to let the agent send the full report on the next heartbeat. The
+ * console sends it when it gets a heartbeat which has no report to be applied on.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class ReportRequestGrinderMessage implements Message {
+
+	private static final long serialVersionUID = 4096301618731512357L;
+}
@@ -0,0 +1,103 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.message.console;
+
+import net.grinder.communication.AddressAwareMessage;
+
+import org.ngrinder.monitor.controller.model.SystemDataModel;
+
+/**
+ * Agent side encoder which turns the periodic agent controller status into either a full
+ * {@link AgentControllerProcessReportMessage} or a compact {@link AgentControllerHeartbeatMessage}.
+ *
+ * A full report is sent first and then every {@link #DEFAULT_KEY_FRAME_INTERVAL} heartbeats, so
+ * that the console state can not drift from the agent state for long. One encoder should be used
+ * per console connection.
+ *
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class AgentControllerHeartbeatEncoder {
+
+	/** The count of heartbeats after which the full report is sent again. */
+	public static final int DEFAULT_KEY_FRAME_INTERVAL = 10;
+
+	private final int m_keyFrameInterval;
+
+	private int m_heartbeatCount = 0;
+
+	private boolean m_initialized = false;
+
+	private AgentControllerState m_lastState;
+
+	private int m_lastConnectingPort;
+
+	private SystemDataModel m_lastSystemDataModel;
+
+	/**
+	 * Constructor with {@link #DEFAULT_KEY_FRAME_INTERVAL}.
+	 */
+	public AgentControllerHeartbeatEncoder() {
+		this(DEFAULT_KEY_FRAME_INTERVAL);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param keyFrameInterval
+	 *            the count of heartbeats after which the full report is sent again
+	 */
+	public AgentControllerHeartbeatEncoder(int keyFrameInterval) {
+		m_keyFrameInterval = keyFrameInterval;
+	}
+
+	/**
+	 * Encode the current status.
+	 *
+	 * @param state
+	 *            current agent controller state
+	 * @param systemDataModel
+	 *            current system data
+	 * @param connectingPort
+	 *            current connecting port
+	 * @return message to be sent
+	 */
+	public synchronized AddressAwareMessage encode(AgentControllerState state, SystemDataModel systemDataModel,
+					int connectingPort) {
+		AddressAwareMessage message;
+		if (!m_initialized || m_heartbeatCount >= m_keyFrameInterval) {
+			message = new AgentControllerProcessReportMessage(state, systemDataModel, connectingPort);
+			m_initialized = true;
+			m_heartbeatCount = 0;
+		} else {
+			message = new AgentControllerHeartbeatMessage(m_lastState, m_lastConnectingPort, m_lastSystemDataModel,
+							state, connectingPort, systemDataModel);
+			m_heartbeatCount++;
+		}
+		m_lastState = state;
+		m_lastConnectingPort = connectingPort;
+		if (systemDataModel != null) {
+			m_lastSystemDataModel = systemDataModel;
+		}
+		return message;
+	}
+
+	/**
+	 * Make the next {@link #encode(AgentControllerState, SystemDataModel, int)} call send the full
+	 * report. It's called when the console has lost the report to apply the heartbeats on.
+	 */
+	public synchronized void reset() {
+		m_initialized = false;
+	}
+}
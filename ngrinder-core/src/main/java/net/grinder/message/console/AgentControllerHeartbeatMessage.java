@@ -0,0 +1,265 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.message.console;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.communication.Address;
+import net.grinder.communication.AddressAwareMessage;
+import net.grinder.communication.CommunicationException;
+import net.grinder.messages.console.AgentAddress;
+
+import org.ngrinder.monitor.controller.model.SystemDataModel;
+
+/**
+ * Compact heartbeat message which only carries the fields changed since the last report sent to
+ * the console.
+ *
+ * The message is written by hand so that a heartbeat of an idle agent costs a few bytes instead of
+ * a whole serialized {@link SystemDataModel}. It is always sent after a full
+ * {@link AgentControllerProcessReportMessage} on the same connection, which the console uses as
+ * the base to apply this delta on. If the console has no base, it drops the heartbeat and requests
+ * the full report again.
+ *
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class AgentControllerHeartbeatMessage implements AddressAwareMessage {
+
+	private static final long serialVersionUID = 1L;
+
+	static final int STATE = 1;
+	static final int CONNECTING_PORT = 1 << 1;
+	static final int SYSTEM = 1 << 2;
+	static final int COLLECT_TIME = 1 << 3;
+	static final int FREE_MEMORY = 1 << 4;
+	static final int TOTAL_MEMORY = 1 << 5;
+	static final int CPU_USED_PERCENTAGE = 1 << 6;
+
+	private static final int SYSTEM_DATA_MASK = SYSTEM | COLLECT_TIME | FREE_MEMORY | TOTAL_MEMORY
+					| CPU_USED_PERCENTAGE;
+
+	private transient AgentAddress m_processAddress;
+
+	private transient int m_changeMask;
+	private transient AgentControllerState m_state;
+	private transient int m_connectingPort;
+	private transient String m_system;
+	private transient long m_collectTime;
+	private transient long m_freeMemory;
+	private transient long m_totalMemory;
+	private transient float m_cpuUsedPercentage;
+
+	/**
+	 * Create a heartbeat message holding the difference between the previous and current status.
+	 *
+	 * @param previousState
+	 *            state sent last time
+	 * @param previousPort
+	 *            connecting port sent last time
+	 * @param previous
+	 *            system data sent last time
+	 * @param state
+	 *            current state
+	 * @param connectingPort
+	 *            current connecting port
+	 * @param current
+	 *            current system data
+	 */
+	AgentControllerHeartbeatMessage(AgentControllerState previousState, int previousPort, SystemDataModel previous,
+					AgentControllerState state, int connectingPort, SystemDataModel current) {
+		if (previousState != state) {
+			m_changeMask |= STATE;
+			m_state = state;
+		}
+		if (previousPort != connectingPort) {
+			m_changeMask |= CONNECTING_PORT;
+			m_connectingPort = connectingPort;
+		}
+		if (current == null) {
+			return;
+		}
+		if (previous == null || !equals(previous.getSystem(), current.getSystem())) {
+			m_changeMask |= SYSTEM;
+			m_system = current.getSystem();
+		}
+		if (previous == null || previous.getCollectTime() != current.getCollectTime()) {
+			m_changeMask |= COLLECT_TIME;
+			m_collectTime = current.getCollectTime();
+		}
+		if (previous == null || previous.getFreeMemory() != current.getFreeMemory()) {
+			m_changeMask |= FREE_MEMORY;
+			m_freeMemory = current.getFreeMemory();
+		}
+		if (previous == null || previous.getTotalMemory() != current.getTotalMemory()) {
+			m_changeMask |= TOTAL_MEMORY;
+			m_totalMemory = current.getTotalMemory();
+		}
+		if (previous == null || Float.compare(previous.getCpuUsedPercentage(), current.getCpuUsedPercentage()) != 0) {
+			m_changeMask |= CPU_USED_PERCENTAGE;
+			m_cpuUsedPercentage = current.getCpuUsedPercentage();
+		}
+	}
+
+	private static boolean equals(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Check if this heartbeat carries any change.
+	 *
+	 * @return true if nothing is changed since the last report
+	 */
+	public boolean isEmpty() {
+		return m_changeMask == 0;
+	}
+
+	/**
+	 * Get the state after applying this heartbeat.
+	 *
+	 * @param previous
+	 *            state known by the console
+	 * @return current state
+	 */
+	public AgentControllerState getState(AgentControllerState previous) {
+		return (m_changeMask & STATE) != 0 ? m_state : previous;
+	}
+
+	/**
+	 * Get the connecting port after applying this heartbeat.
+	 *
+	 * @param previous
+	 *            port known by the console
+	 * @return current port
+	 */
+	public int getConnectingPort(int previous) {
+		return (m_changeMask & CONNECTING_PORT) != 0 ? m_connectingPort : previous;
+	}
+
+	/**
+	 * Get the {@link SystemDataModel} after applying this heartbeat. The given instance is returned
+	 * as it is when no system data is changed so that unchanged agents do not cause any allocation.
+	 *
+	 * @param previous
+	 *            system data known by the console
+	 * @return current system data
+	 */
+	public SystemDataModel getSystemDataModel(SystemDataModel previous) {
+		if ((m_changeMask & SYSTEM_DATA_MASK) == 0) {
+			return previous;
+		}
+		SystemDataModel model = new SystemDataModel();
+		if (previous != null) {
+			model.setKey(previous.getKey());
+			model.setIp(previous.getIp());
+			model.setPort(previous.getPort());
+			model.setSystem(previous.getSystem());
+			model.setCollectTime(previous.getCollectTime());
+			model.setFreeMemory(previous.getFreeMemory());
+			model.setTotalMemory(previous.getTotalMemory());
+			model.setCpuUsedPercentage(previous.getCpuUsedPercentage());
+			model.setCpuCount(previous.getCpuCount());
+		}
+		if ((m_changeMask & SYSTEM) != 0) {
+			model.setSystem(m_system);
+		}
+		if ((m_changeMask & COLLECT_TIME) != 0) {
+			model.setCollectTime(m_collectTime);
+		}
+		if ((m_changeMask & FREE_MEMORY) != 0) {
+			model.setFreeMemory(m_freeMemory);
+		}
+		if ((m_changeMask & TOTAL_MEMORY) != 0) {
+			model.setTotalMemory(m_totalMemory);
+		}
+		if ((m_changeMask & CPU_USED_PERCENTAGE) != 0) {
+			model.setCpuUsedPercentage(m_cpuUsedPercentage);
+		}
+		return model;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.writeByte(m_changeMask);
+		if ((m_changeMask & STATE) != 0) {
+			out.writeByte(m_state.ordinal());
+		}
+		if ((m_changeMask & CONNECTING_PORT) != 0) {
+			out.writeInt(m_connectingPort);
+		}
+		if ((m_changeMask & SYSTEM) != 0) {
+			out.writeUTF(m_system == null ? "" : m_system);
+		}
+		if ((m_changeMask & COLLECT_TIME) != 0) {
+			out.writeLong(m_collectTime);
+		}
+		if ((m_changeMask & FREE_MEMORY) != 0) {
+			out.writeLong(m_freeMemory);
+		}
+		if ((m_changeMask & TOTAL_MEMORY) != 0) {
+			out.writeLong(m_totalMemory);
+		}
+		if ((m_changeMask & CPU_USED_PERCENTAGE) != 0) {
+			out.writeFloat(m_cpuUsedPercentage);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException {
+		m_changeMask = in.readUnsignedByte();
+		if ((m_changeMask & STATE) != 0) {
+			m_state = AgentControllerState.values()[in.readUnsignedByte()];
+		}
+		if ((m_changeMask & CONNECTING_PORT) != 0) {
+			m_connectingPort = in.readInt();
+		}
+		if ((m_changeMask & SYSTEM) != 0) {
+			m_system = in.readUTF();
+		}
+		if ((m_changeMask & COLLECT_TIME) != 0) {
+			m_collectTime = in.readLong();
+		}
+		if ((m_changeMask & FREE_MEMORY) != 0) {
+			m_freeMemory = in.readLong();
+		}
+		if ((m_changeMask & TOTAL_MEMORY) != 0) {
+			m_totalMemory = in.readLong();
+		}
+		if ((m_changeMask & CPU_USED_PERCENTAGE) != 0) {
+			m_cpuUsedPercentage = in.readFloat();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setAddress(Address address) throws CommunicationException {
+		try {
+			m_processAddress = (AgentAddress) address;
+		} catch (ClassCastException e) {
+			throw new CommunicationException("Not an agent process address", e);
+		}
+	}
+
+	/**
+	 * Accessor for the process identity.
+	 *
+	 * @return The process identity.
+	 */
+	public AgentIdentity getAgentIdentity() {
+		return m_processAddress.getIdentity();
+	}
+}
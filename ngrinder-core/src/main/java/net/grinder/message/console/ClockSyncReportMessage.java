@@ -0,0 +1,89 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.message.console;
+
+import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.communication.Address;
+import net.grinder.communication.AddressAwareMessage;
+import net.grinder.communication.CommunicationException;
+import net.grinder.messages.console.AgentAddress;
+
+/**
+ * Agent reply for {@link net.grinder.engine.communication.ClockSyncGrinderMessage}. It carries
+ * the console time echoed back and the agent times when the request is received and answered.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class ClockSyncReportMessage implements AddressAwareMessage {
+
+	private static final long serialVersionUID = 6103560437447958624L;
+
+	private transient AgentAddress m_processAddress;
+
+	private final long m_originateTime;
+
+	private final long m_receiveTime;
+
+	private final long m_transmitTime;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param originateTime
+	 *            console time in the request
+	 * @param receiveTime
+	 *            agent time when the request is received
+	 * @param transmitTime
+	 *            agent time when this reply is sent
+	 */
+	public ClockSyncReportMessage(long originateTime, long receiveTime, long transmitTime) {
+		m_originateTime = originateTime;
+		m_receiveTime = receiveTime;
+		m_transmitTime = transmitTime;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setAddress(Address address) throws CommunicationException {
+		try {
+			m_processAddress = (AgentAddress) address;
+		} catch (ClassCastException e) {
+			throw new CommunicationException("Not an agent process address", e);
+		}
+	}
+
+	/**
+	 * Accessor for the process identity.
+	 * 
+	 * @return The process identity.
+	 */
+	public AgentIdentity getAgentIdentity() {
+		return m_processAddress.getIdentity();
+	}
+
+	public long getOriginateTime() {
+		return m_originateTime;
+	}
+
+	public long getReceiveTime() {
+		return m_receiveTime;
+	}
+
+	public long getTransmitTime() {
+		return m_transmitTime;
+	}
+}
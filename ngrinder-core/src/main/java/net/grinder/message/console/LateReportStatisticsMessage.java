@@ -0,0 +1,73 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.message.console;
+
+import net.grinder.communication.Message;
+import net.grinder.statistics.TestStatisticsMap;
+
+/**
+ * Statistics delta which was spooled on the agent while the console was not reachable. Both
+ * times are measured by the agent clock, so the console can locate the interval on its own clock
+ * by the age of the report.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class LateReportStatisticsMessage implements Message {
+
+	private static final long serialVersionUID = -4012981440263478219L;
+
+	private final TestStatisticsMap m_statisticsDelta;
+
+	private final long m_intervalTime;
+
+	private final long m_transmitTime;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param statisticsDelta
+	 *            statistics delta
+	 * @param intervalTime
+	 *            agent time when the delta is collected
+	 * @param transmitTime
+	 *            agent time when this message is sent
+	 */
+	public LateReportStatisticsMessage(TestStatisticsMap statisticsDelta, long intervalTime, long transmitTime) {
+		m_statisticsDelta = statisticsDelta;
+		m_intervalTime = intervalTime;
+		m_transmitTime = transmitTime;
+	}
+
+	public TestStatisticsMap getStatisticsDelta() {
+		return m_statisticsDelta;
+	}
+
+	public long getIntervalTime() {
+		return m_intervalTime;
+	}
+
+	public long getTransmitTime() {
+		return m_transmitTime;
+	}
+
+	/**
+	 * Get how long the delta was kept on the agent.
+	 * 
+	 * @return age in millisecond
+	 */
+	public long getAge() {
+		return Math.max(0, m_transmitTime - m_intervalTime);
+	}
+}
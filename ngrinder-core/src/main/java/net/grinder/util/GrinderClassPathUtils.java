@@ -33,7 +33,8 @@ import org.slf4j.Logger;
  */
 public abstract class GrinderClassPathUtils {
 	/**
-	 * Construct classPath for grinder from given classpath string.
+	 * Construct classPath for grinder from given classpath string. ngrinder-runtime jar is put at
+	 * the head so that its script engine services are asked ahead of the grinder built-in ones.
 	 * 
 	 * @param classPath
 	 *            classpath string
@@ -50,11 +51,16 @@ public abstract class GrinderClassPathUtils {
 			}
 
 			logger.trace("classpath :" + eachClassPath);
-			classPathList.add(eachClassPath);
+			if (filename.contains(RUNTIME_JAR)) {
+				classPathList.add(0, eachClassPath);
+			} else {
+				classPathList.add(eachClassPath);
+			}
 		}
 		return StringUtils.join(classPathList, File.pathSeparator);
 	}
 
+	private static final String RUNTIME_JAR = "ngrinder-runtime";
 	private static final List<String> USEFUL_JAR_LIST = new ArrayList<String>();
 	private static final List<String> USELESS_JAR_LIST = new ArrayList<String>();
 	static {
@@ -0,0 +1,43 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic counter of events.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class Counter extends Metric implements CounterMBean {
+
+	private final AtomicLong count = new AtomicLong();
+
+	Counter(String name, String help, String labelName, String labelValue) {
+		super(name, help, labelName, labelValue);
+	}
+
+	/**
+	 * Increase the count by one.
+	 */
+	public void increment() {
+		count.incrementAndGet();
+	}
+
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+}
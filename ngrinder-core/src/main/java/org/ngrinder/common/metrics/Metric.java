@@ -0,0 +1,54 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.common.metrics;
+
+/**
+ * Base of the metrics kept in {@link MetricRegistry}.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public abstract class Metric {
+
+	private final String name;
+
+	private final String help;
+
+	private final String labelName;
+
+	private final String labelValue;
+
+	Metric(String name, String help, String labelName, String labelValue) {
+		this.name = name;
+		this.help = help;
+		this.labelName = labelName;
+		this.labelValue = labelValue;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getHelp() {
+		return help;
+	}
+
+	public String getLabelName() {
+		return labelName;
+	}
+
+	public String getLabelValue() {
+		return labelValue;
+	}
+}
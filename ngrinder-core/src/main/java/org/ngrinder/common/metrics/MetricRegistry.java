@@ -0,0 +1,238 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.common.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the {@link Timer}s and {@link Counter}s measuring the controller hot paths.
+ * 
+ * Each metric is registered into the platform MBean server when it's created, and all of them can
+ * be written in the Prometheus text format.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public final class MetricRegistry {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MetricRegistry.class);
+
+	/** JMX domain of the metrics. */
+	public static final String JMX_DOMAIN = "org.ngrinder.controller";
+
+	private static final MetricRegistry INSTANCE = new MetricRegistry();
+
+	private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+
+	private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+	MetricRegistry() {
+	}
+
+	/**
+	 * Get the registry shared in this JVM.
+	 * 
+	 * @return {@link MetricRegistry}
+	 */
+	public static MetricRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Get the timer of the given name. It's created if it doesn't exist.
+	 * 
+	 * @param name
+	 *            metric name. It should consist of lower case letters, digits and underscores.
+	 * @param help
+	 *            description of the metric
+	 * @return {@link Timer}
+	 */
+	public Timer timer(String name, String help) {
+		return timer(name, help, null, null);
+	}
+
+	/**
+	 * Get the timer of the given name and label. It's created if it doesn't exist.
+	 * 
+	 * @param name
+	 *            metric name. It should consist of lower case letters, digits and underscores.
+	 * @param help
+	 *            description of the metric
+	 * @param labelName
+	 *            label name
+	 * @param labelValue
+	 *            label value
+	 * @return {@link Timer}
+	 */
+	public Timer timer(String name, String help, String labelName, String labelValue) {
+		String key = toKey(name, labelName, labelValue);
+		Timer timer = timers.get(key);
+		if (timer == null) {
+			Timer created = new Timer(name, help, labelName, labelValue);
+			timer = timers.putIfAbsent(key, created);
+			if (timer == null) {
+				timer = created;
+				registerMBean(created);
+			}
+		}
+		return timer;
+	}
+
+	/**
+	 * Get the counter of the given name and label. It's created if it doesn't exist.
+	 * 
+	 * @param name
+	 *            metric name. It should end with _total.
+	 * @param help
+	 *            description of the metric
+	 * @param labelName
+	 *            label name
+	 * @param labelValue
+	 *            label value
+	 * @return {@link Counter}
+	 */
+	public Counter counter(String name, String help, String labelName, String labelValue) {
+		String key = toKey(name, labelName, labelValue);
+		Counter counter = counters.get(key);
+		if (counter == null) {
+			Counter created = new Counter(name, help, labelName, labelValue);
+			counter = counters.putIfAbsent(key, created);
+			if (counter == null) {
+				counter = created;
+				registerMBean(created);
+			}
+		}
+		return counter;
+	}
+
+	private static String toKey(String name, String labelName, String labelValue) {
+		return labelName == null ? name : name + "{" + labelName + "=" + labelValue + "}";
+	}
+
+	private void registerMBean(Metric metric) {
+		try {
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			String objectName = JMX_DOMAIN + ":type=Metric,name=" + metric.getName();
+			if (metric.getLabelName() != null) {
+				objectName = objectName + "," + metric.getLabelName() + "=" + ObjectName.quote(metric.getLabelValue());
+			}
+			ObjectName candidate = new ObjectName(objectName);
+			if (!mbeanServer.isRegistered(candidate)) {
+				mbeanServer.registerMBean(metric, candidate);
+			}
+		} catch (JMException e) {
+			LOG.error("Error while registering the metric {} : {}", metric.getName(), e.getMessage());
+			LOG.debug("Details : ", e);
+		}
+	}
+
+	/**
+	 * Get all timers sorted by the name and the label value.
+	 * 
+	 * @return timer list
+	 */
+	public List<Timer> getTimers() {
+		return sort(new ArrayList<Timer>(timers.values()));
+	}
+
+	/**
+	 * Get all counters sorted by the name and the label value.
+	 * 
+	 * @return counter list
+	 */
+	public List<Counter> getCounters() {
+		return sort(new ArrayList<Counter>(counters.values()));
+	}
+
+	private static <T extends Metric> List<T> sort(List<T> metrics) {
+		Collections.sort(metrics, new Comparator<Metric>() {
+			@Override
+			public int compare(Metric o1, Metric o2) {
+				int compared = o1.getName().compareTo(o2.getName());
+				if (compared != 0) {
+					return compared;
+				}
+				return String.valueOf(o1.getLabelValue()).compareTo(String.valueOf(o2.getLabelValue()));
+			}
+		});
+		return metrics;
+	}
+
+	/**
+	 * Write all metrics in the Prometheus text exposition format. Each timer is written as a
+	 * summary in seconds along with the max gauge.
+	 * 
+	 * @param writer
+	 *            writer
+	 * @throws IOException
+	 *             occurs when writing fails
+	 */
+	public void writePrometheus(Writer writer) throws IOException {
+		List<Timer> sorted = getTimers();
+		String family = null;
+		for (Timer each : sorted) {
+			if (!each.getName().equals(family)) {
+				family = each.getName();
+				PrometheusFormat.writeHeader(writer, family, each.getHelp(), "summary");
+			}
+			String[] labels = labels(each);
+			PrometheusFormat.writeSample(writer, family + "_count", labels, each.getCount());
+			PrometheusFormat.writeSample(writer, family + "_sum", labels, toSeconds(each.getTotalNanos()));
+		}
+		family = null;
+		for (Timer each : sorted) {
+			String max = each.getName() + "_max";
+			if (!max.equals(family)) {
+				family = max;
+				PrometheusFormat.writeHeader(writer, max, "Longest time of " + each.getName(), "gauge");
+			}
+			PrometheusFormat.writeSample(writer, max, labels(each), toSeconds(each.getMaxNanos()));
+		}
+		family = null;
+		for (Counter each : getCounters()) {
+			if (!each.getName().equals(family)) {
+				family = each.getName();
+				PrometheusFormat.writeHeader(writer, family, each.getHelp(), "counter");
+			}
+			PrometheusFormat.writeSample(writer, family, labels(each), each.getCount());
+		}
+		writer.flush();
+	}
+
+	private static String[] labels(Metric metric) {
+		if (metric.getLabelName() == null) {
+			return null;
+		}
+		return new String[] { metric.getLabelName(), metric.getLabelValue() };
+	}
+
+	private static double toSeconds(long nanos) {
+		return nanos / 1e9;
+	}
+}
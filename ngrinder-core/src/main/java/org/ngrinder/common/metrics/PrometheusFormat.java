@@ -0,0 +1,115 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.common.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Helper to write metrics in the Prometheus text exposition format (version 0.0.4).
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public abstract class PrometheusFormat {
+
+	/** Content type of the Prometheus text format. */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=UTF-8";
+
+	/**
+	 * Write the HELP and TYPE lines of a metric family. All samples of the family should follow.
+	 * 
+	 * @param writer
+	 *            writer
+	 * @param name
+	 *            metric family name
+	 * @param help
+	 *            description
+	 * @param type
+	 *            one of counter, gauge and summary
+	 * @throws IOException
+	 *             occurs when writing fails
+	 */
+	public static void writeHeader(Writer writer, String name, String help, String type) throws IOException {
+		writer.write("# HELP " + name + " " + escapeHelp(help) + "\n");
+		writer.write("# TYPE " + name + " " + type + "\n");
+	}
+
+	/**
+	 * Write a sample.
+	 * 
+	 * @param writer
+	 *            writer
+	 * @param name
+	 *            metric name
+	 * @param labels
+	 *            label names and values in turn
+	 * @param value
+	 *            value
+	 * @throws IOException
+	 *             occurs when writing fails
+	 */
+	public static void writeSample(Writer writer, String name, String[] labels, double value) throws IOException {
+		writer.write(name + formatLabels(labels) + " " + formatValue(value) + "\n");
+	}
+
+	/**
+	 * Write a sample.
+	 * 
+	 * @param writer
+	 *            writer
+	 * @param name
+	 *            metric name
+	 * @param labels
+	 *            label names and values in turn
+	 * @param value
+	 *            value
+	 * @throws IOException
+	 *             occurs when writing fails
+	 */
+	public static void writeSample(Writer writer, String name, String[] labels, long value) throws IOException {
+		writer.write(name + formatLabels(labels) + " " + value + "\n");
+	}
+
+	static String formatLabels(String[] labels) {
+		if (labels == null || labels.length == 0) {
+			return "";
+		}
+		StringBuilder builder = new StringBuilder("{");
+		for (int i = 0; i + 1 < labels.length; i += 2) {
+			if (i > 0) {
+				builder.append(",");
+			}
+			builder.append(labels[i]).append("=\"").append(escapeLabelValue(labels[i + 1])).append("\"");
+		}
+		return builder.append("}").toString();
+	}
+
+	static String formatValue(double value) {
+		if (Double.isNaN(value)) {
+			return "NaN";
+		} else if (Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf";
+		}
+		return String.valueOf(value);
+	}
+
+	static String escapeHelp(String help) {
+		return help.replace("\\", "\\\\").replace("\n", "\\n");
+	}
+
+	static String escapeLabelValue(String value) {
+		return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
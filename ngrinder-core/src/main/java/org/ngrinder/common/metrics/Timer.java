@@ -0,0 +1,111 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.common.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cheap timer of a hot path. It only keeps the count, the sum and the max of the elapsed times
+ * so that it can be updated from many threads without locking.
+ * 
+ * <pre>
+ * long start = timer.start();
+ * try {
+ * 	...
+ * } finally {
+ * 	timer.stop(start);
+ * }
+ * </pre>
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class Timer extends Metric implements TimerMBean {
+
+	private static final double NANOS_PER_MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	Timer(String name, String help, String labelName, String labelValue) {
+		super(name, help, labelName, labelValue);
+	}
+
+	/**
+	 * Get the start time of an event.
+	 * 
+	 * @return start time in nano seconds
+	 */
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record the event started at the given time.
+	 * 
+	 * @param start
+	 *            value returned by {@link #start()}
+	 */
+	public void stop(long start) {
+		record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Record an event.
+	 * 
+	 * @param nanos
+	 *            elapsed time in nano seconds
+	 */
+	public void record(long nanos) {
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+
+	@Override
+	public long getTotalTime() {
+		return TimeUnit.NANOSECONDS.toMillis(totalNanos.get());
+	}
+
+	@Override
+	public double getMeanTime() {
+		long current = count.get();
+		return current == 0 ? 0 : totalNanos.get() / NANOS_PER_MILLIS / current;
+	}
+
+	@Override
+	public double getMaxTime() {
+		return maxNanos.get() / NANOS_PER_MILLIS;
+	}
+
+	long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	long getMaxNanos() {
+		return maxNanos.get();
+	}
+}
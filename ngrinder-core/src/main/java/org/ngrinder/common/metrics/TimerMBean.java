@@ -0,0 +1,51 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.common.metrics;
+
+/**
+ * JMX view of {@link Timer}.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public interface TimerMBean {
+
+	/**
+	 * Get the count of the recorded events.
+	 * 
+	 * @return event count
+	 */
+	long getCount();
+
+	/**
+	 * Get the total time of the recorded events.
+	 * 
+	 * @return total time in millisecond
+	 */
+	long getTotalTime();
+
+	/**
+	 * Get the average time of the recorded events.
+	 * 
+	 * @return mean time in millisecond
+	 */
+	double getMeanTime();
+
+	/**
+	 * Get the longest time of the recorded events.
+	 * 
+	 * @return max time in millisecond
+	 */
+	double getMaxTime();
+}
@@ -0,0 +1,4 @@
+/**
+ * ngrinder controller metrics package.
+ */
+package org.ngrinder.common.metrics;
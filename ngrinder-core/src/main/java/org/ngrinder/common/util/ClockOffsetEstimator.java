@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ngrinder.common.util;
+
+/**
+ * NTP style estimator of the clock offset between this host and a remote host.
+ *
+ * Each sample is a round trip with four timestamps. The request leaves here at the originate
+ * time, is received and answered by the remote host at its receive and transmit times, and the
+ * answer arrives here at the arrival time. Among the recent samples, the one with the smallest
+ * round trip delay suffers least from the asymmetric queuing, so its offset is taken and smoothed
+ * into the estimate.
+ *
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class ClockOffsetEstimator {
+
+	private static final int WINDOW_SIZE = 8;
+
+	private static final double SMOOTHING = 0.25;
+
+	private final long[] m_offsets = new long[WINDOW_SIZE];
+
+	private final long[] m_delays = new long[WINDOW_SIZE];
+
+	private int m_sampleCount = 0;
+
+	private double m_offset = 0;
+
+	private long m_delay = 0;
+
+	/**
+	 * Add a round trip sample.
+	 *
+	 * @param originateTime
+	 *            local time when the request is sent
+	 * @param receiveTime
+	 *            remote time when the request is received
+	 * @param transmitTime
+	 *            remote time when the response is sent
+	 * @param arrivalTime
+	 *            local time when the response is received
+	 */
+	public synchronized void addSample(long originateTime, long receiveTime, long transmitTime, long arrivalTime) {
+		long delay = (arrivalTime - originateTime) - (transmitTime - receiveTime);
+		if (delay < 0) {
+			// The local clock is stepped during the round trip.
+			return;
+		}
+		int index = m_sampleCount % WINDOW_SIZE;
+		m_offsets[index] = ((receiveTime - originateTime) + (transmitTime - arrivalTime)) / 2;
+		m_delays[index] = delay;
+		// The latest sample wins on a tie so that the estimate follows the drift.
+		int best = index;
+		int filled = Math.min(++m_sampleCount, WINDOW_SIZE);
+		for (int i = 0; i < filled; i++) {
+			if (m_delays[i] < m_delays[best]) {
+				best = i;
+			}
+		}
+		m_offset = m_sampleCount == 1 ? m_offsets[best] : m_offset + SMOOTHING * (m_offsets[best] - m_offset);
+		m_delay = m_delays[best];
+	}
+
+	/**
+	 * Add a round trip sample in which the remote host reports a single timestamp.
+	 *
+	 * @param originateTime
+	 *            local time when the request is sent
+	 * @param remoteTime
+	 *            remote time while handling the request
+	 * @param arrivalTime
+	 *            local time when the response is received
+	 */
+	public void addSample(long originateTime, long remoteTime, long arrivalTime) {
+		addSample(originateTime, remoteTime, remoteTime, arrivalTime);
+	}
+
+	/**
+	 * Check if any sample has been added.
+	 *
+	 * @return true if estimated
+	 */
+	public synchronized boolean isEstimated() {
+		return m_sampleCount > 0;
+	}
+
+	/**
+	 * Get the estimated offset. The remote clock is ahead of the local one when it's positive.
+	 *
+	 * @return remote time - local time in millisecond. 0 if not estimated yet.
+	 */
+	public synchronized long getOffset() {
+		return Math.round(m_offset);
+	}
+
+	/**
+	 * Get the round trip delay of the sample currently trusted most.
+	 *
+	 * @return delay in millisecond
+	 */
+	public synchronized long getRoundTripDelay() {
+		return m_delay;
+	}
+
+	/**
+	 * Convert the given remote timestamp into the local clock.
+	 *
+	 * @param remoteTime
+	 *            time in millisecond measured by the remote host
+	 * @return time in millisecond on the local clock
+	 */
+	public long toLocalTime(long remoteTime) {
+		return remoteTime - getOffset();
+	}
+}
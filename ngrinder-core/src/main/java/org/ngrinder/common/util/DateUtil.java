@@ -57,6 +57,20 @@ public abstract class DateUtil {
 		return Long.valueOf(collectTimeFormat.format(date));
 	}
 
+	/**
+	 * Convert the time in long format : "yyyyMMddHHmmss" back to the date.
+	 * 
+	 * @param collectTime
+	 *            time in format of long type
+	 * @return date
+	 * @throws ParseException
+	 *             occurs when the given time is not in the format
+	 */
+	public static Date getCollectTimeInDate(long collectTime) throws ParseException {
+		SimpleDateFormat collectTimeFormat = new SimpleDateFormat("yyyyMMddHHmmss");
+		return collectTimeFormat.parse(String.valueOf(collectTime));
+	}
+
 	/**
 	 * convert user date to new date with server side Locale.
 	 * 
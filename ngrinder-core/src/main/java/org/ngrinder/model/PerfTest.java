@@ -102,6 +102,28 @@ public class PerfTest extends BaseModel<PerfTest> {
 	@Type(type = "true_false")
 	private Boolean useRampUp = false;
 
+	/** Use the arrival rate (open model) mode or not. */
+	@Column(name = "use_arrival_rate", columnDefinition = "char(1)")
+	@Type(type = "true_false")
+	private Boolean useArrivalRate = false;
+
+	/** The target tps profile of the whole test in the arrival rate mode. */
+	@Column(name = "arrival_rate_profile")
+	private String arrivalRateProfile;
+
+	/** Use the non-blocking virtual user mode or not. */
+	@Column(name = "use_async_vuser", columnDefinition = "char(1)")
+	@Type(type = "true_false")
+	private Boolean useAsyncVuser = false;
+
+	/** The count of non-blocking virtual users in each process. */
+	@Column(name = "async_vuser_per_process")
+	private Integer asyncVuserPerProcess;
+
+	/** The priority in the run queue. The higher one runs first. */
+	@Column(name = "priority")
+	private Integer priority = 0;
+
 	/** The threshold code, R for run count; D for duration. */
 	@Column(name = "threshold")
 	private String threshold;
@@ -594,6 +616,46 @@ public class PerfTest extends BaseModel<PerfTest> {
 		this.useRampUp = useRampUp;
 	}
 
+	public Boolean getUseArrivalRate() {
+		return useArrivalRate;
+	}
+
+	public void setUseArrivalRate(Boolean useArrivalRate) {
+		this.useArrivalRate = useArrivalRate;
+	}
+
+	public String getArrivalRateProfile() {
+		return arrivalRateProfile;
+	}
+
+	public void setArrivalRateProfile(String arrivalRateProfile) {
+		this.arrivalRateProfile = arrivalRateProfile;
+	}
+
+	public Boolean getUseAsyncVuser() {
+		return useAsyncVuser;
+	}
+
+	public void setUseAsyncVuser(Boolean useAsyncVuser) {
+		this.useAsyncVuser = useAsyncVuser;
+	}
+
+	public Integer getAsyncVuserPerProcess() {
+		return asyncVuserPerProcess;
+	}
+
+	public void setAsyncVuserPerProcess(Integer asyncVuserPerProcess) {
+		this.asyncVuserPerProcess = asyncVuserPerProcess;
+	}
+
+	public Integer getPriority() {
+		return priority;
+	}
+
+	public void setPriority(Integer priority) {
+		this.priority = priority;
+	}
+
 	public Boolean getSendMail() {
 		return sendMail;
 	}
@@ -32,6 +32,8 @@ public final class MonitorConstants {
 	public static final String DEFALUT_MONITOR_DISPLAY_NAME = "nGrinder monitoring agent";
 	public static final String RECODER_METHOD_PREFIX = "recoder";
 	public static final String SYSTEM = "name=System";
+	/** The attribute of the system MXBean which gives the current time of the monitored host. */
+	public static final String CURRENT_TIME = "CurrentTime";
 	public static final int DEFAULT_CONTROLLER_CACHE_SIZE = 128;
 	public static final int DEFAULT_CONTROLLER_INTERVAL = 1;
 
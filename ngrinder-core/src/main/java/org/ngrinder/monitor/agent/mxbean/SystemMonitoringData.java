@@ -48,4 +48,9 @@ public class SystemMonitoringData extends MXBean implements SystemMXBean {
 		return systemInfo;
 	}
 
+	@Override
+	public long getCurrentTime() {
+		return System.currentTimeMillis();
+	}
+
 }
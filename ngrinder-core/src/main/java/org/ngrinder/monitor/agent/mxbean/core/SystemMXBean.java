@@ -29,4 +29,10 @@ public interface SystemMXBean {
 	 * @return SystemInfo of current time
 	 */
 	public SystemInfo getSystemInfo();
+
+	/**
+	 * get the current time of the monitored host. It's used to estimate the clock offset.
+	 * @return current time in millisecond
+	 */
+	public long getCurrentTime();
 }
@@ -18,6 +18,7 @@ import java.util.Date;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 
 import org.hibernate.annotations.Index;
 import org.ngrinder.common.util.DateUtil;
@@ -60,6 +61,10 @@ public class SystemDataModel extends BaseEntity<SystemDataModel> {
 	
 	@Column(name = "cpu_used_percentage")
 	private float cpuUsedPercentage;
+
+	/** The count of cores. It's only carried from agents and not stored. */
+	@Transient
+	private int cpuCount;
 	
 	/**
 	 * Default constructor to create empty SystemDataModel.
@@ -142,4 +147,12 @@ public class SystemDataModel extends BaseEntity<SystemDataModel> {
 	public void setCpuUsedPercentage(float cpuUsedPercentage) {
 		this.cpuUsedPercentage = cpuUsedPercentage;
 	}
+
+	public int getCpuCount() {
+		return cpuCount;
+	}
+
+	public void setCpuCount(int cpuCount) {
+		this.cpuCount = cpuCount;
+	}
 }
@@ -16,6 +16,8 @@ package org.ngrinder.monitor.share.domain;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.MBeanServerConnection;
 import javax.management.ObjectName;
 import javax.management.remote.JMXConnector;
@@ -23,6 +25,8 @@ import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 
 import org.apache.commons.io.IOUtils;
+import org.ngrinder.common.util.ClockOffsetEstimator;
+import org.ngrinder.monitor.MonitorConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,6 +60,8 @@ public class MBeanClient {
 	private MBeanServerConnection server = null;
 	private JMXConnector jmxConnector = null;
 
+	private final ClockOffsetEstimator clockOffsetEstimator = new ClockOffsetEstimator();
+
 	/**
 	 * Used to connect remote monitor JMX.
 	 * 
@@ -126,6 +132,46 @@ public class MBeanClient {
 		return server.getAttribute(objName, attrName);
 	}
 
+	/**
+	 * get the monitor object of the object name and attribute name, and sample the clock of the
+	 * target in the same round trip. The object should expose {@link MonitorConstants#CURRENT_TIME}
+	 * attribute. Otherwise the clock is not sampled.
+	 * 
+	 * @param objName
+	 *            is the object name of the object in JMX MBean server.
+	 * @param attrName
+	 *            is the attribute name
+	 * @return the monitor object from MBean
+	 * @throws Exception
+	 *             wraps all JMX related exception
+	 */
+	public Object getAttributeWithClock(ObjectName objName, String attrName) throws Exception {
+		long originateTime = System.currentTimeMillis();
+		AttributeList attributes = server.getAttributes(objName, new String[] { attrName,
+				MonitorConstants.CURRENT_TIME });
+		long arrivalTime = System.currentTimeMillis();
+		Object value = null;
+		for (Attribute each : attributes.asList()) {
+			if (attrName.equals(each.getName())) {
+				value = each.getValue();
+			} else if (MonitorConstants.CURRENT_TIME.equals(each.getName())) {
+				clockOffsetEstimator.addSample(originateTime, (Long) each.getValue(), arrivalTime);
+			}
+		}
+		// The failed attribute is just omitted. Get it again to see the cause.
+		return value == null ? getAttribute(objName, attrName) : value;
+	}
+
+	/**
+	 * get the clock offset estimator of the target. It's kept while this client is cached so that
+	 * the estimation continues across tests.
+	 * 
+	 * @return {@link ClockOffsetEstimator}
+	 */
+	public ClockOffsetEstimator getClockOffsetEstimator() {
+		return clockOffsetEstimator;
+	}
+
 	private void connectClient() throws IOException {
 		if (jmxUrl == null && "localhost".equals(hostName) && port == 0) {
 			server = ManagementFactory.getPlatformMBeanServer();
@@ -14,6 +14,7 @@
 package net.grinder;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -24,6 +25,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+import net.grinder.SingleConsole.ConsoleShutdownListener;
 import net.grinder.common.processidentity.WorkerProcessReport;
 import net.grinder.console.communication.ProcessControl.ProcessReports;
 import net.grinder.console.model.ModelTestIndex;
@@ -126,6 +128,34 @@ public class SingleConsoleTest {
 		}
 	}
 
+	public StopReason stopReason = null;
+
+	@Test
+	public void testLostWorkersAreWaitedFor() {
+		SingleConsole singleConsole = new SingleConsole(11115);
+		singleConsole.addListener(new ConsoleShutdownListener() {
+			@Override
+			public void readyToStop(StopReason reason) {
+				stopReason = reason;
+			}
+		});
+		ProcessReports report = mock(ProcessReports.class);
+		WorkerProcessReport workerProcessReport = mock(WorkerProcessReport.class);
+		when(report.getWorkerProcessReports()).thenReturn(new WorkerProcessReport[] { workerProcessReport });
+
+		// Running workers vanish. They may come back.
+		when(workerProcessReport.getState()).thenReturn((short) 2);
+		singleConsole.update(new ProcessReports[] { report });
+		singleConsole.update(new ProcessReports[] {});
+		assertThat(stopReason, nullValue());
+
+		// Finished workers vanish. The script is failed.
+		when(workerProcessReport.getState()).thenReturn((short) 3);
+		singleConsole.update(new ProcessReports[] { report });
+		singleConsole.update(new ProcessReports[] {});
+		assertThat(stopReason, is(StopReason.SCRIPT_ERROR));
+	}
+
 	@Test
 	public void testTpsValue() {
 		SingleConsole singleConsole = new SingleConsole(11114);
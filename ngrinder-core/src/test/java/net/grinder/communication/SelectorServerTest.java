@@ -0,0 +1,164 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.communication;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SelectorServerTest {
+
+	private SelectorServer m_server;
+
+	@Before
+	public void before() throws CommunicationException {
+		m_server = new SelectorServer("127.0.0.1", 0, new ConnectionType[] { ConnectionType.AGENT }, 2, 30000);
+		m_server.start();
+	}
+
+	@After
+	public void after() {
+		m_server.shutdown();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		ClientReceiver clientReceiver = connect(new TestAddress(1));
+		ClientSender clientSender = ClientSender.connect(clientReceiver);
+
+		// Much bigger than the receive buffer so that it arrives in pieces.
+		clientSender.send(new DataMessage(1024 * 1024));
+		clientSender.send(new DataMessage(10));
+		assertThat(((DataMessage) m_server.waitForMessage()).isIntact(1024 * 1024), is(true));
+		assertThat(((DataMessage) m_server.waitForMessage()).isIntact(10), is(true));
+		assertThat(m_server.getNumberOfConnections(), is(1));
+
+		m_server.send(new DataMessage(100));
+		assertThat(((DataMessage) clientReceiver.waitForMessage()).isIntact(100), is(true));
+		clientSender.shutdown();
+	}
+
+	@Test
+	public void testMessageOverMaxBufferSizeClosesConnection() throws Exception {
+		m_server.setMaxBufferSize(256 * 1024);
+		ClientSender clientSender = ClientSender.connect(connect(new TestAddress(1)));
+		clientSender.send(new DataMessage(100 * 1024));
+		assertThat(((DataMessage) m_server.waitForMessage()).isIntact(100 * 1024), is(true));
+
+		clientSender.send(new DataMessage(1024 * 1024));
+		try {
+			m_server.waitForMessage();
+			fail("Should throw CommunicationException");
+		} catch (CommunicationException e) {
+			assertThat(m_server.getNumberOfConnections(), is(0));
+		}
+	}
+
+	@Test
+	public void testAddressedSend() throws Exception {
+		ClientReceiver first = connect(new TestAddress(1));
+		ClientReceiver second = connect(new TestAddress(2));
+		ClientSender.connect(second).send(new DataMessage(1));
+		m_server.waitForMessage();
+		assertThat(m_server.getNumberOfConnections(), is(2));
+
+		m_server.send(new TestAddress(2), new DataMessage(2));
+		m_server.send(new DataMessage(3));
+		assertThat(((DataMessage) second.waitForMessage()).isIntact(2), is(true));
+		assertThat(((DataMessage) second.waitForMessage()).isIntact(3), is(true));
+		assertThat(((DataMessage) first.waitForMessage()).isIntact(3), is(true));
+	}
+
+	@Test
+	public void testAddressIsSet() throws Exception {
+		TestAddress address = new TestAddress(1);
+		ClientSender.connect(connect(address)).send(new AddressedMessage());
+		AddressedMessage received = (AddressedMessage) m_server.waitForMessage();
+		assertThat(received.m_address, is((Address) address));
+	}
+
+	@Test(expected = CommunicationException.class)
+	public void testConnectionTypeIsChecked() throws Exception {
+		ClientReceiver clientReceiver = ClientReceiver.connect(new Connector("127.0.0.1", m_server.getPort(),
+						ConnectionType.WORKER), new TestAddress(1));
+		clientReceiver.waitForMessage();
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		m_server.shutdown();
+		assertThat(m_server.waitForMessage() == null, is(true));
+	}
+
+	private ClientReceiver connect(Address address) throws CommunicationException {
+		return ClientReceiver.connect(new Connector("127.0.0.1", m_server.getPort(), ConnectionType.AGENT), address);
+	}
+
+	private static class TestAddress implements Address {
+		private static final long serialVersionUID = 1L;
+
+		private final int m_id;
+
+		TestAddress(int id) {
+			m_id = id;
+		}
+
+		public boolean includes(Address address) {
+			return equals(address);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof TestAddress && ((TestAddress) obj).m_id == m_id;
+		}
+
+		@Override
+		public int hashCode() {
+			return m_id;
+		}
+	}
+
+	private static class AddressedMessage implements AddressAwareMessage {
+		private static final long serialVersionUID = 1L;
+
+		private transient Address m_address;
+
+		public void setAddress(Address address) throws CommunicationException {
+			m_address = address;
+		}
+	}
+
+	private static class DataMessage implements Message {
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] m_data;
+
+		DataMessage(int size) {
+			m_data = new byte[size];
+			for (int i = 0; i < size; i++) {
+				m_data[i] = (byte) i;
+			}
+		}
+
+		boolean isIntact(int size) {
+			return Arrays.equals(m_data, new DataMessage(size).m_data);
+		}
+	}
+}
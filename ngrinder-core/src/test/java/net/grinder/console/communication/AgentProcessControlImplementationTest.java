@@ -0,0 +1,162 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.console.communication;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import net.grinder.common.processidentity.AgentIdentity;
+import net.grinder.communication.Address;
+import net.grinder.communication.AddressAwareMessage;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.MessageDispatchRegistry;
+import net.grinder.engine.communication.ReportRequestGrinderMessage;
+import net.grinder.engine.controller.AgentControllerIdentityImplementation;
+import net.grinder.message.console.AgentControllerHeartbeatEncoder;
+import net.grinder.message.console.AgentControllerHeartbeatMessage;
+import net.grinder.message.console.AgentControllerProcessReportMessage;
+import net.grinder.message.console.AgentControllerState;
+import net.grinder.message.console.ClockSyncReportMessage;
+import net.grinder.messages.console.AgentAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.ngrinder.monitor.controller.model.SystemDataModel;
+
+public class AgentProcessControlImplementationTest {
+
+	private ConsoleCommunication consoleCommunication;
+
+	private AgentProcessControlImplementation agentProcessControl;
+
+	private TimerTask purgeTask;
+
+	private AgentIdentity agentIdentity = new AgentControllerIdentityImplementation("agent", "127.0.0.1");
+
+	private AgentControllerHeartbeatEncoder encoder = new AgentControllerHeartbeatEncoder();
+
+	@Before
+	public void before() {
+		Timer timer = mock(Timer.class);
+		consoleCommunication = mock(ConsoleCommunication.class);
+		when(consoleCommunication.getMessageDispatchRegistry()).thenReturn(mock(MessageDispatchRegistry.class));
+		agentProcessControl = new AgentProcessControlImplementation(timer, consoleCommunication);
+		ArgumentCaptor<TimerTask> captor = ArgumentCaptor.forClass(TimerTask.class);
+		verify(timer).schedule(captor.capture(), eq(0L), eq(2000L));
+		purgeTask = captor.getValue();
+	}
+
+	private SystemDataModel createSystemDataModel(long freeMemory) {
+		SystemDataModel model = new SystemDataModel();
+		model.setKey("agent_key");
+		model.setIp("127.0.0.1");
+		model.setPort(13243);
+		model.setSystem("LINUX");
+		model.setCollectTime(20121010101010L);
+		model.setTotalMemory(1024 * 1024);
+		model.setFreeMemory(freeMemory);
+		model.setCpuUsedPercentage(10);
+		model.setCpuCount(4);
+		return model;
+	}
+
+	private void send(AgentControllerState state, SystemDataModel model) throws CommunicationException {
+		AddressAwareMessage message = encoder.encode(state, model, 0);
+		message.setAddress(new AgentAddress(agentIdentity));
+		if (message instanceof AgentControllerProcessReportMessage) {
+			agentProcessControl.addAgentStatusReport((AgentControllerProcessReportMessage) message);
+		} else {
+			agentProcessControl.addAgentHeartbeat((AgentControllerHeartbeatMessage) message);
+		}
+	}
+
+	@Test
+	public void testHeartbeatKeepsAllFields() throws CommunicationException {
+		send(AgentControllerState.READY, createSystemDataModel(100));
+		send(AgentControllerState.BUSY, createSystemDataModel(50));
+
+		assertThat(agentProcessControl.getAgentControllerState(agentIdentity), is(AgentControllerState.BUSY));
+		SystemDataModel model = agentProcessControl.getSystemDataModel(agentIdentity);
+		assertThat(model.getFreeMemory(), is(50L));
+		assertThat(model.getKey(), is("agent_key"));
+		assertThat(model.getIp(), is("127.0.0.1"));
+		assertThat(model.getPort(), is(13243));
+		assertThat(model.getCpuCount(), is(4));
+		verify(consoleCommunication, never()).sendToAddressedAgents(any(Address.class),
+						isA(ReportRequestGrinderMessage.class));
+	}
+
+	@Test
+	public void testHeartbeatAfterPurgeRequestsFullReport() throws CommunicationException {
+		send(AgentControllerState.READY, createSystemDataModel(100));
+		purgeTask.run();
+		purgeTask.run();
+		assertThat(agentProcessControl.getAllAgents().isEmpty(), is(true));
+
+		// Heartbeat has no base to be applied on.
+		send(AgentControllerState.BUSY, createSystemDataModel(50));
+		assertThat(agentProcessControl.getAllAgents().isEmpty(), is(true));
+		verify(consoleCommunication, times(1)).sendToAddressedAgents(any(Address.class),
+						isA(ReportRequestGrinderMessage.class));
+
+		// Agent resets the encoder on the request.
+		encoder.reset();
+		send(AgentControllerState.BUSY, createSystemDataModel(50));
+		assertThat(agentProcessControl.getAgentControllerState(agentIdentity), is(AgentControllerState.BUSY));
+		assertThat(agentProcessControl.getSystemDataModel(agentIdentity).getKey(), is("agent_key"));
+	}
+
+	@Test
+	public void testHeartbeatOnUnknownAgentIsDropped() throws CommunicationException {
+		// Status is queried before any report arrives.
+		assertThat(agentProcessControl.getSystemDataModel(agentIdentity), nullValue());
+		encoder.encode(AgentControllerState.READY, createSystemDataModel(100), 0);
+		send(AgentControllerState.BUSY, createSystemDataModel(50));
+		assertThat(agentProcessControl.getAgentControllerState(agentIdentity), is(AgentControllerState.UNKNOWN));
+		verify(consoleCommunication).sendToAddressedAgents(any(Address.class), isA(ReportRequestGrinderMessage.class));
+	}
+
+	@Test
+	public void testCorrectedSystemDataIsKeptUntilNextReport() throws CommunicationException {
+		send(AgentControllerState.READY, createSystemDataModel(100));
+		ClockSyncReportMessage clockSync = new ClockSyncReportMessage(0, 5000, 5000);
+		clockSync.setAddress(new AgentAddress(agentIdentity));
+		agentProcessControl.addClockSyncReport(clockSync, 0);
+
+		SystemDataModel model = agentProcessControl.getSystemDataModel(agentIdentity);
+		assertThat(model.getCollectTime(), is(20121010101005L));
+		assertThat(agentProcessControl.getSystemDataModel(agentIdentity), sameInstance(model));
+
+		send(AgentControllerState.BUSY, createSystemDataModel(50));
+		SystemDataModel updated = agentProcessControl.getSystemDataModel(agentIdentity);
+		assertThat(updated, not(sameInstance(model)));
+		assertThat(updated.getFreeMemory(), is(50L));
+		assertThat(updated.getCollectTime(), is(20121010101005L));
+	}
+}
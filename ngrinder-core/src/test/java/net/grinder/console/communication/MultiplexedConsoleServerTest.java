@@ -0,0 +1,127 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.console.communication;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import net.grinder.communication.Acceptor;
+import net.grinder.communication.Address;
+import net.grinder.communication.ClientReceiver;
+import net.grinder.communication.ClientSender;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.ConnectionType;
+import net.grinder.communication.Connector;
+import net.grinder.communication.FanOutServerSender;
+import net.grinder.communication.Message;
+import net.grinder.communication.RoutedAddress;
+import net.grinder.communication.ServerReceiver;
+import net.grinder.util.StandardTimeAuthority;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultiplexedConsoleServerTest {
+
+	private static final int ROUTE = 1;
+
+	private Acceptor m_acceptor;
+
+	private ServerReceiver m_receiver;
+
+	private FanOutServerSender m_sender;
+
+	private MultiplexedConsoleServer m_server;
+
+	@Before
+	public void before() throws CommunicationException {
+		m_acceptor = new Acceptor("127.0.0.1", 0, 1, new StandardTimeAuthority());
+		m_receiver = new ServerReceiver();
+		m_receiver.receiveFrom(m_acceptor, new ConnectionType[] { ConnectionType.AGENT }, 2, 10, 30000);
+		m_sender = new FanOutServerSender(m_acceptor, ConnectionType.AGENT, 1);
+		m_server = new MultiplexedConsoleServer("127.0.0.1", 0);
+		m_server.start();
+		m_server.register(ROUTE, m_acceptor.getPort());
+	}
+
+	@After
+	public void after() throws CommunicationException {
+		m_server.shutdown();
+		m_sender.shutdown();
+		m_receiver.shutdown();
+		m_acceptor.shutdown();
+	}
+
+	@Test
+	public void testRelayInBothDirections() throws Exception {
+		Connector connector = new Connector("127.0.0.1", m_server.getPort(), ConnectionType.AGENT);
+		ClientReceiver clientReceiver = ClientReceiver.connect(connector, new RoutedAddress(ROUTE, new TestAddress()));
+		ClientSender clientSender = ClientSender.connect(clientReceiver);
+
+		// Bigger than the relay buffer.
+		clientSender.send(new DataMessage(1024 * 1024));
+		DataMessage received = (DataMessage) m_receiver.waitForMessage();
+		assertThat(received.isIntact(1024 * 1024), is(true));
+
+		m_sender.send(new DataMessage(100));
+		assertThat(((DataMessage) clientReceiver.waitForMessage()).isIntact(100), is(true));
+		clientSender.shutdown();
+	}
+
+	@Test(expected = CommunicationException.class)
+	public void testUnknownRouteIsRejected() throws Exception {
+		m_server.unregister(ROUTE);
+		Connector connector = new Connector("127.0.0.1", m_server.getPort(), ConnectionType.AGENT);
+		ClientReceiver clientReceiver = ClientReceiver.connect(connector, new RoutedAddress(ROUTE, new TestAddress()));
+		clientReceiver.waitForMessage();
+	}
+
+	private static class TestAddress implements Address {
+		private static final long serialVersionUID = 1L;
+
+		public boolean includes(Address address) {
+			return equals(address);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof TestAddress;
+		}
+
+		@Override
+		public int hashCode() {
+			return 1;
+		}
+	}
+
+	private static class DataMessage implements Message {
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] m_data;
+
+		DataMessage(int size) {
+			m_data = new byte[size];
+			for (int i = 0; i < size; i++) {
+				m_data[i] = (byte) i;
+			}
+		}
+
+		boolean isIntact(int size) {
+			return Arrays.equals(m_data, new DataMessage(size).m_data);
+		}
+	}
+}
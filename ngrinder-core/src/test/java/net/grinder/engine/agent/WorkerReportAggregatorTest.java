@@ -0,0 +1,193 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.grinder.engine.agent;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.grinder.common.processidentity.ProcessReport;
+import net.grinder.common.processidentity.WorkerIdentity;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.Message;
+import net.grinder.communication.Sender;
+import net.grinder.message.console.LateReportStatisticsMessage;
+import net.grinder.messages.console.RegisterTestsMessage;
+import net.grinder.messages.console.ReportStatisticsMessage;
+import net.grinder.messages.console.WorkerAddress;
+import net.grinder.messages.console.WorkerProcessReportMessage;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.TestStatisticsMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+public class WorkerReportAggregatorTest {
+
+	private final Map<WorkerAddress, List<Message>> m_forwarded = new HashMap<WorkerAddress, List<Message>>();
+
+	private WorkerReportAggregator m_aggregator;
+
+	private boolean m_consoleReachable = true;
+
+	private final StatisticsServices m_services = StatisticsServicesImplementation.getInstance();
+
+	private final net.grinder.common.Test m_test = new SimpleTest(1);
+
+	@Before
+	public void before() {
+		m_aggregator = new WorkerReportAggregator(null, LoggerFactory.getLogger(WorkerReportAggregatorTest.class)) {
+			@Override
+			Sender createUpstream(final WorkerAddress address) throws CommunicationException {
+				if (!m_consoleReachable) {
+					throw new CommunicationException("connection refused");
+				}
+				final List<Message> messages = new ArrayList<Message>();
+				m_forwarded.put(address, messages);
+				return new Sender() {
+					public void send(Message message) throws CommunicationException {
+						if (!m_consoleReachable) {
+							throw new CommunicationException("connection reset");
+						}
+						messages.add(message);
+					}
+
+					public void shutdown() {
+					}
+				};
+			}
+		};
+	}
+
+	@Test
+	public void testStatisticsAreMerged() throws Exception {
+		WorkerAddress first = report(ProcessReport.STATE_RUNNING);
+		WorkerAddress second = report(ProcessReport.STATE_RUNNING);
+		m_aggregator.send(new RegisterTestsMessage(Collections.singleton(m_test)));
+		m_aggregator.send(statistics(2));
+		// Workers report their state in every report interval. It should not flush the statistics.
+		report(ProcessReport.STATE_RUNNING);
+		m_aggregator.send(statistics(3));
+		m_aggregator.flush();
+
+		List<Message> messages = m_forwarded.get(first);
+		assertThat(messages.size(), is(3));
+		assertThat(messages.get(1), instanceOf(RegisterTestsMessage.class));
+		assertThat(getErrors((ReportStatisticsMessage) messages.get(2)), is(5L));
+		assertThat(m_forwarded.get(second).size(), is(1));
+
+		// Nothing is sent when nothing is received.
+		m_aggregator.flush();
+		assertThat(messages.size(), is(3));
+	}
+
+	@Test
+	public void testStatisticsArriveBeforeFinish() throws Exception {
+		WorkerAddress address = report(ProcessReport.STATE_RUNNING);
+		m_aggregator.send(statistics(1));
+		WorkerProcessReportMessage finished = new WorkerProcessReportMessage(ProcessReport.STATE_FINISHED, (short) 0,
+						(short) 1);
+		finished.setAddress(address);
+		m_aggregator.send(finished);
+
+		List<Message> messages = m_forwarded.get(address);
+		assertThat(messages.size(), is(3));
+		assertThat(messages.get(1), instanceOf(ReportStatisticsMessage.class));
+		assertThat(messages.get(2), is((Message) finished));
+	}
+
+	@Test
+	public void testStatisticsAreSpooledWhileConsoleIsLost() throws Exception {
+		WorkerAddress address = report(ProcessReport.STATE_RUNNING);
+		m_aggregator.send(statistics(1));
+		m_aggregator.flush();
+		assertThat(m_forwarded.get(address).size(), is(2));
+
+		m_consoleReachable = false;
+		m_aggregator.send(statistics(2));
+		m_aggregator.flush();
+		report(ProcessReport.STATE_RUNNING);
+		m_aggregator.send(statistics(3));
+		m_aggregator.flush();
+		assertThat(m_aggregator.getSpooledCount(), is(2));
+
+		m_consoleReachable = true;
+		WorkerAddress reconnected = report(ProcessReport.STATE_RUNNING);
+		m_aggregator.send(statistics(4));
+		m_aggregator.flush();
+		assertThat(m_aggregator.getSpooledCount(), is(0));
+		List<Message> messages = m_forwarded.get(reconnected);
+		assertThat(messages.size(), is(4));
+		LateReportStatisticsMessage late = (LateReportStatisticsMessage) messages.get(1);
+		assertThat(late.getStatisticsDelta().nonCompositeStatisticsTotals().getValue(getErrorIndex()), is(2L));
+		assertThat(late.getTransmitTime() >= late.getIntervalTime(), is(true));
+		assertThat(messages.get(2), instanceOf(LateReportStatisticsMessage.class));
+		assertThat(getErrors((ReportStatisticsMessage) messages.get(3)), is(4L));
+	}
+
+	private WorkerAddress report(short state) throws CommunicationException {
+		WorkerAddress address = new WorkerAddress(mock(WorkerIdentity.class));
+		WorkerProcessReportMessage message = new WorkerProcessReportMessage(state, (short) 1, (short) 1);
+		message.setAddress(address);
+		m_aggregator.send(message);
+		return address;
+	}
+
+	private ReportStatisticsMessage statistics(long errors) {
+		StatisticsSet statisticsSet = m_services.getStatisticsSetFactory().create();
+		statisticsSet.addValue(getErrorIndex(), errors);
+		TestStatisticsMap map = new TestStatisticsMap();
+		map.put(m_test, statisticsSet);
+		return new ReportStatisticsMessage(map);
+	}
+
+	private long getErrors(ReportStatisticsMessage message) {
+		return message.getStatisticsDelta().nonCompositeStatisticsTotals().getValue(getErrorIndex());
+	}
+
+	private StatisticsIndexMap.LongIndex getErrorIndex() {
+		return m_services.getStatisticsIndexMap().getLongIndex("errors");
+	}
+
+	private static class SimpleTest implements net.grinder.common.Test {
+		private final int m_number;
+
+		SimpleTest(int number) {
+			m_number = number;
+		}
+
+		public int getNumber() {
+			return m_number;
+		}
+
+		public String getDescription() {
+			return "test" + m_number;
+		}
+
+		public int compareTo(net.grinder.common.Test o) {
+			return m_number - o.getNumber();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.message.console;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import net.grinder.communication.Message;
+
+import org.junit.Test;
+import org.ngrinder.monitor.controller.model.SystemDataModel;
+
+public class AgentControllerHeartbeatEncoderTest {
+
+	private SystemDataModel createSystemDataModel(long freeMemory, float cpu) {
+		SystemDataModel model = new SystemDataModel();
+		model.setSystem("LINUX");
+		model.setCollectTime(20121010101010L);
+		model.setTotalMemory(1024 * 1024);
+		model.setFreeMemory(freeMemory);
+		model.setCpuUsedPercentage(cpu);
+		return model;
+	}
+
+	private byte[] serialize(Message message) throws IOException {
+		ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+		ObjectOutputStream outputStream = new ObjectOutputStream(byteOutputStream);
+		outputStream.writeObject(message);
+		outputStream.close();
+		return byteOutputStream.toByteArray();
+	}
+
+	private Object deserialize(byte[] bytes) throws Exception {
+		return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+	}
+
+	@Test
+	public void testFirstMessageIsFullReport() {
+		AgentControllerHeartbeatEncoder encoder = new AgentControllerHeartbeatEncoder();
+		assertThat(encoder.encode(AgentControllerState.READY, createSystemDataModel(100, 10), 0),
+						instanceOf(AgentControllerProcessReportMessage.class));
+		assertThat(encoder.encode(AgentControllerState.READY, createSystemDataModel(100, 10), 0),
+						instanceOf(AgentControllerHeartbeatMessage.class));
+	}
+
+	@Test
+	public void testKeyFrame() {
+		AgentControllerHeartbeatEncoder encoder = new AgentControllerHeartbeatEncoder(2);
+		encoder.encode(AgentControllerState.READY, createSystemDataModel(100, 10), 0);
+		encoder.encode(AgentControllerState.READY, createSystemDataModel(100, 10), 0);
+		encoder.encode(AgentControllerState.READY, createSystemDataModel(100, 10), 0);
+		assertThat(encoder.encode(AgentControllerState.READY, createSystemDataModel(100, 10), 0),
+						instanceOf(AgentControllerProcessReportMessage.class));
+		encoder.reset();
+		assertThat(encoder.encode(AgentControllerState.READY, createSystemDataModel(100, 10), 0),
+						instanceOf(AgentControllerProcessReportMessage.class));
+	}
+
+	@Test
+	public void testHeartbeatRoundTrip() throws Exception {
+		AgentControllerHeartbeatEncoder encoder = new AgentControllerHeartbeatEncoder();
+		SystemDataModel base = createSystemDataModel(100, 10);
+		Message full = encoder.encode(AgentControllerState.READY, base, 0);
+
+		Message unchanged = encoder.encode(AgentControllerState.READY, createSystemDataModel(100, 10), 0);
+		AgentControllerHeartbeatMessage heartbeat = (AgentControllerHeartbeatMessage) deserialize(serialize(unchanged));
+		assertThat(heartbeat.isEmpty(), is(true));
+		assertThat(heartbeat.getSystemDataModel(base), sameInstance(base));
+		assertThat(serialize(unchanged).length, lessThan(serialize(full).length / 4));
+
+		Message changed = encoder.encode(AgentControllerState.BUSY, createSystemDataModel(50, 20.5f), 12000);
+		heartbeat = (AgentControllerHeartbeatMessage) deserialize(serialize(changed));
+		assertThat(heartbeat.isEmpty(), is(false));
+		assertThat(heartbeat.getState(AgentControllerState.READY), is(AgentControllerState.BUSY));
+		assertThat(heartbeat.getConnectingPort(0), is(12000));
+		SystemDataModel merged = heartbeat.getSystemDataModel(base);
+		assertThat(merged.getFreeMemory(), is(50L));
+		assertThat(merged.getCpuUsedPercentage(), is(20.5f));
+		assertThat(merged.getTotalMemory(), is(base.getTotalMemory()));
+		assertThat(merged.getSystem(), is("LINUX"));
+	}
+}
@@ -0,0 +1,82 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.ngrinder.common.metrics;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class MetricRegistryTest {
+
+	@Test
+	public void testTimer() {
+		MetricRegistry registry = new MetricRegistry();
+		Timer timer = registry.timer("test_timer", "test timer");
+		assertThat(registry.timer("test_timer", "test timer"), sameInstance(timer));
+		timer.record(1000000);
+		timer.record(3000000);
+		assertThat(timer.getCount(), is(2L));
+		assertThat(timer.getTotalTime(), is(4L));
+		assertThat(timer.getMeanTime(), is(2.0));
+		assertThat(timer.getMaxTime(), is(3.0));
+	}
+
+	@Test
+	public void testPrometheusFormat() throws Exception {
+		MetricRegistry registry = new MetricRegistry();
+		registry.timer("test_svn", "svn operations", "operation", "get").record(2000000);
+		registry.timer("test_svn", "svn operations", "operation", "save").record(500000000);
+		registry.timer("test_monitor", "monitor", "target", "a\"b").record(1000);
+		StringWriter writer = new StringWriter();
+		registry.writePrometheus(writer);
+		String text = writer.toString();
+		assertThat(text, containsString("# HELP test_svn svn operations\n# TYPE test_svn summary\n"
+						+ "test_svn_count{operation=\"get\"} 1\n" + "test_svn_sum{operation=\"get\"} 0.002\n"
+						+ "test_svn_count{operation=\"save\"} 1\n" + "test_svn_sum{operation=\"save\"} 0.5\n"));
+		assertThat(text, containsString("# TYPE test_svn_max gauge\n"));
+		assertThat(text, containsString("test_monitor_count{target=\"a\\\"b\"} 1\n"));
+		// The family header is written once.
+		assertThat(text.indexOf("# TYPE test_svn summary"), is(text.lastIndexOf("# TYPE test_svn summary")));
+	}
+
+	@Test
+	public void testCounter() throws Exception {
+		MetricRegistry registry = new MetricRegistry();
+		Counter counter = registry.counter("test_dropped_total", "dropped", "plugin", "p1");
+		assertThat(registry.counter("test_dropped_total", "dropped", "plugin", "p1"), sameInstance(counter));
+		counter.increment();
+		counter.increment();
+		StringWriter writer = new StringWriter();
+		registry.writePrometheus(writer);
+		assertThat(writer.toString(), containsString("# TYPE test_dropped_total counter\n"
+						+ "test_dropped_total{plugin=\"p1\"} 2\n"));
+	}
+
+	@Test
+	public void testMBeanIsRegistered() throws Exception {
+		MetricRegistry registry = new MetricRegistry();
+		registry.timer("test_jmx", "jmx", "target", "127.0.0.1").record(1000000);
+		ObjectName name = new ObjectName(MetricRegistry.JMX_DOMAIN + ":type=Metric,name=test_jmx,target="
+						+ ObjectName.quote("127.0.0.1"));
+		assertThat((Long) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Count"), is(1L));
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ngrinder.common.util;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class ClockOffsetEstimatorTest {
+
+	@Test
+	public void testSymmetricDelay() {
+		ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+		assertThat(estimator.isEstimated(), is(false));
+		// Remote is 5000ms ahead and each way takes 10ms.
+		estimator.addSample(1000, 6010, 6012, 1022);
+		assertThat(estimator.isEstimated(), is(true));
+		assertThat(estimator.getOffset(), is(5000L));
+		assertThat(estimator.getRoundTripDelay(), is(20L));
+		assertThat(estimator.toLocalTime(7000), is(2000L));
+	}
+
+	@Test
+	public void testSmallestDelayIsTrusted() {
+		ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+		estimator.addSample(1000, 950, 1020);
+		// Queued for 400ms on the way back. The offset of this sample is wrong by 200ms.
+		estimator.addSample(2000, 1950, 2420);
+		assertThat(estimator.getOffset(), is(-60L));
+		assertThat(estimator.getRoundTripDelay(), is(20L));
+	}
+
+	@Test
+	public void testSmoothing() {
+		ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+		estimator.addSample(1000, 1010, 1020);
+		for (int i = 1; i <= 8; i++) {
+			// The remote clock drifts 100ms more.
+			estimator.addSample(1000 + i * 1000, 1110 + i * 1000, 1020 + i * 1000);
+		}
+		assertThat(estimator.getOffset() > 50, is(true));
+		assertThat(estimator.getOffset() < 100, is(true));
+	}
+
+	@Test
+	public void testSteppedClockIsIgnored() {
+		ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+		estimator.addSample(1000, 1010, 900);
+		assertThat(estimator.isEstimated(), is(false));
+	}
+}
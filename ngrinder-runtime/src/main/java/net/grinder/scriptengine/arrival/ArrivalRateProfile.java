@@ -0,0 +1,157 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.arrival;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Target transactions per second over the test time.
+ *
+ * The profile is written as comma separated <code>second:tps</code> points such as
+ * <code>0:10,60:100,300:100</code>. The rate is linearly interpolated between two points and the
+ * last rate is kept after the last point. When the first point is not at 0 second, the rate
+ * grows from zero up to it. A single number such as <code>50</code> means the constant rate.
+ *
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class ArrivalRateProfile {
+
+	private final long[] m_times;
+
+	private final double[] m_rates;
+
+	private ArrivalRateProfile(long[] times, double[] rates) {
+		m_times = times;
+		m_rates = rates;
+	}
+
+	/**
+	 * Parse the given profile text.
+	 *
+	 * @param profile
+	 *            profile text
+	 * @return parsed profile
+	 * @throws IllegalArgumentException
+	 *             if the profile is malformed
+	 */
+	public static ArrivalRateProfile parse(String profile) {
+		if (profile == null || profile.trim().length() == 0) {
+			throw new IllegalArgumentException("arrival rate profile should be provided");
+		}
+		List<Long> times = new ArrayList<Long>();
+		List<Double> rates = new ArrayList<Double>();
+		for (String each : profile.split(",")) {
+			String point = each.trim();
+			if (point.length() == 0) {
+				continue;
+			}
+			int index = point.indexOf(':');
+			long time;
+			double rate;
+			try {
+				time = index < 0 ? 0 : Long.parseLong(point.substring(0, index).trim());
+				rate = Double.parseDouble(point.substring(index + 1).trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("invalid arrival rate point " + point, e);
+			}
+			if (time < 0 || rate < 0 || Double.isNaN(rate) || Double.isInfinite(rate)) {
+				throw new IllegalArgumentException("arrival rate point should not be negative : " + point);
+			}
+			if (!times.isEmpty() && times.get(times.size() - 1) >= time) {
+				throw new IllegalArgumentException("arrival rate points should be in the ascending time order : "
+								+ point);
+			}
+			times.add(time);
+			rates.add(rate);
+		}
+		if (times.isEmpty()) {
+			throw new IllegalArgumentException("arrival rate profile should be provided");
+		}
+		long[] timeArray = new long[times.size()];
+		double[] rateArray = new double[rates.size()];
+		for (int i = 0; i < timeArray.length; i++) {
+			timeArray[i] = times.get(i) * 1000;
+			rateArray[i] = rates.get(i);
+		}
+		return new ArrivalRateProfile(timeArray, rateArray);
+	}
+
+	/**
+	 * Get the target rate at the given time.
+	 *
+	 * @param elapsedMillis
+	 *            elapsed time since the test start in millisecond
+	 * @return transactions per second
+	 */
+	public double getRate(long elapsedMillis) {
+		if (elapsedMillis <= m_times[0]) {
+			return m_times[0] == 0 ? m_rates[0] : m_rates[0] * elapsedMillis / m_times[0];
+		}
+		for (int i = 1; i < m_times.length; i++) {
+			if (elapsedMillis < m_times[i]) {
+				double ratio = ((double) (elapsedMillis - m_times[i - 1])) / (m_times[i] - m_times[i - 1]);
+				return m_rates[i - 1] + (m_rates[i] - m_rates[i - 1]) * ratio;
+			}
+		}
+		return m_rates[m_rates.length - 1];
+	}
+
+	/**
+	 * Get the profile whose rates are multiplied by the given factor. This is used to split the
+	 * rate among agents and processes.
+	 *
+	 * @param factor
+	 *            factor to be multiplied
+	 * @return scaled profile
+	 */
+	public ArrivalRateProfile scale(double factor) {
+		double[] rates = new double[m_rates.length];
+		for (int i = 0; i < rates.length; i++) {
+			rates[i] = m_rates[i] * factor;
+		}
+		return new ArrivalRateProfile(m_times, rates);
+	}
+
+	/**
+	 * Get the maximum rate in this profile.
+	 *
+	 * @return maximum transactions per second
+	 */
+	public double getMaxRate() {
+		double max = 0;
+		for (double each : m_rates) {
+			max = Math.max(max, each);
+		}
+		return max;
+	}
+
+	/**
+	 * Return the profile text which can be parsed by {@link #parse(String)} again.
+	 *
+	 * @return profile text
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < m_times.length; i++) {
+			if (i != 0) {
+				builder.append(",");
+			}
+			builder.append(m_times[i] / 1000).append(":").append(m_rates[i]);
+		}
+		return builder.toString();
+	}
+}
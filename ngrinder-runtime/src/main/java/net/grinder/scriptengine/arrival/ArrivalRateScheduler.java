@@ -0,0 +1,150 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.arrival;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Process wide timer which hands out iteration start slots following an {@link ArrivalRateProfile}.
+ *
+ * Worker threads act as the bounded pool of executors. Each thread takes the next free slot and
+ * waits until its time comes. When every thread is still busy with the previous iteration, slots
+ * pass by without being taken. Those slots are skipped rather than fired in a burst later, and
+ * counted as missed starts so that the offered load which could not be generated is visible.
+ *
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class ArrivalRateScheduler {
+
+	/** The default lateness after which a slot is regarded as missed. */
+	public static final long DEFAULT_MAX_LATENESS_MILLIS = 100;
+
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final ArrivalRateProfile m_profile;
+
+	private final long m_maxLatenessNanos;
+
+	private final long m_startTime;
+
+	private final AtomicLong m_nextSlot;
+
+	private final AtomicLong m_started = new AtomicLong();
+
+	private final AtomicLong m_missed = new AtomicLong();
+
+	private volatile boolean m_shutdown = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param profile
+	 *            profile for this process
+	 * @param maxLatenessMillis
+	 *            lateness in millisecond after which a slot is regarded as missed
+	 */
+	public ArrivalRateScheduler(ArrivalRateProfile profile, long maxLatenessMillis) {
+		m_profile = profile;
+		m_maxLatenessNanos = TimeUnit.MILLISECONDS.toNanos(maxLatenessMillis);
+		m_startTime = System.nanoTime();
+		m_nextSlot = new AtomicLong(m_startTime);
+	}
+
+	/**
+	 * Block the current thread until the next start slot.
+	 *
+	 * @return true if the slot is acquired. false if the scheduler is shut down or the thread is
+	 *         interrupted.
+	 */
+	public boolean awaitSlot() {
+		while (!m_shutdown && !Thread.currentThread().isInterrupted()) {
+			long now = System.nanoTime();
+			double rate = m_profile.getRate(TimeUnit.NANOSECONDS.toMillis(now - m_startTime));
+			long slot = m_nextSlot.get();
+			if (rate <= 0) {
+				// Nothing to start now. Keep the slot near the current time so that no missed start
+				// is counted for this period once the rate goes up again.
+				long idleUntil = Math.max(slot, now) + IDLE_NANOS;
+				m_nextSlot.compareAndSet(slot, idleUntil);
+				park(idleUntil);
+				continue;
+			}
+			long interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+			long lateness = now - slot;
+			if (lateness > m_maxLatenessNanos) {
+				long missed = (lateness - m_maxLatenessNanos) / interval + 1;
+				if (m_nextSlot.compareAndSet(slot, slot + missed * interval)) {
+					m_missed.addAndGet(missed);
+				}
+				continue;
+			}
+			if (m_nextSlot.compareAndSet(slot, slot + interval)) {
+				park(slot);
+				if (m_shutdown || Thread.currentThread().isInterrupted()) {
+					return false;
+				}
+				m_started.incrementAndGet();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void park(long until) {
+		long remaining;
+		while (!m_shutdown && (remaining = until - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(this, Math.min(remaining, IDLE_NANOS));
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Release every waiting thread and make further {@link #awaitSlot()} calls return false.
+	 */
+	public void shutdown() {
+		m_shutdown = true;
+	}
+
+	/**
+	 * Get the count of iterations started on schedule.
+	 *
+	 * @return started count
+	 */
+	public long getStartedCount() {
+		return m_started.get();
+	}
+
+	/**
+	 * Get the count of slots skipped because no thread was available on time.
+	 *
+	 * @return missed start count
+	 */
+	public long getMissedCount() {
+		return m_missed.get();
+	}
+
+	/**
+	 * Get the profile which this scheduler follows.
+	 *
+	 * @return profile for this process
+	 */
+	public ArrivalRateProfile getProfile() {
+		return m_profile;
+	}
+}
@@ -0,0 +1,247 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.arrival;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.engine.common.EngineException;
+import net.grinder.engine.common.ScriptLocation;
+import net.grinder.script.Test;
+import net.grinder.scriptengine.DCRContext;
+import net.grinder.scriptengine.Instrumenter;
+import net.grinder.scriptengine.ScriptEngineService;
+import net.grinder.scriptengine.ScriptExecutionException;
+import net.grinder.scriptengine.async.AsyncTestRecorder;
+import net.grinder.scriptengine.jython.JythonScriptEngineService;
+
+import org.slf4j.Logger;
+
+/**
+ * Script engine service which runs the jython script in the open (arrival rate) model.
+ *
+ * This service is listed ahead of the grinder built-in services and becomes active only when
+ * {@link #PROP_ARRIVAL_RATE_PROFILE} is set. Then each worker thread waits for the start slot
+ * given by the process wide {@link ArrivalRateScheduler} before running the script once, so that
+ * the offered load follows the profile regardless of the response time of the target.
+ *
+ * The starts missed because all threads were busy are recorded as the errors of the test
+ * {@value #MISSED_START_TEST_NUMBER}, so that they are shown in the console and the report.
+ *
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class ArrivalRateScriptEngineService implements ScriptEngineService {
+
+	/** The target tps profile of this agent. See {@link ArrivalRateProfile}. */
+	public static final String PROP_ARRIVAL_RATE_PROFILE = "ngrinder.arrivalrate.profile";
+
+	/** The lateness in millisecond after which the start slot is counted as missed. */
+	public static final String PROP_ARRIVAL_RATE_MAX_LATENESS = "ngrinder.arrivalrate.maxlateness";
+
+	/** The number of the test whose errors are the missed starts. */
+	public static final int MISSED_START_TEST_NUMBER = 99999;
+
+	private static final String MISSED_START_TEST_DESCRIPTION = "Missed arrival rate starts";
+
+	private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+	private final GrinderProperties m_properties;
+
+	private final Logger m_logger;
+
+	private final ScriptEngineService m_delegate;
+
+	/**
+	 * Constructor used when DCR instrumentation is available.
+	 *
+	 * @param properties
+	 *            properties
+	 * @param logger
+	 *            worker process logger
+	 * @param dcrContext
+	 *            DCR context
+	 * @param scriptLocation
+	 *            script location
+	 */
+	public ArrivalRateScriptEngineService(GrinderProperties properties, Logger logger, DCRContext dcrContext,
+					ScriptLocation scriptLocation) {
+		m_properties = properties;
+		m_logger = logger;
+		m_delegate = new JythonScriptEngineService(properties, dcrContext, scriptLocation);
+	}
+
+	/**
+	 * Constructor used when DCR instrumentation is not available.
+	 *
+	 * @param properties
+	 *            properties
+	 * @param logger
+	 *            worker process logger
+	 * @param scriptLocation
+	 *            script location
+	 */
+	public ArrivalRateScriptEngineService(GrinderProperties properties, Logger logger, ScriptLocation scriptLocation) {
+		this(properties, logger, null, scriptLocation);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ScriptEngine createScriptEngine(ScriptLocation script) throws EngineException {
+		String profile = m_properties.getProperty(PROP_ARRIVAL_RATE_PROFILE);
+		if (profile == null || profile.trim().length() == 0) {
+			return null;
+		}
+		ScriptEngine delegate = m_delegate.createScriptEngine(script);
+		if (delegate == null) {
+			return null;
+		}
+		ArrivalRateProfile processProfile;
+		try {
+			int processes = Math.max(1, m_properties.getInt("grinder.processes", 1));
+			processProfile = ArrivalRateProfile.parse(profile).scale(1d / processes);
+		} catch (IllegalArgumentException e) {
+			throw new EngineException("Invalid " + PROP_ARRIVAL_RATE_PROFILE + " : " + profile, e);
+		}
+		long maxLateness = m_properties.getLong(PROP_ARRIVAL_RATE_MAX_LATENESS,
+						ArrivalRateScheduler.DEFAULT_MAX_LATENESS_MILLIS);
+		m_logger.info("Run in the arrival rate mode with the process profile {}", processProfile);
+		AsyncTestRecorder recorder = new AsyncTestRecorder(m_logger);
+		Test missedStartTest = null;
+		if (recorder.isAvailable()) {
+			missedStartTest = new Test(MISSED_START_TEST_NUMBER, MISSED_START_TEST_DESCRIPTION);
+		}
+		return new ArrivalRateScriptEngine(delegate, new ArrivalRateScheduler(processProfile, maxLateness),
+						recorder, missedStartTest);
+	}
+
+	/**
+	 * Return no instrumenter. The instrumenters are provided by the grinder built-in services.
+	 *
+	 * @return empty list
+	 */
+	@Override
+	public List<? extends Instrumenter> createInstrumenters() throws EngineException {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Script engine which paces the worker runnables of the delegated engine.
+	 */
+	private class ArrivalRateScriptEngine implements ScriptEngine {
+		private final ScriptEngine m_engine;
+		private final ArrivalRateScheduler m_scheduler;
+		private final AsyncTestRecorder m_recorder;
+		private final Test m_missedStartTest;
+		private final AtomicLong m_recordedMissed = new AtomicLong();
+		private volatile long m_lastReportTime = System.currentTimeMillis();
+		private long m_lastReportedMissed = 0;
+
+		public ArrivalRateScriptEngine(ScriptEngine engine, ArrivalRateScheduler scheduler,
+						AsyncTestRecorder recorder, Test missedStartTest) {
+			m_engine = engine;
+			m_scheduler = scheduler;
+			m_recorder = recorder;
+			m_missedStartTest = missedStartTest;
+		}
+
+		@Override
+		public WorkerRunnable createWorkerRunnable() throws EngineException {
+			return new ArrivalRateWorkerRunnable(m_engine.createWorkerRunnable());
+		}
+
+		@Override
+		public WorkerRunnable createWorkerRunnable(Object testRunner) throws EngineException {
+			return new ArrivalRateWorkerRunnable(m_engine.createWorkerRunnable(testRunner));
+		}
+
+		@Override
+		public void shutdown() throws EngineException {
+			m_scheduler.shutdown();
+			recordMissedStarts();
+			m_logger.info("Arrival rate mode is finished. {} iterations were started and {} starts were missed.",
+							m_scheduler.getStartedCount(), m_scheduler.getMissedCount());
+			m_engine.shutdown();
+		}
+
+		@Override
+		public String getDescription() {
+			return m_engine.getDescription() + " (arrival rate " + m_scheduler.getProfile() + ")";
+		}
+
+		/**
+		 * Record the missed starts as the errors of the missed start test. It's called by the
+		 * worker threads, and by the shutdown after they are finished.
+		 */
+		private void recordMissedStarts() {
+			long missed = m_scheduler.getMissedCount();
+			long recorded = m_recordedMissed.get();
+			if (missed > recorded && m_recordedMissed.compareAndSet(recorded, missed)) {
+				m_recorder.recordErrors(m_missedStartTest, missed - recorded);
+			}
+			m_recorder.flush();
+		}
+
+		private void reportMissedStarts() {
+			long now = System.currentTimeMillis();
+			if (now - m_lastReportTime < REPORT_INTERVAL) {
+				return;
+			}
+			synchronized (this) {
+				if (now - m_lastReportTime < REPORT_INTERVAL) {
+					return;
+				}
+				m_lastReportTime = now;
+				long missed = m_scheduler.getMissedCount();
+				if (missed != m_lastReportedMissed) {
+					m_logger.warn("{} starts were missed in the last {} sec because all threads were busy. "
+									+ "Increase the thread count to reach the target tps.", missed
+									- m_lastReportedMissed, TimeUnit.MILLISECONDS.toSeconds(REPORT_INTERVAL));
+					m_lastReportedMissed = missed;
+				}
+			}
+		}
+
+		/**
+		 * Worker runnable which waits for the start slot before each run.
+		 */
+		private class ArrivalRateWorkerRunnable implements WorkerRunnable {
+			private final WorkerRunnable m_runnable;
+
+			public ArrivalRateWorkerRunnable(WorkerRunnable runnable) {
+				m_runnable = runnable;
+			}
+
+			@Override
+			public void run() throws ScriptExecutionException {
+				boolean acquired = m_scheduler.awaitSlot();
+				recordMissedStarts();
+				reportMissedStarts();
+				if (acquired) {
+					m_runnable.run();
+				}
+			}
+
+			@Override
+			public void shutdown() throws ScriptExecutionException {
+				m_runnable.shutdown();
+			}
+		}
+	}
+}
@@ -0,0 +1,4 @@
+/**
+ * open model (arrival rate) script engine extension.
+ */
+package net.grinder.scriptengine.arrival;
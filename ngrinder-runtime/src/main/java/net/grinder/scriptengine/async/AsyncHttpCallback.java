@@ -0,0 +1,33 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.async;
+
+/**
+ * Callback which is invoked when an asynchronous HTTP exchange is finished.
+ * 
+ * A single method interface is used so that a jython function can be passed as it is.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public interface AsyncHttpCallback {
+	/**
+	 * Called when the response is arrived or the exchange is failed. In case of failure,
+	 * {@link AsyncHttpResponse#getException()} returns the cause.
+	 * 
+	 * @param response
+	 *            response
+	 */
+	public void onResponse(AsyncHttpResponse response);
+}
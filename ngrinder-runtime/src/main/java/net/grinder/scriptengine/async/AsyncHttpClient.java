@@ -0,0 +1,377 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.async;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+/**
+ * Non-blocking HTTP/1.1 client running on a single selector thread.
+ * 
+ * Each in-flight exchange only costs a socket and a few buffers, so that tens of thousands of
+ * mostly idle exchanges such as long polling can be kept by a single worker process. Connections
+ * are reused per host when the server allows keep-alive.
+ * 
+ * Callbacks are invoked in the selector thread. They should hand the response over to another
+ * thread rather than doing a blocking job.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class AsyncHttpClient {
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	private static final long SELECT_TIMEOUT = 100;
+
+	private final Logger m_logger;
+
+	private final long m_timeout;
+
+	private final Selector m_selector;
+
+	private final Thread m_selectorThread;
+
+	private final Queue<Exchange> m_newExchanges = new ConcurrentLinkedQueue<Exchange>();
+
+	// Below fields are accessed only in the selector thread.
+	private final Set<Exchange> m_activeExchanges = new HashSet<Exchange>();
+
+	private final Map<String, LinkedList<SocketChannel>> m_idleConnections = new HashMap<String,
+					LinkedList<SocketChannel>>();
+
+	private final ByteBuffer m_readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	private final AtomicInteger m_inFlight = new AtomicInteger();
+
+	private volatile boolean m_running = true;
+
+	/**
+	 * Constructor. The selector thread is started right away.
+	 * 
+	 * @param name
+	 *            name of the selector thread
+	 * @param timeout
+	 *            timeout of each exchange in millisecond
+	 * @param logger
+	 *            logger
+	 * @throws IOException
+	 *             if the selector can not be opened
+	 */
+	public AsyncHttpClient(String name, long timeout, Logger logger) throws IOException {
+		m_timeout = timeout;
+		m_logger = logger;
+		m_selector = Selector.open();
+		m_selectorThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, name);
+		m_selectorThread.setDaemon(true);
+		m_selectorThread.start();
+	}
+
+	/**
+	 * Send the request asynchronously.
+	 * 
+	 * @param request
+	 *            request
+	 * @param callback
+	 *            callback which is invoked in the selector thread when the exchange is finished
+	 */
+	public void execute(AsyncHttpRequest request, AsyncHttpCallback callback) {
+		Exchange exchange = new Exchange(request, callback);
+		m_inFlight.incrementAndGet();
+		if (!m_running) {
+			exchange.fail(new ClosedChannelException());
+			return;
+		}
+		m_newExchanges.add(exchange);
+		m_selector.wakeup();
+	}
+
+	/**
+	 * Stop the selector thread and close all connections. The exchanges in flight are failed.
+	 */
+	public void shutdown() {
+		m_running = false;
+		m_selector.wakeup();
+		try {
+			m_selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Get the count of exchanges in flight.
+	 * 
+	 * @return count of exchanges
+	 */
+	public int getActiveExchangeCount() {
+		return m_inFlight.get();
+	}
+
+	private void loop() {
+		long lastTimeoutCheck = System.currentTimeMillis();
+		try {
+			while (m_running) {
+				m_selector.select(SELECT_TIMEOUT);
+				Exchange exchange;
+				while ((exchange = m_newExchanges.poll()) != null) {
+					start(exchange, true);
+				}
+				Iterator<SelectionKey> iterator = m_selector.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					if (key.attachment() instanceof Exchange) {
+						handle(key, (Exchange) key.attachment());
+					} else if (key.isValid() && key.isReadable()) {
+						// Idle connection is readable only when it's closed by the server.
+						closeIdle(key);
+					}
+				}
+				long now = System.currentTimeMillis();
+				if (now - lastTimeoutCheck >= SELECT_TIMEOUT) {
+					lastTimeoutCheck = now;
+					checkTimeout();
+				}
+			}
+		} catch (IOException e) {
+			m_logger.error("Async http client is stopped by error {}", e.getMessage());
+		} finally {
+			closeAll();
+		}
+	}
+
+	private void start(Exchange exchange, boolean reuse) {
+		String address = exchange.m_request.getHost() + ":" + exchange.m_request.getPort();
+		try {
+			SocketChannel channel = reuse ? pollIdle(address) : null;
+			exchange.m_reused = channel != null;
+			if (channel == null) {
+				channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				if (channel.connect(new InetSocketAddress(exchange.m_request.getHost(), exchange.m_request
+								.getPort()))) {
+					channel.register(m_selector, SelectionKey.OP_WRITE, exchange);
+				} else {
+					channel.register(m_selector, SelectionKey.OP_CONNECT, exchange);
+				}
+			} else {
+				channel.keyFor(m_selector).interestOps(SelectionKey.OP_WRITE).attach(exchange);
+			}
+			exchange.m_channel = channel;
+			exchange.m_address = address;
+			m_activeExchanges.add(exchange);
+		} catch (Exception e) {
+			exchange.fail(e);
+		}
+	}
+
+	private void handle(SelectionKey key, Exchange exchange) {
+		SocketChannel channel = (SocketChannel) key.channel();
+		try {
+			if (key.isConnectable() && channel.finishConnect()) {
+				key.interestOps(SelectionKey.OP_WRITE);
+			}
+			if (key.isValid() && key.isWritable()) {
+				channel.write(exchange.m_requestBuffer);
+				if (!exchange.m_requestBuffer.hasRemaining()) {
+					key.interestOps(SelectionKey.OP_READ);
+				}
+			}
+			if (key.isValid() && key.isReadable()) {
+				m_readBuffer.clear();
+				int read = channel.read(m_readBuffer);
+				m_readBuffer.flip();
+				if (read < 0) {
+					if (exchange.m_parser.close()) {
+						complete(key, exchange, false);
+					} else {
+						throw new IOException("Connection is closed before the response is complete");
+					}
+				} else if (exchange.m_parser.feed(m_readBuffer)) {
+					complete(key, exchange, exchange.m_parser.isKeepAlive());
+				}
+			}
+		} catch (IOException e) {
+			m_activeExchanges.remove(exchange);
+			closeQuietly(channel);
+			if (exchange.m_reused && !exchange.m_parser.isStarted()) {
+				// The idle connection was closed by the server meanwhile. Try again on a new one.
+				exchange.reset();
+				start(exchange, false);
+			} else {
+				exchange.fail(e);
+			}
+		}
+	}
+
+	private void complete(SelectionKey key, Exchange exchange, boolean keepAlive) {
+		m_activeExchanges.remove(exchange);
+		if (keepAlive && m_running) {
+			key.attach(null);
+			key.interestOps(SelectionKey.OP_READ);
+			LinkedList<SocketChannel> idle = m_idleConnections.get(exchange.m_address);
+			if (idle == null) {
+				idle = new LinkedList<SocketChannel>();
+				m_idleConnections.put(exchange.m_address, idle);
+			}
+			idle.add((SocketChannel) key.channel());
+		} else {
+			closeQuietly(key.channel());
+		}
+		HttpResponseParser parser = exchange.m_parser;
+		exchange.callback(new AsyncHttpResponse(exchange.m_request, parser.getStatusCode(), parser.getHeaders(),
+						parser.getBody(), exchange.getElapsedTime()));
+	}
+
+	private SocketChannel pollIdle(String address) {
+		LinkedList<SocketChannel> idle = m_idleConnections.get(address);
+		while (idle != null && !idle.isEmpty()) {
+			SocketChannel channel = idle.removeLast();
+			SelectionKey key = channel.keyFor(m_selector);
+			if (channel.isOpen() && key != null && key.isValid()) {
+				return channel;
+			}
+			closeQuietly(channel);
+		}
+		return null;
+	}
+
+	private void closeIdle(SelectionKey key) {
+		Iterator<LinkedList<SocketChannel>> iterator = m_idleConnections.values().iterator();
+		while (iterator.hasNext()) {
+			LinkedList<SocketChannel> idle = iterator.next();
+			if (idle.remove(key.channel())) {
+				if (idle.isEmpty()) {
+					iterator.remove();
+				}
+				break;
+			}
+		}
+		closeQuietly(key.channel());
+	}
+
+	private void checkTimeout() {
+		Iterator<Exchange> iterator = m_activeExchanges.iterator();
+		while (iterator.hasNext()) {
+			Exchange exchange = iterator.next();
+			if (exchange.getElapsedTime() > m_timeout) {
+				iterator.remove();
+				closeQuietly(exchange.m_channel);
+				exchange.fail(new SocketTimeoutException("No response in " + m_timeout + " ms"));
+			}
+		}
+	}
+
+	private void closeAll() {
+		for (Exchange each : m_activeExchanges) {
+			closeQuietly(each.m_channel);
+			each.fail(new ClosedChannelException());
+		}
+		m_activeExchanges.clear();
+		Exchange exchange;
+		while ((exchange = m_newExchanges.poll()) != null) {
+			exchange.fail(new ClosedChannelException());
+		}
+		for (LinkedList<SocketChannel> each : m_idleConnections.values()) {
+			for (SocketChannel channel : each) {
+				closeQuietly(channel);
+			}
+		}
+		m_idleConnections.clear();
+		try {
+			m_selector.close();
+		} catch (IOException e) {
+			m_logger.debug("Error while closing selector {}", e.getMessage());
+		}
+	}
+
+	private static void closeQuietly(Channel channel) {
+		if (channel == null) {
+			return;
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Nothing to do more on the broken channel.
+			return;
+		}
+	}
+
+	/**
+	 * A request and response pair in flight.
+	 */
+	private class Exchange {
+		private final AsyncHttpRequest m_request;
+		private final AsyncHttpCallback m_callback;
+		private final long m_startTime = System.nanoTime();
+		private ByteBuffer m_requestBuffer;
+		private HttpResponseParser m_parser;
+		private SocketChannel m_channel;
+		private String m_address;
+		private boolean m_reused;
+
+		Exchange(AsyncHttpRequest request, AsyncHttpCallback callback) {
+			m_request = request;
+			m_callback = callback;
+			reset();
+		}
+
+		void reset() {
+			m_requestBuffer = ByteBuffer.wrap(m_request.encode());
+			m_parser = new HttpResponseParser(m_request.getMethod());
+		}
+
+		long getElapsedTime() {
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - m_startTime);
+		}
+
+		void fail(Exception e) {
+			callback(new AsyncHttpResponse(m_request, e, getElapsedTime()));
+		}
+
+		void callback(AsyncHttpResponse response) {
+			m_inFlight.decrementAndGet();
+			try {
+				m_callback.onResponse(response);
+			} catch (Exception e) {
+				m_logger.error("Error while calling back for {} : {}", m_request, e.getMessage());
+			}
+		}
+	}
+}
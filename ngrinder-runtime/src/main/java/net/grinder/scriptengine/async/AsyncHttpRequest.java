@@ -0,0 +1,172 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.async;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * HTTP request which is sent by {@link AsyncHttpClient}.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class AsyncHttpRequest {
+
+	private static final String CHARSET = "UTF-8";
+
+	private final String m_method;
+
+	private final URL m_url;
+
+	private final Map<String, String> m_headers = new LinkedHashMap<String, String>();
+
+	private byte[] m_body = new byte[0];
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param method
+	 *            HTTP method such as GET or POST
+	 * @param url
+	 *            http url
+	 * @throws IllegalArgumentException
+	 *             if the url is malformed or not http
+	 */
+	public AsyncHttpRequest(String method, String url) {
+		m_method = method.toUpperCase();
+		try {
+			m_url = new URL(url);
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException("Invalid url " + url, e);
+		}
+		if (!"http".equalsIgnoreCase(m_url.getProtocol())) {
+			throw new IllegalArgumentException("Only http url is supported : " + url);
+		}
+	}
+
+	/**
+	 * Set the request header.
+	 * 
+	 * @param name
+	 *            header name
+	 * @param value
+	 *            header value
+	 * @return this request
+	 */
+	public AsyncHttpRequest setHeader(String name, String value) {
+		m_headers.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Set the request body.
+	 * 
+	 * @param body
+	 *            body
+	 * @return this request
+	 */
+	public AsyncHttpRequest setBody(byte[] body) {
+		m_body = body == null ? new byte[0] : body;
+		return this;
+	}
+
+	/**
+	 * Set the request body in UTF-8.
+	 * 
+	 * @param body
+	 *            body
+	 * @return this request
+	 */
+	public AsyncHttpRequest setBody(String body) {
+		try {
+			return setBody(body == null ? null : body.getBytes(CHARSET));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public String getMethod() {
+		return m_method;
+	}
+
+	public URL getUrl() {
+		return m_url;
+	}
+
+	public String getHost() {
+		return m_url.getHost();
+	}
+
+	/**
+	 * Get the port to connect.
+	 * 
+	 * @return port in the url or 80
+	 */
+	public int getPort() {
+		return m_url.getPort() == -1 ? m_url.getDefaultPort() : m_url.getPort();
+	}
+
+	/**
+	 * Encode this request into the HTTP/1.1 wire format.
+	 * 
+	 * @return encoded bytes
+	 */
+	byte[] encode() {
+		StringBuilder builder = new StringBuilder(256);
+		String path = m_url.getFile();
+		builder.append(m_method).append(' ').append(path.length() == 0 ? "/" : path).append(" HTTP/1.1\r\n");
+		if (!containsHeader("Host")) {
+			builder.append("Host: ").append(m_url.getHost());
+			if (m_url.getPort() != -1) {
+				builder.append(':').append(m_url.getPort());
+			}
+			builder.append("\r\n");
+		}
+		for (Entry<String, String> each : m_headers.entrySet()) {
+			builder.append(each.getKey()).append(": ").append(each.getValue()).append("\r\n");
+		}
+		if (m_body.length != 0 || "POST".equals(m_method) || "PUT".equals(m_method)) {
+			builder.append("Content-Length: ").append(m_body.length).append("\r\n");
+		}
+		builder.append("\r\n");
+		try {
+			byte[] header = builder.toString().getBytes("ISO-8859-1");
+			byte[] encoded = new byte[header.length + m_body.length];
+			System.arraycopy(header, 0, encoded, 0, header.length);
+			System.arraycopy(m_body, 0, encoded, header.length, m_body.length);
+			return encoded;
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private boolean containsHeader(String name) {
+		for (String each : m_headers.keySet()) {
+			if (each.equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return m_method + " " + m_url;
+	}
+}
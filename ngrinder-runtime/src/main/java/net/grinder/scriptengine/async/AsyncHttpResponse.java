@@ -0,0 +1,152 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.async;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * HTTP response or failure of an exchange made by {@link AsyncHttpClient}.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class AsyncHttpResponse {
+
+	private final AsyncHttpRequest m_request;
+
+	private final int m_statusCode;
+
+	private final Map<String, String> m_headers;
+
+	private final byte[] m_body;
+
+	private final long m_elapsedTime;
+
+	private final Exception m_exception;
+
+	/**
+	 * Constructor for the arrived response.
+	 * 
+	 * @param request
+	 *            request
+	 * @param statusCode
+	 *            status code
+	 * @param headers
+	 *            headers whose names are in lower case
+	 * @param body
+	 *            decoded body
+	 * @param elapsedTime
+	 *            time from the request to the end of the response in millisecond
+	 */
+	AsyncHttpResponse(AsyncHttpRequest request, int statusCode, Map<String, String> headers, byte[] body,
+					long elapsedTime) {
+		m_request = request;
+		m_statusCode = statusCode;
+		m_headers = headers;
+		m_body = body;
+		m_elapsedTime = elapsedTime;
+		m_exception = null;
+	}
+
+	/**
+	 * Constructor for the failed exchange.
+	 * 
+	 * @param request
+	 *            request
+	 * @param exception
+	 *            failure cause
+	 * @param elapsedTime
+	 *            time from the request to the failure in millisecond
+	 */
+	AsyncHttpResponse(AsyncHttpRequest request, Exception exception, long elapsedTime) {
+		m_request = request;
+		m_statusCode = 0;
+		m_headers = Collections.emptyMap();
+		m_body = new byte[0];
+		m_elapsedTime = elapsedTime;
+		m_exception = exception;
+	}
+
+	/**
+	 * Check if the exchange is failed or the server responded with an error status.
+	 * 
+	 * @return true if there is an exception or the status code is 400 or more
+	 */
+	public boolean isError() {
+		return m_exception != null || m_statusCode >= 400;
+	}
+
+	/**
+	 * Get the header value.
+	 * 
+	 * @param name
+	 *            header name in any case
+	 * @return header value. null if not exists.
+	 */
+	public String getHeader(String name) {
+		return m_headers.get(name.toLowerCase());
+	}
+
+	/**
+	 * Get the body as text. The charset in Content-Type is used if exists, otherwise UTF-8.
+	 * 
+	 * @return body text
+	 */
+	public String getText() {
+		String charset = "UTF-8";
+		String contentType = getHeader("Content-Type");
+		if (contentType != null) {
+			int index = contentType.toLowerCase().indexOf("charset=");
+			if (index >= 0) {
+				charset = contentType.substring(index + "charset=".length()).replace("\"", "").trim();
+			}
+		}
+		try {
+			return new String(m_body, charset);
+		} catch (UnsupportedEncodingException e) {
+			return new String(m_body);
+		}
+	}
+
+	public AsyncHttpRequest getRequest() {
+		return m_request;
+	}
+
+	public int getStatusCode() {
+		return m_statusCode;
+	}
+
+	public Map<String, String> getHeaders() {
+		return m_headers;
+	}
+
+	public byte[] getBody() {
+		return m_body;
+	}
+
+	public long getElapsedTime() {
+		return m_elapsedTime;
+	}
+
+	public Exception getException() {
+		return m_exception;
+	}
+
+	@Override
+	public String toString() {
+		return m_request + " : " + (m_exception == null ? String.valueOf(m_statusCode) : m_exception.toString());
+	}
+}
@@ -0,0 +1,197 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.async;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.grinder.script.Test;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+
+import org.slf4j.Logger;
+
+/**
+ * Records the test time of the asynchronous exchanges into the statistics of the grinder
+ * {@link Test}.
+ * 
+ * Grinder only records the time of the instrumented calls made and finished in the same worker
+ * thread. The exchange of a virtual user finishes in the selector thread instead, so its result is
+ * queued there and added into the statistics which the worker process reports to the console when
+ * a worker thread calls {@link #flush()}, the same way grinder records the instrumented calls of
+ * the worker threads. The script statistics API can not add the test time sample, so the statistics
+ * of each test is looked up by reflection once. The fields are checked when the recorder is
+ * created, so that the grinder version which does not have them is detected before the test
+ * starts.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class AsyncTestRecorder {
+
+	private static final String REGISTERED_TEST_CLASS = "net.grinder.engine.process.TestData";
+
+	private final Logger m_logger;
+
+	private final StatisticsServices m_statisticsServices = StatisticsServicesImplementation.getInstance();
+
+	private final StatisticsIndexMap.LongSampleIndex m_timedTestsIndex;
+
+	private final StatisticsIndexMap.LongIndex m_errorsIndex;
+
+	private final Map<Integer, StatisticsSet> m_testStatistics = new ConcurrentHashMap<Integer, StatisticsSet>();
+
+	private final Queue<TestResult> m_results = new ConcurrentLinkedQueue<TestResult>();
+
+	private volatile boolean m_available;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param logger
+	 *            logger
+	 */
+	public AsyncTestRecorder(Logger logger) {
+		m_logger = logger;
+		StatisticsIndexMap indexMap = m_statisticsServices.getStatisticsIndexMap();
+		m_timedTestsIndex = indexMap.getLongSampleIndex("timedTests");
+		m_errorsIndex = indexMap.getLongIndex("errors");
+		m_available = hasStatisticsFields();
+	}
+
+	private boolean hasStatisticsFields() {
+		try {
+			Test.class.getDeclaredField("m_registeredTest");
+			Class.forName(REGISTERED_TEST_CLASS).getDeclaredField("m_testStatistics");
+			return true;
+		} catch (Exception e) {
+			m_logger.error("Async test time can not be recorded in this grinder version : {}", e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Check if the test time can be recorded in this grinder version.
+	 * 
+	 * @return true if available
+	 */
+	public boolean isAvailable() {
+		return m_available;
+	}
+
+	/**
+	 * Record a test run. It can be called by any thread. It's added into the statistics by the
+	 * next {@link #flush()}.
+	 * 
+	 * @param test
+	 *            test to be recorded. Nothing is recorded if it's null.
+	 * @param elapsedTime
+	 *            test time in millisecond
+	 * @param success
+	 *            true if the test is successful
+	 */
+	public void record(Test test, long elapsedTime, boolean success) {
+		if (test == null || !m_available) {
+			return;
+		}
+		m_results.add(new TestResult(test, elapsedTime, success ? 0 : 1));
+	}
+
+	/**
+	 * Record errors of a test which are not bound to a test run. It can be called by any thread.
+	 * It's added into the statistics by the next {@link #flush()}.
+	 * 
+	 * @param test
+	 *            test to be recorded. Nothing is recorded if it's null.
+	 * @param count
+	 *            error count
+	 */
+	public void recordErrors(Test test, long count) {
+		if (test == null || count <= 0 || !m_available) {
+			return;
+		}
+		m_results.add(new TestResult(test, 0, count));
+	}
+
+	/**
+	 * Add the recorded results into the statistics of the tests. It should be called by a grinder
+	 * worker thread, or after all of them are finished.
+	 */
+	public void flush() {
+		TestResult each;
+		while ((each = m_results.poll()) != null) {
+			StatisticsSet target = getTestStatistics(each.m_test);
+			if (target == null) {
+				m_results.clear();
+				return;
+			}
+			// Same as what grinder does when an instrumented call is finished.
+			if (each.m_errors == 0) {
+				StatisticsSet statistics = m_statisticsServices.getStatisticsSetFactory().create();
+				statistics.addSample(m_timedTestsIndex, each.m_elapsedTime);
+				target.add(statistics);
+			} else {
+				target.addValue(m_errorsIndex, each.m_errors);
+			}
+		}
+	}
+
+	private StatisticsSet getTestStatistics(Test test) {
+		StatisticsSet statistics = m_testStatistics.get(test.getNumber());
+		if (statistics != null) {
+			return statistics;
+		}
+		try {
+			Object registeredTest = getFieldValue(test, "m_registeredTest");
+			statistics = (StatisticsSet) getFieldValue(registeredTest, "m_testStatistics");
+			m_testStatistics.put(test.getNumber(), statistics);
+			return statistics;
+		} catch (Exception e) {
+			m_available = false;
+			m_logger.warn("Async test time can not be recorded in this grinder version : {}", e.getMessage());
+			return null;
+		}
+	}
+
+	private static Object getFieldValue(Object target, String name) throws NoSuchFieldException,
+					IllegalAccessException {
+		Field field = target.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		Object value = field.get(target);
+		if (value == null) {
+			throw new NoSuchFieldException(name + " is not set");
+		}
+		return value;
+	}
+
+	/**
+	 * Result waiting to be added into the statistics.
+	 */
+	private static class TestResult {
+		private final Test m_test;
+		private final long m_elapsedTime;
+		private final long m_errors;
+
+		TestResult(Test test, long elapsedTime, long errors) {
+			m_test = test;
+			m_elapsedTime = elapsedTime;
+			m_errors = errors;
+		}
+	}
+}
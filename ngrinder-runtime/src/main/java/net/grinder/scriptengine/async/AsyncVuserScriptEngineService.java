@@ -0,0 +1,232 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.async;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.engine.common.EngineException;
+import net.grinder.engine.common.ScriptLocation;
+import net.grinder.scriptengine.DCRContext;
+import net.grinder.scriptengine.Instrumenter;
+import net.grinder.scriptengine.ScriptEngineService;
+import net.grinder.scriptengine.ScriptExecutionException;
+import net.grinder.scriptengine.jython.JythonScriptEngineService;
+
+import org.slf4j.Logger;
+
+/**
+ * Script engine service which runs many {@link VirtualUser}s on a few worker threads.
+ * 
+ * This service becomes active only when {@link #PROP_ASYNC_VUSERS} is set. Then the worker
+ * threads do not run the jython test runner by themselves. They act as the carriers which run the
+ * iterations and the callbacks of the virtual users, whose http exchanges are done by a
+ * non-blocking {@link AsyncHttpClient}. The virtual users are evenly assigned to the worker
+ * threads and started when the thread starts, so that the thread ramp up also ramps up the
+ * virtual users.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class AsyncVuserScriptEngineService implements ScriptEngineService {
+
+	/** The count of virtual users in each worker process. */
+	public static final String PROP_ASYNC_VUSERS = "ngrinder.async.vusers";
+
+	/** The timeout of each http exchange in millisecond. */
+	public static final String PROP_ASYNC_TIMEOUT = "ngrinder.async.timeout";
+
+	private static final long DEFAULT_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+
+	private static final long CARRIER_RUN_TIME = TimeUnit.SECONDS.toMillis(1);
+
+	private final GrinderProperties m_properties;
+
+	private final Logger m_logger;
+
+	private final ScriptEngineService m_delegate;
+
+	/**
+	 * Constructor used when DCR instrumentation is available.
+	 * 
+	 * @param properties
+	 *            properties
+	 * @param logger
+	 *            worker process logger
+	 * @param dcrContext
+	 *            DCR context
+	 * @param scriptLocation
+	 *            script location
+	 */
+	public AsyncVuserScriptEngineService(GrinderProperties properties, Logger logger, DCRContext dcrContext,
+					ScriptLocation scriptLocation) {
+		m_properties = properties;
+		m_logger = logger;
+		m_delegate = new JythonScriptEngineService(properties, dcrContext, scriptLocation);
+	}
+
+	/**
+	 * Constructor used when DCR instrumentation is not available.
+	 * 
+	 * @param properties
+	 *            properties
+	 * @param logger
+	 *            worker process logger
+	 * @param scriptLocation
+	 *            script location
+	 */
+	public AsyncVuserScriptEngineService(GrinderProperties properties, Logger logger, ScriptLocation scriptLocation) {
+		this(properties, logger, null, scriptLocation);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ScriptEngine createScriptEngine(ScriptLocation script) throws EngineException {
+		int vusers = m_properties.getInt(PROP_ASYNC_VUSERS, 0);
+		if (vusers <= 0) {
+			return null;
+		}
+		AsyncTestRecorder recorder = new AsyncTestRecorder(m_logger);
+		if (!recorder.isAvailable()) {
+			throw new EngineException("Async virtual users are not supported in this grinder version. Unset "
+							+ PROP_ASYNC_VUSERS + " to run the test.");
+		}
+		ScriptEngine delegate = m_delegate.createScriptEngine(script);
+		if (delegate == null) {
+			return null;
+		}
+		int threads = Math.max(1, m_properties.getInt("grinder.threads", 1));
+		AsyncHttpClient client;
+		try {
+			client = new AsyncHttpClient("async http client", m_properties.getLong(PROP_ASYNC_TIMEOUT,
+							DEFAULT_TIMEOUT), m_logger);
+		} catch (IOException e) {
+			throw new EngineException("Failed to open the async http client", e);
+		}
+		m_logger.info("Run {} virtual users on {} threads", vusers, threads);
+		return new AsyncVuserScriptEngine(delegate, new VirtualUserScheduler(client, recorder, m_logger), client,
+						vusers, threads);
+	}
+
+	/**
+	 * Return no instrumenter. The instrumenters are provided by the grinder built-in services.
+	 * 
+	 * @return empty list
+	 */
+	@Override
+	public List<? extends Instrumenter> createInstrumenters() throws EngineException {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Script engine whose worker runnables are the carriers of the virtual users.
+	 */
+	private class AsyncVuserScriptEngine implements ScriptEngine {
+		private final ScriptEngine m_engine;
+		private final VirtualUserScheduler m_scheduler;
+		private final AsyncHttpClient m_client;
+		private final int m_vusers;
+		private final int m_threads;
+		private final AtomicInteger m_carrierIndex = new AtomicInteger();
+
+		public AsyncVuserScriptEngine(ScriptEngine engine, VirtualUserScheduler scheduler, AsyncHttpClient client,
+						int vusers, int threads) {
+			m_engine = engine;
+			m_scheduler = scheduler;
+			m_client = client;
+			m_vusers = vusers;
+			m_threads = threads;
+		}
+
+		@Override
+		public WorkerRunnable createWorkerRunnable() throws EngineException {
+			return new CarrierWorkerRunnable(m_engine.createWorkerRunnable(), getShare());
+		}
+
+		@Override
+		public WorkerRunnable createWorkerRunnable(Object testRunner) throws EngineException {
+			return new CarrierWorkerRunnable(m_engine.createWorkerRunnable(testRunner), getShare());
+		}
+
+		private int getShare() {
+			int index = m_carrierIndex.getAndIncrement();
+			if (index >= m_threads) {
+				return 0;
+			}
+			return m_vusers / m_threads + (index < m_vusers % m_threads ? 1 : 0);
+		}
+
+		@Override
+		public void shutdown() throws EngineException {
+			m_scheduler.shutdown();
+			m_client.shutdown();
+			m_logger.info("{} virtual users are finished", m_scheduler.getVirtualUserCount());
+			m_engine.shutdown();
+		}
+
+		@Override
+		public String getDescription() {
+			return m_engine.getDescription() + " (" + m_vusers + " async virtual users)";
+		}
+
+		/**
+		 * Worker runnable which runs the virtual user jobs instead of running the test runner once.
+		 */
+		private class CarrierWorkerRunnable implements WorkerRunnable {
+			private final WorkerRunnable m_runnable;
+			private final Runnable m_iterationJob;
+			private int m_share;
+
+			public CarrierWorkerRunnable(WorkerRunnable runnable, int share) {
+				m_runnable = runnable;
+				m_share = share;
+				m_iterationJob = new Runnable() {
+					@Override
+					public void run() {
+						try {
+							m_runnable.run();
+						} catch (ScriptExecutionException e) {
+							m_logger.error("Iteration of {} is aborted : {}", VirtualUser.current(),
+											e.getShortMessage());
+						}
+					}
+				};
+			}
+
+			@Override
+			public void run() throws ScriptExecutionException {
+				if (m_share > 0) {
+					m_scheduler.startVirtualUsers(m_share);
+					m_share = 0;
+				}
+				try {
+					m_scheduler.runJobs(m_iterationJob, CARRIER_RUN_TIME);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			@Override
+			public void shutdown() throws ScriptExecutionException {
+				m_runnable.shutdown();
+			}
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.async;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Incremental HTTP/1.1 response parser. It's fed with the bytes as they arrive so that a response
+ * can be split into any number of reads.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+class HttpResponseParser {
+
+	private enum State {
+		STATUS_AND_HEADERS, FIXED_BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_DATA_END, TRAILER, BODY_UNTIL_CLOSE, DONE
+	}
+
+	private final boolean m_bodyless;
+
+	private State m_state = State.STATUS_AND_HEADERS;
+
+	private final StringBuilder m_line = new StringBuilder();
+
+	private boolean m_statusLineRead = false;
+
+	private int m_statusCode;
+
+	private Map<String, String> m_headers = new HashMap<String, String>();
+
+	private final ByteArrayOutputStream m_body = new ByteArrayOutputStream();
+
+	private long m_remaining;
+
+	private boolean m_keepAlive;
+
+	private boolean m_started = false;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param method
+	 *            method of the request. The response of HEAD does not have the body.
+	 */
+	HttpResponseParser(String method) {
+		m_bodyless = "HEAD".equals(method);
+	}
+
+	/**
+	 * Feed the arrived bytes.
+	 * 
+	 * @param buffer
+	 *            buffer to read from
+	 * @return true if the response is complete
+	 * @throws IOException
+	 *             if the response is malformed
+	 */
+	boolean feed(ByteBuffer buffer) throws IOException {
+		if (buffer.hasRemaining()) {
+			m_started = true;
+		}
+		while (buffer.hasRemaining() && m_state != State.DONE) {
+			switch (m_state) {
+			case STATUS_AND_HEADERS:
+				if (readLine(buffer)) {
+					processHeaderLine();
+				}
+				break;
+			case FIXED_BODY:
+				m_remaining -= copy(buffer, m_remaining);
+				if (m_remaining == 0) {
+					m_state = State.DONE;
+				}
+				break;
+			case CHUNK_SIZE:
+				if (readLine(buffer)) {
+					String size = m_line.toString();
+					int extension = size.indexOf(';');
+					try {
+						m_remaining = Long.parseLong((extension < 0 ? size : size.substring(0, extension)).trim(), 16);
+					} catch (NumberFormatException e) {
+						throw new IOException("Invalid chunk size " + size);
+					}
+					m_line.setLength(0);
+					m_state = m_remaining == 0 ? State.TRAILER : State.CHUNK_DATA;
+				}
+				break;
+			case CHUNK_DATA:
+				m_remaining -= copy(buffer, m_remaining);
+				if (m_remaining == 0) {
+					m_state = State.CHUNK_DATA_END;
+				}
+				break;
+			case CHUNK_DATA_END:
+				if (readLine(buffer)) {
+					m_line.setLength(0);
+					m_state = State.CHUNK_SIZE;
+				}
+				break;
+			case TRAILER:
+				if (readLine(buffer)) {
+					if (m_line.length() == 0) {
+						m_state = State.DONE;
+					}
+					m_line.setLength(0);
+				}
+				break;
+			case BODY_UNTIL_CLOSE:
+				copy(buffer, Long.MAX_VALUE);
+				break;
+			default:
+				break;
+			}
+		}
+		return m_state == State.DONE;
+	}
+
+	/**
+	 * Notify the connection is closed by the server.
+	 * 
+	 * @return true if the response is complete. false if the response is truncated.
+	 */
+	boolean close() {
+		if (m_state == State.BODY_UNTIL_CLOSE) {
+			m_state = State.DONE;
+		}
+		return m_state == State.DONE;
+	}
+
+	private boolean readLine(ByteBuffer buffer) {
+		while (buffer.hasRemaining()) {
+			char each = (char) (buffer.get() & 0xff);
+			if (each == '\n') {
+				int length = m_line.length();
+				if (length > 0 && m_line.charAt(length - 1) == '\r') {
+					m_line.setLength(length - 1);
+				}
+				return true;
+			}
+			m_line.append(each);
+		}
+		return false;
+	}
+
+	private long copy(ByteBuffer buffer, long max) {
+		int length = (int) Math.min(buffer.remaining(), max);
+		m_body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+		buffer.position(buffer.position() + length);
+		return length;
+	}
+
+	private void processHeaderLine() throws IOException {
+		String line = m_line.toString();
+		m_line.setLength(0);
+		if (!m_statusLineRead) {
+			String[] tokens = line.split(" ", 3);
+			if (tokens.length < 2 || !tokens[0].startsWith("HTTP/")) {
+				throw new IOException("Invalid status line " + line);
+			}
+			try {
+				m_statusCode = Integer.parseInt(tokens[1]);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid status line " + line);
+			}
+			m_keepAlive = "HTTP/1.1".equals(tokens[0]);
+			m_statusLineRead = true;
+			return;
+		}
+		if (line.length() != 0) {
+			int index = line.indexOf(':');
+			if (index > 0) {
+				m_headers.put(line.substring(0, index).trim().toLowerCase(), line.substring(index + 1).trim());
+			}
+			return;
+		}
+		// End of headers
+		if (m_statusCode >= 100 && m_statusCode < 200) {
+			// Skip the interim response.
+			m_statusLineRead = false;
+			m_headers = new HashMap<String, String>();
+			return;
+		}
+		String connection = m_headers.get("connection");
+		if (connection != null) {
+			m_keepAlive = !"close".equalsIgnoreCase(connection);
+		}
+		String transferEncoding = m_headers.get("transfer-encoding");
+		String contentLength = m_headers.get("content-length");
+		if (m_bodyless || m_statusCode == 204 || m_statusCode == 304) {
+			m_state = State.DONE;
+		} else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+			m_state = State.CHUNK_SIZE;
+		} else if (contentLength != null) {
+			try {
+				m_remaining = Long.parseLong(contentLength);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid content length " + contentLength);
+			}
+			m_state = m_remaining == 0 ? State.DONE : State.FIXED_BODY;
+		} else {
+			m_keepAlive = false;
+			m_state = State.BODY_UNTIL_CLOSE;
+		}
+	}
+
+	/**
+	 * Check if any byte of the response is arrived.
+	 * 
+	 * @return true if started
+	 */
+	boolean isStarted() {
+		return m_started;
+	}
+
+	/**
+	 * Check if the connection can be reused after this response.
+	 * 
+	 * @return true if reusable
+	 */
+	boolean isKeepAlive() {
+		return m_keepAlive && m_state == State.DONE;
+	}
+
+	int getStatusCode() {
+		return m_statusCode;
+	}
+
+	Map<String, String> getHeaders() {
+		return m_headers;
+	}
+
+	byte[] getBody() {
+		return m_body.toByteArray();
+	}
+}
@@ -0,0 +1,214 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.async;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.grinder.script.Test;
+
+/**
+ * Virtual user which runs on the shared carrier threads rather than owning a thread.
+ * 
+ * An iteration of a virtual user starts with a call of the test runner and lasts until the last
+ * callback or scheduled job which it triggered is finished. Then the next iteration is started.
+ * Callbacks and scheduled jobs of a virtual user are never run at the same time, so that the
+ * script does not need any synchronization for the per virtual user state.
+ * 
+ * The script gets the current virtual user by {@link #current()}. As the test runner instance is
+ * shared by the virtual users on the same carrier thread, the per virtual user state should be
+ * kept in {@link #getAttributes()}.
+ * 
+ * <pre>
+ * def __call__(self):
+ *     vuser = VirtualUser.current()
+ *     vuser.get("http://target/poll", test1, self.onPoll)
+ * </pre>
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class VirtualUser {
+
+	private static final ThreadLocal<VirtualUser> CURRENT = new ThreadLocal<VirtualUser>();
+
+	private final int m_id;
+
+	private final VirtualUserScheduler m_scheduler;
+
+	private final Map<String, Object> m_attributes = new ConcurrentHashMap<String, Object>();
+
+	private final AtomicInteger m_pending = new AtomicInteger();
+
+	private final Object m_lock = new Object();
+
+	private int m_iteration = 0;
+
+	VirtualUser(int id, VirtualUserScheduler scheduler) {
+		m_id = id;
+		m_scheduler = scheduler;
+	}
+
+	/**
+	 * Get the virtual user whose job is running in the current thread.
+	 * 
+	 * @return virtual user. null if the current thread is not running a virtual user job.
+	 */
+	public static VirtualUser current() {
+		return CURRENT.get();
+	}
+
+	static void setCurrent(VirtualUser vuser) {
+		if (vuser == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(vuser);
+		}
+	}
+
+	/**
+	 * Send GET request.
+	 * 
+	 * @param url
+	 *            http url
+	 * @param test
+	 *            test which the exchange is recorded into. null if it should not be recorded.
+	 * @param callback
+	 *            callback which is invoked when the response arrives
+	 */
+	public void get(String url, Test test, AsyncHttpCallback callback) {
+		send(new AsyncHttpRequest("GET", url), test, callback);
+	}
+
+	/**
+	 * Send POST request.
+	 * 
+	 * @param url
+	 *            http url
+	 * @param body
+	 *            request body
+	 * @param test
+	 *            test which the exchange is recorded into. null if it should not be recorded.
+	 * @param callback
+	 *            callback which is invoked when the response arrives
+	 */
+	public void post(String url, String body, Test test, AsyncHttpCallback callback) {
+		send(new AsyncHttpRequest("POST", url).setBody(body), test, callback);
+	}
+
+	/**
+	 * Send the given request. The exchange is successful when the response arrives in time with
+	 * the status code less than 400.
+	 * 
+	 * @param request
+	 *            request
+	 * @param test
+	 *            test which the exchange is recorded into. null if it should not be recorded.
+	 * @param callback
+	 *            callback which is invoked when the response arrives. null if no callback is
+	 *            necessary.
+	 */
+	public void send(AsyncHttpRequest request, final Test test, final AsyncHttpCallback callback) {
+		m_pending.incrementAndGet();
+		m_scheduler.getClient().execute(request, new AsyncHttpCallback() {
+			@Override
+			public void onResponse(final AsyncHttpResponse response) {
+				m_scheduler.getRecorder().record(test, response.getElapsedTime(), !response.isError());
+				m_scheduler.submit(VirtualUser.this, new Runnable() {
+					@Override
+					public void run() {
+						if (callback != null) {
+							callback.onResponse(response);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Run the given job after the given delay. This is used for think time instead of sleep.
+	 * 
+	 * @param delay
+	 *            delay in millisecond
+	 * @param job
+	 *            job to be run
+	 */
+	public void schedule(long delay, Runnable job) {
+		m_pending.incrementAndGet();
+		m_scheduler.schedule(this, job, delay);
+	}
+
+	/**
+	 * Get the id of this virtual user which is unique in the worker process.
+	 * 
+	 * @return id
+	 */
+	public int getId() {
+		return m_id;
+	}
+
+	/**
+	 * Get the count of iterations which this virtual user started.
+	 * 
+	 * @return iteration count
+	 */
+	public int getIteration() {
+		synchronized (m_lock) {
+			return m_iteration;
+		}
+	}
+
+	/**
+	 * Get the attributes which keep the state of this virtual user across iterations.
+	 * 
+	 * @return attribute map
+	 */
+	public Map<String, Object> getAttributes() {
+		return m_attributes;
+	}
+
+	/**
+	 * Run the given job of this virtual user in the current thread.
+	 * 
+	 * @param job
+	 *            job to be run. null to start a new iteration with the given iteration job.
+	 * @param iterationJob
+	 *            the job which runs an iteration
+	 * @return true if the iteration is finished by this job
+	 */
+	boolean run(Runnable job, Runnable iterationJob) {
+		synchronized (m_lock) {
+			if (job == null) {
+				m_iteration++;
+				m_pending.incrementAndGet();
+			}
+			setCurrent(this);
+			try {
+				(job == null ? iterationJob : job).run();
+			} catch (RuntimeException e) {
+				m_scheduler.getLogger().error("Error while running the job of {} : {}", this, e.getMessage());
+			} finally {
+				setCurrent(null);
+			}
+			return m_pending.decrementAndGet() == 0;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "vuser-" + m_id;
+	}
+}
@@ -0,0 +1,186 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.async;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+/**
+ * Process wide queue of the virtual user jobs which are run by the carrier threads.
+ * 
+ * Grinder worker threads act as the carriers. Each of them keeps taking the next job of any
+ * virtual user from the queue, so that a few threads can drive thousands of virtual users which
+ * mostly wait for the responses.
+ * 
+ * @author JunHo Yoon
+ * @since 3.1
+ */
+public class VirtualUserScheduler {
+
+	private static final long POLL_TIMEOUT = 100;
+
+	private final AsyncHttpClient m_client;
+
+	private final AsyncTestRecorder m_recorder;
+
+	private final Logger m_logger;
+
+	private final BlockingQueue<Job> m_jobs = new LinkedBlockingQueue<Job>();
+
+	private final ScheduledExecutorService m_timer;
+
+	private final AtomicInteger m_virtualUserCount = new AtomicInteger();
+
+	private volatile boolean m_shutdown = false;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param client
+	 *            http client shared by the virtual users
+	 * @param recorder
+	 *            test recorder
+	 * @param logger
+	 *            logger
+	 */
+	public VirtualUserScheduler(AsyncHttpClient client, AsyncTestRecorder recorder, Logger logger) {
+		m_client = client;
+		m_recorder = recorder;
+		m_logger = logger;
+		m_timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "virtual user timer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Start the given count of virtual users. Their first iterations are queued right away.
+	 * 
+	 * @param count
+	 *            count of virtual users
+	 */
+	public void startVirtualUsers(int count) {
+		for (int i = 0; i < count; i++) {
+			submit(new VirtualUser(m_virtualUserCount.incrementAndGet(), this), null);
+		}
+	}
+
+	/**
+	 * Run the queued jobs in the current thread for the given time.
+	 * 
+	 * @param iterationJob
+	 *            job which runs an iteration of the current virtual user
+	 * @param maxTime
+	 *            maximum time to run in millisecond
+	 * @return count of jobs run
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted
+	 */
+	public int runJobs(Runnable iterationJob, long maxTime) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + maxTime;
+		int count = 0;
+		while (!m_shutdown) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				break;
+			}
+			Job job = m_jobs.poll(Math.min(remaining, POLL_TIMEOUT), TimeUnit.MILLISECONDS);
+			// The exchanges finished in the selector thread are recorded by the carrier.
+			m_recorder.flush();
+			if (job == null) {
+				continue;
+			}
+			count++;
+			if (job.m_virtualUser.run(job.m_runnable, iterationJob)) {
+				// Every job of this iteration is done.
+				submit(job.m_virtualUser, null);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Stop running the jobs. The queued jobs are discarded.
+	 */
+	public void shutdown() {
+		m_shutdown = true;
+		m_timer.shutdownNow();
+		m_jobs.clear();
+	}
+
+	/**
+	 * Get the count of virtual users started in this process.
+	 * 
+	 * @return virtual user count
+	 */
+	public int getVirtualUserCount() {
+		return m_virtualUserCount.get();
+	}
+
+	void submit(VirtualUser virtualUser, Runnable runnable) {
+		if (!m_shutdown) {
+			m_jobs.add(new Job(virtualUser, runnable));
+		}
+	}
+
+	void schedule(final VirtualUser virtualUser, final Runnable runnable, long delay) {
+		try {
+			m_timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					submit(virtualUser, runnable);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			m_logger.debug("{} is not scheduled because the test is stopping", virtualUser);
+		}
+	}
+
+	AsyncHttpClient getClient() {
+		return m_client;
+	}
+
+	AsyncTestRecorder getRecorder() {
+		return m_recorder;
+	}
+
+	Logger getLogger() {
+		return m_logger;
+	}
+
+	/**
+	 * A job of a virtual user. The runnable is null for the start of a new iteration.
+	 */
+	private static class Job {
+		private final VirtualUser m_virtualUser;
+		private final Runnable m_runnable;
+
+		Job(VirtualUser virtualUser, Runnable runnable) {
+			m_virtualUser = virtualUser;
+			m_runnable = runnable;
+		}
+	}
+}
@@ -0,0 +1,4 @@
+/**
+ * non-blocking virtual user script engine extension.
+ */
+package net.grinder.scriptengine.async;
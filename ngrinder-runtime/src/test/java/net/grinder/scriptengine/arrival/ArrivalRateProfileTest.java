@@ -0,0 +1,86 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.arrival;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ArrivalRateProfileTest {
+
+	@Test
+	public void testConstantProfile() {
+		ArrivalRateProfile profile = ArrivalRateProfile.parse("50");
+		assertThat(profile.getRate(0), closeTo(50, 0.001));
+		assertThat(profile.getRate(100000), closeTo(50, 0.001));
+	}
+
+	@Test
+	public void testInterpolation() {
+		ArrivalRateProfile profile = ArrivalRateProfile.parse("0:10, 10:110, 20:0");
+		assertThat(profile.getRate(0), closeTo(10, 0.001));
+		assertThat(profile.getRate(5000), closeTo(60, 0.001));
+		assertThat(profile.getRate(15000), closeTo(55, 0.001));
+		assertThat(profile.getRate(30000), closeTo(0, 0.001));
+	}
+
+	@Test
+	public void testScaleAndToString() {
+		ArrivalRateProfile profile = ArrivalRateProfile.parse("0:10,60:100").scale(0.5);
+		assertThat(profile.getMaxRate(), closeTo(50, 0.001));
+		assertThat(ArrivalRateProfile.parse(profile.toString()).getRate(30000), closeTo(27.5, 0.001));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidOrder() {
+		ArrivalRateProfile.parse("10:10,5:100");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidNumber() {
+		ArrivalRateProfile.parse("0:abc");
+	}
+
+	@Test
+	public void testSchedulerPacing() throws InterruptedException {
+		ArrivalRateScheduler scheduler = new ArrivalRateScheduler(ArrivalRateProfile.parse("100"), 100);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 21; i++) {
+			assertTrue(scheduler.awaitSlot());
+		}
+		// 21 slots in 100 tps should take 200ms.
+		long elapsed = System.currentTimeMillis() - start;
+		assertThat(elapsed, greaterThan(150L));
+		assertThat(elapsed, lessThan(1000L));
+		assertThat(scheduler.getMissedCount(), is(0L));
+	}
+
+	@Test
+	public void testSchedulerMissedStarts() throws InterruptedException {
+		ArrivalRateScheduler scheduler = new ArrivalRateScheduler(ArrivalRateProfile.parse("100"), 100);
+		assertTrue(scheduler.awaitSlot());
+		// Every executor is busy for 500ms.
+		Thread.sleep(500);
+		assertTrue(scheduler.awaitSlot());
+		assertThat(scheduler.getMissedCount(), greaterThan(30L));
+		assertThat(scheduler.getMissedCount(), lessThan(50L));
+		scheduler.shutdown();
+		assertThat(scheduler.awaitSlot(), is(false));
+	}
+}
@@ -0,0 +1,118 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.async;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class AsyncHttpClientTest {
+
+	private HttpServer m_server;
+
+	private AsyncHttpClient m_client;
+
+	private String m_url;
+
+	@Before
+	public void before() throws IOException {
+		m_server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		m_server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if (exchange.getRequestURI().getPath().equals("/slow")) {
+					try {
+						Thread.sleep(1000);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				byte[] body = (exchange.getRequestMethod() + " " + exchange.getRequestURI()).getBytes("UTF-8");
+				exchange.sendResponseHeaders(exchange.getRequestURI().getPath().equals("/missing") ? 404 : 200,
+								body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		m_server.start();
+		m_url = "http://127.0.0.1:" + m_server.getAddress().getPort();
+		m_client = new AsyncHttpClient("test client", 500, LoggerFactory.getLogger(AsyncHttpClientTest.class));
+	}
+
+	@After
+	public void after() {
+		m_client.shutdown();
+		m_server.stop(0);
+	}
+
+	private AsyncHttpResponse send(AsyncHttpRequest request) throws InterruptedException {
+		final BlockingQueue<AsyncHttpResponse> responses = new ArrayBlockingQueue<AsyncHttpResponse>(1);
+		m_client.execute(request, new AsyncHttpCallback() {
+			@Override
+			public void onResponse(AsyncHttpResponse response) {
+				responses.add(response);
+			}
+		});
+		return responses.poll(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testGetAndPostOnKeepAliveConnection() throws Exception {
+		AsyncHttpResponse response = send(new AsyncHttpRequest("GET", m_url + "/hello?a=1"));
+		assertThat(response.isError(), is(false));
+		assertThat(response.getText(), is("GET /hello?a=1"));
+		response = send(new AsyncHttpRequest("POST", m_url + "/post").setBody("body"));
+		assertThat(response.getStatusCode(), is(200));
+		assertThat(response.getText(), is("POST /post"));
+		assertThat(m_client.getActiveExchangeCount(), is(0));
+	}
+
+	@Test
+	public void testErrorStatus() throws Exception {
+		AsyncHttpResponse response = send(new AsyncHttpRequest("GET", m_url + "/missing"));
+		assertThat(response.getStatusCode(), is(404));
+		assertThat(response.isError(), is(true));
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		AsyncHttpResponse response = send(new AsyncHttpRequest("GET", m_url + "/slow"));
+		assertThat(response.isError(), is(true));
+		assertThat(response.getException() instanceof SocketTimeoutException, is(true));
+	}
+
+	@Test
+	public void testConnectionRefused() throws Exception {
+		m_server.stop(0);
+		AsyncHttpResponse response = send(new AsyncHttpRequest("GET", m_url + "/hello"));
+		assertThat(response.isError(), is(true));
+	}
+}
@@ -0,0 +1,82 @@
+/* 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package net.grinder.scriptengine.async;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class HttpResponseParserTest {
+
+	private static ByteBuffer buffer(String text) throws IOException {
+		return ByteBuffer.wrap(text.getBytes("ISO-8859-1"));
+	}
+
+	@Test
+	public void testContentLengthInPieces() throws IOException {
+		HttpResponseParser parser = new HttpResponseParser("GET");
+		assertThat(parser.feed(buffer("HTTP/1.1 200 OK\r\nContent-Le")), is(false));
+		assertThat(parser.isStarted(), is(true));
+		assertThat(parser.feed(buffer("ngth: 5\r\n\r\nhel")), is(false));
+		assertThat(parser.feed(buffer("lo")), is(true));
+		assertThat(parser.getStatusCode(), is(200));
+		assertThat(new String(parser.getBody(), "UTF-8"), is("hello"));
+		assertThat(parser.isKeepAlive(), is(true));
+	}
+
+	@Test
+	public void testChunked() throws IOException {
+		HttpResponseParser parser = new HttpResponseParser("GET");
+		String response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+						+ "3\r\nhel\r\n2;ext=1\r\nlo\r\n0\r\nX-Trailer: a\r\n\r\n";
+		assertThat(parser.feed(buffer(response)), is(true));
+		assertThat(new String(parser.getBody(), "UTF-8"), is("hello"));
+	}
+
+	@Test
+	public void testBodyUntilClose() throws IOException {
+		HttpResponseParser parser = new HttpResponseParser("GET");
+		assertThat(parser.feed(buffer("HTTP/1.0 200 OK\r\n\r\nhello")), is(false));
+		assertThat(parser.isKeepAlive(), is(false));
+		assertThat(parser.close(), is(true));
+		assertThat(new String(parser.getBody(), "UTF-8"), is("hello"));
+	}
+
+	@Test
+	public void testBodylessResponses() throws IOException {
+		HttpResponseParser parser = new HttpResponseParser("HEAD");
+		assertThat(parser.feed(buffer("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n")), is(true));
+		parser = new HttpResponseParser("GET");
+		assertThat(parser.feed(buffer("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 304 Not Modified\r\n\r\n")), is(true));
+		assertThat(parser.getStatusCode(), is(304));
+	}
+
+	@Test
+	public void testConnectionClose() throws IOException {
+		HttpResponseParser parser = new HttpResponseParser("GET");
+		assertThat(parser.feed(buffer("HTTP/1.1 404 Not Found\r\nConnection: close\r\nContent-Length: 0\r\n\r\n")),
+						is(true));
+		assertThat(parser.getStatusCode(), is(404));
+		assertThat(parser.isKeepAlive(), is(false));
+	}
+
+	@Test(expected = IOException.class)
+	public void testMalformedStatusLine() throws IOException {
+		new HttpResponseParser("GET").feed(buffer("HELLO\r\n\r\n"));
+	}
+}